@@ -0,0 +1,487 @@
+/*
+ * ATM Example system - file ATMFleet.java
+ *
+ */
+
+import atm.ATM;
+import atm.Session;
+import atm.physical.BankConnectionPool;
+import banking.Balances;
+import banking.Card;
+import banking.Message;
+import banking.Money;
+import banking.SerialNumbers;
+import banking.Status;
+import simulation.ATMThreads;
+import simulation.BankServer;
+import simulation.HeadlessDevices;
+import simulation.LogPipeline;
+import simulation.NetworkLatency;
+import simulation.SimulatedBank;
+import simulation.Simulation;
+import simulation.SimulationClock;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadFactory;
+
+/** Main program class for a fleet of simulated ATMs sharing one simulated bank,
+ *  for load testing the bank.  Each ATM has its own devices and its own
+ *  Simulation, with headless devices instead of a GUI.  A thread for each ATM
+ *  plays the part of a steady stream of customers, either
+ *
+ *  messages - sending a random mix of withdrawals, deposits, transfers and
+ *  inquiries straight through that ATM's own network connection, one at a
+ *  time,
+ *
+ *  pipelined - sending the same mix asynchronously, keeping up to WINDOW
+ *  messages waiting for a response on the connection at once, or
+ *
+ *  sessions - performing complete customer sessions (card, PIN, a withdrawal,
+ *  transfer or inquiry, receipt) from a script fed to the headless devices.
+ *
+ *  Each message takes the time given by the network latency model (in the
+ *  form accepted by NetworkLatency.fromSpecification(), default "fixed:2000")
+ *  to reach the bank.  With a real clock, the fleet runs for the given number
+ *  of seconds and the ATMs really wait for their messages.  With a virtual
+ *  clock, each ATM runs until its own clock has reached the given number of
+ *  seconds - e.g. 86400 for a day's traffic - without waiting for anything,
+ *  so throughput is reported per simulated second as well as per second of
+ *  wall clock time.  A virtual clock only moves when a message is delayed, so
+ *  if an ATM's clock does not move for STALLED_REQUESTS requests in a row, the
+ *  ATM gives up.
+ *
+ *  With -Datm.bankAddress=loopback, the bank is served by a BankServer in this
+ *  process, and the ATMs talk to it over TCP on the loopback interface
+ *  instead of using the simulated network; with -Datm.bankAddress=host (and
+ *  -Datm.bankPort), the ATMs connect to a bank server started separately, e.g.
+ *  by "java BankMain 4242 10000".  Either way the latency is that of the real
+ *  network, and the clock is real.  The ATMs share -Datm.bankConnections
+ *  connections to the bank, or with -Datm.bankConnections=0 each has its own.
+ *
+ *  The scripted customers of a session answer every question at once, so the
+ *  check of the PIN a Session sends as soon as it is entered would have no
+ *  time to overlap with anything, and would only add a round trip to each
+ *  session; it is left out unless asked for with -Datm.verifyPIN=true.
+ *
+ *  -Datm.threads=virtual runs the customers of each ATM on a virtual thread
+ *  instead of a platform thread (see ATMThreads), so a fleet of a hundred
+ *  thousand ATMs or more fits in one JVM.
+ *
+ *  At the end, the aggregate throughput, average and 99th percentile response
+ *  times and the number of connections to the bank server are reported, and
+ *  the bank is checked for lost updates (unless it is in another process).
+ *  If the ATMs' logs are written somewhere (see LogPipeline), the numbers of
+ *  entries written and dropped are reported too.
+ *
+ *  Usage: java ATMFleet [numberOfATMs] [seconds] [messages|pipelined|sessions]
+ *                       [latency] [real|virtual]
+ */
+
+public class ATMFleet
+{
+    public static void main(String[] args) throws InterruptedException, IOException
+    {
+        int numberOfATMs = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+        int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+        String mode = args.length > 2 ? args[2] : "messages";
+        boolean sessions = mode.equals("sessions");
+        NetworkLatency latency =
+            NetworkLatency.fromSpecification(args.length > 3 ? args[3] : "fixed:2000");
+        boolean virtual = args.length > 4 && args[4].equals("virtual");
+        boolean verifyPIN = ! "false".equals(System.getProperty("atm.verifyPIN", "false"));
+
+        SimulatedBank bank = new SimulatedBank(CARDS, PIN, INITIAL_BALANCE);
+        long initialTotal = totalBalance(bank);
+
+        String bankAddressName = System.getProperty("atm.bankAddress");
+        InetAddress bankAddress = null;
+        BankServer server = null;
+        if (bankAddressName != null && bankAddressName.equals("loopback"))
+        {
+            bankAddress = InetAddress.getLoopbackAddress();
+            server = new BankServer(bank, new InetSocketAddress(bankAddress, 0));
+            server.start();
+            System.setProperty("atm.bankPort", Integer.toString(server.getPort()));
+        }
+        else if (bankAddressName != null)
+            bankAddress = InetAddress.getByName(bankAddressName);
+        if (bankAddress != null)
+            virtual = false;
+
+        ThreadFactory threadFactory = null;
+        try
+        {
+            threadFactory = ATMThreads.factory(System.getProperty("atm.threads", "platform"));
+        }
+        catch(RuntimeException e)
+        {
+            System.err.println(e.getMessage());
+            System.exit(1);
+        }
+
+        Customers [] customers = new Customers[numberOfATMs];
+        Thread [] threads = new Thread[numberOfATMs];
+        for (int i = 0; i < numberOfATMs; i ++)
+        {
+            ATM atm = new ATM(i + 1, "ATM armada " + (i + 1), "Bank Universitas Gunadarma",
+                              bankAddress);
+            atm.setVerifyPIN(verifyPIN);
+            HeadlessDevices devices = new HeadlessDevices(INITIAL_CASH);
+            Simulation simulation = new Simulation(atm, bank, devices);
+            SimulationClock clock = new SimulationClock(virtual);
+            simulation.setNetworkLatency(latency);
+            simulation.setClock(clock);
+            atm.getCashDispenser().setInitialCash(atm.getOperatorPanel().getInitialCash());
+            atm.getNetworkToBank().openConnection();
+            customers[i] = new Customers(atm, devices, clock, mode, i);
+            if (virtual)
+                customers[i].until = seconds * 1000000000L;
+            threads[i] = threadFactory.newThread(customers[i]);
+            threads[i].setName("Customers of ATM " + atm.getID());
+        }
+
+        long start = System.nanoTime();
+        for (int i = 0; i < numberOfATMs; i ++)
+            threads[i].start();
+
+        if (! virtual)
+        {
+            Thread.sleep(seconds * 1000L);
+
+            for (int i = 0; i < numberOfATMs; i ++)
+                customers[i].running = false;
+        }
+
+        long requests = 0;
+        long netAmount = 0;
+        long responseTime = 0;
+        long [] histogram = new long[HISTOGRAM_SIZE];
+        for (int i = 0; i < numberOfATMs; i ++)
+        {
+            threads[i].join();
+            Simulation.getInstance(customers[i].atm).release();
+            requests += customers[i].requests;
+            netAmount += customers[i].netAmount;
+            responseTime += customers[i].responseTime;
+            for (int bucket = 0; bucket < HISTOGRAM_SIZE; bucket ++)
+                histogram[bucket] += customers[i].histogram[bucket];
+        }
+        long elapsed = System.nanoTime() - start;
+        int connections = BankConnectionPool.getAllConnectionsOpen();
+
+        boolean checked = bankAddress == null || server != null;
+        boolean consistent = totalBalance(bank) == initialTotal + netAmount;
+        System.out.println("   ATMs " + (sessions ? "    sessions   sessions/s    session (ms)"
+                                                : "    requests        req/s   response (ms)")
+                           + "    p99 (ms)" + (virtual ? "  simulated/s" : "")
+                           + "  connections   consistent");
+        System.out.println(String.format("%7d %12d %12.1f %15.3f %11.3f%s %12s   %s",
+            numberOfATMs, requests, requests * 1e9 / elapsed,
+            requests == 0 ? 0.0 : responseTime / 1e6 / requests,
+            percentile(histogram, requests, 0.99) / 1e6,
+            virtual ? String.format(" %12.1f", (double) requests / seconds) : "",
+            bankAddress == null ? "-" : Integer.toString(connections),
+            ! checked ? "-" : consistent ? "yes" : "NO - LOST UPDATES"));
+
+        LogPipeline log = LogPipeline.getShared();
+        if (log != null)
+        {
+            log.flush();
+            System.out.println(String.format("log: %d written, %d dropped, %d sampled out",
+                log.getWritten(), log.getDropped(), log.getSampledOut()));
+        }
+    }
+
+    /** Find the histogram bucket for a response time.  Times under 64
+     *  microseconds have a bucket each; above that, each doubling of the
+     *  time is split into 32 buckets, so a bucket is within about 3% of the
+     *  times in it
+     *
+     *  @param nanos the response time, in nanoseconds
+     *  @return index of the bucket
+     */
+    private static int bucket(long nanos)
+    {
+        long micros = Math.max(0, nanos / 1000);
+        int shift = Math.max(0, 63 - Long.numberOfLeadingZeros(micros) - 5);
+        return Math.min(HISTOGRAM_SIZE - 1, shift * 32 + (int) (micros >>> shift));
+    }
+
+    /** Find a percentile of the response times in a histogram
+     *
+     *  @param histogram number of response times in each bucket
+     *  @param count number of response times in all
+     *  @param fraction the percentile wanted, as a fraction - e.g. 0.99
+     *  @return the least time in the bucket holding the percentile, in
+     *          nanoseconds
+     */
+    private static long percentile(long [] histogram, long count, double fraction)
+    {
+        long wanted = (long) Math.ceil(count * fraction);
+        long seen = 0;
+        for (int bucket = 0; bucket < HISTOGRAM_SIZE; bucket ++)
+        {
+            seen += histogram[bucket];
+            if (seen >= wanted && seen > 0)
+            {
+                int shift = Math.max(0, bucket / 32 - 1);
+                return ((long) (bucket - shift * 32) << shift) * 1000;
+            }
+        }
+        return 0;
+    }
+
+    /** Total of the balances of all accounts, in cents
+     *
+     *  @param bank the bank to ask
+     *  @return sum of the total balances
+     */
+    private static long totalBalance(SimulatedBank bank)
+    {
+        Balances balances = new Balances();
+        long total = 0;
+        for (int card = 1; card <= CARDS; card ++)
+            for (int type = 0; type < 2; type ++)
+            {
+                bank.handleMessage(new Message(Message.INQUIRY, new Card(card), PIN, 0,
+                                               type, -1, new Money(0)), balances);
+                total += balances.getTotalCents();
+            }
+        return total;
+    }
+
+    /** The customers of one ATM
+     */
+    private static class Customers implements Runnable
+    {
+        Customers(ATM atm, HeadlessDevices devices, SimulationClock clock,
+                  String mode, int seed)
+        {
+            this.atm = atm;
+            this.devices = devices;
+            this.clock = clock;
+            this.sessions = mode.equals("sessions");
+            this.pipelined = mode.equals("pipelined");
+            this.random = seed;
+        }
+
+        public void run()
+        {
+            if (pipelined)
+            {
+                sendPipelined();
+                return;
+            }
+
+            Balances balances = new Balances();
+            int stalled = 0;
+            while (running && clock.nanoTime() < until && stalled < STALLED_REQUESTS)
+            {
+                long started = clock.nanoTime();
+                if (sessions)
+                    performSession();
+                else
+                    sendMessage(balances);
+                long time = clock.nanoTime() - started;
+                stalled = time == 0 ? stalled + 1 : 0;
+                responseTime += time;
+                histogram[bucket(time)] ++;
+                requests ++;
+
+                // Nothing else reads the recorded output, so don't let it pile up
+                
+                devices.clearOutput();
+            }
+        }
+
+        /** Perform one customer session, choosing at random what the customer
+         *  does
+         */
+        private void performSession()
+        {
+            random = random * 1103515245 + 12345;
+            String card = Integer.toString(1 + ((random >>> 8) % CARDS));
+            int from = 1 + ((random >>> 4) & 1);
+            switch ((random >>> 28 & 3) % 3)
+            {
+                case 0:     // Withdraw the smallest amount offered
+                    devices.addSession(card + " " + PIN + " 1 " + from + " 1 2");
+                    break;
+
+                case 1:     // Transfer to the other account
+                    devices.addSession(card + " " + PIN + " 2 " + from + " " + (3 - from)
+                                       + " " + AMOUNT.getCents() + " 2");
+                    break;
+
+                default:    // Balance inquiry
+                    devices.addSession(card + " " + PIN + " 3 " + from + " 2");
+                    break;
+            }
+
+            new Session(atm).performSession();
+            netAmount -= devices.getCashDispensed().getCents();
+        }
+
+        /** Send one randomly chosen message straight to the bank
+         *
+         *  @param balances (out) balances reported by the bank
+         */
+        private void sendMessage(Balances balances)
+        {
+            Message message = nextMessage();
+            if (atm.getNetworkToBank().sendMessage(message, balances).isSuccess())
+                netAmount += nextAmount;
+        }
+
+        /** Keep sending randomly chosen messages asynchronously, with up to
+         *  WINDOW of them waiting for a response at once, until told to stop
+         */
+        private void sendPipelined()
+        {
+            List<CompletableFuture<Status>> inFlight =
+                new ArrayList<CompletableFuture<Status>>(WINDOW);
+            Balances [] balances = new Balances[WINDOW];
+            long [] sent = new long[WINDOW];
+            long [] amounts = new long[WINDOW];
+            for (int i = 0; i < WINDOW; i ++)
+            {
+                inFlight.add(null);
+                balances[i] = new Balances();
+            }
+
+            int stalled = 0;
+            int next = 0;
+            while (running && clock.nanoTime() < until && stalled < STALLED_REQUESTS)
+            {
+                if (inFlight.get(next) != null)
+                {
+                    long time = receive(inFlight.get(next), sent[next], amounts[next]);
+                    stalled = time == 0 ? stalled + 1 : 0;
+                }
+
+                Message message = nextMessage();
+                sent[next] = clock.nanoTime();
+                amounts[next] = nextAmount;
+                inFlight.set(next, atm.getNetworkToBank().sendMessageAsync(message, balances[next]));
+                next = (next + 1) % WINDOW;
+            }
+
+            for (int i = 0; i < WINDOW; i ++)
+                if (inFlight.get(i) != null)
+                    receive(inFlight.get(i), sent[i], amounts[i]);
+        }
+
+        /** Wait for the response to a message sent asynchronously, and count it
+         *
+         *  @param response the response
+         *  @param sent time the message was sent
+         *  @param amount change the message makes to the bank's total balance
+         *         if it succeeds
+         *  @return the response time
+         */
+        private long receive(CompletableFuture<Status> response, long sent, long amount)
+        {
+            if (response.join().isSuccess())
+                netAmount += amount;
+            long time = clock.nanoTime() - sent;
+            responseTime += time;
+            histogram[bucket(time)] ++;
+            requests ++;
+            return time;
+        }
+
+        /** Create a randomly chosen message, and set nextAmount to the change
+         *  it makes to the bank's total balance if it succeeds
+         *
+         *  @return the message
+         */
+        private Message nextMessage()
+        {
+            random = random * 1103515245 + 12345;
+            Card card = new Card(1 + ((random >>> 8) % CARDS));
+            int type = (random >>> 4) & 1;
+            long serialNumber = SerialNumbers.next(atm.getID());
+            Message message;
+            nextAmount = 0;
+            switch (random >>> 28 & 3)
+            {
+                case 0:
+                    message = new Message(Message.WITHDRAWAL, card, PIN,
+                                          serialNumber, type, -1, AMOUNT);
+                    nextAmount = - AMOUNT.getCents();
+                    break;
+
+                case 1:
+                    message = new Message(Message.COMPLETE_DEPOSIT, card, PIN,
+                                          serialNumber, -1, type, AMOUNT);
+                    nextAmount = AMOUNT.getCents();
+                    break;
+
+                case 2:
+                    message = new Message(Message.TRANSFER, card, PIN,
+                                          serialNumber, type, 1 - type, AMOUNT);
+                    break;
+
+                default:
+                    message = new Message(Message.INQUIRY, card, PIN,
+                                          serialNumber, type, -1, new Money(0));
+                    break;
+            }
+            return message;
+        }
+
+        private ATM atm;
+        private HeadlessDevices devices;
+        private SimulationClock clock;
+        private boolean sessions;
+        private boolean pipelined;
+        private int random;
+        private long nextAmount;
+        volatile boolean running = true;
+        long until = Long.MAX_VALUE;
+        long requests;
+        long netAmount;
+        long responseTime;
+        final long [] histogram = new long[HISTOGRAM_SIZE];
+    }
+
+    /** Number of cards in the fleet's bank
+     */
+    private static final int CARDS = 10000;
+
+    /** PIN of every card
+     */
+    private static final int PIN = 123456;
+
+    /** Starting balance of every account
+     */
+    private static final Money INITIAL_BALANCE = new Money(1000000);
+
+    /** Cash in each ATM's dispenser at startup
+     */
+    private static final Money INITIAL_CASH = new Money(2000000000);
+
+    /** Requests in a row after which an ATM whose virtual clock has not moved
+     *  gives up
+     */
+    private static final int STALLED_REQUESTS = 1000000;
+
+    /** Most messages each ATM has waiting for a response at once when
+     *  pipelined
+     */
+    private static final int WINDOW = 16;
+
+    /** Number of buckets in a histogram of response times - enough for
+     *  times up to 2^40 microseconds
+     */
+    private static final int HISTOGRAM_SIZE = 36 * 32;
+
+    /** Amount of every withdrawal, transfer and deposit
+     */
+    private static final Money AMOUNT = new Money(50000);
+}
@@ -7,21 +7,94 @@
  
 import java.awt.*;
 import java.awt.event.*;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import atm.ATM;
+import atm.Session;
+import banking.Money;
+import simulation.ATMThreads;
+import simulation.BankJournal;
+import simulation.HeadlessDevices;
+import simulation.NetworkLatency;
+import simulation.SimulatedBank;
 import simulation.Simulation;
+import simulation.SimulationClock;
 
 /** Main program class for the application version of the ATM simulation.
  *  Create an instance of the ATM, put it in a frame, and then let the GUI
  *  do the work.
+ *
+ *  With -Datm.devices=headless, no GUI is shown; instead the customer
+ *  sessions in the script named by -Datm.script (or a short demonstration
+ *  script) are performed, and their output is written to standard output.
+ *  The headless ATM runs on a virtual clock unless -Datm.clock=real is given
+ *  or it talks to a real bank server.  A script answers every question at
+ *  once, leaving the check of the PIN a Session sends as soon as it is entered
+ *  nothing to overlap with, so the headless ATM leaves it out unless
+ *  -Datm.verifyPIN=true is given; -Datm.verifyPIN=false leaves it out of the
+ *  GUI's sessions too.
+ *
+ *  -Datm.latency sets the model of the time messages take to reach the bank,
+ *  in the form accepted by NetworkLatency.fromSpecification() - e.g. "zero",
+ *  "fixed:2000" (the default) or "lognormal:200,0.8".
+ *
+ *  -Datm.threads=virtual runs the ATM on a virtual thread instead of a
+ *  platform thread (see ATMThreads).
+ *
+ *  -Datm.bankAddress=host makes the ATM talk to a bank server (see BankMain)
+ *  on that host over TCP, instead of to a bank simulated in this process.
  */
  
 public class ATMMain
 {
     public static void main(String[] args)
     {
-        ATM theATM = new ATM(42, "Universitas Gunadarma", "Bank Universiitas Gunadarma",
-                             null /* We're not really talking to a bank! */);
-        Simulation theSimulation = new Simulation(theATM);
+        String bankAddress = System.getProperty("atm.bankAddress");
+        ATM theATM;
+        try
+        {
+            theATM = new ATM(42, "Universitas Gunadarma", "Bank Universiitas Gunadarma",
+                             bankAddress == null ? null /* We're not really talking to a bank! */
+                                                 : InetAddress.getByName(bankAddress));
+        }
+        catch(UnknownHostException e)
+        {
+            System.err.println("Bank " + bankAddress + " tidak ditemukan");
+            return;
+        }
+        
+        // A bank server holds the accounts itself, so only a bank simulated
+        // here needs restoring
+        
+        SimulatedBank bank = bankAddress == null ? openBank() : new SimulatedBank();
+        if (bank == null)
+            System.exit(1);
+        
+        if (System.getProperty("atm.devices", "gui").equals("headless"))
+        {
+            theATM.setVerifyPIN(! "false".equals(System.getProperty("atm.verifyPIN", "false")));
+            try
+            {
+                runHeadless(theATM, bank, System.getProperty("atm.script"));
+            }
+            catch(IOException e)
+            {
+                System.err.println("Skrip tidak dapat dibaca: " + e);
+            }
+            return;
+        }
+        
+        theATM.setVerifyPIN(! "false".equals(System.getProperty("atm.verifyPIN", "true")));
+        Simulation theSimulation = new Simulation(theATM, bank);
+        if (! setNetworkLatency(theSimulation))
+            return;
         
         // Create the frame that will display the simulated ATM, and add the
         // GUI simulation to it
@@ -52,7 +125,16 @@ public class ATMMain
         
         // Start the Thread that runs the ATM
         
-        new Thread(theATM).start();
+        try
+        {
+            ATMThreads.factory(System.getProperty("atm.threads", "platform"))
+                      .newThread(theATM).start();
+        }
+        catch(RuntimeException e)
+        {
+            System.err.println(e.getMessage());
+            System.exit(1);
+        }
         
         // Pack the GUI frame, show it, and off we go!
                 
@@ -60,5 +142,192 @@ public class ATMMain
         mainFrame.pack();
         mainFrame.setVisible(true);
     }
+    
+    /** Run the ATM without a display, performing the customer sessions in a
+     *  script and writing everything shown on the display or printed on a
+     *  receipt to standard output
+     *
+     *  @param theATM the ATM
+     *  @param bank the bank it talks to
+     *  @param scriptFile file holding one session per line, written as for
+     *         HeadlessDevices.addSession() - null for the demonstration script
+     *  @exception IOException if the script cannot be read
+     */
+    private static void runHeadless(ATM theATM, SimulatedBank bank, String scriptFile)
+        throws IOException
+    {
+        HeadlessDevices devices = new HeadlessDevices(HEADLESS_INITIAL_CASH);
+        Simulation theSimulation = new Simulation(theATM, bank, devices);
+        if (! setNetworkLatency(theSimulation))
+        {
+            theSimulation.release();
+            return;
+        }
+        if (System.getProperty("atm.clock", "virtual").equals("real")
+                || System.getProperty("atm.bankAddress") != null)
+            theSimulation.setClock(new SimulationClock(false));
+        SimulationClock clock = theSimulation.getClock();
+        
+        List<String> script = Arrays.asList(DEMO_SCRIPT);
+        if (scriptFile != null)
+        {
+            script = new ArrayList<String>();
+            BufferedReader reader = new BufferedReader(new FileReader(scriptFile));
+            try
+            {
+                String line;
+                while ((line = reader.readLine()) != null)
+                    if (line.trim().length() > 0)
+                        script.add(line);
+            }
+            finally
+            {
+                reader.close();
+            }
+        }
+        
+        // Start up as the operator would
+        
+        theATM.getCashDispenser().setInitialCash(theATM.getOperatorPanel().getInitialCash());
+        theATM.getNetworkToBank().openConnection();
+        
+        long sessionTime = 0;
+        long simulatedTime = 0;
+        for (int i = 0; i < script.size(); i ++)
+        {
+            devices.addSession(script.get(i));
+            
+            long start = System.nanoTime();
+            long simulatedStart = clock.nanoTime();
+            new Session(theATM).performSession();
+            sessionTime += System.nanoTime() - start;
+            simulatedTime += clock.nanoTime() - simulatedStart;
+            
+            System.out.println("=== " + script.get(i));
+            List<String> lines = devices.getDisplayLines();
+            for (int j = 0; j < lines.size(); j ++)
+                if (lines.get(j).length() > 0)
+                    System.out.println("  " + lines.get(j).replace("\n", "\n  "));
+            lines = devices.getReceiptLines();
+            for (int j = 0; j < lines.size(); j ++)
+                System.out.println("  | " + lines.get(j).replace("\n", "\n  | "));
+            devices.clearOutput();
+        }
+        theSimulation.release();
+        
+        System.out.println(String.format("%d sesi dalam %.3f ms (%.3f detik waktu simulasi)", 
+                                         script.size(), sessionTime / 1e6, simulatedTime / 1e9));
+    }
+    
+    /** Give a simulation the network latency model named by -Datm.latency,
+     *  if there is one
+     *
+     *  @param theSimulation the simulation
+     *  @return false if the model named cannot be used
+     */
+    private static boolean setNetworkLatency(Simulation theSimulation)
+    {
+        String latency = System.getProperty("atm.latency");
+        if (latency == null)
+            return true;
+        
+        try
+        {
+            theSimulation.setNetworkLatency(NetworkLatency.fromSpecification(latency));
+            return true;
+        }
+        catch(IOException e)
+        {
+            System.err.println("Trace " + latency + " tidak dapat dibaca: " + e);
+        }
+        catch(IllegalArgumentException e)
+        {
+            System.err.println(e.getMessage());
+        }
+        return false;
+    }
+    
+    /** Create the simulated bank, restoring its state from earlier runs if
+     *  asked to by system properties:
+     *
+     *  -Datm.snapshot=file - start from this snapshot of the bank (if it
+     *      exists), and write a new one every -Datm.snapshotInterval seconds
+     *      (default 60)
+     *  -Datm.journal=file - apply the changes recorded in this journal since
+     *      the snapshot, then record every new change the bank makes in it.
+     *      -Datm.durability=sync|group|async chooses how eagerly the journal
+     *      is forced to disk
+     *
+     *  If the snapshot or the journal asked for cannot be used, the bank is
+     *  not started at all, rather than started empty or without its journal.
+     *
+     *  @return the bank - null if its state cannot be restored, after saying
+     *          why
+     */
+    static SimulatedBank openBank()
+    {
+        String snapshotFile = System.getProperty("atm.snapshot");
+        String journalFile = System.getProperty("atm.journal");
+        
+        SimulatedBank bank = new SimulatedBank();
+        if (snapshotFile != null && new File(snapshotFile).exists())
+        {
+            try
+            {
+                bank = new SimulatedBank(new File(snapshotFile));
+            }
+            catch(IOException e)
+            {
+                System.err.println("Snapshot " + snapshotFile + " tidak dapat dibaca: " + e);
+                return null;
+            }
+        }
+        
+        if (journalFile != null)
+        {
+            try
+            {
+                int durability = BankJournal.durabilityFromName(
+                    System.getProperty("atm.durability", "group"));
+                bank.recover(new BankJournal(new File(journalFile), durability,
+                                             bank.getSnapshotPosition()));
+            }
+            catch(IOException e)
+            {
+                System.err.println("Journal " + journalFile + " tidak dapat dibuka: " + e);
+                return null;
+            }
+            catch(IllegalArgumentException e)
+            {
+                System.err.println(e.getMessage());
+                return null;
+            }
+        }
+        
+        if (snapshotFile != null)
+            bank.startSnapshots(new File(snapshotFile), 
+                1000L * Integer.parseInt(System.getProperty("atm.snapshotInterval", "60")));
+        
+        return bank;
+    }
+    
+    /** Cash in the dispenser of a headless ATM at startup
+     */
+    private static final Money HEADLESS_INITIAL_CASH = new Money(10000000);
+    
+    /** Sessions performed by a headless ATM when no script is named: an
+     *  inquiry, an inquiry about all accounts followed by one about an
+     *  account it reported, a withdrawal, a transfer, a wrong PIN followed by
+     *  CANCEL, and a card the bank does not know
+     */
+    private static final String [] DEMO_SCRIPT =
+    {
+        "1 422442 3 1 2",
+        "1 422442 4 1 3 2 2",
+        "2 123456 1 1 1 2",
+        "1 422442 2 2 1 1000000 2",
+        "2 111111 3 1 -",
+        "9 123456 3 1 2"
+    };
 }
     
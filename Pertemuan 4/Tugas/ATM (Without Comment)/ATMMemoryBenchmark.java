@@ -0,0 +1,179 @@
+/*
+ * ATM Example system - file ATMMemoryBenchmark.java
+ *
+ */
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.List;
+import java.util.concurrent.ThreadFactory;
+
+import atm.ATM;
+import banking.Money;
+import simulation.ATMThreads;
+import simulation.HeadlessDevices;
+import simulation.SimulatedBank;
+import simulation.Simulation;
+
+/** Benchmark of the memory each simulated ATM costs when every ATM has a
+ *  thread of its own running its run() loop, as in the real application.
+ *
+ *  The given number of headless ATMs are created, each has its thread started
+ *  (platform or virtual - see ATMThreads) and is switched on, and once all are
+ *  idle, waiting for a card, the heap in use and the resident size of the
+ *  process are measured again.  The increase divided by the number of ATMs is
+ *  the cost of each one.  Then a card is inserted in every ATM at once and the
+ *  time until all of them have finished a balance inquiry session is reported.
+ *
+ *  If the operating system will not create another thread, the ATMs created
+ *  so far are measured.
+ *
+ *  Usage: java ATMMemoryBenchmark [numberOfATMs] [platform|virtual]
+ */
+
+public class ATMMemoryBenchmark
+{
+    public static void main(String[] args) throws InterruptedException
+    {
+        int numberOfATMs = args.length > 0 ? Integer.parseInt(args[0]) : 10000;
+        String mode = args.length > 1 ? args[1]
+                      : ATMThreads.virtualThreadsSupported() ? "virtual" : "platform";
+        ThreadFactory threads;
+        try
+        {
+            threads = ATMThreads.factory(mode);
+        }
+        catch(UnsupportedOperationException e)
+        {
+            System.err.println(e.getMessage());
+            return;
+        }
+
+        SimulatedBank bank = new SimulatedBank(CARDS, PIN, INITIAL_BALANCE);
+        long heapBefore = heapUsed();
+        long residentBefore = residentSize();
+
+        ATM [] atms = new ATM[numberOfATMs];
+        HeadlessDevices [] devices = new HeadlessDevices[numberOfATMs];
+        int started = 0;
+        try
+        {
+            for ( ; started < numberOfATMs; started ++)
+            {
+                atms[started] = new ATM(started + 1, "ATM armada " + (started + 1),
+                                        "Bank Universitas Gunadarma",
+                                        null /* We're not really talking to a bank! */);
+                devices[started] = new HeadlessDevices(INITIAL_CASH);
+                new Simulation(atms[started], bank, devices[started]);
+                threads.newThread(atms[started]).start();
+                atms[started].switchOn();
+            }
+        }
+        catch(OutOfMemoryError e)
+        {
+            System.out.println("Thread untuk ATM " + (started + 1) + " tidak dapat dibuat: "
+                               + e.getMessage());
+        }
+
+        for (int i = 0; i < started; i ++)
+            while (! idle(devices[i]))
+                Thread.sleep(1);
+
+        long heapPerATM = (heapUsed() - heapBefore) / started;
+        long residentPerATM = (residentSize() - residentBefore) / started;
+
+        long start = System.nanoTime();
+        for (int i = 0; i < started; i ++)
+        {
+            devices[i].clearOutput();
+            devices[i].addSession((1 + i % CARDS) + " " + PIN + " 3 1 2");
+            atms[i].cardInserted();
+        }
+        for (int i = 0; i < started; i ++)
+            while (devices[i].getCardsEjected() == 0)
+                Thread.sleep(1);
+        long elapsed = System.nanoTime() - start;
+
+        System.out.println("threads        ATMs   heap/ATM (B)   resident/ATM (B)   sessions/s");
+        System.out.println(String.format("%-8s %10d %14d %18s %12.1f",
+            mode, started, heapPerATM,
+            residentBefore < 0 ? "-" : Long.toString(residentPerATM),
+            started * 1e9 / elapsed));
+
+        // The ATMs' run() loops never end, so stop them all here
+
+        System.exit(0);
+    }
+
+    /** See whether an ATM has started up and is waiting for a card
+     *
+     *  @param devices the ATM's devices
+     *  @return true if the last thing displayed is the request for a card
+     */
+    private static boolean idle(HeadlessDevices devices)
+    {
+        List<String> lines = devices.getDisplayLines();
+        return ! lines.isEmpty() && lines.get(lines.size() - 1).equals(IDLE_PROMPT);
+    }
+
+    /** Heap in use after garbage collection
+     *
+     *  @return bytes of heap in use
+     */
+    private static long heapUsed()
+    {
+        for (int i = 0; i < 3; i ++)
+            System.gc();
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    }
+
+    /** Resident size of the process, which includes the stacks of platform
+     *  threads as well as the heap
+     *
+     *  @return bytes of memory resident - -1 if it cannot be found out
+     */
+    private static long residentSize()
+    {
+        try
+        {
+            BufferedReader reader = new BufferedReader(new FileReader("/proc/self/status"));
+            try
+            {
+                String line;
+                while ((line = reader.readLine()) != null)
+                    if (line.startsWith("VmRSS:"))
+                        return 1024 * Long.parseLong(
+                            line.substring(6).replace("kB", "").trim());
+            }
+            finally
+            {
+                reader.close();
+            }
+        }
+        catch(IOException e)
+        { }
+        return -1;
+    }
+
+    /** Number of cards in the bank
+     */
+    private static final int CARDS = 10000;
+
+    /** PIN of every card
+     */
+    private static final int PIN = 123456;
+
+    /** Starting balance of every account
+     */
+    private static final Money INITIAL_BALANCE = new Money(1000000);
+
+    /** Cash in each ATM's dispenser at startup
+     */
+    private static final Money INITIAL_CASH = new Money(10000000);
+
+    /** What an idle ATM displays
+     */
+    private static final String IDLE_PROMPT = "Harap masukan kartu anda!";
+}
@@ -0,0 +1,390 @@
+/*
+ * ATM Example system - file BankBenchmark.java
+ *
+ */
+
+import banking.Balances;
+import banking.Card;
+import banking.Message;
+import banking.Money;
+import simulation.BankJournal;
+import simulation.SimulatedBank;
+
+import java.io.File;
+import java.io.IOException;
+
+/** Benchmarks for the simulated bank.
+ *
+ *  throughput - drives one SimulatedBank from 1, 2, 4 ... N threads with a mix
+ *  of withdrawals, transfers, deposits and inquiries on randomly chosen cards,
+ *  reports requests per second for each thread count, and checks afterwards
+ *  that no update was lost.
+ *
+ *  accounts - builds banks of increasing size and reports the heap they take
+ *  and the average latency of an inquiry on a randomly chosen account.
+ *
+ *  journal - runs the throughput workload on a bank with a journal, once for
+ *  each durability mode, and reports requests per second and disk flushes.
+ *
+ *  restart - runs the workload on a large journalled bank for increasing
+ *  lengths of time, writing a snapshot near the end, then times restarting the
+ *  bank by replaying the whole journal and by loading the snapshot and
+ *  replaying only the tail, and checks that both give the same balances as the
+ *  bank had when it stopped.
+ *
+ *  Usage: java BankBenchmark throughput [maxThreads] [secondsPerRun]
+ *         java BankBenchmark accounts [numberOfAccounts ...]
+ *         java BankBenchmark journal [threads] [secondsPerRun]
+ *         java BankBenchmark restart [numberOfAccounts]
+ */
+
+public class BankBenchmark
+{
+    public static void main(String[] args) throws InterruptedException, IOException
+    {
+        String mode = args.length > 0 ? args[0] : "throughput";
+
+        if (mode.equals("throughput"))
+        {
+            int maxThreads = args.length > 1 ? Integer.parseInt(args[1])
+                                             : Runtime.getRuntime().availableProcessors();
+            int seconds = args.length > 2 ? Integer.parseInt(args[2]) : 2;
+
+            System.out.println("threads        req/s   consistent");
+            for (int threads = 1; threads <= maxThreads; threads *= 2)
+                System.out.println(throughput(new SimulatedBank(CARDS, PIN, INITIAL_BALANCE),
+                                              threads, seconds));
+        }
+        else if (mode.equals("journal"))
+        {
+            int threads = args.length > 1 ? Integer.parseInt(args[1]) : 16;
+            int seconds = args.length > 2 ? Integer.parseInt(args[2]) : 2;
+            String [] durabilities = { "sync", "group", "async" };
+
+            System.out.println("mode   threads        req/s   consistent   flushes");
+            for (int i = 0; i < durabilities.length; i ++)
+            {
+                File file = File.createTempFile("bank", ".journal");
+                file.deleteOnExit();
+                BankJournal journal = new BankJournal(file,
+                    BankJournal.durabilityFromName(durabilities[i]));
+                SimulatedBank bank = new SimulatedBank(CARDS, PIN, INITIAL_BALANCE);
+                bank.setJournal(journal);
+
+                String result = throughput(bank, threads, seconds);
+                journal.close();
+                System.out.println(String.format("%-6s%s %9d",
+                    durabilities[i], result, journal.getFlushCount()));
+                file.delete();
+            }
+        }
+        else if (mode.equals("restart"))
+        {
+            int numberOfAccounts = args.length > 1 ? Integer.parseInt(args[1]) : 1000000;
+            System.out.println("history (s)  journal records  tail records   snapshot (ms)"
+                               + "   full replay (ms)   snapshot + tail (ms)   consistent");
+            for (int seconds = 1; seconds <= 4; seconds *= 2)
+                restart(numberOfAccounts, seconds);
+        }
+        else if (mode.equals("accounts"))
+        {
+            System.out.println("  accounts    heap (MB)   bytes/account   inquiry (ns)");
+            if (args.length > 1)
+                for (int i = 1; i < args.length; i ++)
+                    accounts(Integer.parseInt(args[i]));
+            else
+            {
+                accounts(1000000);
+                accounts(10000000);
+            }
+        }
+        else
+            System.out.println("Unknown mode " + mode);
+    }
+
+    /** Run the throughput workload once
+     *
+     *  @param bank a bank created with CARDS cards of INITIAL_BALANCE
+     *  @param threads number of threads sending requests
+     *  @param seconds how long to run
+     *  @return line reporting threads, requests per second and consistency
+     */
+    private static String throughput(SimulatedBank bank, int threads, int seconds)
+        throws InterruptedException
+    {
+        long initialTotal = totalBalance(bank, CARDS);
+
+        Worker [] workers = new Worker[threads];
+        for (int i = 0; i < threads; i ++)
+            workers[i] = new Worker(bank, CARDS, i);
+        for (int i = 0; i < threads; i ++)
+            workers[i].start();
+
+        Thread.sleep(seconds * 1000L);
+
+        long requests = 0;
+        long netCents = 0;
+        for (int i = 0; i < threads; i ++)
+        {
+            workers[i].finish();
+            requests += workers[i].requests;
+            netCents += workers[i].netCents;
+        }
+
+        boolean consistent = totalBalance(bank, CARDS) == initialTotal + netCents;
+        return String.format("%7d %12d   %-10s",
+            threads, requests / seconds, consistent ? "yes" : "NO - LOST UPDATES");
+    }
+
+    /** Measure restart time of a bank of a given size
+     *
+     *  @param numberOfAccounts number of accounts in the bank
+     *  @param seconds how long to run the workload before the snapshot
+     */
+    private static void restart(int numberOfAccounts, int seconds)
+        throws InterruptedException, IOException
+    {
+        int cards = numberOfAccounts / 2;
+        File journalFile = File.createTempFile("bank", ".journal");
+        File snapshotFile = File.createTempFile("bank", ".snapshot");
+        journalFile.deleteOnExit();
+        snapshotFile.deleteOnExit();
+
+        // Build up some history, with a snapshot taken while requests are
+        // still being handled
+
+        BankJournal journal = new BankJournal(journalFile, BankJournal.ASYNC);
+        SimulatedBank bank = new SimulatedBank(cards, PIN, INITIAL_BALANCE);
+        bank.setJournal(journal);
+
+        Worker [] workers = new Worker[2];
+        for (int i = 0; i < workers.length; i ++)
+        {
+            workers[i] = new Worker(bank, cards, i);
+            workers[i].start();
+        }
+        Thread.sleep(seconds * 1000L);
+        long start = System.nanoTime();
+        bank.writeSnapshot(snapshotFile);
+        long snapshotTime = System.nanoTime() - start;
+        Thread.sleep(TAIL_MILLIS);
+        for (int i = 0; i < workers.length; i ++)
+            workers[i].finish();
+        journal.close();
+        long expected = fingerprint(bank, cards);
+
+        // Restart by replaying everything
+
+        start = System.nanoTime();
+        SimulatedBank replayed = new SimulatedBank(cards, PIN, INITIAL_BALANCE);
+        journal = new BankJournal(journalFile, BankJournal.ASYNC);
+        int history = replayed.recover(journal);
+        long replayTime = System.nanoTime() - start;
+        journal.close();
+        boolean consistent = fingerprint(replayed, cards) == expected;
+        replayed = null;
+
+        // Restart from the snapshot
+
+        start = System.nanoTime();
+        SimulatedBank restored = new SimulatedBank(snapshotFile);
+        journal = new BankJournal(journalFile, BankJournal.ASYNC,
+                                  restored.getSnapshotPosition());
+        int tail = restored.recover(journal);
+        long restoreTime = System.nanoTime() - start;
+        journal.close();
+        consistent &= fingerprint(restored, cards) == expected;
+
+        System.out.println(String.format("%11d %16d %13d %15.1f %18.1f %22.1f   %s",
+            seconds, history, tail, snapshotTime / 1e6,
+            replayTime / 1e6, restoreTime / 1e6, consistent ? "yes" : "NO"));
+
+        journalFile.delete();
+        snapshotFile.delete();
+        new File(snapshotFile.getPath() + ".tmp").delete();
+    }
+
+    /** Measure the footprint and inquiry latency of a bank of a given size
+     *
+     *  @param numberOfAccounts number of accounts in the bank
+     */
+    private static void accounts(int numberOfAccounts)
+    {
+        int cards = numberOfAccounts / 2;
+
+        long before = usedHeap();
+        SimulatedBank bank = new SimulatedBank(cards, PIN, INITIAL_BALANCE);
+        long heap = usedHeap() - before;
+
+        Balances balances = new Balances();
+        int random = 1;
+        long sink = 0;
+        long start = 0;
+        for (int i = - INQUIRIES; i < INQUIRIES; i ++)
+        {
+            if (i == 0)
+                start = System.nanoTime();
+            random = random * 1103515245 + 12345;
+            int card = 1 + ((random >>> 1) % cards);
+            bank.handleMessage(new Message(Message.INQUIRY, new Card(card), PIN, i,
+                                           random & 1, -1, NO_AMOUNT), balances);
+            sink += balances.getTotalCents();
+        }
+        long elapsed = System.nanoTime() - start;
+
+        System.out.println(String.format("%10d %12.1f %15.1f %14.1f%s",
+            numberOfAccounts, heap / 1048576.0, (double) heap / numberOfAccounts,
+            (double) elapsed / INQUIRIES, sink == 0 ? " ?" : ""));
+    }
+
+    /** Heap in use after a full collection
+     *
+     *  @return bytes of heap in use
+     */
+    private static long usedHeap()
+    {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i ++)
+            System.gc();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    /** Total of the balances of all accounts, in cents
+     *
+     *  @param bank the bank to ask
+     *  @param cards number of cards in the bank
+     *  @return sum of the total balances
+     */
+    private static long totalBalance(SimulatedBank bank, int cards)
+    {
+        Balances balances = new Balances();
+        long total = 0;
+        for (int card = 1; card <= cards; card ++)
+            for (int type = 0; type < 2; type ++)
+            {
+                bank.handleMessage(new Message(Message.INQUIRY, new Card(card), PIN, 0,
+                                               type, -1, NO_AMOUNT), balances);
+                total += balances.getTotalCents();
+            }
+        return total;
+    }
+
+    /** Value that depends on both balances of every account, so two banks
+     *  with the same value almost certainly hold the same balances
+     *
+     *  @param bank the bank to ask
+     *  @param cards number of cards in the bank
+     *  @return fingerprint of the balances
+     */
+    private static long fingerprint(SimulatedBank bank, int cards)
+    {
+        Balances balances = new Balances();
+        long fingerprint = 0;
+        for (int card = 1; card <= cards; card ++)
+            for (int type = 0; type < 2; type ++)
+            {
+                bank.handleMessage(new Message(Message.INQUIRY, new Card(card), PIN, 0,
+                                               type, -1, NO_AMOUNT), balances);
+                fingerprint = fingerprint * 31 + balances.getTotalCents();
+                fingerprint = fingerprint * 31 + balances.getAvailableCents();
+            }
+        return fingerprint;
+    }
+
+    /** One thread of the throughput workload
+     */
+    private static class Worker extends Thread
+    {
+        Worker(SimulatedBank bank, int cards, int seed)
+        {
+            this.bank = bank;
+            this.cards = cards;
+            this.random = seed;
+        }
+
+        /** Stop the thread and wait for it to finish
+         */
+        void finish() throws InterruptedException
+        {
+            running = false;
+            join();
+        }
+
+        public void run()
+        {
+            Balances balances = new Balances();
+            while (running)
+            {
+                random = random * 1103515245 + 12345;
+                Card card = new Card(1 + ((random >>> 8) % cards));
+                int type = (random >>> 4) & 1;
+                Message message;
+                switch (random >>> 28 & 3)
+                {
+                    case 0:
+                        message = new Message(Message.WITHDRAWAL, card, PIN,
+                                              random, type, -1, ONE_CENT);
+                        if (bank.handleMessage(message, balances).isSuccess())
+                            netCents --;
+                        break;
+
+                    case 1:
+                        message = new Message(Message.COMPLETE_DEPOSIT, card, PIN,
+                                              random, -1, type, ONE_CENT);
+                        if (bank.handleMessage(message, balances).isSuccess())
+                            netCents ++;
+                        break;
+
+                    case 2:
+                        message = new Message(Message.TRANSFER, card, PIN,
+                                              random, type, 1 - type, ONE_CENT);
+                        bank.handleMessage(message, balances);
+                        break;
+
+                    default:
+                        message = new Message(Message.INQUIRY, card, PIN,
+                                              random, type, -1, NO_AMOUNT);
+                        bank.handleMessage(message, balances);
+                        break;
+                }
+                requests ++;
+            }
+        }
+
+        private SimulatedBank bank;
+        private int cards;
+        private int random;
+        private volatile boolean running = true;
+        long requests;
+        long netCents;
+    }
+
+    /** Number of cards in the throughput workload's bank
+     */
+    private static final int CARDS = 1024;
+
+    /** PIN of every card
+     */
+    private static final int PIN = 123456;
+
+    /** Starting balance of every account
+     */
+    private static final Money INITIAL_BALANCE = new Money(1000000);
+
+    /** How long the restart workload keeps running after its snapshot, in
+     *  milliseconds
+     */
+    private static final long TAIL_MILLIS = 100;
+
+    /** Number of inquiries timed for each bank size (after as many for warm-up)
+     */
+    private static final int INQUIRIES = 5000000;
+
+    /** Amount used for every withdrawal, transfer and deposit
+     */
+    private static final Money ONE_CENT = new Money(0, 1);
+
+    /** Amount sent with inquiries
+     */
+    private static final Money NO_AMOUNT = new Money(0);
+}
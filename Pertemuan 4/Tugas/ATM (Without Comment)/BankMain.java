@@ -0,0 +1,52 @@
+/*
+ * ATM Example system - file BankMain.java
+ *
+ */
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+
+import atm.physical.NetworkToBank;
+import banking.Money;
+import simulation.BankServer;
+import simulation.SimulatedBank;
+
+/** Main program class for a standalone bank server.  Serves a simulated bank
+ *  to ATMs (run with -Datm.bankAddress) over TCP on the loopback interface,
+ *  until the process is killed.
+ *
+ *  The bank is the demonstration bank, restored from a snapshot and journal
+ *  if asked to by the same system properties as ATMMain - or, if a number of
+ *  cards is given, a bank with that many cards, as used by ATMFleet: card c
+ *  has PIN 123456 and accounts of type 0 and 1 holding Rp 1.000.000 each.
+ *
+ *  Usage: java BankMain [port] [numberOfCards]
+ */
+
+public class BankMain
+{
+    public static void main(String[] args) throws IOException, InterruptedException
+    {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : NetworkToBank.BANK_PORT;
+        SimulatedBank bank = args.length > 1
+            ? new SimulatedBank(Integer.parseInt(args[1]), FLEET_PIN, FLEET_BALANCE)
+            : ATMMain.openBank();
+        if (bank == null)
+            System.exit(1);
+
+        BankServer server = new BankServer(bank, 
+            new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+        System.out.println("Bank siap di port " + server.getPort());
+        server.run();
+    }
+
+    /** PIN of every card in a bank created with a number of cards
+     */
+    private static final int FLEET_PIN = 123456;
+
+    /** Starting balance of every account in a bank created with a number of
+     *  cards
+     */
+    private static final Money FLEET_BALANCE = new Money(1000000);
+}
@@ -0,0 +1,523 @@
+/*
+ * ATM Example system - file BankMessageBenchmark.java
+ *
+ */
+
+import java.lang.management.ManagementFactory;
+
+import banking.Balances;
+import banking.Card;
+import banking.Message;
+import banking.Money;
+import banking.Status;
+import simulation.SimulatedBank;
+
+/** Microbenchmarks for SimulatedBank.handleMessage(), one for each message code
+ *  and each way the bank can answer it - success, limit exceeded, insufficient
+ *  balance, invalid account, invalid PIN.  Each case is run for
+ *  WARMUP_ITERATIONS iterations that are thrown away (so the JIT compiler has
+ *  settled), then for MEASURED_ITERATIONS iterations whose time and heap
+ *  allocation are reported as nanoseconds and bytes per message.
+ *
+ *  All the messages a case sends are created before timing starts, so the
+ *  bytes per message are what the bank itself allocates.  Most cases call
+ *  handleMessage() without an ATM id, so the bank handles every message
+ *  afresh; the "-new" and "-repeated" cases send from ATMs, through the
+ *  bank's cache of responses - with a new ATM id every time round the
+ *  messages, so each is new, or always the same one, so all but the first
+ *  are answered from the cache.
+ *
+ *  verify - checks that a message sent again by the same ATM is answered
+ *  with its first response and changes nothing, while one from another ATM,
+ *  with other contents, sent after its response has aged out of the cache,
+ *  or pushed out by others, or sent by many threads at once, is handled as
+ *  it should be; and that a session token is issued once the PIN has been
+ *  checked, then authorizes messages about its card from its ATM, and no
+ *  others, until it runs out.  Run before the benchmarks too; a failure is
+ *  reported and ends the program with exit status 1.
+ *
+ *  uncontended - one thread, spreading its messages over CARDS cards.
+ *  contended - the given number of threads share one bank and send all their
+ *  messages on the same CONTENDED_CARDS cards, so they fight over the same
+ *  locks.  Time is wall clock time divided by the total number of messages.
+ *
+ *  Usage: java BankMessageBenchmark [verify | uncontended | contended [threads]] [case ...]
+ */
+
+public class BankMessageBenchmark
+{
+    public static void main(String[] args) throws InterruptedException
+    {
+        int failures = verify();
+        System.out.println(failures == 0 ? "Repeated messages: ok"
+                                         : "Repeated messages: " + failures + " FAILURES");
+        if (failures > 0)
+            System.exit(1);
+
+        int arg = 0;
+        int threads = 1;
+        if (arg < args.length && args[arg].equals("verify"))
+            return;
+        if (arg < args.length && args[arg].equals("contended"))
+        {
+            arg ++;
+            threads = 4;
+            if (arg < args.length && Character.isDigit(args[arg].charAt(0)))
+                threads = Integer.parseInt(args[arg ++]);
+        }
+        else if (arg < args.length && args[arg].equals("uncontended"))
+            arg ++;
+
+        System.out.println(String.format("%-32s %7s %10s %10s", "case", "threads", "ns/op", "B/op"));
+        for (int i = 0; i < CASES.length; i ++)
+        {
+            boolean chosen = arg == args.length;
+            for (int j = arg; j < args.length; j ++)
+                chosen |= CASES[i].name.equals(args[j]);
+            if (chosen)
+                run(CASES[i], threads);
+        }
+    }
+
+    /** Check the handling of messages sent again
+     *
+     *  @return number of checks that failed
+     */
+    private static int verify() throws InterruptedException
+    {
+        int failures = 0;
+        SimulatedBank bank = new SimulatedBank(CARDS, PIN, INITIAL_BALANCE);
+        Balances first = new Balances();
+        Balances again = new Balances();
+        Money amount = new Money(1000);
+        long cents = amount.getCents();
+        long before = balance(bank, 1);
+
+        Message withdrawal = new Message(Message.WITHDRAWAL, new Card(1), PIN, 7, 0, -1, amount);
+        Status status = bank.handleMessage(1, withdrawal, first);
+        Status repeated = bank.handleMessage(1, withdrawal, again);
+        failures += check("repeated withdrawal", status.isSuccess() && repeated == status
+            && again.getTotalCents() == first.getTotalCents()
+            && again.getAvailableCents() == first.getAvailableCents()
+            && balance(bank, 1) == before - cents);
+
+        bank.handleMessage(2, withdrawal, again);
+        failures += check("same serial number from another ATM", balance(bank, 1) == before - 2 * cents);
+
+        bank.handleMessage(1, new Message(Message.WITHDRAWAL, new Card(1), PIN, 7, 0, -1,
+                                          new Money(2000)), again);
+        failures += check("same serial number, other amount", balance(bank, 1) == before - 4 * cents);
+
+        Message wrongPIN = new Message(Message.TRANSFER, new Card(1), PIN + 1, 8, 0, 1, amount);
+        status = bank.handleMessage(1, wrongPIN, again);
+        wrongPIN.setPIN(PIN);
+        failures += check("sent again with the right PIN", status.isInvalidPIN()
+            && bank.handleMessage(1, wrongPIN, again).isSuccess()
+            && balance(bank, 1) == before - 5 * cents);
+
+        bank.handleMessage(1, new Message(Message.INQUIRY, new Card(1), PIN, 9, 0, -1, Money.ZERO),
+                           first);
+        failures += check("replies counted", bank.getResponsesReplayed() == 1);
+
+        bank.setResponseCache(SMALL_CACHE, 50);
+        before = balance(bank, 2);
+        withdrawal = new Message(Message.WITHDRAWAL, new Card(2), PIN, 10, 0, -1, amount);
+        bank.handleMessage(1, withdrawal, first);
+        bank.handleMessage(1, withdrawal, first);
+        Thread.sleep(100);
+        bank.handleMessage(1, withdrawal, first);
+        failures += check("sent again after aging out", balance(bank, 2) == before - 2 * cents);
+
+        before = balance(bank, 3);
+        withdrawal = new Message(Message.WITHDRAWAL, new Card(3), PIN, 11, 0, -1, amount);
+        bank.handleMessage(1, withdrawal, first);
+        for (int i = 0; i < 16 * SMALL_CACHE; i ++)
+            bank.handleMessage(2, new Message(Message.COMPLETE_DEPOSIT, new Card(4), PIN, i, -1, 0,
+                                              amount), again);
+        bank.handleMessage(1, withdrawal, first);
+        failures += check("sent again after being pushed out", balance(bank, 3) == before - 2 * cents);
+
+        bank.setResponseCache(64 * 1024, 60 * 1000);
+        final SimulatedBank shared = bank;
+        final Message [] messages = new Message[1000];
+        for (int i = 0; i < messages.length; i ++)
+            messages[i] = new Message(Message.WITHDRAWAL, new Card(5), PIN, 100 + i, 0, -1,
+                                      new Money(0, 1));
+        before = balance(bank, 5);
+        Thread [] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t ++)
+        {
+            threads[t] = new Thread() {
+                public void run()
+                {
+                    Balances balances = new Balances();
+                    for (int i = 0; i < messages.length; i ++)
+                        shared.handleMessage(1, messages[i], balances);
+                }
+            };
+            threads[t].start();
+        }
+        for (int t = 0; t < threads.length; t ++)
+            threads[t].join();
+        failures += check("sent by many threads at once",
+                          balance(bank, 5) == before - messages.length);
+        return failures + verifySessionTokens(bank);
+    }
+
+    /** Check the issue and use of session tokens
+     *
+     *  @param bank the bank to check
+     *  @return number of checks that failed
+     */
+    private static int verifySessionTokens(SimulatedBank bank) throws InterruptedException
+    {
+        int failures = 0;
+        Balances balances = new Balances();
+        Message inquiry = new Message(Message.INQUIRY, new Card(6), PIN, 200, 0, -1, Money.ZERO);
+        failures += check("message asking for no session token",
+                          bank.handleMessage(1, inquiry, balances).isSuccess()
+                          && balances.getSessionToken() == Message.NO_SESSION_TOKEN);
+
+        inquiry.setSessionToken(Message.NEW_SESSION_TOKEN);
+        bank.handleMessage(1, inquiry, balances);
+        long token = balances.getSessionToken();
+        failures += check("message asking for a session token",
+                          token != Message.NO_SESSION_TOKEN && token != Message.NEW_SESSION_TOKEN);
+
+        long accepted = bank.getSessionTokensAccepted();
+        inquiry.setPIN(PIN + 1);
+        inquiry.setSessionToken(token);
+        failures += check("session token in place of the PIN",
+                          bank.handleMessage(1, inquiry, balances).isSuccess()
+                          && balances.getSessionToken() == token
+                          && bank.getSessionTokensAccepted() == accepted + 1);
+        failures += check("session token from another ATM",
+                          bank.handleMessage(2, inquiry, balances).isInvalidPIN());
+        Message other = new Message(Message.INQUIRY, new Card(7), PIN + 1, 201, 0, -1, Money.ZERO);
+        other.setSessionToken(token);
+        failures += check("session token for another card",
+                          bank.handleMessage(1, other, balances).isInvalidPIN());
+
+        bank.setSessionTokens(SMALL_CACHE, 50);
+        inquiry.setPIN(PIN);
+        inquiry.setSessionToken(Message.NEW_SESSION_TOKEN);
+        bank.handleMessage(1, inquiry, balances);
+        token = balances.getSessionToken();
+        Thread.sleep(100);
+        inquiry.setPIN(PIN + 1);
+        inquiry.setSessionToken(token);
+        failures += check("session token that has run out",
+                          bank.handleMessage(1, inquiry, balances).isInvalidPIN());
+        inquiry.setPIN(PIN);
+        failures += check("session token renewed",
+                          bank.handleMessage(1, inquiry, balances).isSuccess()
+                          && balances.getSessionToken() != token
+                          && balances.getSessionToken() != Message.NO_SESSION_TOKEN);
+
+        bank.setSessionTokens(0, 0);
+        inquiry.setSessionToken(Message.NEW_SESSION_TOKEN);
+        failures += check("message asking for a session token when none are issued",
+                          bank.handleMessage(1, inquiry, balances).isSuccess()
+                          && balances.getSessionToken() == Message.NO_SESSION_TOKEN);
+        return failures;
+    }
+
+    /** Report a check that failed
+     *
+     *  @param name what was checked
+     *  @param passed true if the check passed
+     *  @return 1 if it failed, else 0
+     */
+    private static int check(String name, boolean passed)
+    {
+        if (! passed)
+            System.out.println("Repeated messages: " + name + " handled wrongly");
+        return passed ? 0 : 1;
+    }
+
+    /** Find the total balance of a card's first account
+     *
+     *  @param bank the bank
+     *  @param card the card
+     *  @return the balance, in cents
+     */
+    private static long balance(SimulatedBank bank, int card)
+    {
+        Balances balances = new Balances();
+        bank.handleMessage(new Message(Message.INQUIRY, new Card(card), PIN, 0, 0, -1, Money.ZERO),
+                           balances);
+        return balances.getTotalCents();
+    }
+
+    /** Run one case and report the result
+     *
+     *  @param benchmarkCase the case
+     *  @param threads number of threads sending messages at once
+     */
+    private static void run(Case benchmarkCase, int threads) throws InterruptedException
+    {
+        SimulatedBank bank = new SimulatedBank(CARDS, PIN, INITIAL_BALANCE);
+        int cards = threads == 1 ? CARDS : CONTENDED_CARDS;
+
+        Sender [] senders = new Sender[threads];
+        for (int i = 0; i < threads; i ++)
+            senders[i] = new Sender(bank, benchmarkCase.messages(cards, i), benchmarkCase.atm);
+
+        for (int i = 0; i < threads; i ++)
+            senders[i].start();
+        for (int i = 0; i < threads; i ++)
+            senders[i].join();
+
+        long operations = 0;
+        long allocated = 0;
+        long elapsed = 0;
+        for (int i = 0; i < threads; i ++)
+        {
+            operations += senders[i].operations;
+            allocated += senders[i].allocated;
+            elapsed = Math.max(elapsed, senders[i].elapsed);
+        }
+
+        System.out.println(String.format("%-32s %7d %10.1f %10.1f%s",
+            benchmarkCase.name, threads, (double) elapsed / operations,
+            (double) allocated / operations,
+            Sender.unexpected(senders, benchmarkCase.success) ? "   UNEXPECTED STATUS" : ""));
+    }
+
+    /** One benchmark case - a kind of message, and the answer the bank is
+     *  expected to give
+     */
+    private static class Case
+    {
+        /** Constructor
+         *
+         *  @param name name shown in the report
+         *  @param messageCode the kind of message
+         *  @param pin PIN sent with each message
+         *  @param fromAccount account type sent as the "from" account
+         *  @param toAccount account type sent as the "to" account
+         *  @param amount amount sent with each message
+         *  @param success true if the bank should accept every message
+         */
+        Case(String name, int messageCode, int pin, int fromAccount, int toAccount,
+             Money amount, boolean success)
+        {
+            this(name, messageCode, pin, fromAccount, toAccount, amount, success, NO_ATM);
+        }
+
+        /** Constructor
+         *
+         *  @param name name shown in the report
+         *  @param messageCode the kind of message
+         *  @param pin PIN sent with each message
+         *  @param fromAccount account type sent as the "from" account
+         *  @param toAccount account type sent as the "to" account
+         *  @param amount amount sent with each message
+         *  @param success true if the bank should accept every message
+         *  @param atm NO_ATM, NEW_ATM or SAME_ATM - which ATM the messages
+         *         are sent from
+         */
+        Case(String name, int messageCode, int pin, int fromAccount, int toAccount,
+             Money amount, boolean success, int atm)
+        {
+            this.name = name;
+            this.messageCode = messageCode;
+            this.pin = pin;
+            this.fromAccount = fromAccount;
+            this.toAccount = toAccount;
+            this.amount = amount;
+            this.success = success;
+            this.atm = atm;
+        }
+
+        /** Create the messages one thread will send, over and over.  For
+         *  transfers, every other message goes back the other way, so balances
+         *  never drift far enough to change the answer.
+         *
+         *  @param cards the messages are on cards 1 .. cards
+         *  @param thread number of the thread, for serial numbers
+         *  @return the messages
+         */
+        Message [] messages(int cards, int thread)
+        {
+            Message [] messages = new Message[2 * cards];
+            for (int i = 0; i < messages.length; i ++)
+            {
+                int card = (thread + i / 2) % cards + 1;
+                boolean back = messageCode == Message.TRANSFER && (i & 1) == 1;
+                messages[i] = new Message(messageCode, new Card(card), pin,
+                                          thread * messages.length + i,
+                                          back ? toAccount : fromAccount,
+                                          back ? fromAccount : toAccount, amount);
+            }
+            return messages;
+        }
+
+        final String name;
+        final int messageCode;
+        final int pin;
+        final int fromAccount;
+        final int toAccount;
+        final Money amount;
+        final boolean success;
+        final int atm;
+    }
+
+    /** One thread sending the messages of a case
+     */
+    private static class Sender extends Thread
+    {
+        Sender(SimulatedBank bank, Message [] messages, int atm)
+        {
+            this.bank = bank;
+            this.messages = messages;
+            this.atm = atm;
+        }
+
+        public void run()
+        {
+            com.sun.management.ThreadMXBean threadBean =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+            long id = getId();
+            Balances balances = new Balances();
+
+            for (int iteration = - WARMUP_ITERATIONS; iteration < MEASURED_ITERATIONS; iteration ++)
+            {
+                long allocatedBefore = threadBean.getThreadAllocatedBytes(id);
+                long start = System.nanoTime();
+                long end = start + ITERATION_NANOS;
+                long count = 0;
+                long now;
+                do
+                {
+                    for (int i = 0; i < BATCH; i ++)
+                    {
+                        Message message = messages[(int) (count % messages.length)];
+                        Status status = atm == NO_ATM
+                            ? bank.handleMessage(message, balances)
+                            : bank.handleMessage(atm == SAME_ATM ? 1
+                                                 : (int) (count / messages.length) + 1,
+                                                 message, balances);
+                        count ++;
+                        if (status.isSuccess())
+                            successes ++;
+                        else
+                            failures ++;
+                    }
+                    now = System.nanoTime();
+                }
+                while (now < end);
+
+                if (iteration >= 0)
+                {
+                    operations += count;
+                    elapsed += now - start;
+                    allocated += threadBean.getThreadAllocatedBytes(id) - allocatedBefore;
+                }
+            }
+        }
+
+        /** See if any sender got an answer other than the one expected
+         *
+         *  @param senders the senders
+         *  @param success true if every message should have been accepted
+         *  @return true if some message got the wrong answer
+         */
+        static boolean unexpected(Sender [] senders, boolean success)
+        {
+            for (int i = 0; i < senders.length; i ++)
+                if ((success ? senders[i].failures : senders[i].successes) > 0)
+                    return true;
+            return false;
+        }
+
+        private SimulatedBank bank;
+        private Message [] messages;
+        private int atm;
+        long operations;
+        long elapsed;
+        long allocated;
+        long successes;
+        long failures;
+    }
+
+    /** Which ATM a case's messages are sent from - none, a new one every
+     *  time round the messages, or always the same one
+     */
+    private static final int NO_ATM = 0;
+    private static final int NEW_ATM = 1;
+    private static final int SAME_ATM = 2;
+
+    /** Number of cards in the bank (and used by an uncontended case)
+     */
+    private static final int CARDS = 1024;
+
+    /** Number of cards all threads of a contended case share
+     */
+    private static final int CONTENDED_CARDS = 2;
+
+    /** Responses kept by the bank's cache in the checks of aging out and
+     *  being pushed out
+     */
+    private static final int SMALL_CACHE = 16;
+
+    /** PIN of every card
+     */
+    private static final int PIN = 123456;
+
+    /** Starting balance of every account
+     */
+    private static final Money INITIAL_BALANCE = new Money(1000000);
+
+    /** Iterations run before measuring, and measured
+     */
+    private static final int WARMUP_ITERATIONS = 5;
+    private static final int MEASURED_ITERATIONS = 5;
+
+    /** Length of each iteration
+     */
+    private static final long ITERATION_NANOS = 200 * 1000 * 1000;
+
+    /** Messages sent between looks at the clock
+     */
+    private static final int BATCH = 1000;
+
+    /** The cases.  Account type 0 and 1 exist for every card, 2 never does;
+     *  the daily limits are Rp 5.000.000 for withdrawals and Rp 10.000.000 for
+     *  transfers
+     */
+    private static final Case [] CASES =
+    {
+        new Case("withdrawal", Message.WITHDRAWAL, PIN, 0, -1, new Money(0, 1), true),
+        new Case("withdrawal-new", Message.WITHDRAWAL, PIN, 0, -1, new Money(0, 1), true,
+                 NEW_ATM),
+        new Case("withdrawal-repeated", Message.WITHDRAWAL, PIN, 0, -1, new Money(0, 1), true,
+                 SAME_ATM),
+        new Case("withdrawal-limit-exceeded", Message.WITHDRAWAL, PIN, 0, -1,
+                 new Money(6000000), false),
+        new Case("withdrawal-insufficient", Message.WITHDRAWAL, PIN, 0, -1,
+                 new Money(2000000), false),
+        new Case("withdrawal-invalid-account", Message.WITHDRAWAL, PIN, 2, -1,
+                 new Money(0, 1), false),
+        new Case("withdrawal-invalid-pin", Message.WITHDRAWAL, PIN + 1, 0, -1,
+                 new Money(0, 1), false),
+        new Case("transfer", Message.TRANSFER, PIN, 0, 1, new Money(0, 1), true),
+        new Case("transfer-limit-exceeded", Message.TRANSFER, PIN, 0, 1,
+                 new Money(11000000), false),
+        new Case("transfer-insufficient", Message.TRANSFER, PIN, 0, 1,
+                 new Money(2000000), false),
+        new Case("transfer-same-account", Message.TRANSFER, PIN, 0, 0,
+                 new Money(0, 1), false),
+        new Case("inquiry", Message.INQUIRY, PIN, 0, -1, new Money(0), true),
+        new Case("inquiry-invalid-account", Message.INQUIRY, PIN, 2, -1,
+                 new Money(0), false),
+        new Case("inquiry-invalid-pin", Message.INQUIRY, PIN + 1, 0, -1,
+                 new Money(0), false),
+        new Case("initiate-deposit", Message.INITIATE_DEPOSIT, PIN, -1, 0,
+                 new Money(0, 1), true),
+        new Case("complete-deposit", Message.COMPLETE_DEPOSIT, PIN, -1, 0,
+                 new Money(0, 1), true),
+        new Case("complete-deposit-invalid-account", Message.COMPLETE_DEPOSIT, PIN, -1, 2,
+                 new Money(0, 1), false)
+    };
+}
@@ -0,0 +1,398 @@
+/*
+ * ATM Example system - file JournalBenchmark.java
+ *
+ */
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.Random;
+
+import atm.physical.LogEvent;
+import banking.BankStatus;
+import banking.Message;
+import simulation.Journal;
+import simulation.JournalLogSink;
+
+/** Check and benchmark for the ATM journal - JournalLogSink writing it, and
+ *  Journal searching it.
+ *
+ *  verify - in a new directory, writes the transactions of a fleet to a
+ *  journal with small segments over several runs of the sink - one long
+ *  enough to roll over many segments, then some short ones that each leave a
+ *  partly filled segment - and checks that every entry reads back as written,
+ *  found by transaction, by card and by time; that the short runs' segments
+ *  were merged; and that a size limit deletes the oldest segments and
+ *  nothing else.  Run before the benchmark too; a failure is reported and
+ *  ends the program with exit status 1.
+ *
+ *  benchmark - writes a journal of the size asked for, reporting how fast it
+ *  was written, then reports the average time and number of blocks read to
+ *  find SEARCHES random transactions, cards (over a day) and seconds of the
+ *  journal.  The journal is kept, and written again only if it is smaller
+ *  than asked for, so the searches can be run again on it.
+ *
+ *  Usage: java JournalBenchmark [verify | benchmark [directory [gigabytes]]]
+ */
+
+public class JournalBenchmark
+{
+    public static void main(String[] args) throws IOException
+    {
+        String mode = args.length > 0 ? args[0] : "benchmark";
+
+        int failures = verify();
+        System.out.println(failures == 0 ? "Journal: ok" : "Journal: " + failures + " FAILURES");
+        if (failures > 0)
+            System.exit(1);
+        if (mode.equals("verify"))
+            return;
+
+        File directory = new File(args.length > 1 ? args[1]
+            : new File(System.getProperty("java.io.tmpdir"), "atm-journal").getPath());
+        long size = (long) ((args.length > 2 ? Double.parseDouble(args[2]) : 2) * (1L << 30));
+        benchmark(directory, size);
+    }
+
+    /** Write journals and check what can be read back
+     *
+     *  @return number of checks that failed
+     */
+    private static int verify() throws IOException
+    {
+        File directory = Files.createTempDirectory("atm-journal").toFile();
+        int failures = 0;
+        try
+        {
+            // One long run, then short ones.  Each short run merges the
+            // segments of those before it when it opens, except the long
+            // run's last, which may be too full to merge - so what is left
+            // is the full segments, that one, the merged segment and the
+            // last run's
+
+            long transactions = 0;
+            JournalLogSink sink = new JournalLogSink(directory, SMALL_SEGMENT, 0);
+            transactions = write(sink, transactions, 20000, 100);
+            sink.close();
+            long rolled = sink.getSegmentsRolled();
+            if (rolled < 10)
+            {
+                System.out.println("only " + rolled + " segments rolled over");
+                failures ++;
+            }
+            long merged = 0;
+            for (int run = 0; run < SHORT_RUNS; run ++)
+            {
+                sink = new JournalLogSink(directory, SMALL_SEGMENT, 0);
+                transactions = write(sink, transactions, 20, 7);
+                sink.close();
+                merged += sink.getSegmentsMerged();
+            }
+            Journal journal = new Journal(directory);
+            if (merged < SHORT_RUNS - 2 || journal.getSegments() > rolled + 3)
+            {
+                System.out.println(merged + " segments merged, " + journal.getSegments()
+                                   + " left");
+                failures ++;
+            }
+            journal.close();
+            failures += check(directory, 0, 0, transactions);
+
+            // Another sink cannot write to the journal while one is
+
+            sink = new JournalLogSink(directory, SMALL_SEGMENT, 0);
+            try
+            {
+                new JournalLogSink(directory, SMALL_SEGMENT, 0);
+                System.out.println("journal opened twice");
+                failures ++;
+            }
+            catch(IOException e)
+            { }
+            sink.close();
+
+            // Cut the journal down to a quarter of its size
+
+            journal = new Journal(directory);
+            long retained = journal.getSize() / 4;
+            journal.close();
+            sink = new JournalLogSink(directory, SMALL_SEGMENT, retained);
+            transactions = write(sink, transactions, 1, 1);
+            sink.close();
+            journal = new Journal(directory);
+            if (journal.getSize() > retained || sink.getSegmentsDeleted() == 0)
+            {
+                System.out.println("journal of " + journal.getSize() + " bytes, retaining "
+                                   + retained);
+                failures ++;
+            }
+            LogEvent oldest = journal.findTime(Long.MIN_VALUE, Long.MAX_VALUE, 1).get(0);
+            long first = (oldest.getSerialNumber() - 1) * (long) FLEET_SIZE + oldest.getATMID() - 1;
+            journal.close();
+            if (oldest.getKind() == LogEvent.SEND)
+                failures += check(directory, first, 0, transactions);
+            else
+                failures += check(directory, first + 1, 1, transactions);
+        }
+        finally
+        {
+            File [] files = directory.listFiles();
+            for (int i = 0; files != null && i < files.length; i ++)
+                files[i].delete();
+            directory.delete();
+        }
+        return failures;
+    }
+
+    /** Check that a journal holds the entries of a range of transactions
+     *  written by write(), and no others
+     *
+     *  @param directory directory of the journal
+     *  @param first the first transaction it should hold all of
+     *  @param partial entries it should hold of the transaction before -
+     *         0, or 1 for just the response
+     *  @param end the transaction after the last it should hold
+     *  @return number of checks that failed
+     */
+    private static int check(File directory, long first, int partial, long end)
+        throws IOException
+    {
+        Journal journal = new Journal(directory);
+        int failures = 0;
+        LogEvent expected = new LogEvent();
+
+        long records = 2 * (end - first) + partial;
+        if (journal.getRecords() != records)
+        {
+            System.out.println(journal.getRecords() + " records, expected " + records);
+            failures ++;
+        }
+        for (long transaction = first; transaction < end; transaction ++)
+        {
+            List<LogEvent> found = journal.findTransaction(atmID(transaction),
+                                                           serialNumber(transaction));
+            for (int kind = LogEvent.SEND; kind <= LogEvent.RESPONSE; kind ++)
+            {
+                event(transaction, kind, expected);
+                if (found.size() != 2 || ! same(expected, found.get(kind)))
+                {
+                    System.out.println("transaction " + transaction + ": expected " + expected
+                                       + ", found " + found);
+                    failures ++;
+                }
+            }
+        }
+
+        int [] cardEntries = new int[CARDS + 1];
+        for (long transaction = first; transaction < end; transaction ++)
+            cardEntries[cardNumber(transaction)] += 2;
+        if (partial > 0)
+            cardEntries[cardNumber(first - 1)] += partial;
+        for (int card = 1; card <= VERIFY_CARDS; card ++)
+        {
+            List<LogEvent> found = journal.findCard(card, Long.MIN_VALUE, Long.MAX_VALUE);
+            if (found.size() != cardEntries[card])
+            {
+                System.out.println("card " + card + ": found " + found.size()
+                                   + ", expected " + cardEntries[card]);
+                failures ++;
+            }
+        }
+
+        long from = time(first + (end - first) / 2);
+        List<LogEvent> found = journal.findTime(from, from + 999, Integer.MAX_VALUE);
+        for (int i = 0; i < found.size(); i ++)
+            if (found.get(i).getTime() < from || found.get(i).getTime() > from + 999)
+                failures ++;
+        if (found.isEmpty() || journal.findTime(from, from + 999, 3).size() != 3)
+        {
+            System.out.println("found " + found.size() + " entries in a second");
+            failures ++;
+        }
+        journal.close();
+        return failures;
+    }
+
+    /** Write a journal of a size, if the one there is not as big, then
+     *  report how long searches take
+     *
+     *  @param directory directory of the journal
+     *  @param size size in bytes to write
+     */
+    private static void benchmark(File directory, long size) throws IOException
+    {
+        Journal journal = directory.isDirectory() ? new Journal(directory) : null;
+        if (journal == null || journal.getSize() < size)
+        {
+            if (journal != null)
+            {
+                journal.close();
+                File [] files = directory.listFiles();
+                for (int i = 0; files != null && i < files.length; i ++)
+                    files[i].delete();
+            }
+            JournalLogSink sink = new JournalLogSink(directory, JournalLogSink.SEGMENT_SIZE, 0);
+            long start = System.nanoTime();
+            long transactions = 0;
+            while ((sink.getSegmentsRolled() + 1) * (long) JournalLogSink.SEGMENT_SIZE < size)
+                transactions = write(sink, transactions, 1 << 20, 64);
+            sink.close();
+            long elapsed = System.nanoTime() - start;
+            System.out.println(String.format("wrote %d entries in %.1f s - %.0f ns/entry",
+                2 * transactions, elapsed / 1e9, (double) elapsed / (2 * transactions)));
+            journal = new Journal(directory);
+        }
+        long records = journal.getRecords();
+        long transactions = records / 2;
+        System.out.println(String.format("journal: %.2f GB, %d segments, %d entries",
+            journal.getSize() / (double) (1L << 30), journal.getSegments(), records));
+        long blocks = journal.getSize() / 16384;
+
+        System.out.println(String.format("%-12s %10s %12s %10s", "search", "ms", "blocks read",
+                                         "found"));
+        Random random = new Random(42);
+        for (int by = 0; by < 3; by ++)
+        {
+            long elapsed = 0;
+            long blocksRead = 0;
+            long found = 0;
+            for (int i = - WARMUP_SEARCHES; i < SEARCHES; i ++)
+            {
+                long transaction = (long) (random.nextDouble() * transactions);
+                long start = System.nanoTime();
+                List<LogEvent> events;
+                if (by == 0)
+                    events = journal.findTransaction(atmID(transaction), serialNumber(transaction));
+                else if (by == 1)
+                    events = journal.findCard(cardNumber(transaction), time(transaction),
+                                              time(transaction) + DAY);
+                else
+                    events = journal.findTime(time(transaction), time(transaction) + 999,
+                                              Integer.MAX_VALUE);
+                if (i >= 0)
+                {
+                    elapsed += System.nanoTime() - start;
+                    blocksRead += journal.getBlocksRead();
+                    found += events.size();
+                }
+            }
+            System.out.println(String.format("%-12s %10.3f %12.1f %10.1f",
+                new String[] { "transaction", "card/day", "second" }[by],
+                elapsed / 1e6 / SEARCHES, (double) blocksRead / SEARCHES,
+                (double) found / SEARCHES));
+        }
+        System.out.println("(of about " + blocks + " blocks)");
+        journal.close();
+    }
+
+    /** Write transactions to a journal - the message and the response of
+     *  each - flushing as the log pipeline would
+     *
+     *  @param sink the journal
+     *  @param first the first transaction to write
+     *  @param count number of transactions to write
+     *  @param flushEvery transactions written between flushes
+     *  @return the transaction after the last written
+     */
+    private static long write(JournalLogSink sink, long first, int count, int flushEvery)
+    {
+        LogEvent event = new LogEvent();
+        for (long transaction = first; transaction < first + count; transaction ++)
+        {
+            event(transaction, LogEvent.SEND, event);
+            sink.write(event);
+            event(transaction, LogEvent.RESPONSE, event);
+            sink.write(event);
+            if ((transaction - first) % flushEvery == flushEvery - 1)
+                sink.flush();
+        }
+        sink.flush();
+        return first + count;
+    }
+
+    /** The entries of a transaction.  Transactions go round the ATMs of a
+     *  fleet, FLEET_SIZE of them, TRANSACTIONS_PER_SECOND a second; the card
+     *  is picked at random from CARDS, and one response in FAILURE_RATE is
+     *  a failure - mostly a shared BankStatus, sometimes one with a
+     *  description of its own
+     *
+     *  @param transaction number of the transaction, from 0
+     *  @param kind LogEvent.SEND or LogEvent.RESPONSE
+     *  @param event (out) the entry
+     */
+    private static void event(long transaction, int kind, LogEvent event)
+    {
+        boolean failed = kind == LogEvent.RESPONSE && transaction % FAILURE_RATE == 0;
+        boolean described = failed && transaction % (FAILURE_RATE * 4) == 0;
+        event.set(kind, time(transaction) + kind, atmID(transaction), Message.WITHDRAWAL,
+                  cardNumber(transaction), serialNumber(transaction), (int) (transaction % 3),
+                  -1, 20000 * (1 + transaction % 10),
+                  described ? BankStatus.FAILURE
+                  : failed ? BankStatus.INSUFFICIENT_FUNDS : BankStatus.SUCCESS,
+                  described ? "Saldo tidak cukup" : null);
+    }
+
+    private static int atmID(long transaction)
+    {
+        return (int) (transaction % FLEET_SIZE) + 1;
+    }
+
+    private static int serialNumber(long transaction)
+    {
+        return (int) (transaction / FLEET_SIZE) + 1;
+    }
+
+    private static int cardNumber(long transaction)
+    {
+        return (int) (((transaction * 0x9e3779b97f4a7c15L) >>> 40) % CARDS) + 1;
+    }
+
+    private static long time(long transaction)
+    {
+        return START_TIME + transaction * 1000 / TRANSACTIONS_PER_SECOND;
+    }
+
+    /** See whether two entries are the same
+     *
+     *  @return true if they are
+     */
+    private static boolean same(LogEvent expected, LogEvent actual)
+    {
+        return expected.getKind() == actual.getKind() && expected.getTime() == actual.getTime()
+            && expected.getATMID() == actual.getATMID()
+            && expected.getMessageCode() == actual.getMessageCode()
+            && expected.getCardNumber() == actual.getCardNumber()
+            && expected.getSerialNumber() == actual.getSerialNumber()
+            && expected.getFromAccount() == actual.getFromAccount()
+            && expected.getToAccount() == actual.getToAccount()
+            && expected.getAmountCents() == actual.getAmountCents()
+            && expected.getStatusCode() == actual.getStatusCode()
+            && (expected.getStatusMessage() == null ? actual.getStatusMessage() == null
+                : expected.getStatusMessage().equals(actual.getStatusMessage()));
+    }
+
+    /** Segment size for verify - four blocks - short runs of the sink, and
+     *  cards whose entries are searched for
+     */
+    private static final int SMALL_SEGMENT = 4 * 16384;
+    private static final int SHORT_RUNS = 5;
+    private static final int VERIFY_CARDS = 1000;
+
+    /** The fleet whose transactions are written
+     */
+    private static final int FLEET_SIZE = 100;
+    private static final int CARDS = 50000;
+    private static final long TRANSACTIONS_PER_SECOND = 200;
+    private static final long FAILURE_RATE = 20;
+    private static final long START_TIME = 978307200000L;    // 2001-01-01
+
+    /** A day in milliseconds
+     */
+    private static final long DAY = 24 * 60 * 60 * 1000;
+
+    /** Searches of each kind made before measuring, and measured
+     */
+    private static final int WARMUP_SEARCHES = 50;
+    private static final int SEARCHES = 200;
+}
@@ -0,0 +1,335 @@
+/*
+ * ATM Example system - file LogBenchmark.java
+ *
+ */
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+
+import atm.ATM;
+import atm.physical.Log;
+import banking.BankStatus;
+import banking.Card;
+import banking.Message;
+import banking.Money;
+import banking.ReceivedStatus;
+import banking.Status;
+import simulation.HeadlessDevices;
+import simulation.SimulatedBank;
+import simulation.Simulation;
+
+/** Check and microbenchmarks for the ATM's log, which records LogEvents and
+ *  leaves building their text to whatever shows them, against the way it
+ *  worked before - building each line of text as it was logged, kept here as
+ *  text().
+ *
+ *  verify - logs messages of every type, with and without accounts and
+ *  amounts, responses of every kind and every shared BankStatus, cash
+ *  dispensed, an envelope and the balance cache of a session through the Log
+ *  of a headless ATM, and checks that HeadlessDevices.getLogLines() gives
+ *  exactly the lines text() gives, and that each status's own string matches
+ *  its line.  Run before the
+ *  benchmarks too; a failure is reported and ends the program with exit
+ *  status 1.
+ *
+ *  benchmark - for each case, runs WARMUP_ITERATIONS iterations that are
+ *  thrown away, then MEASURED_ITERATIONS iterations whose time and heap
+ *  allocation are reported per entry logged.  Each case logs the entries of
+ *  a withdrawal - the message, the response and the cash dispensed - over
+ *  and over, clearing the output every SESSIONS withdrawals, as a fleet does:
+ *
+ *  text - the old log: each line built and kept as a string, by the
+ *  devices the simulation of the ATM has
+ *  event - Log, which keeps a LogEvent for each entry
+ *  eventRead - Log, with the lines read back with getLogLines() before each
+ *  clearing, as the demo does
+ *
+ *  Usage: java LogBenchmark [verify | benchmark]
+ */
+
+public class LogBenchmark
+{
+    public static void main(String[] args)
+    {
+        String mode = args.length > 0 ? args[0] : "benchmark";
+
+        int failures = verify();
+        System.out.println(failures == 0 ? "Log: ok" : "Log: " + failures + " FAILURES");
+        if (failures > 0)
+            System.exit(1);
+        if (mode.equals("verify"))
+            return;
+
+        System.out.println(String.format("%-12s %10s %10s", "case", "ns/op", "B/op"));
+        for (int i = 0; i < CASES.length; i ++)
+            run(CASES[i]);
+    }
+
+    /** Check that the log gives the same lines as text()
+     *
+     *  @return number of lines that differ
+     */
+    private static int verify()
+    {
+        List<String> expected = new ArrayList<String>();
+        int [] codes = { Message.WITHDRAWAL, Message.INITIATE_DEPOSIT, Message.COMPLETE_DEPOSIT,
+                         Message.TRANSFER, Message.INQUIRY, Message.INQUIRY_ALL,
+                         Message.VERIFY_PIN };
+        Money [] amounts = { Money.ZERO, new Money(0, 1), new Money(50000), new Money(1234567, 89) };
+        for (int i = 0; i < codes.length; i ++)
+            for (int account = -1; account <= 2; account ++)
+                for (int j = 0; j < amounts.length; j ++)
+                {
+                    Message message = new Message(codes[i], new Card(1 + i), 42, 1000 * i + j,
+                                                  account, 2 - account, amounts[j]);
+                    LOG.logSend(message);
+                    expected.add(text(message));
+                }
+
+        List<Status> statuses = new ArrayList<Status>();
+        statuses.add(new ReceivedStatus(ReceivedStatus.SUCCESS, null));
+        statuses.add(new ReceivedStatus(ReceivedStatus.INVALID_PIN, "PIN salah"));
+        statuses.add(new ReceivedStatus(ReceivedStatus.FAILURE, "Saldo tidak cukup"));
+        statuses.add(new ReceivedStatus(ReceivedStatus.FAILURE, null));
+        for (int code = 0; code <= BankStatus.BANK_UNREACHABLE; code ++)
+            if (BankStatus.isShared(code))
+                statuses.add(BankStatus.of(code));
+        for (int i = 0; i < statuses.size(); i ++)
+        {
+            LOG.logResponse(statuses.get(i));
+            expected.add(text(statuses.get(i)));
+            if (! statuses.get(i).toString().equals(text(statuses.get(i)).substring(11)))
+            {
+                System.out.println("status " + statuses.get(i).getCode() + " shows as "
+                                   + statuses.get(i));
+                return 1;
+            }
+        }
+        for (int j = 0; j < amounts.length; j ++)
+        {
+            LOG.logCashDispensed(amounts[j]);
+            expected.add("Dispensed: " + amounts[j]);
+        }
+        LOG.logEnvelopeAccepted();
+        expected.add("Envelope:  received");
+        LOG.logBalanceCache(new Card(1), 3, 1);
+        expected.add("Balances:  3 from cache, 1 from bank");
+
+        List<String> lines = DEVICES.getLogLines();
+        DEVICES.clearOutput();
+        int failures = 0;
+        for (int i = 0; i < Math.max(lines.size(), expected.size()); i ++)
+        {
+            String line = i < lines.size() ? lines.get(i) : null;
+            String expectedLine = i < expected.size() ? expected.get(i) : null;
+            if (line == null || ! line.equals(expectedLine))
+            {
+                System.out.println("expected " + expectedLine + ", got " + line);
+                failures ++;
+            }
+        }
+        return failures;
+    }
+
+    /** The line the log printed for a message before LogEvent
+     *
+     *  @param message the message
+     *  @return the line
+     */
+    private static String text(Message message)
+    {
+        String result = "";
+        switch (message.getMessageCode())
+        {
+            case Message.WITHDRAWAL: result += "TARIK TUNAI"; break;
+            case Message.INITIATE_DEPOSIT: result += "INIT_DEP"; break;
+            case Message.COMPLETE_DEPOSIT: result += "COMP_DEP"; break;
+            case Message.TRANSFER: result += "TRANSFER"; break;
+            case Message.INQUIRY: result += "CEK SALDO"; break;
+            case Message.INQUIRY_ALL: result += "CEK SEMUA SALDO"; break;
+            case Message.VERIFY_PIN: result += "CEK PIN"; break;
+        }
+        result += " KARTU# " + message.getCard().getNumber();
+        result += " TRANS# " + message.getSerialNumber();
+        if (message.getFromAccount() >= 0)
+            result += " Dari  " + message.getFromAccount();
+        else
+            result += " TANPA SUMBER";
+        if (message.getToAccount() >= 0)
+            result += " Ke  " + message.getToAccount();
+        else
+            result += " TANPA TUJUAN";
+        if (! message.getAmount().lessEqual(Money.ZERO))
+            result += " " + message.getAmount();
+        else
+            result += " TANPA JUMLAH";
+        return "Message:   " + result;
+    }
+
+    /** The line the log printed for a response before LogEvent
+     *
+     *  @param status the status
+     *  @return the line
+     */
+    private static String text(Status status)
+    {
+        if (status.isSuccess())
+            return "Response:  SUCCESS";
+        else if (status.isInvalidPIN())
+            return "Response:  PIN ANDA SALAH";
+        else
+            return "Response:  GAGAL " + status.getMessage();
+    }
+
+    /** Run one case and report the result
+     *
+     *  @param benchmarkCase the case
+     */
+    private static void run(Case benchmarkCase)
+    {
+        com.sun.management.ThreadMXBean threadBean =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long id = Thread.currentThread().getId();
+
+        long operations = 0;
+        long elapsed = 0;
+        long allocated = 0;
+        for (int iteration = - WARMUP_ITERATIONS; iteration < MEASURED_ITERATIONS; iteration ++)
+        {
+            long allocatedBefore = threadBean.getThreadAllocatedBytes(id);
+            long start = System.nanoTime();
+            long end = start + ITERATION_NANOS;
+            long count = 0;
+            long now;
+            do
+            {
+                benchmarkCase.run();
+                count += 3 * SESSIONS;
+                now = System.nanoTime();
+            }
+            while (now < end);
+
+            if (iteration >= 0)
+            {
+                operations += count;
+                elapsed += now - start;
+                allocated += threadBean.getThreadAllocatedBytes(id) - allocatedBefore;
+            }
+        }
+
+        System.out.println(String.format("%-12s %10.1f %10.1f", benchmarkCase.name,
+            (double) elapsed / operations, (double) allocated / operations));
+    }
+
+    /** One benchmark case - logs SESSIONS withdrawals, then clears the output
+     */
+    private static abstract class Case
+    {
+        Case(String name)
+        {
+            this.name = name;
+        }
+
+        abstract void run();
+
+        final String name;
+    }
+
+    /** Withdrawals logged between clearings of the output
+     */
+    private static final int SESSIONS = 16;
+
+    /** Headless ATM whose log is used, not started
+     */
+    private static final ATM ATM = new ATM(1, "Benchmark", "Bank Universitas Gunadarma", null);
+    private static final HeadlessDevices DEVICES = new HeadlessDevices(new Money(0));
+    private static final Log LOG = ATM.getLog();
+
+    static
+    {
+        new Simulation(ATM, new SimulatedBank(), DEVICES);
+    }
+
+    /** What each withdrawal logs
+     */
+    private static final Message MESSAGE =
+        new Message(Message.WITHDRAWAL, new Card(1), 42, 17, 0, -1, new Money(200000));
+    private static final Status RESPONSE = BankStatus.of(BankStatus.SUCCESS);
+    private static final Money DISPENSED = MESSAGE.getAmount();
+
+    /** Something for the cases to put their results in, so the JIT compiler
+     *  cannot throw the work away
+     */
+    private static long sink;
+
+    /** Iterations run before measuring, and measured
+     */
+    private static final int WARMUP_ITERATIONS = 5;
+    private static final int MEASURED_ITERATIONS = 5;
+
+    /** Length of each iteration
+     */
+    private static final long ITERATION_NANOS = 200 * 1000 * 1000;
+
+    /** The cases
+     */
+    private static final Case [] CASES =
+    {
+        new Case("text") {
+            final List<String> lines = new ArrayList<String>();
+
+            void run()
+            {
+                for (int i = 0; i < SESSIONS; i ++)
+                {
+                    add("Message:   " + MESSAGE.toString());
+                    add("Response:  " + RESPONSE.toString());
+                    add("Dispensed: " + DISPENSED);
+                }
+                synchronized(lines)
+                {
+                    sink += lines.size();
+                    lines.clear();
+                }
+            }
+
+            /** Keep a line the way HeadlessDevices did, after finding the
+             *  simulation the way Log does
+             */
+            void add(String line)
+            {
+                sink += Simulation.getInstance(ATM).hashCode();
+                synchronized(lines)
+                {
+                    lines.add(line);
+                }
+            }
+        },
+        new Case("event") {
+            void run()
+            {
+                for (int i = 0; i < SESSIONS; i ++)
+                {
+                    LOG.logSend(MESSAGE);
+                    LOG.logResponse(RESPONSE);
+                    LOG.logCashDispensed(DISPENSED);
+                }
+                DEVICES.clearOutput();
+            }
+        },
+        new Case("eventRead") {
+            void run()
+            {
+                for (int i = 0; i < SESSIONS; i ++)
+                {
+                    LOG.logSend(MESSAGE);
+                    LOG.logResponse(RESPONSE);
+                    LOG.logCashDispensed(DISPENSED);
+                }
+                sink += DEVICES.getLogLines().size();
+                DEVICES.clearOutput();
+            }
+        }
+    };
+}
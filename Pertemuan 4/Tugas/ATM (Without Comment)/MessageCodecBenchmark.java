@@ -0,0 +1,443 @@
+/*
+ * ATM Example system - file MessageCodecBenchmark.java
+ *
+ */
+
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.HashSet;
+import java.util.Set;
+
+import banking.Balances;
+import banking.BankStatus;
+import banking.Card;
+import banking.Message;
+import banking.MessageCodec;
+import banking.MessageView;
+import banking.Money;
+import banking.ReceivedStatus;
+import banking.SerialNumbers;
+import banking.Status;
+
+/** Round-trip check and microbenchmarks for the binary message codec.
+ *
+ *  verify - encodes messages of every type, with extreme values in every
+ *  field, in both byte orders and at unaligned offsets, and checks that both
+ *  MessageView and MessageCodec.decode() give back exactly what was encoded;
+ *  then encodes a response with every shared BankStatus, and checks that it
+ *  decodes as the same instance, and one with a failure of its own, which
+ *  must keep its description; then a response with the balances of several
+ *  accounts, which must all come back, and a following response read
+ *  correctly; then has several threads take serial numbers
+ *  for several ATMs at once, and checks that no two are the same and each
+ *  gives back its ATM id.  Run before the benchmarks too; a failure is
+ *  reported and ends the program with exit status 1.
+ *
+ *  benchmark - for each case, runs WARMUP_ITERATIONS iterations that are
+ *  thrown away, then MEASURED_ITERATIONS iterations whose time and heap
+ *  allocation are reported per message:
+ *
+ *  encode - MessageCodec.encode() into a reused buffer
+ *  view - MessageView.wrap() and reading every field
+ *  decode - MessageCodec.decode() into a new Message
+ *  toString - Message.toString(), the only format there was before
+ *  response - MessageCodec.encodeResponse() and decodeResponse() of a shared
+ *  status, into a reused buffer and Balances
+ *
+ *  Usage: java MessageCodecBenchmark [verify | benchmark]
+ */
+
+public class MessageCodecBenchmark
+{
+    public static void main(String[] args)
+    {
+        String mode = args.length > 0 ? args[0] : "benchmark";
+
+        int failures = verify();
+        System.out.println(failures == 0 ? "Round trip: ok"
+                                         : "Round trip: " + failures + " FAILURES");
+        if (failures > 0)
+            System.exit(1);
+        if (mode.equals("verify"))
+            return;
+
+        System.out.println(String.format("%-10s %10s %10s", "case", "ns/op", "B/op"));
+        for (int i = 0; i < CASES.length; i ++)
+            run(CASES[i]);
+    }
+
+    /** Check that messages and responses survive encoding and decoding
+     *  unchanged
+     *
+     *  @return number of messages and responses that did not
+     */
+    private static int verify()
+    {
+        int [] codes = { Message.WITHDRAWAL, Message.INITIATE_DEPOSIT,
+                         Message.COMPLETE_DEPOSIT, Message.TRANSFER, Message.INQUIRY,
+                         Message.INQUIRY_ALL, Message.VERIFY_PIN };
+        int [] ints = { 0, 1, -1, Integer.MAX_VALUE, Integer.MIN_VALUE };
+        long [] amounts = { 0, 1, 5000000, Long.MAX_VALUE, Long.MIN_VALUE };
+        long [] serials = { Long.MIN_VALUE, 0, Long.MAX_VALUE, -1, 1L << 40 | 7 };
+        ByteOrder [] orders = { ByteOrder.BIG_ENDIAN, ByteOrder.LITTLE_ENDIAN };
+
+        int failures = 0;
+        MessageView view = new MessageView();
+        for (int o = 0; o < orders.length; o ++)
+            for (int offset = 0; offset < 8; offset += 3)
+                for (int c = 0; c < codes.length; c ++)
+                    for (int i = 0; i < ints.length; i ++)
+                    {
+                        int other = ints[(i + 1) % ints.length];
+                        Message message = new Message(codes[c], new Card(ints[i]), other,
+                                                      serials[i], other, ints[i],
+                                                      Money.ofCents(amounts[i]));
+                        message.setSessionToken(amounts[(i + c) % amounts.length]);
+                        ByteBuffer buffer = ByteBuffer.allocate(offset + MessageCodec.MESSAGE_SIZE)
+                                                      .order(orders[o]);
+                        buffer.position(offset);
+                        MessageCodec.encode(message, buffer);
+                        if (buffer.position() != offset + MessageCodec.MESSAGE_SIZE)
+                            failures ++;
+
+                        buffer.position(offset);
+                        if (! same(message, MessageCodec.decode(buffer))
+                            || ! same(message, view.wrap(buffer, offset).toMessage()))
+                        {
+                            System.out.println("Round trip changed " + message + " ("
+                                               + orders[o] + ", offset " + offset + ")");
+                            failures ++;
+                        }
+                    }
+
+        try
+        {
+            view.wrap(ByteBuffer.allocate(MessageCodec.MESSAGE_SIZE - 1), 0);
+            System.out.println("View accepted a buffer too short for a message");
+            failures ++;
+        }
+        catch(IndexOutOfBoundsException e)
+        { }
+
+        ByteBuffer buffer = ByteBuffer.allocate(1024);
+        Balances balances = new Balances();
+        balances.setBalances(123456, -7);
+        balances.setSessionToken(Long.MIN_VALUE + 1);
+        Balances decoded = new Balances();
+        for (int code = 0; code <= BankStatus.INVALID_MESSAGE + 1; code ++)
+        {
+            Status status = BankStatus.isShared(code)
+                            ? BankStatus.of(code)
+                            : new ReceivedStatus(ReceivedStatus.FAILURE, "Kode " + code);
+            buffer.clear();
+            MessageCodec.encodeResponse(code, status, balances, buffer);
+            buffer.flip();
+            Status result = MessageCodec.decodeResponse(buffer, decoded);
+            boolean same = BankStatus.isShared(code)
+                           ? result == status
+                           : result.getCode() == ReceivedStatus.FAILURE
+                             && status.getMessage().equals(result.getMessage());
+            if (! same || buffer.hasRemaining()
+                || decoded.getTotalCents() != 123456 || decoded.getAvailableCents() != -7
+                || decoded.getSessionToken() != Long.MIN_VALUE + 1)
+            {
+                System.out.println("Round trip changed response " + status);
+                failures ++;
+            }
+        }
+
+        balances.setAccountBalances(0, 100, 50);
+        balances.setAccountBalances(2, Long.MAX_VALUE, Long.MIN_VALUE);
+        balances.setAccountBalances(Balances.MAXIMUM_ACCOUNT_TYPES - 1, -1, 0);
+        decoded.setAccountBalances(1, 1, 1);
+        buffer.clear();
+        MessageCodec.encodeResponse(1, BankStatus.of(BankStatus.SUCCESS), balances, buffer);
+        MessageCodec.encodeResponse(2, BankStatus.of(BankStatus.INVALID_PIN), new Balances(),
+                                    buffer);
+        buffer.flip();
+        int size = MessageCodec.responseSize(buffer);
+        Status result = MessageCodec.decodeResponse(buffer, decoded);
+        if (size != MessageCodec.RESPONSE_HEADER_SIZE + 3 * MessageCodec.ACCOUNT_BALANCES_SIZE
+            || ! result.isSuccess() || decoded.getTotalCents() != 123456
+            || decoded.isAccountReported(1) || decoded.getTotalCents(0) != 100
+            || decoded.getAvailableCents(0) != 50
+            || decoded.getTotalCents(2) != Long.MAX_VALUE
+            || decoded.getAvailableCents(2) != Long.MIN_VALUE
+            || decoded.getTotalCents(Balances.MAXIMUM_ACCOUNT_TYPES - 1) != -1
+            || ! decoded.isAccountReported(Balances.MAXIMUM_ACCOUNT_TYPES - 1))
+        {
+            System.out.println("Round trip changed the balances of accounts");
+            failures ++;
+        }
+        byte [] description = BankStatus.of(BankStatus.INVALID_PIN).getMessage()
+                                        .getBytes(StandardCharsets.UTF_8);
+        if (MessageCodec.responseSize(buffer)
+                != MessageCodec.RESPONSE_HEADER_SIZE + description.length
+            || ! MessageCodec.decodeResponse(buffer, decoded).isInvalidPIN()
+            || decoded.isAccountReported(0) || buffer.hasRemaining()
+            || decoded.getSessionToken() != Message.NO_SESSION_TOKEN)
+        {
+            System.out.println("Response after the balances of accounts read wrongly");
+            failures ++;
+        }
+
+        failures += verifySerialNumbers();
+        return failures;
+    }
+
+    /** Check that serial numbers taken by several threads at once, for
+     *  several ATMs, are all different and each gives back its ATM id
+     *
+     *  @return number of serial numbers that were wrong
+     */
+    private static int verifySerialNumbers()
+    {
+        final long [][] taken = new long[SERIAL_THREADS][SERIALS_PER_THREAD];
+        Thread [] threads = new Thread[SERIAL_THREADS];
+        for (int t = 0; t < SERIAL_THREADS; t ++)
+        {
+            final long [] mine = taken[t];
+            threads[t] = new Thread() {
+                public void run()
+                {
+                    for (int i = 0; i < mine.length; i ++)
+                        mine[i] = SerialNumbers.next(atmIDFor(i));
+                }
+            };
+            threads[t].start();
+        }
+
+        int failures = 0;
+        Set<Long> seen = new HashSet<Long>();
+        for (int t = 0; t < SERIAL_THREADS; t ++)
+        {
+            try
+            {
+                threads[t].join();
+            }
+            catch(InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+                return failures + 1;
+            }
+            for (int i = 0; i < SERIALS_PER_THREAD; i ++)
+            {
+                long serialNumber = taken[t][i];
+                if (! seen.add(serialNumber) || serialNumber <= 0
+                    || SerialNumbers.atmIDOf(serialNumber) != atmIDFor(i))
+                {
+                    System.out.println("Wrong serial number " + serialNumber);
+                    failures ++;
+                }
+            }
+        }
+        return failures;
+    }
+
+    /** ATM id the serial numbers are taken for, in turn
+     *
+     *  @param i how many the thread has taken
+     *  @return the ATM id
+     */
+    private static int atmIDFor(int i)
+    {
+        return i % 3 == 2 ? SerialNumbers.MAXIMUM_ATM_ID : i % 3;
+    }
+
+    /** See whether two messages have the same fields
+     *
+     *  @param expected one message
+     *  @param actual the other
+     *  @return true if every field is the same
+     */
+    private static boolean same(Message expected, Message actual)
+    {
+        return expected.getMessageCode() == actual.getMessageCode()
+            && expected.getCard().getNumber() == actual.getCard().getNumber()
+            && expected.getPIN() == actual.getPIN()
+            && expected.getSerialNumber() == actual.getSerialNumber()
+            && expected.getFromAccount() == actual.getFromAccount()
+            && expected.getToAccount() == actual.getToAccount()
+            && expected.getAmount().getCents() == actual.getAmount().getCents()
+            && expected.getSessionToken() == actual.getSessionToken();
+    }
+
+    /** Run one case and report the result
+     *
+     *  @param benchmarkCase the case
+     */
+    private static void run(Case benchmarkCase)
+    {
+        com.sun.management.ThreadMXBean threadBean =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long id = Thread.currentThread().getId();
+
+        long operations = 0;
+        long elapsed = 0;
+        long allocated = 0;
+        for (int iteration = - WARMUP_ITERATIONS; iteration < MEASURED_ITERATIONS; iteration ++)
+        {
+            long allocatedBefore = threadBean.getThreadAllocatedBytes(id);
+            long start = System.nanoTime();
+            long end = start + ITERATION_NANOS;
+            long count = 0;
+            long now;
+            do
+            {
+                benchmarkCase.run();
+                count += BATCH;
+                now = System.nanoTime();
+            }
+            while (now < end);
+
+            if (iteration >= 0)
+            {
+                operations += count;
+                elapsed += now - start;
+                allocated += threadBean.getThreadAllocatedBytes(id) - allocatedBefore;
+            }
+        }
+
+        System.out.println(String.format("%-10s %10.1f %10.1f", benchmarkCase.name,
+            (double) elapsed / operations, (double) allocated / operations));
+    }
+
+    /** One benchmark case - runs its operation BATCH times, on the messages
+     *  in MESSAGES
+     */
+    private static abstract class Case
+    {
+        Case(String name)
+        {
+            this.name = name;
+        }
+
+        abstract void run();
+
+        final String name;
+    }
+
+    /** Messages the cases work on - one of each type
+     */
+    private static final Message [] MESSAGES =
+    {
+        new Message(Message.WITHDRAWAL, new Card(1), 42, 1, 0, -1, new Money(50000)),
+        new Message(Message.INITIATE_DEPOSIT, new Card(2), 1234, 2, -1, 1, new Money(100000)),
+        new Message(Message.COMPLETE_DEPOSIT, new Card(3), 1234, 3, -1, 1, new Money(100000)),
+        new Message(Message.TRANSFER, new Card(4), 1234, 4, 0, 1, new Money(250000)),
+        new Message(Message.INQUIRY, new Card(5), 1234, 5, 1, -1, new Money(0))
+    };
+
+    /** The messages, encoded one after another
+     */
+    private static final ByteBuffer ENCODED =
+        ByteBuffer.allocateDirect(MESSAGES.length * MessageCodec.MESSAGE_SIZE);
+
+    static
+    {
+        for (int i = 0; i < MESSAGES.length; i ++)
+            MessageCodec.encode(MESSAGES[i], ENCODED);
+    }
+
+    /** Something for the cases to put their results in, so the JIT compiler
+     *  cannot throw the work away
+     */
+    private static long sink;
+
+    /** Threads taking serial numbers at once, and how many each takes - more
+     *  than a range each, so they go to the shared counter
+     */
+    private static final int SERIAL_THREADS = 4;
+    private static final int SERIALS_PER_THREAD = 10000;
+
+    /** Iterations run before measuring, and measured
+     */
+    private static final int WARMUP_ITERATIONS = 5;
+    private static final int MEASURED_ITERATIONS = 5;
+
+    /** Length of each iteration
+     */
+    private static final long ITERATION_NANOS = 200 * 1000 * 1000;
+
+    /** Operations performed between looks at the clock
+     */
+    private static final int BATCH = 1000;
+
+    /** The cases
+     */
+    private static final Case [] CASES =
+    {
+        new Case("encode") {
+            final ByteBuffer buffer = ByteBuffer.allocateDirect(MessageCodec.MESSAGE_SIZE);
+
+            void run()
+            {
+                for (int i = 0; i < BATCH; i ++)
+                {
+                    buffer.clear();
+                    MessageCodec.encode(MESSAGES[i % MESSAGES.length], buffer);
+                }
+                sink += buffer.getLong(MessageCodec.MESSAGE_SIZE - 8);
+            }
+        },
+        new Case("view") {
+            final MessageView view = new MessageView();
+
+            void run()
+            {
+                long total = 0;
+                for (int i = 0; i < BATCH; i ++)
+                {
+                    view.wrap(ENCODED, (i % MESSAGES.length) * MessageCodec.MESSAGE_SIZE);
+                    total += view.getMessageCode() + view.getCardNumber() + view.getPIN()
+                           + view.getSerialNumber() + view.getFromAccount()
+                           + view.getToAccount() + view.getAmountCents();
+                }
+                sink += total;
+            }
+        },
+        new Case("decode") {
+            void run()
+            {
+                long total = 0;
+                for (int i = 0; i < BATCH; i ++)
+                {
+                    ENCODED.position((i % MESSAGES.length) * MessageCodec.MESSAGE_SIZE);
+                    total += MessageCodec.decode(ENCODED).getSerialNumber();
+                }
+                sink += total;
+            }
+        },
+        new Case("toString") {
+            void run()
+            {
+                long total = 0;
+                for (int i = 0; i < BATCH; i ++)
+                    total += MESSAGES[i % MESSAGES.length].toString().length();
+                sink += total;
+            }
+        },
+        new Case("response") {
+            final ByteBuffer buffer = ByteBuffer.allocateDirect(1024);
+            final Balances balances = new Balances();
+            final Balances decoded = new Balances();
+
+            void run()
+            {
+                long total = 0;
+                for (int i = 0; i < BATCH; i ++)
+                {
+                    buffer.clear();
+                    MessageCodec.encodeResponse(i, BankStatus.of(i % 2 == 0
+                            ? BankStatus.SUCCESS : BankStatus.INSUFFICIENT_FUNDS),
+                        balances, buffer);
+                    buffer.flip();
+                    total += MessageCodec.decodeResponse(buffer, decoded).getCode();
+                }
+                sink += total;
+            }
+        }
+    };
+}
@@ -0,0 +1,310 @@
+/*
+ * ATM Example system - file MoneyFormatBenchmark.java
+ *
+ */
+
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.util.Random;
+
+import banking.Money;
+import banking.MoneyFormatter;
+
+/** Check and microbenchmarks for MoneyFormatter, against the way amounts were
+ *  formatted before it - repeated String concatenation, kept here as
+ *  concatenate().
+ *
+ *  verify - formats amounts around every boundary between groups of digits,
+ *  extreme and negative amounts and a million random ones every way
+ *  MoneyFormatter can, including into a CharBuffer with no array, and checks
+ *  that each gives exactly what concatenate() gives, and that
+ *  MoneyFormatter.length() agrees.  Run before the benchmarks too; a failure
+ *  is reported and ends the program with exit status 1.
+ *
+ *  benchmark - for each case, runs WARMUP_ITERATIONS iterations that are
+ *  thrown away, then MEASURED_ITERATIONS iterations whose time and heap
+ *  allocation are reported per amount:
+ *
+ *  concatenate - the old Money.toString()
+ *  toString - Money.toString(), now built with MoneyFormatter
+ *  builder - MoneyFormatter.format() into a reused StringBuilder
+ *  charBuffer - MoneyFormatter.format() into a reused CharBuffer
+ *  column - MoneyFormatter.formatColumn(), a report column of AMOUNTS at a
+ *  time, right aligned
+ *
+ *  Usage: java MoneyFormatBenchmark [verify | benchmark]
+ */
+
+public class MoneyFormatBenchmark
+{
+    public static void main(String[] args)
+    {
+        String mode = args.length > 0 ? args[0] : "benchmark";
+
+        int failures = verify();
+        System.out.println(failures == 0 ? "Format: ok"
+                                         : "Format: " + failures + " FAILURES");
+        if (failures > 0)
+            System.exit(1);
+        if (mode.equals("verify"))
+            return;
+
+        System.out.println(String.format("%-12s %10s %10s", "case", "ns/op", "B/op"));
+        for (int i = 0; i < CASES.length; i ++)
+            run(CASES[i]);
+    }
+
+    /** Check that MoneyFormatter gives the same as concatenate()
+     *
+     *  @return number of amounts it did not
+     */
+    private static int verify()
+    {
+        int failures = 0;
+        long [] boundaries = { 0, 1, 10, 100, 1000, 100000, 100000000, 1000000000000L,
+                               Long.MAX_VALUE / 10 };
+        for (int i = 0; i < boundaries.length; i ++)
+            for (long delta = -101; delta <= 101; delta ++)
+            {
+                failures += check(boundaries[i] + delta);
+                failures += check(- boundaries[i] + delta);
+            }
+        failures += check(Long.MAX_VALUE);
+        failures += check(Long.MIN_VALUE + 1);
+
+        Random random = new Random(42);
+        for (int i = 0; i < 1000000; i ++)
+            failures += check(random.nextLong() >> random.nextInt(64));
+
+        return failures;
+    }
+
+    /** Check one amount
+     *
+     *  @param cents the amount, in cents
+     *  @return 1 if MoneyFormatter got it wrong, else 0
+     */
+    private static int check(long cents)
+    {
+        String expected = concatenate(cents);
+
+        String built = MoneyFormatter.format(cents, new StringBuilder("|")).substring(1);
+        CharBuffer buffer = CharBuffer.allocate(MoneyFormatter.MAXIMUM_LENGTH + 2);
+        buffer.put('|');
+        MoneyFormatter.format(cents, buffer).put('|').flip();
+        String put = buffer.subSequence(1, buffer.limit() - 1).toString();
+        CharBuffer direct = ByteBuffer.allocateDirect(2 * MoneyFormatter.MAXIMUM_LENGTH)
+                                      .asCharBuffer();
+        String putDirect = MoneyFormatter.format(cents, direct).flip().toString();
+        String column = MoneyFormatter.formatColumn(new long[] { 7, cents }, 1, 1, 30,
+                                                    new StringBuilder()).toString();
+
+        if (expected.equals(built) && expected.equals(put) && expected.equals(putDirect)
+            && column.equals(String.format("%30s\n", expected))
+            && MoneyFormatter.length(cents) == expected.length()
+            && expected.equals(Money.ofCents(cents).toString()))
+            return 0;
+
+        System.out.println(cents + ": expected " + expected + ", got " + built + ", "
+                           + put + ", " + putDirect + ", " + column.trim() + ", length "
+                           + MoneyFormatter.length(cents));
+        return 1;
+    }
+
+    /** Format an amount the way Money.toString() did before MoneyFormatter
+     *
+     *  @param cents the amount, in cents
+     *  @return string representation of the amount
+     */
+    private static String concatenate(long cents)
+    {
+        String str = "Rp";
+        long value;
+        if (cents >= 100000000) {
+            value = cents / 100000000;
+            str = str + "." + value;
+        }
+        if (cents >= 100000) {
+            value = (cents % 100000000) / 100000;
+            if (!str.equals("Rp")) {
+                if (value >= 100) {
+                    str = str + "." + value;
+                } else if (value >= 10) {
+                    str = str + ".0" + value;
+                } else if (value > 0) {
+                    str = str + ".00" + value;
+                } else if (value == 0) {
+                    str = str + ".000";
+                }
+            } else {
+                str = str + "." + value;
+            }
+
+        }
+        if (cents >= 100) {
+            value = (cents % 100000) / 100;
+            if (value >= 100) {
+                str = str + "." + value;
+            } else if (value >= 10) {
+                str = str + ".0" + value;
+            } else if (value > 0) {
+                str = str + ".00" + value;
+            } else if (value == 0) {
+                str = str + ".000";
+            }
+        }
+
+        str = str + (cents % 100 >= 10 ? "." + cents % 100 : ".0" + cents % 100);
+
+        return str;
+    }
+
+    /** Run one case and report the result
+     *
+     *  @param benchmarkCase the case
+     */
+    private static void run(Case benchmarkCase)
+    {
+        com.sun.management.ThreadMXBean threadBean =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long id = Thread.currentThread().getId();
+
+        long operations = 0;
+        long elapsed = 0;
+        long allocated = 0;
+        for (int iteration = - WARMUP_ITERATIONS; iteration < MEASURED_ITERATIONS; iteration ++)
+        {
+            long allocatedBefore = threadBean.getThreadAllocatedBytes(id);
+            long start = System.nanoTime();
+            long end = start + ITERATION_NANOS;
+            long count = 0;
+            long now;
+            do
+            {
+                benchmarkCase.run();
+                count += AMOUNTS.length;
+                now = System.nanoTime();
+            }
+            while (now < end);
+
+            if (iteration >= 0)
+            {
+                operations += count;
+                elapsed += now - start;
+                allocated += threadBean.getThreadAllocatedBytes(id) - allocatedBefore;
+            }
+        }
+
+        System.out.println(String.format("%-12s %10.1f %10.1f", benchmarkCase.name,
+            (double) elapsed / operations, (double) allocated / operations));
+    }
+
+    /** One benchmark case - formats every amount in AMOUNTS once
+     */
+    private static abstract class Case
+    {
+        Case(String name)
+        {
+            this.name = name;
+        }
+
+        abstract void run();
+
+        final String name;
+    }
+
+    /** Amounts the cases format - the sizes a bank's reports and receipts
+     *  see, from cents to billions of rupiah
+     */
+    private static final long [] AMOUNTS = new long[1024];
+    private static final Money [] MONEY = new Money[AMOUNTS.length];
+
+    static
+    {
+        Random random = new Random(1);
+        for (int i = 0; i < AMOUNTS.length; i ++)
+        {
+            AMOUNTS[i] = (long) Math.pow(10, random.nextDouble() * 14);
+            MONEY[i] = Money.ofCents(AMOUNTS[i]);
+        }
+    }
+
+    /** Something for the cases to put their results in, so the JIT compiler
+     *  cannot throw the work away
+     */
+    private static long sink;
+
+    /** Iterations run before measuring, and measured
+     */
+    private static final int WARMUP_ITERATIONS = 5;
+    private static final int MEASURED_ITERATIONS = 5;
+
+    /** Length of each iteration
+     */
+    private static final long ITERATION_NANOS = 200 * 1000 * 1000;
+
+    /** The cases
+     */
+    private static final Case [] CASES =
+    {
+        new Case("concatenate") {
+            void run()
+            {
+                long total = 0;
+                for (int i = 0; i < AMOUNTS.length; i ++)
+                    total += concatenate(AMOUNTS[i]).length();
+                sink += total;
+            }
+        },
+        new Case("toString") {
+            void run()
+            {
+                long total = 0;
+                for (int i = 0; i < MONEY.length; i ++)
+                    total += MONEY[i].toString().length();
+                sink += total;
+            }
+        },
+        new Case("builder") {
+            final StringBuilder builder = new StringBuilder(MoneyFormatter.MAXIMUM_LENGTH);
+
+            void run()
+            {
+                long total = 0;
+                for (int i = 0; i < AMOUNTS.length; i ++)
+                {
+                    builder.setLength(0);
+                    total += MoneyFormatter.format(AMOUNTS[i], builder).length();
+                }
+                sink += total;
+            }
+        },
+        new Case("charBuffer") {
+            final CharBuffer buffer = CharBuffer.allocate(MoneyFormatter.MAXIMUM_LENGTH);
+
+            void run()
+            {
+                long total = 0;
+                for (int i = 0; i < AMOUNTS.length; i ++)
+                {
+                    buffer.clear();
+                    total += MoneyFormatter.format(AMOUNTS[i], buffer).position();
+                }
+                sink += total;
+            }
+        },
+        new Case("column") {
+            final StringBuilder builder =
+                new StringBuilder(AMOUNTS.length * (MoneyFormatter.MAXIMUM_LENGTH + 1));
+
+            void run()
+            {
+                builder.setLength(0);
+                sink += MoneyFormatter.formatColumn(AMOUNTS, 0, AMOUNTS.length,
+                                                    MoneyFormatter.MAXIMUM_LENGTH,
+                                                    builder).length();
+            }
+        }
+    };
+}
@@ -0,0 +1,221 @@
+/*
+ * ATM Example system - file BalanceCache.java
+ *
+ */
+
+package atm;
+
+import banking.Balances;
+import banking.Message;
+import banking.Status;
+
+/** The balances the bank has reported during one session, by account type,
+ *  so that an inquiry about an account already reported is answered without
+ *  a round trip to the bank.
+ *
+ *  Every successful response that reports balances is recorded: an inquiry
+ *  or a withdrawal reports the "from" account, the completion of a deposit
+ *  or a transfer the "to" account.  A transfer also changes its "from"
+ *  account, which it does not report, so that account is forgotten; and a
+ *  failed message that could have changed balances - including one whose
+ *  response never arrived - forgets the accounts it names.  An inquiry about
+ *  all accounts is answered from the cache once one has been reported in
+ *  this session and every account it named is still known.
+ *
+ *  Balances changed elsewhere during the session - by another ATM, say - are
+ *  not seen until the session ends.
+ */
+public class BalanceCache
+{
+    /** Answer a message from the cache, if it is an inquiry about balances
+     *  all known
+     *
+     *  @param message the message
+     *  @param balances (out) the balances the bank would report
+     *  @return true if the message has been answered, so it need not be sent
+     *          to the bank, with success
+     */
+    public boolean lookUp(Message message, Balances balances)
+    {
+        switch(message.getMessageCode())
+        {
+            case Message.INQUIRY:
+
+                int accountType = message.getFromAccount();
+                if (isKnown(accountType))
+                {
+                    balances.setBalances(totalCents[accountType], availableCents[accountType]);
+                    hits ++;
+                    return true;
+                }
+                break;
+
+            case Message.INQUIRY_ALL:
+
+                if (allAccounts != 0 && (known & allAccounts) == allAccounts)
+                {
+                    long total = 0;
+                    long available = 0;
+                    balances.clearAccountBalances();
+                    for (int i = 0; i < Balances.MAXIMUM_ACCOUNT_TYPES; i ++)
+                        if ((allAccounts & 1 << i) != 0)
+                        {
+                            balances.setAccountBalances(i, totalCents[i], availableCents[i]);
+                            total += totalCents[i];
+                            available += availableCents[i];
+                        }
+                    balances.setBalances(total, available);
+                    hits ++;
+                    return true;
+                }
+                break;
+
+            default:
+
+                return false;
+        }
+        misses ++;
+        return false;
+    }
+
+    /** Record what the bank's response to a message says about balances
+     *
+     *  @param message the message sent to the bank
+     *  @param status the status returned by the bank
+     *  @param reported the balances reported by the bank
+     */
+    public void update(Message message, Status status, Balances reported)
+    {
+        int code = message.getMessageCode();
+        if (! status.isSuccess())
+        {
+            if (code != Message.INQUIRY && code != Message.INQUIRY_ALL)
+            {
+                forget(message.getFromAccount());
+                forget(message.getToAccount());
+            }
+            return;
+        }
+
+        switch(code)
+        {
+            case Message.INQUIRY:
+            case Message.WITHDRAWAL:
+
+                remember(message.getFromAccount(), reported);
+                break;
+
+            case Message.COMPLETE_DEPOSIT:
+
+                remember(message.getToAccount(), reported);
+                break;
+
+            case Message.TRANSFER:
+
+                forget(message.getFromAccount());
+                remember(message.getToAccount(), reported);
+                break;
+
+            case Message.INQUIRY_ALL:
+
+                allAccounts = 0;
+                for (int i = 0; i < Balances.MAXIMUM_ACCOUNT_TYPES; i ++)
+                    if (reported.isAccountReported(i))
+                    {
+                        store(i, reported.getTotalCents(i), reported.getAvailableCents(i));
+                        allAccounts |= 1 << i;
+                    }
+                break;
+        }
+    }
+
+    /** Accessor for the number of inquiries answered from the cache
+     *
+     *  @return the number of inquiries
+     */
+    public int getHits()
+    {
+        return hits;
+    }
+
+    /** Accessor for the number of inquiries that had to be sent to the bank
+     *
+     *  @return the number of inquiries
+     */
+    public int getMisses()
+    {
+        return misses;
+    }
+
+    /** See whether the balances of an account are known
+     *
+     *  @param accountType the type of the account
+     *  @return true if they are
+     */
+    private boolean isKnown(int accountType)
+    {
+        return accountType >= 0 && accountType < Balances.MAXIMUM_ACCOUNT_TYPES
+               && (known & 1 << accountType) != 0;
+    }
+
+    /** Record the balances reported for an account, if any were
+     *
+     *  @param accountType the type of the account
+     *  @param reported the balances reported by the bank
+     */
+    private void remember(int accountType, Balances reported)
+    {
+        if (! reported.isReported())
+            forget(accountType);
+        else if (accountType >= 0 && accountType < Balances.MAXIMUM_ACCOUNT_TYPES)
+            store(accountType, reported.getTotalCents(), reported.getAvailableCents());
+    }
+
+    /** Record the balances of an account
+     *
+     *  @param accountType the type of the account - known to be in range
+     *  @param total the total balance, in cents
+     *  @param available the available balance, in cents
+     */
+    private void store(int accountType, long total, long available)
+    {
+        if (totalCents == null)
+        {
+            totalCents = new long[Balances.MAXIMUM_ACCOUNT_TYPES];
+            availableCents = new long[Balances.MAXIMUM_ACCOUNT_TYPES];
+        }
+        totalCents[accountType] = total;
+        availableCents[accountType] = available;
+        known |= 1 << accountType;
+    }
+
+    /** Forget the balances of an account
+     *
+     *  @param accountType the type of the account, or -1 for none
+     */
+    private void forget(int accountType)
+    {
+        if (accountType >= 0 && accountType < Balances.MAXIMUM_ACCOUNT_TYPES)
+            known &= ~ (1 << accountType);
+    }
+
+    /** Balances of each account, in cents, by account type - made the first
+     *  time one is recorded
+     */
+    private long [] totalCents;
+    private long [] availableCents;
+
+    /** One bit for each account type whose balances are known
+     */
+    private int known;
+
+    /** One bit for each of the card's accounts, as the last inquiry about
+     *  all accounts reported them - 0 if there has been none
+     */
+    private int allAccounts;
+
+    /** Inquiries answered from the cache, and sent to the bank
+     */
+    private int hits;
+    private int misses;
+}
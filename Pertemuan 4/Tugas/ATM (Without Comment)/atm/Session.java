@@ -1 +1 @@
-/* * ATM Example system - file Session.java * * copyright (c) 2001 - Russell C. Bjork * */ package atm;import banking.Card;import banking.Status;import banking.Receipt;import atm.physical.CustomerConsole;import atm.transaction.Transaction;/** Representation for one ATM session serving a single customer. */public class Session{    /** Constructor     *     *  @param atm the ATM on which the session is performed     */    public Session(ATM atm)    {        this.atm = atm;                state = READING_CARD_STATE;    }    /** Perform the Session Use Case     */    public void performSession()    {        Card card = null;        Transaction currentTransaction = null;                while (state != FINAL_STATE)        {            switch(state)            {                case READING_CARD_STATE:                                                    card = atm.getCardReader().readCard();                                        if (card != null)                        state = READING_PIN_STATE;                    else                    {                        atm.getCustomerConsole().display("Tidak dapat membaca kartu");                        state = EJECTING_CARD_STATE;                    }                    break;                                    case READING_PIN_STATE:                                    try                    {                        pin = atm.getCustomerConsole().readPIN(                            "Masukan PIN anda\n" +                            "Lalu tekan ENTER");                        state = CHOOSING_TRANSACTION_STATE;                    }                    catch(CustomerConsole.Cancelled e)                    {                        state = EJECTING_CARD_STATE;                    }                    break;                                case CHOOSING_TRANSACTION_STATE:                                    try                    {                        currentTransaction =                             Transaction.makeTransaction(atm, this, card, pin);                        state = PERFORMING_TRANSACTION_STATE;                    }                    catch(CustomerConsole.Cancelled e)                    {                        state = EJECTING_CARD_STATE;                    }                    break;                                    case PERFORMING_TRANSACTION_STATE:                                    try                    {                        boolean doAgain =                             currentTransaction.performTransaction();                        if (doAgain)                            state = CHOOSING_TRANSACTION_STATE;                        else                            state = EJECTING_CARD_STATE;                    }                    catch(Transaction.CardRetained e)                    {                        state = FINAL_STATE;                    }                    break;                                    case EJECTING_CARD_STATE:                                    atm.getCardReader().ejectCard();                    state = FINAL_STATE;                    break;            }        }    }        /** Change the pin recorded for the customer (if invalid pin extension     *  was performed by a transaction     *     *  @param pin the newly entered pin     */    public void setPIN(int pin)    {        this.pin = pin;    }        // Instance variables    /** The ATM on which the session is performed     */    private ATM atm;        /** The PIN entered (or re-entered) by the customer     */    private int pin;    /** The current state of the session     */    private int state;        // Possible values for state        /** Reading the customer's card     */    private static final int READING_CARD_STATE = 1;        /** Asking the customer to enter a PIN     */    private static final int READING_PIN_STATE = 2;        /** Asking the customer to choose a transaction type     */    private static final int CHOOSING_TRANSACTION_STATE = 3;        /** Peforming a transaction     */    private static final int PERFORMING_TRANSACTION_STATE = 4;        /** Ejecting the customer's card     */    private static final int EJECTING_CARD_STATE = 5;        /** Session finished     */    private static final int FINAL_STATE = 6;    }
\ No newline at end of file
+/* * ATM Example system - file Session.java * * copyright (c) 2001 - Russell C. Bjork * */ package atm;import java.util.concurrent.CompletableFuture;import banking.Balances;import banking.Card;import banking.Message;import banking.Money;import banking.SerialNumbers;import banking.Status;import banking.Receipt;import atm.physical.CustomerConsole;import atm.transaction.Transaction;/** Representation for one ATM session serving a single customer. * *  As soon as the customer has entered the PIN, it is sent to the bank to be *  checked on its own (a Message.VERIFY_PIN), without waiting for the *  response; the check crosses the network while the customer chooses a *  transaction and its specifics.  The first transaction then uses the *  result: with an invalid PIN it goes straight to the Invalid PIN Extension *  rather than sending the whole transaction to the bank to be turned down. *  The bank still checks the PIN of every transaction, so a check that fails *  for any other reason is simply ignored.  If the ATM is set not to check *  the PIN early (see ATM.setVerifyPIN()), the PIN is only checked with the *  transactions. * *  The first message of a session asks the bank for a session token; once *  the bank has checked the PIN and issued one, every later message of the *  session presents it, and the bank authorizes the message by looking the *  token up rather than checking the PIN again. */public class Session{    /** Constructor     *     *  @param atm the ATM on which the session is performed     */    public Session(ATM atm)    {        this.atm = atm;        verifyPINEarly = atm.getVerifyPIN();                state = READING_CARD_STATE;    }    /** Perform the Session Use Case     */    public void performSession()    {        Card card = null;        Transaction currentTransaction = null;                while (state != FINAL_STATE)        {            switch(state)            {                case READING_CARD_STATE:                                                    card = atm.getCardReader().readCard();                                        if (card != null)                        state = READING_PIN_STATE;                    else                    {                        atm.getCustomerConsole().display("Tidak dapat membaca kartu");                        state = EJECTING_CARD_STATE;                    }                    break;                                    case READING_PIN_STATE:                                    try                    {                        pin = atm.getCustomerConsole().readPIN(                            "Masukan PIN anda\n" +                            "Lalu tekan ENTER");                        if (verifyPINEarly)                            verifyPIN(card);                        state = CHOOSING_TRANSACTION_STATE;                    }                    catch(CustomerConsole.Cancelled e)                    {                        state = EJECTING_CARD_STATE;                    }                    break;                                case CHOOSING_TRANSACTION_STATE:                                    try                    {                        currentTransaction =                             Transaction.makeTransaction(atm, this, card, pin);                        state = PERFORMING_TRANSACTION_STATE;                    }                    catch(CustomerConsole.Cancelled e)                    {                        state = EJECTING_CARD_STATE;                    }                    break;                                    case PERFORMING_TRANSACTION_STATE:                                    try                    {                        boolean doAgain =                             currentTransaction.performTransaction();                        if (doAgain)                            state = CHOOSING_TRANSACTION_STATE;                        else                            state = EJECTING_CARD_STATE;                    }                    catch(Transaction.CardRetained e)                    {                        state = FINAL_STATE;                    }                    break;                                    case EJECTING_CARD_STATE:                                    // The customer may leave before the check of the PIN                    // is ever used                                        if (pinVerification != null)                    {                        pinVerification.cancel(false);                        pinVerification = null;                        pinVerificationBalances = null;                    }                    atm.getCardReader().ejectCard();                    state = FINAL_STATE;                    break;            }        }                if (balanceCache.getHits() + balanceCache.getMisses() > 0)            atm.getLog().logBalanceCache(card, balanceCache.getHits(),                                         balanceCache.getMisses());    }        /** Change the pin recorded for the customer (if invalid pin extension     *  was performed by a transaction     *     *  @param pin the newly entered pin     */    public void setPIN(int pin)    {        this.pin = pin;        pinVerification = null;        pinVerified = null;    }        /** Accessor for the bank's check of the PIN sent when it was entered,     *  waiting for the response if it has not yet come back     *     *  @return status code returned by bank for the check, or null if the     *          PIN in use has not been checked on its own, or the check     *          failed without a response     */    public Status getPINVerification()    {        if (pinVerification != null)        {            try            {                pinVerified = pinVerification.join();                recordSessionToken(pinVerificationBalances);            }            catch(RuntimeException e)            {                // The transaction itself still has its PIN checked                                pinVerified = null;            }            pinVerification = null;            pinVerificationBalances = null;        }        return pinVerified;    }        /** Accessor for the session token to present to the bank with the     *  session's messages     *     *  @return the token the bank issued, or Message.NEW_SESSION_TOKEN if it     *          has issued none yet     */    public long getSessionToken()    {        return sessionToken;    }        /** Record the session token the bank issued in a response, if it issued     *  one     *     *  @param reported the balances reported by the bank     */    public void recordSessionToken(Balances reported)    {        if (reported.getSessionToken() != Message.NO_SESSION_TOKEN)            sessionToken = reported.getSessionToken();    }        /** Send the PIN just entered to the bank to be checked, without waiting     *  for the response     *     *  @param card the customer's card     */    private void verifyPIN(Card card)    {        Message message = new Message(Message.VERIFY_PIN, card, pin,                                      SerialNumbers.next(atm.getID()), -1, -1, Money.ZERO);        message.setSessionToken(sessionToken);        pinVerificationBalances = new Balances();        pinVerification = atm.getNetworkToBank().sendMessageAsync(message,                                                                  pinVerificationBalances);    }        /** Accessor for the balances the bank has reported during the session     *     *  @return the cache of balances     */    public BalanceCache getBalanceCache()    {        return balanceCache;    }        // Instance variables    /** The ATM on which the session is performed     */    private ATM atm;        /** The PIN entered (or re-entered) by the customer     */    private int pin;        /** Whether to send the PIN to be checked as soon as it is entered - the     *  ATM's setting when the session began     */    private final boolean verifyPINEarly;        /** Balances the bank has reported during the session     */    private final BalanceCache balanceCache = new BalanceCache();        /** The bank's check of the PIN in use, sent when it was entered, and the     *  balances its response is reported in - null if there has been none,     *  or its response has been seen     */    private CompletableFuture<Status> pinVerification;    private Balances pinVerificationBalances;        /** Status returned by the bank for the check of the PIN in use - null if     *  there has been none, or its response has not been seen     */    private Status pinVerified;        /** Session token to present to the bank     */    private long sessionToken = Message.NEW_SESSION_TOKEN;    /** The current state of the session     */    private int state;        // Possible values for state        /** Reading the customer's card     */    private static final int READING_CARD_STATE = 1;        /** Asking the customer to enter a PIN     */    private static final int READING_PIN_STATE = 2;        /** Asking the customer to choose a transaction type     */    private static final int CHOOSING_TRANSACTION_STATE = 3;        /** Peforming a transaction     */    private static final int PERFORMING_TRANSACTION_STATE = 4;        /** Ejecting the customer's card     */    private static final int EJECTING_CARD_STATE = 5;        /** Session finished     */    private static final int FINAL_STATE = 6;    }
\ No newline at end of file
@@ -0,0 +1,596 @@
+/*
+ * ATM Example system - file BankConnectionPool.java
+ *
+ */
+
+package atm.physical;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+import banking.Balances;
+import banking.Message;
+import banking.MessageCodec;
+import banking.Status;
+import simulation.Simulation;
+
+/** A few long-lived TCP connections to a bank server, shared by the ATMs in
+ *  this process.  Each message is sent on one of the connections as a request
+ *  with a tag of its own, and the response with the same tag is handed to the
+ *  receiver given with the message, so any number of ATMs can have any
+ *  number of messages waiting on the same connection.
+ *
+ *  Messages are not written one at a time.  A message is queued on its
+ *  connection, and whichever sending thread finds the connection free writes
+ *  everything queued on it at that time, so under load many messages go out
+ *  in each write.  A thread for each connection receives the responses.
+ *
+ *  A thread for the pool checks the connections every HEALTH_CHECK_INTERVAL.
+ *  A connection on which a response has been awaited for longer than the
+ *  response timeout (-Datm.bankTimeout, in milliseconds, default
+ *  RESPONSE_TIMEOUT) is closed.  When a connection is closed, by either end,
+ *  every message waiting on it fails with NetworkToBank.NETWORK_FAILURE,
+ *  and new messages go to the other connections; the pool tries to connect
+ *  again after a delay that doubles with every failed attempt, from
+ *  INITIAL_BACKOFF up to MAXIMUM_BACKOFF.  While no connection is open,
+ *  messages fail at once.
+ */
+public class BankConnectionPool
+{
+    /** Get the pool shared by everything in this process that talks to a
+     *  bank server, creating it if need be.  Each call must be matched by a
+     *  call to release()
+     *
+     *  @param address address of the bank server
+     *  @param size number of connections to open - used only if the pool is
+     *         created
+     *  @return the pool
+     */
+    public static BankConnectionPool share(InetSocketAddress address, int size)
+    {
+        synchronized(sharedPools)
+        {
+            BankConnectionPool pool = sharedPools.get(address);
+            if (pool == null)
+            {
+                pool = new BankConnectionPool(address, size);
+                pool.shared = true;
+                sharedPools.put(address, pool);
+            }
+            else
+                pool.users ++;
+            return pool;
+        }
+    }
+
+    /** Constructor - opens a pool for the use of one user only, who must
+     *  call release() when done with it
+     *
+     *  @param address address of the bank server
+     *  @param size number of connections to open
+     */
+    public BankConnectionPool(InetSocketAddress address, int size)
+    {
+        this.address = address;
+        connections = new Connection[size];
+        for (int i = 0; i < size; i ++)
+        {
+            connections[i] = new Connection();
+            connections[i].connect();
+        }
+
+        timeout = Integer.getInteger("atm.bankTimeout", RESPONSE_TIMEOUT).intValue()
+                  * 1000000L;
+        healthCheck = new Thread("Bank connections to " + address) {
+            public void run()
+            {
+                checkHealth();
+            }
+        };
+        healthCheck.setDaemon(true);
+        healthCheck.start();
+    }
+
+    /** Finish using the pool.  When its last user does, every connection is
+     *  closed
+     */
+    public void release()
+    {
+        synchronized(sharedPools)
+        {
+            if (-- users > 0)
+                return;
+            if (shared)
+                sharedPools.remove(address);
+        }
+
+        closed = true;
+        healthCheck.interrupt();
+        for (int i = 0; i < connections.length; i ++)
+            connections[i].disconnect(connections[i].channel, null);
+    }
+
+    /** Send a message to the bank.  The response is given to the receiver
+     *  on a thread of the pool's, or, if the message cannot be sent, to the
+     *  receiver with NetworkToBank.NETWORK_FAILURE, possibly before this
+     *  method returns
+     *
+     *  @param atmID id of the ATM sending the message
+     *  @param message the message to send - must not be changed until the
+     *         response has been received
+     *  @param receiver receiver for the response
+     */
+    public void send(int atmID, Message message, Simulation.Receiver receiver)
+    {
+        // Go round the connections, skipping any that are closed
+
+        int first = nextConnection.getAndIncrement();
+        for (int i = 0; i < connections.length; i ++)
+        {
+            Connection connection =
+                connections[Math.floorMod(first + i, connections.length)];
+            if (connection.channel != null)
+            {
+                connection.send(new Request(atmID, message, receiver));
+                return;
+            }
+        }
+
+        receiver.receive(message.getSerialNumber(), NetworkToBank.NETWORK_FAILURE,
+                         new Balances());
+    }
+
+    /** Accessor for number of connections open in this pool
+     *
+     *  @return the number of connections
+     */
+    public int getConnectionsOpen()
+    {
+        int open = 0;
+        for (int i = 0; i < connections.length; i ++)
+            if (connections[i].channel != null)
+                open ++;
+        return open;
+    }
+
+    /** Accessor for number of connections to bank servers open in all pools
+     *  in this process
+     *
+     *  @return the number of connections
+     */
+    public static int getAllConnectionsOpen()
+    {
+        return allConnectionsOpen.get();
+    }
+
+    /** Accessor for number of messages written to bank servers by all pools
+     *  in this process
+     *
+     *  @return the number of messages
+     */
+    public static long getAllMessagesWritten()
+    {
+        return allMessagesWritten.get();
+    }
+
+    /** Accessor for number of writes made to bank servers by all pools in
+     *  this process - each write may carry many messages
+     *
+     *  @return the number of writes
+     */
+    public static long getAllWrites()
+    {
+        return allWrites.get();
+    }
+
+    /** Check the connections until the pool is released - close any whose
+     *  responses are overdue, and try to reopen any closed ones whose time
+     *  has come
+     */
+    private void checkHealth()
+    {
+        while (! closed)
+        {
+            try
+            {
+                Thread.sleep(HEALTH_CHECK_INTERVAL);
+            }
+            catch(InterruptedException e)
+            {
+                return;
+            }
+
+            long now = System.nanoTime();
+            for (int i = 0; i < connections.length && ! closed; i ++)
+            {
+                Connection connection = connections[i];
+                SocketChannel channel = connection.channel;
+                if (channel != null)
+                {
+                    if (now - connection.oldestRequest(now) > timeout)
+                        connection.disconnect(channel, new IOException(
+                            "No response from bank in " + timeout / 1000000 + " ms"));
+                }
+                else if (now - connection.nextAttempt >= 0)
+                    connection.connect();
+            }
+        }
+    }
+
+    /** A message sent by the pool that is waiting for a response
+     */
+    private static class Request
+    {
+        Request(int atmID, Message message, Simulation.Receiver receiver)
+        {
+            this.atmID = atmID;
+            this.message = message;
+            this.receiver = receiver;
+            this.sent = System.nanoTime();
+        }
+
+        /** Give the receiver the response to the message
+         *
+         *  @param status status code returned by bank
+         *  @param balances balances reported by bank
+         */
+        void receive(Status status, Balances balances)
+        {
+            receiver.receive(message.getSerialNumber(), status, balances);
+        }
+
+        final int atmID;
+        final Message message;
+        final Simulation.Receiver receiver;
+        final long sent;
+        int tag;
+    }
+
+    /** One connection to the bank server, and the requests sent on it
+     */
+    private class Connection
+    {
+        /** Queue a request, then write what is queued unless another thread
+         *  already is
+         *
+         *  @param request the request
+         */
+        void send(Request request)
+        {
+            request.tag = nextTag.incrementAndGet();
+            waiting.put(request.tag, request);
+            queued.add(request);
+            flush();
+        }
+
+        /** Write every request queued, in as few writes as will hold them.
+         *  If another thread is writing, it will write them instead
+         */
+        private void flush()
+        {
+            while (! queued.isEmpty() && writeLock.tryLock())
+            {
+                SocketChannel writing = channel;
+                try
+                {
+                    Request request;
+                    while ((request = queued.poll()) != null)
+                    {
+                        if (waiting.get(request.tag) != request)
+                            continue;   // Already failed
+                        if (writing == null)
+                        {
+                            fail(request);
+                            continue;
+                        }
+                        if (writeBuffer.remaining() < MessageCodec.REQUEST_SIZE)
+                            write(writing);
+                        MessageCodec.encodeRequest(request.tag, request.atmID, request.message,
+                                                   writeBuffer);
+                    }
+                    if (writing != null)
+                        write(writing);
+                }
+                catch(IOException e)
+                {
+                    disconnect(writing, e);
+                }
+                finally
+                {
+                    writeBuffer.clear();
+                    writeLock.unlock();
+                }
+            }
+        }
+
+        /** Write the contents of the write buffer, and empty it
+         *
+         *  @param writing the channel to write to
+         */
+        private void write(SocketChannel writing) throws IOException
+        {
+            writeBuffer.flip();
+            allMessagesWritten.addAndGet(writeBuffer.remaining() / MessageCodec.REQUEST_SIZE);
+            allWrites.incrementAndGet();
+            while (writeBuffer.hasRemaining())
+                writing.write(writeBuffer);
+            writeBuffer.clear();
+        }
+
+        /** Receive the responses on a channel until it is closed
+         *
+         *  @param reading the channel
+         */
+        private void receiveResponses(SocketChannel reading)
+        {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(RECEIVE_BUFFER_SIZE);
+            IOException failure = new IOException("Connection closed by bank");
+            try
+            {
+                while (reading.read(buffer) >= 0)
+                {
+                    buffer.flip();
+                    int size;
+                    while ((size = MessageCodec.responseSize(buffer)) >= 0
+                           && buffer.remaining() >= size)
+                    {
+                        Request request = waiting.remove(buffer.getInt(buffer.position()));
+                        Balances reported = new Balances();
+                        Status status = MessageCodec.decodeResponse(buffer, reported);
+                        if (request != null)
+                            request.receive(status, reported);
+                    }
+                    buffer.compact();
+                }
+            }
+            catch(IOException e)
+            {
+                failure = e;
+            }
+            disconnect(reading, failure);
+        }
+
+        /** Try to open the connection.  If that fails, schedule the next try
+         */
+        void connect()
+        {
+            SocketChannel opened = null;
+            try
+            {
+                opened = SocketChannel.open();
+                opened.setOption(StandardSocketOptions.TCP_NODELAY, Boolean.TRUE);
+                opened.setOption(StandardSocketOptions.SO_KEEPALIVE, Boolean.TRUE);
+                opened.socket().connect(address, CONNECT_TIMEOUT);
+            }
+            catch(IOException e)
+            {
+                if (opened != null)
+                {
+                    try
+                    {
+                        opened.close();
+                    }
+                    catch(IOException closing)
+                    { }
+                }
+                backoff = backoff == 0 ? INITIAL_BACKOFF : Math.min(backoff * 2, MAXIMUM_BACKOFF);
+                nextAttempt = System.nanoTime()
+                    + (backoff / 2 + ThreadLocalRandom.current().nextLong(backoff / 2 + 1)) * 1000000;
+                if (! closed)
+                    System.err.println("Bank " + address + " tidak dapat dihubungi: "
+                                       + e.getMessage() + " - dicoba lagi dalam "
+                                       + backoff + " ms");
+                return;
+            }
+            backoff = 0;
+
+            writeLock.lock();
+            try
+            {
+                channel = opened;
+            }
+            finally
+            {
+                writeLock.unlock();
+            }
+            allConnectionsOpen.incrementAndGet();
+            if (closed)
+            {
+                disconnect(opened, null);   // Released while connecting
+                return;
+            }
+
+            final SocketChannel reading = opened;
+            Thread responses = new Thread("Responses from bank " + address) {
+                public void run()
+                {
+                    receiveResponses(reading);
+                }
+            };
+            responses.setDaemon(true);
+            responses.start();
+        }
+
+        /** Close a channel, if it is still this connection's, and fail every
+         *  request waiting on it
+         *
+         *  @param closing the channel to close - may be null
+         *  @param reason why the channel is being closed - null if the pool
+         *         is being released
+         */
+        void disconnect(SocketChannel closing, IOException reason)
+        {
+            if (closing == null)
+                return;
+
+            // Closing first makes any write in progress give up, so the lock
+            // can be had
+
+            try
+            {
+                closing.close();
+            }
+            catch(IOException e)
+            { }
+
+            writeLock.lock();
+            try
+            {
+                if (channel != closing)
+                    return;
+                channel = null;
+                nextAttempt = System.nanoTime();
+            }
+            finally
+            {
+                writeLock.unlock();
+            }
+            allConnectionsOpen.decrementAndGet();
+            if (reason != null && ! closed)
+                System.err.println("Bank " + address + ": " + reason.getMessage());
+
+            for (Request request : waiting.values())
+                fail(request);
+        }
+
+        /** Fail a request with NETWORK_FAILURE, unless it has already had
+         *  its response
+         *
+         *  @param request the request
+         */
+        private void fail(Request request)
+        {
+            if (waiting.remove(request.tag, request))
+                request.receive(NetworkToBank.NETWORK_FAILURE, new Balances());
+        }
+
+        /** Find out when the oldest request still waiting was sent
+         *
+         *  @param now the time now
+         *  @return the time the oldest request was sent, or now if none is
+         *          waiting
+         */
+        long oldestRequest(long now)
+        {
+            long oldest = now;
+            for (Request request : waiting.values())
+                if (request.sent - oldest < 0)
+                    oldest = request.sent;
+            return oldest;
+        }
+
+        /** The channel to the bank server - null while the connection is
+         *  closed.  Changed only while writeLock is held
+         */
+        volatile SocketChannel channel;
+
+        /** Requests sent and waiting for a response, by tag
+         */
+        private final Map<Integer, Request> waiting = new ConcurrentHashMap<Integer, Request>();
+
+        /** Requests sent but not yet written
+         */
+        private final Queue<Request> queued = new ConcurrentLinkedQueue<Request>();
+
+        /** Held while requests are written, or the channel changed
+         */
+        private final ReentrantLock writeLock = new ReentrantLock();
+
+        /** Buffer requests are encoded in before they are written
+         */
+        private final ByteBuffer writeBuffer = ByteBuffer.allocateDirect(WRITE_BUFFER_SIZE);
+
+        /** Tag given to the last request sent
+         */
+        private final AtomicInteger nextTag = new AtomicInteger();
+
+        /** Time of the next try to open the connection while it is closed
+         */
+        volatile long nextAttempt;
+
+        /** Delay in milliseconds after the last failed try to open the
+         *  connection - 0 if the last try succeeded.  Used only by the
+         *  thread opening connections
+         */
+        private long backoff;
+    }
+
+    /** Address of the bank server
+     */
+    private final InetSocketAddress address;
+
+    /** The connections
+     */
+    private final Connection [] connections;
+
+    /** Used to go round the connections
+     */
+    private final AtomicInteger nextConnection = new AtomicInteger();
+
+    /** Time in nanoseconds after which a response is overdue
+     */
+    private final long timeout;
+
+    /** Thread checking the health of the connections
+     */
+    private final Thread healthCheck;
+
+    /** Number of users of the pool.  Guarded by the lock on sharedPools
+     */
+    private int users = 1;
+
+    /** True if the pool is the one shared in this process for its address
+     */
+    private boolean shared;
+
+    /** Becomes true when the pool is released by its last user
+     */
+    private volatile boolean closed;
+
+    /** Pools shared in this process, by address of the bank server
+     */
+    private static final Map<InetSocketAddress, BankConnectionPool> sharedPools =
+        new HashMap<InetSocketAddress, BankConnectionPool>();
+
+    /** Totals for all pools
+     */
+    private static final AtomicInteger allConnectionsOpen = new AtomicInteger();
+    private static final AtomicLong allMessagesWritten = new AtomicLong();
+    private static final AtomicLong allWrites = new AtomicLong();
+
+    /** Time in milliseconds between checks of the connections
+     */
+    private static final int HEALTH_CHECK_INTERVAL = 250;
+
+    /** Time in milliseconds for which a response is awaited, unless told
+     *  otherwise
+     */
+    private static final int RESPONSE_TIMEOUT = 10000;
+
+    /** Time in milliseconds allowed for opening a connection
+     */
+    private static final int CONNECT_TIMEOUT = 2000;
+
+    /** Delay in milliseconds before the first try to reopen a connection,
+     *  and the longest delay between tries
+     */
+    private static final long INITIAL_BACKOFF = 100;
+    private static final long MAXIMUM_BACKOFF = 10000;
+
+    /** Size of the buffers requests are written from and responses received in
+     */
+    private static final int WRITE_BUFFER_SIZE = 64 * 1024;
+    private static final int RECEIVE_BUFFER_SIZE = 64 * 1024;
+}
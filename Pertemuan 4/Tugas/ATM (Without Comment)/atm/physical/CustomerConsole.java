@@ -1 +1 @@
-/* * ATM Example system - file CustomerConsole.java    * * copyright (c) 2001 - Russell C. Bjork * */ package atm.physical;import banking.Money;import banking.Status;import simulation.Simulation;/** Manager for the ATM's customer console.  In a real ATM, this would  *  manage a physical device; in this simulation,  it uses classes  *  in package simulation to simulate the device (actually two separate *  devices - the display and the keyboard.) */ public class CustomerConsole{    /** Constructor     */    public CustomerConsole()    {    }        /** Display a message to the customer     *     *  @param message the message to display     */    public void display(String message)    {        Simulation.getInstance().clearDisplay();        Simulation.getInstance().display(message);    }        /** Read a PIN entered by the customer (echoed as asterisks)     *     *  @param prompt the message to display prompting the customer to enter PIN     *  @return the PIN that was entered     *  @exception Cancelled if customer presses the CANCEL key before pressing ENTER     */    public int readPIN(String prompt) throws Cancelled    {        Simulation.getInstance().clearDisplay();        Simulation.getInstance().display(prompt);        Simulation.getInstance().display("");                String input = Simulation.getInstance().readInput(Simulation.PIN_MODE, 0);                Simulation.getInstance().clearDisplay();                if (input == null)            throw new Cancelled();        else            return Integer.parseInt(input);    }        /** Display a menu of options and return choice made by customer     *     *  @param prompt message to display before the list of options     *  @param menu the options     *  @return the number of the option chosen (0 .. # of options - 1)     *  Note: the options are numbered 1 .. # of options when displayed for the     *  customer - but the menu array indices and the final result returned are in     *  the range 0 .. # of options - 1     *     *  @exception Cancelled if customer presses the CANCEL key before choosing option     */    public synchronized int readMenuChoice(String prompt, String[] menu) throws Cancelled    {        Simulation.getInstance().clearDisplay();        Simulation.getInstance().display(prompt);        for (int i = 0; i < menu.length; i ++)            Simulation.getInstance().display((i+1) + ") " + menu[i]);        String input =             Simulation.getInstance().readInput(Simulation.MENU_MODE, menu.length);                    Simulation.getInstance().clearDisplay();                if (input == null)            throw new Cancelled();        else            return Integer.parseInt(input) - 1;    }        /** Read a money amount entered by the customer     *     *  @param prompt the message to display prompting the customer to enter amount     *  @return the amount entered by the customer     *  @exception Cancelled if customer presses the CANCEL key before pressing ENTER     */    public synchronized Money readAmount(String prompt) throws Cancelled    {        Simulation.getInstance().clearDisplay();        Simulation.getInstance().display(prompt);        Simulation.getInstance().display("");                String input = Simulation.getInstance().readInput(Simulation.AMOUNT_MODE, 0);                Simulation.getInstance().clearDisplay();                if (input == null)            throw new Cancelled();        else        {            int dollars = Integer.parseInt(input) / 100;            int cents = Integer.parseInt(input) % 100;            return new Money(dollars, cents);        }    }        /** Exception thrown when the user presses the cancel key while the ATM is     *  waiting for some action     */    public static class Cancelled extends Exception    {        /** Constructor         */        public Cancelled()        {            super("Transaksi dibatalkan oleh nasabah");        }    }}
\ No newline at end of file
+/* * ATM Example system - file CustomerConsole.java    * * copyright (c) 2001 - Russell C. Bjork * */ package atm.physical;import java.util.concurrent.locks.ReentrantLock;import atm.ATM;import banking.Money;import banking.Status;import simulation.Simulation;/** Manager for the ATM's customer console.  In a real ATM, this would  *  manage a physical device; in this simulation,  it uses classes  *  in package simulation to simulate the device (actually two separate *  devices - the display and the keyboard.) * *  Reading a menu choice or an amount holds a lock for as long as the *  customer takes to answer.  It is a ReentrantLock rather than the console's *  monitor, so a virtual thread waiting for the customer does not pin its *  carrier. */ public class CustomerConsole{    /** Constructor     *     *  @param atm the ATM this console is part of     */    public CustomerConsole(ATM atm)    {        this.atm = atm;    }        /** Display a message to the customer     *     *  @param message the message to display     */    public void display(String message)    {        Simulation.getInstance(atm).clearDisplay();        Simulation.getInstance(atm).display(message);    }        /** Read a PIN entered by the customer (echoed as asterisks)     *     *  @param prompt the message to display prompting the customer to enter PIN     *  @return the PIN that was entered     *  @exception Cancelled if customer presses the CANCEL key before pressing ENTER     */    public int readPIN(String prompt) throws Cancelled    {        Simulation.getInstance(atm).clearDisplay();        Simulation.getInstance(atm).display(prompt);        Simulation.getInstance(atm).display("");                String input = Simulation.getInstance(atm).readInput(Simulation.PIN_MODE, 0);                Simulation.getInstance(atm).clearDisplay();                if (input == null)            throw new Cancelled();        else            return Integer.parseInt(input);    }        /** Display a menu of options and return choice made by customer     *     *  @param prompt message to display before the list of options     *  @param menu the options     *  @return the number of the option chosen (0 .. # of options - 1)     *  Note: the options are numbered 1 .. # of options when displayed for the     *  customer - but the menu array indices and the final result returned are in     *  the range 0 .. # of options - 1     *     *  @exception Cancelled if customer presses the CANCEL key before choosing option     */    public int readMenuChoice(String prompt, String[] menu) throws Cancelled    {        inputLock.lock();        try        {            Simulation.getInstance(atm).clearDisplay();            Simulation.getInstance(atm).display(prompt);            for (int i = 0; i < menu.length; i ++)                Simulation.getInstance(atm).display((i+1) + ") " + menu[i]);            String input =                 Simulation.getInstance(atm).readInput(Simulation.MENU_MODE, menu.length);                            Simulation.getInstance(atm).clearDisplay();                        if (input == null)                throw new Cancelled();            else                return Integer.parseInt(input) - 1;        }        finally        {            inputLock.unlock();        }    }        /** Read a money amount entered by the customer     *     *  @param prompt the message to display prompting the customer to enter amount     *  @return the amount entered by the customer     *  @exception Cancelled if customer presses the CANCEL key before pressing ENTER     */    public Money readAmount(String prompt) throws Cancelled    {        inputLock.lock();        try        {            Simulation.getInstance(atm).clearDisplay();            Simulation.getInstance(atm).display(prompt);            Simulation.getInstance(atm).display("");                        String input = Simulation.getInstance(atm).readInput(Simulation.AMOUNT_MODE, 0);                        Simulation.getInstance(atm).clearDisplay();                        if (input == null)                throw new Cancelled();            else            {                int dollars = Integer.parseInt(input) / 100;                int cents = Integer.parseInt(input) % 100;                return new Money(dollars, cents);            }        }        finally        {            inputLock.unlock();        }    }        /** Leave what is displayed for the customer to read for a given time.     *  The time passes on the simulation's clock, so an ATM on a virtual     *  clock does not really wait     *     *  @param millis the time, in milliseconds     */    public void pause(long millis)    {        Simulation.getInstance(atm).getClock().sleep(millis * 1000000L);    }        /** Exception thrown when the user presses the cancel key while the ATM is     *  waiting for some action     */    public static class Cancelled extends Exception    {        /** Constructor         */        public Cancelled()        {            super("Transaksi dibatalkan oleh nasabah");        }    }        /** The ATM to which this console belongs     */    private ATM atm;        /** Held while reading a menu choice or an amount     */    private final ReentrantLock inputLock = new ReentrantLock();}
\ No newline at end of file
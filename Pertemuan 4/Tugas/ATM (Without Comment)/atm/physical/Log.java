@@ -1 +1 @@
-/* * ATM Example system - file Log.java * * copyright (c) 2001 - Russell C. Bjork * */ package atm.physical;import banking.Message;import banking.Money;import banking.Status;import simulation.Simulation;/** Manager for the ATM's internal log.  In a real ATM, this would  *  manage a physical device; in this simulation,  it uses classes  *  in package simulation to simulate the device. */ public class Log{    /** Constructor     */    public Log()    {    }        /** Log the sending of a message to the bank     *     *  @param message the message to be logged     */    public void logSend(Message message)    {        Simulation.getInstance().printLogLine("Message:   " + message.toString());     }        /** Log a response received from a message     *     *  @param status the status object returned by the bank in response     */    public void logResponse(Status response)    {        Simulation.getInstance().printLogLine("Response:  " + response.toString());    }        /** Log the dispensing of cash by the cash dispenser     *     *  @param amount the amount of cash being dispensed     */    public void logCashDispensed(Money amount)    {        Simulation.getInstance().printLogLine("Dispensed: " + amount.toString());    }        /** Log accepting an envelope.  This method is only called if an envelope     *  is actually received from the customer     */    public void logEnvelopeAccepted()    {        Simulation.getInstance().printLogLine("Envelope:  received");    }}
\ No newline at end of file
+/* * ATM Example system - file Log.java * * copyright (c) 2001 - Russell C. Bjork * */ package atm.physical;import atm.ATM;import banking.Card;import banking.Message;import banking.Money;import banking.Status;import simulation.Simulation;/** Manager for the ATM's internal log.  In a real ATM, this would  *  manage a physical device; in this simulation,  it uses classes  *  in package simulation to simulate the device. * *  Each entry is recorded as a LogEvent holding the values it logs, not as *  text; the line of text is only built if the device that takes the entry *  shows or prints it. */ public class Log{    /** Constructor     *     *  @param atm the ATM this log belongs to     */    public Log(ATM atm)    {        this.atm = atm;    }        /** Log the sending of a message to the bank     *     *  @param message the message to be logged     */    public void logSend(Message message)    {        LogEvent event = new LogEvent();        event.recordSend(atm.getID(), System.currentTimeMillis(), message);        Simulation.getInstance(atm).log(event);    }        /** Log a response received from a message     *     *  @param status the status object returned by the bank in response     */    public void logResponse(Status response)    {        logResponse(null, response);    }        /** Log a response received from a message, recording which message it     *  answers, so the response can be found in a journal by the message's     *  serial number or card as well     *     *  @param message the message responded to - may be null if not known     *  @param status the status object returned by the bank in response     */    public void logResponse(Message message, Status response)    {        LogEvent event = new LogEvent();        event.recordResponse(atm.getID(), System.currentTimeMillis(), message, response);        Simulation.getInstance(atm).log(event);    }        /** Log the dispensing of cash by the cash dispenser     *     *  @param amount the amount of cash being dispensed     */    public void logCashDispensed(Money amount)    {        LogEvent event = new LogEvent();        event.recordCashDispensed(atm.getID(), System.currentTimeMillis(), amount.getCents());        Simulation.getInstance(atm).log(event);    }        /** Log how many of a session's inquiries were answered from the balances     *  the bank had already reported during the session, and how many were     *  sent to the bank     *     *  @param card the customer's card     *  @param hits the number of inquiries answered from the BalanceCache     *  @param misses the number of inquiries sent to the bank     */    public void logBalanceCache(Card card, int hits, int misses)    {        LogEvent event = new LogEvent();        event.recordBalanceCache(atm.getID(), System.currentTimeMillis(), card.getNumber(),                                 hits, misses);        Simulation.getInstance(atm).log(event);    }        /** Log accepting an envelope.  This method is only called if an envelope     *  is actually received from the customer     */    public void logEnvelopeAccepted()    {        LogEvent event = new LogEvent();        event.recordEnvelopeAccepted(atm.getID(), System.currentTimeMillis());        Simulation.getInstance(atm).log(event);    }        /** The ATM to which this log belongs     */    private ATM atm;}
\ No newline at end of file
@@ -0,0 +1,429 @@
+/*
+ * ATM Example system - file LogEvent.java
+ *
+ */
+
+package atm.physical;
+
+import banking.BankStatus;
+import banking.Message;
+import banking.MoneyFormatter;
+import banking.Status;
+
+/** One entry in an ATM's log, recorded as plain values - the kind of entry,
+ *  when it was made, and the fields of the message, amount or status it
+ *  records - rather than as a line of text.  Recording an entry copies a few
+ *  numbers and a reference; the text of the line is only built when
+ *  something asks for it with appendTo() or toString(), and is exactly what
+ *  the log used to print.
+ *
+ *  An event can be filled in again for another entry, so a sink that keeps
+ *  events can reuse them rather than make new ones.
+ */
+public class LogEvent
+{
+    /** Constructor - an empty event, to be filled in
+     */
+    public LogEvent()
+    {
+    }
+
+    /** Make this a copy of another event
+     *
+     *  @param other the event to copy
+     */
+    public void copyFrom(LogEvent other)
+    {
+        kind = other.kind;
+        time = other.time;
+        atmID = other.atmID;
+        messageCode = other.messageCode;
+        cardNumber = other.cardNumber;
+        serialNumber = other.serialNumber;
+        fromAccount = other.fromAccount;
+        toAccount = other.toAccount;
+        amountCents = other.amountCents;
+        statusCode = other.statusCode;
+        statusMessage = other.statusMessage;
+    }
+
+    /** Fill in every field of this event - e.g. from an entry read back from
+     *  a journal
+     *
+     *  @param kind SEND, RESPONSE, CASH_DISPENSED, ENVELOPE_ACCEPTED or
+     *         BALANCE_CACHE
+     *  @param time the time, as System.currentTimeMillis() gave it
+     *  @param atmID the ATM's id
+     *  @param messageCode code of the message sent or responded to, or -1
+     *  @param cardNumber number of the customer's card, or 0
+     *  @param serialNumber serial number of the transaction, or 0
+     *  @param fromAccount the type of the "from" account, or -1
+     *  @param toAccount the type of the "to" account, or -1
+     *  @param amountCents the amount, in cents
+     *  @param statusCode code of the status - BankStatus.SUCCESS etc.
+     *  @param statusMessage description of a failure, or null - only needed
+     *         for a code with no shared BankStatus
+     */
+    public void set(int kind, long time, int atmID, int messageCode, int cardNumber,
+                    long serialNumber, int fromAccount, int toAccount, long amountCents,
+                    int statusCode, String statusMessage)
+    {
+        this.kind = kind;
+        this.time = time;
+        this.atmID = atmID;
+        this.messageCode = messageCode;
+        this.cardNumber = cardNumber;
+        this.serialNumber = serialNumber;
+        this.fromAccount = fromAccount;
+        this.toAccount = toAccount;
+        this.amountCents = amountCents;
+        this.statusCode = statusCode;
+        this.statusMessage = statusMessage;
+    }
+
+    /** Append the text of this entry, as the log prints it, to a StringBuilder
+     *
+     *  @param result the StringBuilder to append to
+     *  @return result
+     */
+    public StringBuilder appendTo(StringBuilder result)
+    {
+        switch(kind)
+        {
+            case SEND:
+
+                return Message.appendTo(messageCode, cardNumber, serialNumber, fromAccount,
+                                        toAccount, amountCents, result.append("Message:   "));
+
+            case RESPONSE:
+
+                result.append("Response:  ");
+                if (BankStatus.isShared(statusCode))
+                    return result.append(BankStatus.of(statusCode).toString());
+                return Status.appendTo(BankStatus.kindOf(statusCode), statusMessage, result);
+
+            case CASH_DISPENSED:
+
+                return MoneyFormatter.format(amountCents, result.append("Dispensed: "));
+
+            case BALANCE_CACHE:
+
+                return result.append("Balances:  ").append(getBalanceHits())
+                             .append(" from cache, ").append(getBalanceMisses())
+                             .append(" from bank");
+
+            default:
+
+                return result.append("Envelope:  received");
+        }
+    }
+
+    /** Create the text of this entry, as the log prints it
+     *
+     *  @return the line of text
+     */
+    public String toString()
+    {
+        return appendTo(new StringBuilder(TYPICAL_LENGTH)).toString();
+    }
+
+    /** Accessor for kind of entry
+     *
+     *  @return SEND, RESPONSE, CASH_DISPENSED, ENVELOPE_ACCEPTED or BALANCE_CACHE
+     */
+    public int getKind()
+    {
+        return kind;
+    }
+
+    /** Accessor for time of entry
+     *
+     *  @return the time, as System.currentTimeMillis() gave it
+     */
+    public long getTime()
+    {
+        return time;
+    }
+
+    /** Accessor for the ATM whose log this entry is in
+     *
+     *  @return the ATM's id
+     */
+    public int getATMID()
+    {
+        return atmID;
+    }
+
+    /** Accessor for message code - for SEND, and RESPONSE if the message
+     *  responded to was logged with it
+     *
+     *  @return the code identifying the type of message
+     */
+    public int getMessageCode()
+    {
+        return messageCode;
+    }
+
+    /** Accessor for card number - for SEND, and RESPONSE if the message
+     *  responded to was logged with it
+     *
+     *  @return the number of the customer's card
+     */
+    public int getCardNumber()
+    {
+        return cardNumber;
+    }
+
+    /** Accessor for transaction serial number - for SEND, and RESPONSE if the
+     *  message responded to was logged with it
+     *
+     *  @return the serial number
+     */
+    public long getSerialNumber()
+    {
+        return serialNumber;
+    }
+
+    /** Accessor for "from" account - for SEND, and RESPONSE if the message
+     *  responded to was logged with it
+     *
+     *  @return the type of the "from" account, or -1
+     */
+    public int getFromAccount()
+    {
+        return fromAccount;
+    }
+
+    /** Accessor for "to" account - for SEND, and RESPONSE if the message
+     *  responded to was logged with it
+     *
+     *  @return the type of the "to" account, or -1
+     */
+    public int getToAccount()
+    {
+        return toAccount;
+    }
+
+    /** Accessor for amount - for SEND, CASH_DISPENSED, and RESPONSE if the
+     *  message responded to was logged with it
+     *
+     *  @return the amount, in cents
+     */
+    public long getAmountCents()
+    {
+        return amountCents;
+    }
+
+    /** Accessor for code of status - for RESPONSE only
+     *
+     *  @return BankStatus.SUCCESS, INVALID_PIN, FAILURE etc.
+     */
+    public int getStatusCode()
+    {
+        return statusCode;
+    }
+
+    /** Accessor for kind of status - for RESPONSE only
+     *
+     *  @return ReceivedStatus.SUCCESS, INVALID_PIN or FAILURE
+     */
+    public int getStatusKind()
+    {
+        return BankStatus.kindOf(statusCode);
+    }
+
+    /** Accessor for description of a failure - for RESPONSE only
+     *
+     *  @return the description, or null
+     */
+    public String getStatusMessage()
+    {
+        if (BankStatus.isShared(statusCode))
+            return BankStatus.of(statusCode).getMessage();
+        return statusMessage;
+    }
+
+    /** Accessor for the number of inquiries answered from the session's
+     *  balances - for BALANCE_CACHE only, which keeps it in the "from" slot
+     *
+     *  @return the number of inquiries
+     */
+    public int getBalanceHits()
+    {
+        return fromAccount;
+    }
+
+    /** Accessor for the number of inquiries sent to the bank - for
+     *  BALANCE_CACHE only, which keeps it in the "to" slot
+     *
+     *  @return the number of inquiries
+     */
+    public int getBalanceMisses()
+    {
+        return toAccount;
+    }
+
+    // Methods used by Log to fill in an event
+
+    /** Record the sending of a message to the bank
+     *
+     *  @param atmID the ATM's id
+     *  @param time the time, as System.currentTimeMillis() gives it
+     *  @param message the message sent
+     */
+    void recordSend(int atmID, long time, Message message)
+    {
+        record(SEND, atmID, time, true);
+        messageCode = message.getMessageCode();
+        cardNumber = message.getCard().getNumber();
+        serialNumber = message.getSerialNumber();
+        fromAccount = message.getFromAccount();
+        toAccount = message.getToAccount();
+        amountCents = message.getAmount() == null ? 0 : message.getAmount().getCents();
+    }
+
+    /** Record a response received from the bank
+     *
+     *  @param atmID the ATM's id
+     *  @param time the time, as System.currentTimeMillis() gives it
+     *  @param message the message responded to, or null - its slots are
+     *         recorded too, but are not part of the entry's text
+     *  @param response the status returned by the bank
+     */
+    void recordResponse(int atmID, long time, Message message, Status response)
+    {
+        if (message != null)
+            recordSend(atmID, time, message);
+        record(RESPONSE, atmID, time, message == null);
+        statusCode = response.getCode();
+        statusMessage = BankStatus.isShared(statusCode) ? null : response.getMessage();
+    }
+
+    /** Record the dispensing of cash
+     *
+     *  @param atmID the ATM's id
+     *  @param time the time, as System.currentTimeMillis() gives it
+     *  @param cents the amount dispensed, in cents
+     */
+    void recordCashDispensed(int atmID, long time, long cents)
+    {
+        record(CASH_DISPENSED, atmID, time, true);
+        amountCents = cents;
+    }
+
+    /** Record how a session's inquiries were answered
+     *
+     *  @param atmID the ATM's id
+     *  @param time the time, as System.currentTimeMillis() gives it
+     *  @param cardNumber number of the customer's card
+     *  @param hits the number of inquiries answered from the session's
+     *         balances
+     *  @param misses the number of inquiries sent to the bank
+     */
+    void recordBalanceCache(int atmID, long time, int cardNumber, int hits, int misses)
+    {
+        record(BALANCE_CACHE, atmID, time, true);
+        this.cardNumber = cardNumber;
+        fromAccount = hits;
+        toAccount = misses;
+    }
+
+    /** Record accepting an envelope
+     *
+     *  @param atmID the ATM's id
+     *  @param time the time, as System.currentTimeMillis() gives it
+     */
+    void recordEnvelopeAccepted(int atmID, long time)
+    {
+        record(ENVELOPE_ACCEPTED, atmID, time, true);
+    }
+
+    /** Fill in the fields every entry has, and clear the status
+     *
+     *  @param kind the kind of entry
+     *  @param atmID the ATM's id
+     *  @param time the time, as System.currentTimeMillis() gives it
+     *  @param clearMessage true to clear the slots of the message too
+     */
+    private void record(int kind, int atmID, long time, boolean clearMessage)
+    {
+        this.kind = kind;
+        this.atmID = atmID;
+        this.time = time;
+        statusCode = BankStatus.SUCCESS;
+        statusMessage = null;
+        if (! clearMessage)
+            return;
+        messageCode = -1;
+        cardNumber = 0;
+        serialNumber = 0;
+        fromAccount = -1;
+        toAccount = -1;
+        amountCents = 0;
+    }
+
+    // Possible values for kind
+
+    /** A message sent to the bank
+     */
+    public static final int SEND = 0;
+
+    /** A response received from the bank
+     */
+    public static final int RESPONSE = 1;
+
+    /** Cash dispensed
+     */
+    public static final int CASH_DISPENSED = 2;
+
+    /** An envelope accepted
+     */
+    public static final int ENVELOPE_ACCEPTED = 3;
+
+    /** The inquiries of a session answered from its balances, and sent to
+     *  the bank
+     */
+    public static final int BALANCE_CACHE = 4;
+
+    // Instance variables
+
+    /** Kind of entry - one of the above values
+     */
+    private int kind;
+
+    /** When the entry was made, as System.currentTimeMillis() gave it
+     */
+    private long time;
+
+    /** Id of the ATM whose log the entry is in
+     */
+    private int atmID;
+
+    /** Slots of the message sent or responded to - for BALANCE_CACHE, the
+     *  "from" and "to" slots hold the numbers of inquiries answered from the
+     *  session's balances and sent to the bank
+     */
+    private int messageCode;
+    private int cardNumber;
+    private long serialNumber;
+    private int fromAccount;
+    private int toAccount;
+
+    /** Amount of the message sent, or of cash dispensed, in cents
+     */
+    private long amountCents;
+
+    /** Code of status returned by the bank - for RESPONSE only
+     */
+    private int statusCode;
+
+    /** Description of a failure returned by the bank, if it is not a shared
+     *  BankStatus - for RESPONSE only.  The status's own string, so recording
+     *  it copies nothing
+     */
+    private String statusMessage;
+
+    /** Room for the text of a typical entry
+     */
+    private static final int TYPICAL_LENGTH = 112;
+}
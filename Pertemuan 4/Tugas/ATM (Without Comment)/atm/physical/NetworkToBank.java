@@ -1 +1 @@
-/* * ATM Example system - file NetworkToBank.java * * copyright (c) 2001 - Russell C. Bjork * */ package atm.physical;import java.net.InetAddress;import banking.Message;import banking.Balances;import banking.Status;import simulation.Simulation;/** Manager for the ATM's network connection.  In a real ATM, this would  *  manage a physical device; in this simulation,  it uses classes  *  in package simulation to simulate the device. */ public class NetworkToBank{    /** Constructor     *     *  @param log the log in which to record sending of messages and responses     *  @param bankAddress the network address of the bank     */    public NetworkToBank(Log log, InetAddress bankAddress)    {        this.log = log;        this.bankAddress = bankAddress;    }        /** Open connection to bank at system startup     */    public void openConnection()    {        // Since the network is simulated, we don't have to do anything    }        /** Close connection to bank at system shutdown     */    public void closeConnection()    {        // Since the network is simulated, we don't have to do anything    }        /** Send a message to bank     *     *  @param message the message to send     *  @param balances (out) balances in customer's account as reported     *         by bank     *  @return status code returned by bank     */    public Status sendMessage(Message message, Balances balances)    {        // Log sending of the message                log.logSend(message);                // Simulate the sending of the message - here is where the real code        // to actually send the message over the network would go                Status result = Simulation.getInstance().sendMessage(message, balances);                // Log the response gotten back                log.logResponse(result);                return result;    }        // Log into which to record messages        private Log log;        // Network address of the bank        private InetAddress bankAddress;}
\ No newline at end of file
+/* * ATM Example system - file NetworkToBank.java * * copyright (c) 2001 - Russell C. Bjork * */ package atm.physical;import java.net.InetAddress;import java.net.InetSocketAddress;import java.util.Map;import java.util.concurrent.CompletableFuture;import java.util.concurrent.ConcurrentHashMap;import atm.ATM;import banking.Message;import banking.Balances;import banking.BankStatus;import banking.Status;import simulation.Simulation;/** Manager for the ATM's network connection.  In a real ATM, this would  *  manage a physical device; in this simulation,  it uses classes  *  in package simulation to simulate the device. * *  Messages can be sent either synchronously, waiting for the response, or *  asynchronously.  Asynchronous messages are pipelined: any number may be *  waiting for a response at once, and each response is matched to its *  message by serial number, so serial numbers of messages waiting at the *  same time must differ. * *  If the ATM is given no bank address, the network and the bank are *  simulated in this process.  Otherwise, messages are sent over TCP, in the *  format of banking.MessageCodec, to a bank server (see *  simulation.BankServer) at that address, on the port given by *  -Datm.bankPort (default BANK_PORT).  All the ATMs in this process share a *  BankConnectionPool of -Datm.bankConnections connections (default *  BANK_CONNECTIONS); with -Datm.bankConnections=0, each ATM has a connection *  of its own instead.  If the bank cannot be reached, messages fail with *  NETWORK_FAILURE. */ public class NetworkToBank{    /** Constructor     *     *  @param atm the ATM this network connection belongs to     *  @param log the log in which to record sending of messages and responses     *  @param bankAddress the network address of the bank     */    public NetworkToBank(ATM atm, Log log, InetAddress bankAddress)    {        this.atm = atm;        this.log = log;        this.bankAddress = bankAddress;    }        /** Open connection to bank at system startup     */    public void openConnection()    {        // If the network is simulated, we don't have to do anything                if (bankAddress == null)            return;                InetSocketAddress address = new InetSocketAddress(            bankAddress, Integer.getInteger("atm.bankPort", BANK_PORT).intValue());        int connections = Integer.getInteger("atm.bankConnections", BANK_CONNECTIONS).intValue();        pool = connections > 0 ? BankConnectionPool.share(address, connections)                               : new BankConnectionPool(address, 1);    }        /** Close connection to bank at system shutdown     */    public void closeConnection()    {        // If the network is simulated, we don't have to do anything                BankConnectionPool closing = pool;        pool = null;        if (closing != null)            closing.release();    }        /** Send a message to bank     *     *  @param message the message to send     *  @param balances (out) balances in customer's account as reported     *         by bank     *  @return status code returned by bank     */    public Status sendMessage(Message message, Balances balances)    {        if (bankAddress != null)            return sendMessageAsync(message, balances).join();                // Log sending of the message                log.logSend(message);                // Simulate the sending of the message - here is where the real code        // to actually send the message over the network would go                Status result = Simulation.getInstance(atm).sendMessage(message, balances);                // Log the response gotten back                log.logResponse(message, result);                return result;    }        /** Send a message to bank without waiting for the response     *     *  @param message the message to send - must not be changed until the     *         response has been received     *  @param balances (out) balances in customer's account as reported     *         by bank - filled in before the result is completed     *  @return the status code returned by bank, when it has been received.     *          Completed exceptionally with an IllegalStateException if a     *          message with the same serial number is already waiting     */    public CompletableFuture<Status> sendMessageAsync(Message message, Balances balances)    {        CompletableFuture<Status> result = new CompletableFuture<Status>();                if (pending.putIfAbsent(message.getSerialNumber(),                                new PendingMessage(message, result, balances)) != null)        {            result.completeExceptionally(new IllegalStateException(                "Message " + message.getSerialNumber() + " is already waiting for a response"));            return result;        }                // Log sending of the message                log.logSend(message);                BankConnectionPool connected = pool;        if (bankAddress == null)            Simulation.getInstance(atm).sendMessageAsync(message, receiver);        else if (connected != null)            connected.send(atm.getID(), message, receiver);        else            receive(message.getSerialNumber(), NETWORK_FAILURE, new Balances());                return result;    }        /** Number of messages sent asynchronously still waiting for a response     *     *  @return the number of messages     */    public int getMessagesInFlight()    {        return pending.size();    }        /** Receive a response to a message sent asynchronously, and complete the     *  result for the message with the same serial number     *     *  @param serialNumber serial number of the message responded to     *  @param status status code returned by bank     *  @param reported balances reported by bank     */    private void receive(long serialNumber, Status status, Balances reported)    {        PendingMessage message = pending.remove(serialNumber);        if (message == null)            return;     // Not a response to anything we are waiting for                // Log the response gotten back                log.logResponse(message.message, status);                message.balances.setBalances(reported);        message.result.complete(status);    }        /** A message sent asynchronously that is waiting for a response     */    private static class PendingMessage    {        PendingMessage(Message message, CompletableFuture<Status> result, Balances balances)        {            this.message = message;            this.result = result;            this.balances = balances;        }                final Message message;        final CompletableFuture<Status> result;        final Balances balances;    }        // ATM to which this network connection belongs        private ATM atm;        // Log into which to record messages        private Log log;        // Network address of the bank - null if the bank is simulated in this    // process        private InetAddress bankAddress;        // Connections to the bank server - null if there are none        private volatile BankConnectionPool pool;        // Messages sent asynchronously that are waiting for a response, by serial    // number        private final Map<Long, PendingMessage> pending =         new ConcurrentHashMap<Long, PendingMessage>();        // Receiver for responses to messages sent asynchronously        private final Simulation.Receiver receiver = new Simulation.Receiver() {        public void receive(long serialNumber, Status status, Balances balances)        {            NetworkToBank.this.receive(serialNumber, status, balances);        }    };        /** Port the bank server listens on, unless told otherwise     */    public static final int BANK_PORT = 4242;        /** Number of connections to the bank server shared by all the ATMs in     *  this process, unless told otherwise     */    public static final int BANK_CONNECTIONS = 4;        /** Status of a message that could not be sent to the bank, or whose     *  response never came     */    public static final Status NETWORK_FAILURE = BankStatus.of(BankStatus.BANK_UNREACHABLE);}
\ No newline at end of file
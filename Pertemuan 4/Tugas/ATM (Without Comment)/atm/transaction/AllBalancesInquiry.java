@@ -0,0 +1,97 @@
+/*
+ * ATM Example system - file AllBalancesInquiry.java
+ *
+ */
+
+package atm.transaction;
+
+import atm.ATM;
+import atm.Session;
+import atm.physical.*;
+import banking.AccountInformation;
+import banking.Card;
+import banking.Message;
+import banking.Money;
+import banking.Receipt;
+
+/** Representation for an inquiry about the balances of all of the card's
+ *  accounts.  One message asks the bank for all of them, where an Inquiry
+ *  would take one round trip to the bank for each account; they are shown
+ *  together on one screen, and printed on the receipt.
+ */
+public class AllBalancesInquiry extends Transaction
+{
+    /** Constructor
+     *
+     *  @param atm the ATM used to communicate with customer
+     *  @param session the session in which the transaction is being performed
+     *  @param card the customer's card
+     *  @param pin the PIN entered by the customer
+     */
+    public AllBalancesInquiry(ATM atm, Session session, Card card, int pin)
+    {
+        super(atm, session, card, pin);
+    }
+
+    /** Get specifics for the transaction from the customer - there are none,
+     *  since every account is asked about
+     *
+     *  @return message to bank for initiating this transaction
+     */
+    protected Message getSpecificsFromCustomer()
+    {
+        return new Message(Message.INQUIRY_ALL, card, pin, serialNumber, -1, -1, Money.ZERO);
+    }
+
+    /** Complete an approved transaction
+     *
+     *  @return receipt to be printed for this transaction
+     */
+    protected Receipt completeTransaction()
+    {
+        final String [] lines = accountLines();
+        return new Receipt(this.atm, this.card, this, this.balances) {
+            {
+                detailsPortion = new String[lines.length + 1];
+                detailsPortion[0] = "SALDO SEMUA REKENING";
+                for (int i = 0; i < lines.length; i ++)
+                    detailsPortion[i + 1] = lines[i];
+            }
+        };
+    }
+
+    /** Show the balances of all the accounts, on the screen that asks whether
+     *  to do another transaction
+     *
+     *  @return the balances, one account to a line
+     */
+    protected String getCompletionMessage()
+    {
+        String [] lines = accountLines();
+        StringBuilder result = new StringBuilder("Saldo rekening Anda:");
+        for (int i = 0; i < lines.length; i ++)
+            result.append('\n').append(lines[i]);
+        return result.toString();
+    }
+
+    /** Describe the balance of each account the bank reported, that the ATM
+     *  offers to customers
+     *
+     *  @return one line for each account
+     */
+    private String [] accountLines()
+    {
+        int count = 0;
+        for (int i = 0; i < AccountInformation.ACCOUNT_NAMES.length; i ++)
+            if (balances.isAccountReported(i))
+                count ++;
+
+        String [] lines = new String[count];
+        count = 0;
+        for (int i = 0; i < AccountInformation.ACCOUNT_NAMES.length; i ++)
+            if (balances.isAccountReported(i))
+                lines[count ++] = AccountInformation.ACCOUNT_ABBREVIATIONS[i] + ": "
+                                  + balances.getTotal(i);
+        return lines;
+    }
+}
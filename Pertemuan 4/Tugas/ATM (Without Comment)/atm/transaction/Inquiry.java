@@ -39,7 +39,7 @@ public class Inquiry extends Transaction // Membuat class dengan nama Inquiry da
         from = atm.getCustomerConsole().readMenuChoice( // mendapatkan data dari class ATM yang akan menampilkan pilihan menu di console, berupa
                 "Cek Saldo pada rekening", // tampilan cek saldo pada rekening
                 AccountInformation.ACCOUNT_NAMES); // dan menampilkan informasi akun berupa nama akun
-        return new Message(Message.INQUIRY, card, pin, serialNumber, from, -1, new Money(0)); // mengembalikan sebuah nilai method class Message, yang berisikan beberapa parameter
+        return new Message(Message.INQUIRY, card, pin, serialNumber, from, -1, Money.ZERO); // mengembalikan sebuah nilai method class Message, yang berisikan beberapa parameter
     }
 
     /**
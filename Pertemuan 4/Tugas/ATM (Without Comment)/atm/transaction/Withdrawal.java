@@ -45,16 +45,11 @@ public class Withdrawal extends Transaction {
                 "Rp 200.000",
                 "Rp 250.000"
         };
-        Money[] amountValues = {
-                new Money(50000), new Money(100000), new Money(150000),
-                new Money(200000), new Money(250000), new Money(0)
-        };
-
         String amountMessage = "";
         boolean validAmount = false;
 
         while (!validAmount) {
-            amount = amountValues[atm.getCustomerConsole().readMenuChoice(
+            amount = AMOUNT_VALUES[atm.getCustomerConsole().readMenuChoice(
                     amountMessage + "Pilih jumlah tarik tunai", amountOptions)];
 
             validAmount = atm.getCashDispenser().checkCashOnHand(amount);
@@ -96,4 +91,13 @@ public class Withdrawal extends Transaction {
      * Jumlah uang yang ditarik pada transaksi tarik tunai
      */
     private Money amount;
+
+    /**
+     * Jumlah uang untuk setiap pilihan menu tarik tunai - dipakai bersama
+     * oleh semua transaksi, karena Money tidak pernah berubah
+     */
+    private static final Money[] AMOUNT_VALUES = {
+            new Money(50000), new Money(100000), new Money(150000),
+            new Money(200000), new Money(250000), Money.ZERO
+    };
 }
\ No newline at end of file
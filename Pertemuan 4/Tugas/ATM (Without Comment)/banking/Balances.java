@@ -1 +1 @@
-/* * ATM Example system - file Balances.java * * copyright (c) 2001 - Russell C. Bjork * */ package banking;/** Representation for customer's current account balances as returned by the  *  bank.  An empty object of this class is created and sent along with the *  transaction message; the bank fills it in with values. */public class Balances{    /** Constructor.  Create an object whose values will be filled in later, when     *  returning a value to the creator.     */    public Balances()    {    }        /** Mutator.  Fill in values     *     *  @param total the total balance in the account     *  @param available the available balance     */    public void setBalances(Money total, Money available)    {        this.total = total;        this.available = available;    }        /** Accessor for total balance     *     *  @return total balance in the account     */    public Money getTotal()    {        return total;    }        /** Accessor for available balance     *     *  @return available balance     */    public Money getAvailable()    {        return available;    }        // Instance variables        /** Current total balance in the account     */    private Money total;        /** Current available balance in the account     */    private Money available;}
\ No newline at end of file
+/* * ATM Example system - file Balances.java * * copyright (c) 2001 - Russell C. Bjork * */ package banking;/** Representation for customer's current account balances as returned by the  *  bank.  An empty object of this class is created and sent along with the *  transaction message; the bank fills it in with values. * *  The balances are held in cents, so the bank can fill them in without *  creating any objects; a Money is made only when one is asked for. * *  For an inquiry about all of a card's accounts (Message.INQUIRY_ALL), the *  bank also fills in the balances of each account, by account type; the *  total and available balances are then those of all the accounts together. * *  The bank also fills in the session token it has issued, if any, for the *  ATM to present with the session's later messages (see Message). */public class Balances{    /** Constructor.  Create an object whose values will be filled in later, when     *  returning a value to the creator.     */    public Balances()    {    }        /** Mutator.  Fill in values     *     *  @param total the total balance in the account     *  @param available the available balance     */    public void setBalances(Money total, Money available)    {        if (total == null || available == null)        {            reported = false;            accountsReported = 0;            sessionToken = Message.NO_SESSION_TOKEN;        }        else            setBalances(total.getCents(), available.getCents());    }        /** Mutator.  Fill in the same values as another set of balances     *     *  @param reported the balances to copy     */    public void setBalances(Balances reported)    {        this.totalCents = reported.totalCents;        this.availableCents = reported.availableCents;        this.reported = reported.reported;        this.sessionToken = reported.sessionToken;        accountsReported = 0;        for (int i = 0; i < MAXIMUM_ACCOUNT_TYPES; i ++)            if (reported.isAccountReported(i))                setAccountBalances(i, reported.accountTotalCents[i],                                   reported.accountAvailableCents[i]);    }        /** Mutator.  Fill in values in cents     *     *  @param totalCents the total balance in the account, in cents     *  @param availableCents the available balance, in cents     */    public void setBalances(long totalCents, long availableCents)    {        this.totalCents = totalCents;        this.availableCents = availableCents;        reported = true;    }        /** Mutator.  Fill in the values of one of the card's accounts, in cents     *     *  @param accountType the type of the account, as in AccountInformation -     *         0 .. MAXIMUM_ACCOUNT_TYPES - 1     *  @param totalCents the total balance in the account, in cents     *  @param availableCents the available balance, in cents     */    public void setAccountBalances(int accountType, long totalCents, long availableCents)    {        if (accountTotalCents == null)        {            accountTotalCents = new long[MAXIMUM_ACCOUNT_TYPES];            accountAvailableCents = new long[MAXIMUM_ACCOUNT_TYPES];        }        accountTotalCents[accountType] = totalCents;        accountAvailableCents[accountType] = availableCents;        accountsReported |= 1 << accountType;    }        /** Mutator.  Forget the values of the card's accounts, if any were filled     *  in     */    public void clearAccountBalances()    {        accountsReported = 0;    }        /** See if the balances of one of the card's accounts have been filled in     *     *  @param accountType the type of the account     *  @return true if they have     */    public boolean isAccountReported(int accountType)    {        return accountType >= 0 && accountType < MAXIMUM_ACCOUNT_TYPES               && (accountsReported & 1 << accountType) != 0;    }        /** Accessor for the total balance of one of the card's accounts     *     *  @param accountType the type of the account     *  @return total balance in the account - null if not filled in     */    public Money getTotal(int accountType)    {        return isAccountReported(accountType) ? Money.ofCents(accountTotalCents[accountType])                                              : null;    }        /** Accessor for the available balance of one of the card's accounts     *     *  @param accountType the type of the account     *  @return available balance in the account - null if not filled in     */    public Money getAvailable(int accountType)    {        return isAccountReported(accountType) ? Money.ofCents(accountAvailableCents[accountType])                                              : null;    }        /** Accessor for the total balance of one of the card's accounts in cents     *     *  @param accountType the type of the account     *  @return total balance in the account, in cents - 0 if not filled in     */    public long getTotalCents(int accountType)    {        return isAccountReported(accountType) ? accountTotalCents[accountType] : 0;    }        /** Accessor for the available balance of one of the card's accounts in     *  cents     *     *  @param accountType the type of the account     *  @return available balance in the account, in cents - 0 if not filled in     */    public long getAvailableCents(int accountType)    {        return isAccountReported(accountType) ? accountAvailableCents[accountType] : 0;    }        /** Mutator.  Fill in the session token issued by the bank     *     *  @param sessionToken the token - Message.NO_SESSION_TOKEN if none     */    public void setSessionToken(long sessionToken)    {        this.sessionToken = sessionToken;    }        /** Accessor for the session token issued by the bank     *     *  @return the token - Message.NO_SESSION_TOKEN if none was filled in     */    public long getSessionToken()    {        return sessionToken;    }        /** Accessor for total balance     *     *  @return total balance in the account - null if not filled in     */    public Money getTotal()    {        return reported ? Money.ofCents(totalCents) : null;    }        /** Accessor for available balance     *     *  @return available balance - null if not filled in     */    public Money getAvailable()    {        return reported ? Money.ofCents(availableCents) : null;    }        /** See if the balances have been filled in     *     *  @return true if they have     */    public boolean isReported()    {        return reported;    }        /** Accessor for total balance in cents     *     *  @return total balance in the account, in cents - 0 if not filled in     */    public long getTotalCents()    {        return reported ? totalCents : 0;    }        /** Accessor for available balance in cents     *     *  @return available balance, in cents - 0 if not filled in     */    public long getAvailableCents()    {        return reported ? availableCents : 0;    }        // Instance variables        /** Current total balance in the account, in cents    */    private long totalCents;        /** Current available balance in the account, in cents     */    private long availableCents;        /** True once the balances have been filled in     */    private boolean reported;        /** Balances of each of the card's accounts, in cents, by account type -     *  made the first time one is filled in     */    private long [] accountTotalCents;    private long [] accountAvailableCents;        /** One bit for each account type whose balances have been filled in     */    private int accountsReported;        /** Session token issued by the bank     */    private long sessionToken = Message.NO_SESSION_TOKEN;        /** Number of account types whose balances can be filled in     */    public static final int MAXIMUM_ACCOUNT_TYPES = 8;}
\ No newline at end of file
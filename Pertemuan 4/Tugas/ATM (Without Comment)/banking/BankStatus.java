@@ -0,0 +1,197 @@
+/*
+ * ATM Example system - file BankStatus.java
+ *
+ */
+
+package banking;
+
+import java.nio.charset.StandardCharsets;
+
+/** The statuses the bank returns, one shared instance for each outcome, so
+ *  handling a message never creates a status.  Each has a code, which is
+ *  what getCode() gives and what is sent over the network, so a status can
+ *  be told apart by a switch on its code rather than by its description.
+ *  The text the log shows for each, and its description encoded for the
+ *  network, are worked out once, when the instance is created.
+ *
+ *  Codes SUCCESS, INVALID_PIN and FAILURE are the same numbers as the kinds
+ *  in ReceivedStatus, so the code of any status tells its kind (see
+ *  kindOf()).  FAILURE is a failure with a description of its own, and has
+ *  no shared instance; every other code has one, from of().
+ */
+public final class BankStatus extends Status
+{
+    /** Constructor
+     *
+     *  @param code the code
+     *  @param message description of the failure - null for success
+     */
+    private BankStatus(int code, String message)
+    {
+        this.code = code;
+        this.message = message;
+        text = appendTo(kindOf(code), message, new StringBuilder()).toString();
+        description = message == null ? new byte[0] : message.getBytes(StandardCharsets.UTF_8);
+    }
+
+    /** The shared instance for a code
+     *
+     *  @param code the code - one for which isShared() is true
+     *  @return the status
+     *  @exception IllegalArgumentException if the code has no shared instance
+     */
+    public static BankStatus of(int code)
+    {
+        if (! isShared(code))
+            throw new IllegalArgumentException("No shared status for code " + code);
+        return STATUSES[code];
+    }
+
+    /** See whether a code has a shared instance
+     *
+     *  @param code the code
+     *  @return true if of() gives an instance for it
+     */
+    public static boolean isShared(int code)
+    {
+        return code >= 0 && code < STATUSES.length && STATUSES[code] != null;
+    }
+
+    /** Work out the kind of status a code is
+     *
+     *  @param code the code - any number, including codes this version does
+     *         not know, which are taken to be failures
+     *  @return ReceivedStatus.SUCCESS, INVALID_PIN or FAILURE
+     */
+    public static int kindOf(int code)
+    {
+        return code == SUCCESS ? ReceivedStatus.SUCCESS
+               : code == INVALID_PIN ? ReceivedStatus.INVALID_PIN
+               : ReceivedStatus.FAILURE;
+    }
+
+    public int getCode()
+    {
+        return code;
+    }
+
+    public boolean isSuccess()
+    {
+        return code == SUCCESS;
+    }
+
+    public boolean isInvalidPIN()
+    {
+        return code == INVALID_PIN;
+    }
+
+    public String getMessage()
+    {
+        return message;
+    }
+
+    /** The text the log shows for this status, made when it was created
+     *
+     *  @return the text
+     */
+    public String toString()
+    {
+        return text;
+    }
+
+    /** Accessor for the description, encoded for sending over the network
+     *
+     *  @return the description in UTF-8 - not to be changed
+     */
+    byte [] getDescription()
+    {
+        return description;
+    }
+
+    // Possible values for code
+
+    /** The transaction succeeded
+     */
+    public static final int SUCCESS = 0;
+
+    /** The PIN was invalid
+     */
+    public static final int INVALID_PIN = 1;
+
+    /** The transaction failed for a reason with a description of its own
+     */
+    public static final int FAILURE = 2;
+
+    /** The card is not one of the bank's
+     */
+    public static final int INVALID_CARD = 3;
+
+    /** The card has no account of the type chosen
+     */
+    public static final int INVALID_ACCOUNT = 4;
+
+    /** The withdrawal would go over the card's daily limit
+     */
+    public static final int WITHDRAWAL_LIMIT_EXCEEDED = 5;
+
+    /** The account does not have enough money available
+     */
+    public static final int INSUFFICIENT_FUNDS = 6;
+
+    /** The transfer would go over the card's daily limit
+     */
+    public static final int TRANSFER_LIMIT_EXCEEDED = 7;
+
+    /** The transfer is from an account to itself
+     */
+    public static final int SAME_ACCOUNT = 8;
+
+    /** The bank cannot record changes at the moment
+     */
+    public static final int BANK_UNAVAILABLE = 9;
+
+    /** The ATM could not reach the bank, or got no response
+     */
+    public static final int BANK_UNREACHABLE = 10;
+
+    /** The message was not one the bank can handle - of a type it does not
+     *  know, or for a negative amount
+     */
+    public static final int INVALID_MESSAGE = 11;
+
+    /** The code
+     */
+    private final int code;
+
+    /** Description of the failure - null for success
+     */
+    private final String message;
+
+    /** Text the log shows
+     */
+    private final String text;
+
+    /** Description in UTF-8
+     */
+    private final byte [] description;
+
+    /** The shared instances, by code
+     */
+    private static final BankStatus [] STATUSES =
+    {
+        new BankStatus(SUCCESS, null),
+        new BankStatus(INVALID_PIN, "PIN ANDA SALAH"),
+        null,
+        new BankStatus(INVALID_CARD, "Kartu tidak valid"),
+        new BankStatus(INVALID_ACCOUNT, "Rekening Yang ada Masukkan Salah"),
+        new BankStatus(WITHDRAWAL_LIMIT_EXCEEDED,
+                       "Batas penarikan tunai harian anda telah terlewati"),
+        new BankStatus(INSUFFICIENT_FUNDS, "Maaf, saldo Anda tidak mencukupi"),
+        new BankStatus(TRANSFER_LIMIT_EXCEEDED, "Batas transfer harian anda telah terlewati"),
+        new BankStatus(SAME_ACCOUNT, "Tidak dapat melakukan transfer\n" +
+                                     "ke rekening yang sama"),
+        new BankStatus(BANK_UNAVAILABLE, "Bank sedang tidak dapat memproses transaksi"),
+        new BankStatus(BANK_UNREACHABLE, "Bank tidak dapat dihubungi"),
+        new BankStatus(INVALID_MESSAGE, "Transaksi tidak dapat diproses")
+    };
+}
@@ -20,7 +20,7 @@ public class Message
      *  @param messageCode identifying the type of message
      *  @param card the customer's card
      *  @param pin the PIN entered by the customer
-     *  @param serialNumber serial number of the transaction
+     *  @param serialNumber serial number of the transaction (see SerialNumbers)
      *  @param fromAccount the type of the "from" account of the transaction - can
      *         be -1 if the particular type of transaction does not have a "from"
      *         account (e.g. a deposit) 
@@ -31,7 +31,7 @@ public class Message
      *         type of transaction does not have an amount (e.g. an inquiry)
      */
     public Message(int messageCode, Card card, int pin, 
-                   int serialNumber, int fromAccount, int toAccount, Money amount)
+                   long serialNumber, int fromAccount, int toAccount, Money amount)
     {
         this.messageCode = messageCode;
         this.card = card;
@@ -48,53 +48,83 @@ public class Message
      */
     public String toString()
     {
-        String result = "";
-        
+        return appendTo(messageCode, card.getNumber(), serialNumber, fromAccount, toAccount,
+                        amount.getCents(), new StringBuilder(TYPICAL_LENGTH)).toString();
+    } 
+    
+    /** Append the string representation of a message to a StringBuilder,
+     *  given the values of its slots rather than the message itself - so a
+     *  message recorded as plain values, as in the log, can be shown without
+     *  building the Message again
+     *
+     *  @param messageCode identifying the type of message
+     *  @param cardNumber number of the customer's card
+     *  @param serialNumber serial number of the transaction
+     *  @param fromAccount the type of the "from" account, or -1
+     *  @param toAccount the type of the "to" account, or -1
+     *  @param amountCents the amount of the transaction, in cents
+     *  @param result the StringBuilder to append to
+     *  @return result
+     */
+    public static StringBuilder appendTo(int messageCode, int cardNumber, long serialNumber,
+                                         int fromAccount, int toAccount, long amountCents,
+                                         StringBuilder result)
+    {
         switch (messageCode)
         {
             case WITHDRAWAL:
             
-                result += "TARIK TUNAI";
+                result.append("TARIK TUNAI");
                 break;
                 
             case INITIATE_DEPOSIT:
             
-                result += "INIT_DEP";
+                result.append("INIT_DEP");
                 break;
                 
             case COMPLETE_DEPOSIT:
             
-                result += "COMP_DEP";
+                result.append("COMP_DEP");
                 break;
                 
             case TRANSFER:
             
-                result += "TRANSFER";
+                result.append("TRANSFER");
                 break;
                 
             case INQUIRY:
             
-                result += "CEK SALDO";
+                result.append("CEK SALDO");
+                break;
+                
+            case INQUIRY_ALL:
+            
+                result.append("CEK SEMUA SALDO");
+                break;
+                
+            case VERIFY_PIN:
+            
+                result.append("CEK PIN");
                 break;
         }
         
-        result += " KARTU# " + card.getNumber();
-        result += " TRANS# " + serialNumber;
+        result.append(" KARTU# ").append(cardNumber);
+        result.append(" TRANS# ").append(serialNumber);
         if (fromAccount >= 0)
-            result += " Dari  " + fromAccount;
+            result.append(" Dari  ").append(fromAccount);
         else
-            result += " TANPA SUMBER";
+            result.append(" TANPA SUMBER");
         if (toAccount >= 0)
-            result += " Ke  " + toAccount;
+            result.append(" Ke  ").append(toAccount);
         else
-            result += " TANPA TUJUAN";
-        if (! amount.lessEqual(new Money(0)))
-            result += " " + amount;
+            result.append(" TANPA TUJUAN");
+        if (amountCents > 0)
+            MoneyFormatter.format(amountCents, result.append(' '));
         else
-            result += " TANPA JUMLAH";
+            result.append(" TANPA JUMLAH");
         
         return result;
-    } 
+    }
                 
     /** Set PIN to a new value (if original pin was invalid and customer is
      *  asked to re-enter PIN)
@@ -106,6 +136,17 @@ public class Message
         this.pin = pin;
     }
     
+    /** Set the session token to present to the bank, in place of checking
+     *  the PIN (see Session)
+     *
+     *  @param sessionToken the token the bank issued earlier in the session,
+     *         NEW_SESSION_TOKEN to ask the bank for one, or NO_SESSION_TOKEN
+     */
+    public void setSessionToken(long sessionToken)
+    {
+        this.sessionToken = sessionToken;
+    }
+    
     /** Accessor for message code
      *
      *  @return the code identifying the type of message
@@ -137,7 +178,7 @@ public class Message
      *
      *  @return the serial number of the transaction
      */
-    public int getSerialNumber()
+    public long getSerialNumber()
     {
         return serialNumber;
     }
@@ -169,6 +210,15 @@ public class Message
         return amount;
     }
     
+    /** Accessor for session token
+     *
+     *  @return the session token presented to the bank
+     */
+    public long getSessionToken()
+    {
+        return sessionToken;
+    }
+    
 
     // Possible values for messageCode
     
@@ -192,6 +242,27 @@ public class Message
     /** messageCode value for an inquiry message
      */ 
     public static final int INQUIRY = 4;
+    
+    /** messageCode value for a message asking for the balances of all the
+     *  card's accounts at once
+     */ 
+    public static final int INQUIRY_ALL = 5;
+    
+    /** messageCode value for a message asking only whether the PIN is valid
+     *  for the card - sent as soon as the PIN is entered (see Session)
+     */ 
+    public static final int VERIFY_PIN = 6;
+    
+    // Special values for sessionToken
+    
+    /** sessionToken value for a message authorized only by its PIN
+     */
+    public static final long NO_SESSION_TOKEN = 0;
+    
+    /** sessionToken value for a message authorized by its PIN, asking the bank
+     *  to issue a session token if the PIN is valid
+     */
+    public static final long NEW_SESSION_TOKEN = -1;
 
 
     // Fixed slots in the message - may not all be used for any given message
@@ -211,7 +282,7 @@ public class Message
     
     /** Serial number of the transaction
      */
-    private int serialNumber;
+    private long serialNumber;
     
     /** "From" account specified by customer - if needed (else - 1)
      */
@@ -224,4 +295,13 @@ public class Message
     /** Transaction amount specified by customer - if needed (else $0.00)
      */
     private Money amount;
+    
+    /** Session token presented in place of the PIN - if none, NO_SESSION_TOKEN
+     *  or NEW_SESSION_TOKEN
+     */
+    private long sessionToken = NO_SESSION_TOKEN;
+    
+    /** Room for the string representation of a typical message
+     */
+    private static final int TYPICAL_LENGTH = 96;
 }
@@ -0,0 +1,257 @@
+/*
+ * ATM Example system - file MessageCodec.java
+ *
+ */
+
+package banking;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/** Binary wire format for messages from the ATM to the bank.  Every message
+ *  takes MESSAGE_SIZE bytes, one fixed slot for each field of Message, in the
+ *  buffer's byte order:
+ *
+ *  offset  0  int   message code
+ *  offset  4  int   card number
+ *  offset  8  int   PIN
+ *  offset 12  long  serial number (see SerialNumbers)
+ *  offset 20  int   "from" account type (-1 if none)
+ *  offset 24  int   "to" account type (-1 if none)
+ *  offset 28  long  amount, in cents (0 if none)
+ *  offset 36  long  session token (Message.NO_SESSION_TOKEN if none)
+ *
+ *  Encoding writes straight into a buffer the caller supplies and can reuse.
+ *  A received message can be read through a MessageView, which reads each
+ *  field from the buffer when asked and so needs no objects per message, or
+ *  decoded into a new Message.
+ *
+ *  On a connection to a bank server, each message is sent as a request:
+ *  a tag chosen by the sender, the id of the ATM that sent the message, then
+ *  the message, REQUEST_SIZE bytes in all.  The bank knows a message sent
+ *  again by its ATM id and serial number.
+ *  The response starts with the same tag, so responses can be matched to
+ *  their messages even when the messages of many ATMs, whose serial numbers
+ *  may be the same, share one connection.
+ *
+ *  The bank's response to a request is RESPONSE_HEADER_SIZE bytes, followed
+ *  by the description of a failure, then the balances of each of the card's
+ *  accounts that the bank reported (see Balances.setAccountBalances()):
+ *
+ *  offset  0  int   tag of the request responded to
+ *  offset  4  int   status code - one of the values in BankStatus
+ *  offset  8  long  total balance reported, in cents
+ *  offset 16  long  available balance reported, in cents
+ *  offset 24  short length in bytes of the description (0 for success)
+ *  offset 26  short number of accounts whose balances follow (0 except for
+ *                   Message.INQUIRY_ALL)
+ *  offset 28  long  session token issued (Message.NO_SESSION_TOKEN if none)
+ *  offset 36        the description, in UTF-8
+ *
+ *  and for each account, ACCOUNT_BALANCES_SIZE bytes:
+ *
+ *  offset  0  int   account type
+ *  offset  4  long  total balance, in cents
+ *  offset 12  long  available balance, in cents
+ *
+ *  The codes for success, an invalid PIN and other failures are the kinds of
+ *  status in ReceivedStatus, and the description is always sent, so a
+ *  receiver that does not know a code can still treat it as a failure and
+ *  show why.  A status with a shared instance in BankStatus is decoded as
+ *  that instance, without reading the description.
+ */
+public class MessageCodec
+{
+    /** Encode a message at the buffer's position, and advance the position
+     *  past it
+     *
+     *  @param message the message to encode
+     *  @param buffer the buffer to write into
+     *  @exception java.nio.BufferOverflowException if fewer than MESSAGE_SIZE
+     *             bytes remain in the buffer
+     */
+    public static void encode(Message message, ByteBuffer buffer)
+    {
+        Money amount = message.getAmount();
+        buffer.putInt(message.getMessageCode())
+              .putInt(message.getCard().getNumber())
+              .putInt(message.getPIN())
+              .putLong(message.getSerialNumber())
+              .putInt(message.getFromAccount())
+              .putInt(message.getToAccount())
+              .putLong(amount == null ? 0 : amount.getCents())
+              .putLong(message.getSessionToken());
+    }
+
+    /** Encode a request - a tag and ATM id followed by a message - at the
+     *  buffer's position, and advance the position past it
+     *
+     *  @param tag the tag, to be sent back in the response
+     *  @param atmID id of the ATM that sent the message
+     *  @param message the message to encode
+     *  @param buffer the buffer to write into
+     *  @exception java.nio.BufferOverflowException if fewer than REQUEST_SIZE
+     *             bytes remain in the buffer
+     */
+    public static void encodeRequest(int tag, int atmID, Message message, ByteBuffer buffer)
+    {
+        buffer.putInt(tag)
+              .putInt(atmID);
+        encode(message, buffer);
+    }
+
+    /** Decode the message at the buffer's position into a new Message, and
+     *  advance the position past it
+     *
+     *  @param buffer the buffer to read from
+     *  @return the message
+     *  @exception java.nio.BufferUnderflowException if fewer than MESSAGE_SIZE
+     *             bytes remain in the buffer
+     */
+    public static Message decode(ByteBuffer buffer)
+    {
+        int messageCode = buffer.getInt();
+        int cardNumber = buffer.getInt();
+        int pin = buffer.getInt();
+        long serialNumber = buffer.getLong();
+        int fromAccount = buffer.getInt();
+        int toAccount = buffer.getInt();
+        long cents = buffer.getLong();
+        Message message = new Message(messageCode, new Card(cardNumber), pin, serialNumber,
+                                      fromAccount, toAccount, Money.ofCents(cents));
+        message.setSessionToken(buffer.getLong());
+        return message;
+    }
+
+    /** Encode a response at the buffer's position, and advance the position
+     *  past it
+     *
+     *  @param tag tag of the request responded to
+     *  @param status status code returned by bank
+     *  @param balances balances reported by bank
+     *  @param buffer the buffer to write into
+     *  @exception java.nio.BufferOverflowException if the response does not
+     *             fit in the buffer
+     */
+    public static void encodeResponse(int tag, Status status, Balances balances,
+                                      ByteBuffer buffer)
+    {
+        byte [] description = status instanceof BankStatus
+                              ? ((BankStatus) status).getDescription()
+                              : status.isSuccess() || status.getMessage() == null
+                              ? NO_DESCRIPTION
+                              : status.getMessage().getBytes(StandardCharsets.UTF_8);
+        int accounts = 0;
+        for (int i = 0; i < Balances.MAXIMUM_ACCOUNT_TYPES; i ++)
+            if (balances.isAccountReported(i))
+                accounts ++;
+        buffer.putInt(tag)
+              .putInt(status.getCode())
+              .putLong(balances.getTotalCents())
+              .putLong(balances.getAvailableCents())
+              .putShort((short) description.length)
+              .putShort((short) accounts)
+              .putLong(balances.getSessionToken())
+              .put(description);
+        for (int i = 0; accounts > 0; i ++)
+            if (balances.isAccountReported(i))
+            {
+                buffer.putInt(i)
+                      .putLong(balances.getTotalCents(i))
+                      .putLong(balances.getAvailableCents(i));
+                accounts --;
+            }
+    }
+
+    /** Find out how long the response at the buffer's position is
+     *
+     *  @param buffer the buffer holding the response
+     *  @return the number of bytes in the response, or -1 if too little of it
+     *          has arrived to tell
+     */
+    public static int responseSize(ByteBuffer buffer)
+    {
+        if (buffer.remaining() < RESPONSE_HEADER_SIZE)
+            return -1;
+        return RESPONSE_HEADER_SIZE + buffer.getShort(buffer.position() + 24)
+               + buffer.getShort(buffer.position() + 26) * ACCOUNT_BALANCES_SIZE;
+    }
+
+    /** Decode the response at the buffer's position, and advance the position
+     *  past it.  The tag can be read first with
+     *  buffer.getInt(buffer.position()).
+     *
+     *  @param buffer the buffer to read from - must hold the whole response
+     *  @param balances (out) balances reported by bank
+     *  @return status code returned by bank
+     */
+    public static Status decodeResponse(ByteBuffer buffer, Balances balances)
+    {
+        buffer.getInt();
+        int code = buffer.getInt();
+        long total = buffer.getLong();
+        long available = buffer.getLong();
+        int descriptionLength = buffer.getShort();
+        int accounts = buffer.getShort();
+        balances.setBalances(total, available);
+        balances.setSessionToken(buffer.getLong());
+
+        Status status;
+        if (BankStatus.isShared(code))
+        {
+            buffer.position(buffer.position() + descriptionLength);
+            status = BankStatus.of(code);
+        }
+        else
+        {
+            byte [] description = new byte[descriptionLength];
+            buffer.get(description);
+            int kind = BankStatus.kindOf(code);
+            status = new ReceivedStatus(kind, kind == ReceivedStatus.SUCCESS ? null
+                                              : new String(description, StandardCharsets.UTF_8));
+        }
+
+        balances.clearAccountBalances();
+        for (int i = 0; i < accounts; i ++)
+        {
+            int accountType = buffer.getInt();
+            long accountTotal = buffer.getLong();
+            long accountAvailable = buffer.getLong();
+            if (accountType >= 0 && accountType < Balances.MAXIMUM_ACCOUNT_TYPES)
+                balances.setAccountBalances(accountType, accountTotal, accountAvailable);
+        }
+        return status;
+    }
+
+    /** Number of bytes every encoded message takes
+     */
+    public static final int MESSAGE_SIZE = 44;
+
+    /** Number of bytes every encoded request takes
+     */
+    public static final int REQUEST_SIZE = 8 + MESSAGE_SIZE;
+
+    /** Number of bytes every encoded response takes, not counting the
+     *  description of a failure or the balances of each account
+     */
+    public static final int RESPONSE_HEADER_SIZE = 36;
+
+    /** Number of bytes the balances of each account take in a response
+     */
+    public static final int ACCOUNT_BALANCES_SIZE = 20;
+
+    /** Description sent for a success
+     */
+    private static final byte [] NO_DESCRIPTION = new byte[0];
+
+    // Offsets of the fields within an encoded message
+
+    static final int MESSAGE_CODE_OFFSET = 0;
+    static final int CARD_NUMBER_OFFSET = 4;
+    static final int PIN_OFFSET = 8;
+    static final int SERIAL_NUMBER_OFFSET = 12;
+    static final int FROM_ACCOUNT_OFFSET = 20;
+    static final int TO_ACCOUNT_OFFSET = 24;
+    static final int AMOUNT_OFFSET = 28;
+    static final int SESSION_TOKEN_OFFSET = 36;
+}
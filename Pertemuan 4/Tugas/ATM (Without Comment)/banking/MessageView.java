@@ -0,0 +1,128 @@
+/*
+ * ATM Example system - file MessageView.java
+ *
+ */
+
+package banking;
+
+import java.nio.ByteBuffer;
+
+/** Read-only view of a message encoded by MessageCodec.  The view holds only
+ *  a buffer and an offset, and reads each field from the buffer when it is
+ *  asked for, so one view can be moved from message to message with wrap()
+ *  without creating any objects.  The view sees whatever is in the buffer at
+ *  the time - if the buffer is reused, so is the view.
+ */
+public class MessageView
+{
+    /** Point the view at an encoded message
+     *
+     *  @param buffer the buffer holding the message
+     *  @param offset index in the buffer of the first byte of the message
+     *  @return this view
+     *  @exception IndexOutOfBoundsException if the buffer does not hold
+     *             MESSAGE_SIZE bytes from offset
+     */
+    public MessageView wrap(ByteBuffer buffer, int offset)
+    {
+        if (offset < 0 || offset > buffer.limit() - MessageCodec.MESSAGE_SIZE)
+            throw new IndexOutOfBoundsException("No message at offset " + offset);
+
+        this.buffer = buffer;
+        this.offset = offset;
+        return this;
+    }
+
+    /** Accessor for message code
+     *
+     *  @return the code identifying the type of message
+     */
+    public int getMessageCode()
+    {
+        return buffer.getInt(offset + MessageCodec.MESSAGE_CODE_OFFSET);
+    }
+
+    /** Accessor for number of customer's card
+     *
+     *  @return the card number
+     */
+    public int getCardNumber()
+    {
+        return buffer.getInt(offset + MessageCodec.CARD_NUMBER_OFFSET);
+    }
+
+    /** Accessor for PIN
+     *
+     *  @return the PIN entered by the customer
+     */
+    public int getPIN()
+    {
+        return buffer.getInt(offset + MessageCodec.PIN_OFFSET);
+    }
+
+    /** Accessor for transaction serial number
+     *
+     *  @return the serial number of the transaction
+     */
+    public long getSerialNumber()
+    {
+        return buffer.getLong(offset + MessageCodec.SERIAL_NUMBER_OFFSET);
+    }
+
+    /** Accessor for "from" account
+     *
+     *  @return the type of the "from" account
+     */
+    public int getFromAccount()
+    {
+        return buffer.getInt(offset + MessageCodec.FROM_ACCOUNT_OFFSET);
+    }
+
+    /** Accessor for "to" account
+     *
+     *  @return the type of the "to" account
+     */
+    public int getToAccount()
+    {
+        return buffer.getInt(offset + MessageCodec.TO_ACCOUNT_OFFSET);
+    }
+
+    /** Accessor for amount
+     *
+     *  @return the transaction amount, in cents
+     */
+    public long getAmountCents()
+    {
+        return buffer.getLong(offset + MessageCodec.AMOUNT_OFFSET);
+    }
+
+    /** Accessor for session token
+     *
+     *  @return the session token presented to the bank
+     */
+    public long getSessionToken()
+    {
+        return buffer.getLong(offset + MessageCodec.SESSION_TOKEN_OFFSET);
+    }
+
+    /** Copy the message out of the buffer
+     *
+     *  @return a new Message with the same fields
+     */
+    public Message toMessage()
+    {
+        Message message = new Message(getMessageCode(), new Card(getCardNumber()), getPIN(),
+                                      getSerialNumber(), getFromAccount(), getToAccount(),
+                                      Money.ofCents(getAmountCents()));
+        message.setSessionToken(getSessionToken());
+        return message;
+    }
+
+    /** Buffer holding the message
+     */
+    private ByteBuffer buffer;
+
+    /** Index in the buffer of the first byte of the message
+     */
+    private int offset;
+}
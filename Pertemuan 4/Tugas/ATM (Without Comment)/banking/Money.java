@@ -1 +1 @@
-/* * ATM Example system - file Money.java * * copyright (c) 2001 - Russell C. Bjork * */package banking;/** * Representation for money amounts */public class Money {    /**     * Constructor     *     * @param rupiah whole rupiah amount     */    public Money(int rupiah) {        this(rupiah, 0);    }    /**     * Constructor     *     * @param rupiah rupiah part of amount     * @param cents cents part of amount     */    public Money(int rupiah, int cents) {        this.cents = 100L * rupiah + cents;    }    /**     * Copy constructor     *     * @param toCopy the Money object to copy     */    public Money(Money toCopy) {        this.cents = toCopy.cents;    }    /**     * Create a string representation of this amount     *     * @return string representation of this amount     */    @Override    public String toString() {        String str = "Rp";        long value;        if (cents >= 100000000) {            value = (long) (cents / 100000000);            str = str + "." + value;        }        if (cents >= 100000) {            value = (long) ((cents % 100000000) / 100000);            if (!str.equals("Rp")) {                if (value >= 100) {                    str = str + "." + value;                } else if (value >= 10) {                    str = str + ".0" + value;                } else if (value > 0) {                    str = str + ".00" + value;                } else if (value == 0) {                    str = str + ".000";                }            } else {                str = str + "." + value;            }        }        if (cents >= 100) {            value = (long) ((cents % 100000) / 100);            if (value >= 100) {                str = str + "." + value;            } else if (value >= 10) {                str = str + ".0" + value;            } else if (value > 0) {                str = str + ".00" + value;            } else if (value == 0) {                str = str + ".000";            }        }        str = str + (cents % 100 >= 10 ? "." + cents % 100 : ".0" + cents % 100);        return str;    }    /**     * Add an amount of money to this     *     * @param amountToAdd the amount to add     */    public void add(Money amountToAdd) {        this.cents += amountToAdd.cents;    }    /**     * Subtract an amount of money from this     *     * @param amountToSubtract the amount to subtract     *     * Precondition: amount must be <= this amount     */    public void subtract(Money amountToSubtract) {        this.cents -= amountToSubtract.cents;    }    /**     * calculate modulo from this by a number     *     * @param number  the divisor     * @return modulo from this by @param number     *      */    public long modulo(int number) {        return this.cents % number;    }    /**     * Compare this to another amount     *     * @param compareTo the amount to compare to     * @return true if this amount is <= compareTo amount     */    public boolean lessEqual(Money compareTo) {        return this.cents <= compareTo.cents;    }    /**     * Instance variable: this amount represented as a number of cents     */    private long cents;}
\ No newline at end of file
+/* * ATM Example system - file Money.java * * copyright (c) 2001 - Russell C. Bjork * */package banking;/** * Representation for money amounts.  An amount never changes once created, * so the same Money can be shared freely - between a ledger and the balances * reported to an ATM, say - and arithmetic gives a new amount.  Code that * must not create objects can do the same arithmetic on amounts in cents * with the static methods, and ofCents() gives shared instances for zero * and for small multiples of a banknote. */public final class Money implements Comparable<Money> {    /**     * Constructor     *     * @param rupiah whole rupiah amount     */    public Money(int rupiah) {        this(rupiah, 0);    }    /**     * Constructor     *     * @param rupiah rupiah part of amount     * @param cents cents part of amount     */    public Money(int rupiah, int cents) {        this.cents = 100L * rupiah + cents;    }    /**     * Create an amount from a number of cents     *     * @param cents the amount in cents     * @return the amount     */    public static Money ofCents(long cents) {        if (cents >= 0 && cents % CACHE_STEP == 0 && cents / CACHE_STEP < CACHE.length) {            return CACHE[(int) (cents / CACHE_STEP)];        }        return new Money(cents);    }    /**     * Copy constructor.  Amounts never change, so there is no need for a     * copy; this remains for code written when they could     *     * @param toCopy the Money object to copy     */    public Money(Money toCopy) {        this.cents = toCopy.cents;    }    /**     * Constructor for ofCents() and the constants     *     * @param cents the amount in cents     */    private Money(long cents) {        this.cents = cents;    }    /**     * Create a string representation of this amount     *     * @return string representation of this amount     */    @Override    public String toString() {        return MoneyFormatter.format(cents, new StringBuilder(MoneyFormatter.MAXIMUM_LENGTH))                .toString();    }    /**     * Append a string representation of this amount to a StringBuilder,     * without creating any intermediate strings     *     * @param out the StringBuilder to append to     * @return out     */    public StringBuilder appendTo(StringBuilder out) {        return MoneyFormatter.format(cents, out);    }    /**     * Accessor for the amount in cents     *     * @return this amount represented as a number of cents     */    public long getCents() {        return cents;    }    /**     * Add an amount of money to this     *     * @param amountToAdd the amount to add     * @return the sum     * @exception ArithmeticException if the sum is too large to represent     */    public Money plus(Money amountToAdd) {        return amountToAdd.cents == 0 ? this : ofCents(add(cents, amountToAdd.cents));    }    /**     * Subtract an amount of money from this     *     * @param amountToSubtract the amount to subtract     * @return the difference     * @exception ArithmeticException if the difference is too large to     * represent     */    public Money minus(Money amountToSubtract) {        return amountToSubtract.cents == 0 ? this : ofCents(subtract(cents, amountToSubtract.cents));    }    /**     * Add two amounts in cents     *     * @param cents one amount     * @param centsToAdd the other     * @return the sum     * @exception ArithmeticException if the sum is too large to represent     */    public static long add(long cents, long centsToAdd) {        return Math.addExact(cents, centsToAdd);    }    /**     * Subtract one amount in cents from another     *     * @param cents the amount to subtract from     * @param centsToSubtract the amount to subtract     * @return the difference     * @exception ArithmeticException if the difference is too large to     * represent     */    public static long subtract(long cents, long centsToSubtract) {        return Math.subtractExact(cents, centsToSubtract);    }    /**     * Find how much of a limit is left     *     * @param limitCents the limit, in cents     * @param usedCents the amount of the limit used so far, in cents     * @return the amount that may still be used, in cents - never negative     */    public static long remaining(long limitCents, long usedCents) {        return Math.max(0, subtract(limitCents, usedCents));    }    /**     * calculate modulo from this by a number     *     * @param number  the divisor     * @return modulo from this by @param number     *      */    public long modulo(int number) {        return this.cents % number;    }    /**     * Compare this to another amount     *     * @param compareTo the amount to compare to     * @return true if this amount is <= compareTo amount     */    public boolean lessEqual(Money compareTo) {        return this.cents <= compareTo.cents;    }    /**     * See whether this amount is zero     *     * @return true if this amount is zero     */    public boolean isZero() {        return cents == 0;    }    /**     * Compare this to another amount     *     * @param other the amount to compare to     * @return negative, zero or positive as this amount is less than, equal     * to or greater than the other     */    @Override    public int compareTo(Money other) {        return Long.compare(cents, other.cents);    }    @Override    public boolean equals(Object other) {        return other instanceof Money && ((Money) other).cents == cents;    }    @Override    public int hashCode() {        return Long.hashCode(cents);    }    /**     * Instance variable: this amount represented as a number of cents     */    private final long cents;    /**     * Amounts ofCents() gives shared instances of: multiples of CACHE_STEP     * from zero, the first CACHE_SIZE of them     */    private static final long CACHE_STEP = 100L * 50000;    private static final int CACHE_SIZE = 201;    private static final Money [] CACHE = new Money[CACHE_SIZE];    static {        for (int i = 0; i < CACHE_SIZE; i++) {            CACHE[i] = new Money(i * CACHE_STEP);        }    }    /**     * No money at all     */    public static final Money ZERO = CACHE[0];}
\ No newline at end of file
@@ -0,0 +1,263 @@
+/*
+ * ATM Example system - file MoneyFormatter.java
+ *
+ */
+
+package banking;
+
+import java.nio.BufferOverflowException;
+import java.nio.CharBuffer;
+import java.util.Arrays;
+
+/** Formatting of amounts of money in the form Money.toString() gives - e.g.
+ *  "Rp.1.250.000.00" - straight into a buffer the caller supplies and can
+ *  reuse, without creating any strings along the way.  The digits are worked
+ *  out with arithmetic on the amount in cents, one group of three at a time.
+ *
+ *  Amounts can be formatted one at a time, appended to a StringBuilder or put
+ *  in a CharBuffer, or a whole column of them at once, right aligned, for a
+ *  report.  Appending to a StringBuilder works forwards, a group at a time;
+ *  the other forms fill in an array from the end backwards, which costs
+ *  less per character.
+ */
+public final class MoneyFormatter
+{
+    /** Append an amount to a StringBuilder
+     *
+     *  @param cents the amount, in cents
+     *  @param out the StringBuilder to append to
+     *  @return out
+     */
+    public static StringBuilder format(long cents, StringBuilder out)
+    {
+        out.append("Rp");
+        if (cents < 0)
+            return out.append(".0").append(cents % 100);
+
+        if (cents >= MILLION)
+        {
+            out.append('.').append(cents / MILLION);
+            appendGroup(cents % MILLION / THOUSAND, out);
+        }
+        else if (cents >= THOUSAND)
+            out.append('.').append(cents / THOUSAND);
+        if (cents >= ONE)
+            appendGroup(cents % THOUSAND / ONE, out);
+
+        int fraction = (int) (cents % ONE);
+        return out.append('.').append((char) ('0' + fraction / 10))
+                              .append((char) ('0' + fraction % 10));
+    }
+
+    /** Put an amount in a CharBuffer at its position, and advance the
+     *  position past it.  A buffer backed by an array is written in place;
+     *  any other is filled from a small temporary array
+     *
+     *  @param cents the amount, in cents
+     *  @param out the buffer to put it in
+     *  @return out
+     *  @exception BufferOverflowException if fewer than length(cents)
+     *             characters remain in the buffer
+     */
+    public static CharBuffer format(long cents, CharBuffer out)
+    {
+        int length = length(cents);
+        if (out.remaining() < length)
+            throw new BufferOverflowException();
+
+        if (out.hasArray())
+        {
+            fill(cents, out.array(), out.arrayOffset() + out.position() + length);
+            out.position(out.position() + length);
+        }
+        else
+        {
+            char [] characters = new char[MAXIMUM_LENGTH];
+            out.put(characters, fill(cents, characters, MAXIMUM_LENGTH), length);
+        }
+        return out;
+    }
+
+    /** Append a column of amounts to a StringBuilder, one to a line, each
+     *  right aligned in a field of the given width.  Each line is built in
+     *  one array, reused for the whole column, and appended in one go
+     *
+     *  @param cents the amounts, in cents
+     *  @param offset index in cents of the first amount to format
+     *  @param count number of amounts to format
+     *  @param width width of the column - amounts that do not fit stick out
+     *         to the right
+     *  @param out the StringBuilder to append to
+     *  @return out
+     */
+    public static StringBuilder formatColumn(long [] cents, int offset, int count, int width,
+                                             StringBuilder out)
+    {
+        int lineLength = Math.max(width, MAXIMUM_LENGTH) + 1;
+        char [] line = new char[lineLength];
+        line[lineLength - 1] = '\n';
+        int padded = lineLength - 1 - width;
+
+        out.ensureCapacity(out.length() + count * (width + 1));
+        for (int i = offset; i < offset + count; i ++)
+        {
+            int start = fill(cents[i], line, lineLength - 1);
+            if (start > padded)
+            {
+                Arrays.fill(line, padded, start, ' ');
+                start = padded;
+            }
+            out.append(line, start, lineLength - start);
+        }
+        return out;
+    }
+
+    /** Find the number of characters an amount takes when formatted
+     *
+     *  @param cents the amount, in cents
+     *  @return the number of characters
+     */
+    public static int length(long cents)
+    {
+        if (cents < 0)
+        {
+            int fraction = (int) (cents % 100);
+            return 4 + (fraction == 0 ? 1 : fraction > -10 ? 2 : 3);
+        }
+
+        int length = 5;     // "Rp" and the cents
+        if (cents >= MILLION)
+            length += 1 + digits(cents / MILLION) + 4;
+        else if (cents >= THOUSAND)
+            length += 1 + digits(cents / THOUSAND);
+        if (cents >= ONE)
+            length += 4;
+        return length;
+    }
+
+    /** Append a dot and a group of three digits, with leading zeros
+     *
+     *  @param group the group - 0 to 999
+     *  @param out the StringBuilder to append to
+     */
+    private static void appendGroup(long group, StringBuilder out)
+    {
+        int value = (int) group;
+        out.append('.')
+           .append((char) ('0' + value / 100))
+           .append((char) ('0' + value / 10 % 10))
+           .append((char) ('0' + value % 10));
+    }
+
+    /** Write an amount into an array, ending just before a given index.
+     *  The digits are taken off the bottom of the amount, so it is written
+     *  from the end backwards
+     *
+     *  @param cents the amount, in cents
+     *  @param out the array to write into
+     *  @param end index just after the last character to write
+     *  @return index of the first character written
+     */
+    private static int fill(long cents, char [] out, int end)
+    {
+        if (cents < 0)
+        {
+            int fraction = (int) (cents % 100);
+            if (fraction == 0)
+                out[-- end] = '0';
+            else
+            {
+                out[-- end] = (char) ('0' - fraction % 10);
+                if (fraction <= -10)
+                    out[-- end] = (char) ('0' - fraction / 10);
+                out[-- end] = '-';
+            }
+            out[-- end] = '0';
+            out[-- end] = '.';
+        }
+        else
+        {
+            end = fillGroup(cents % ONE, 2, out, end);
+            if (cents >= ONE)
+                end = fillGroup(cents % THOUSAND / ONE, 3, out, end);
+            if (cents >= MILLION)
+            {
+                end = fillGroup(cents % MILLION / THOUSAND, 3, out, end);
+                end = fillDigits(cents / MILLION, out, end);
+            }
+            else if (cents >= THOUSAND)
+                end = fillDigits(cents / THOUSAND, out, end);
+        }
+        out[-- end] = 'p';
+        out[-- end] = 'R';
+        return end;
+    }
+
+    /** Write a dot and a group of digits, with leading zeros, ending just
+     *  before a given index
+     *
+     *  @param group the group - less than 10 to the power digits
+     *  @param digits number of digits in the group
+     *  @param out the array to write into
+     *  @param end index just after the last digit
+     *  @return index of the dot
+     */
+    private static int fillGroup(long group, int digits, char [] out, int end)
+    {
+        int value = (int) group;
+        for (int i = 0; i < digits; i ++)
+        {
+            out[-- end] = (char) ('0' + value % 10);
+            value /= 10;
+        }
+        out[-- end] = '.';
+        return end;
+    }
+
+    /** Write a dot and the digits of a number, without leading zeros,
+     *  ending just before a given index
+     *
+     *  @param value the number - greater than zero
+     *  @param out the array to write into
+     *  @param end index just after the last digit
+     *  @return index of the dot
+     */
+    private static int fillDigits(long value, char [] out, int end)
+    {
+        do
+        {
+            out[-- end] = (char) ('0' + value % 10);
+            value /= 10;
+        }
+        while (value > 0);
+        out[-- end] = '.';
+        return end;
+    }
+
+    /** Count the decimal digits of a number
+     *
+     *  @param value the number - not negative
+     *  @return the number of digits
+     */
+    private static int digits(long value)
+    {
+        int digits = 1;
+        while (value >= 10)
+        {
+            value /= 10;
+            digits ++;
+        }
+        return digits;
+    }
+
+    /** Most characters a formatted amount can take - for Long.MAX_VALUE
+     *  cents
+     */
+    public static final int MAXIMUM_LENGTH = 25;
+
+    /** Number of cents in one, one thousand and one million rupiah
+     */
+    private static final long ONE = 100;
+    private static final long THOUSAND = 1000 * ONE;
+    private static final long MILLION = 1000 * THOUSAND;
+}
@@ -0,0 +1,73 @@
+/*
+ * ATM Example system - file ReceivedStatus.java
+ *
+ */
+
+package banking;
+
+/** A status code as received from the bank over the network, when it is not
+ *  one of the bank's shared statuses (see BankStatus) - e.g. a failure with
+ *  a description of its own
+ */
+public class ReceivedStatus extends Status
+{
+    /** Constructor
+     *
+     *  @param kind SUCCESS, INVALID_PIN or FAILURE
+     *  @param message description of the failure - null for success
+     */
+    public ReceivedStatus(int kind, String message)
+    {
+        this.kind = kind;
+        this.message = message;
+    }
+
+    public boolean isSuccess()
+    {
+        return kind == SUCCESS;
+    }
+
+    public boolean isInvalidPIN()
+    {
+        return kind == INVALID_PIN;
+    }
+
+    public String getMessage()
+    {
+        return message;
+    }
+
+    /** Work out the kind of a status
+     *
+     *  @param status the status
+     *  @return SUCCESS, INVALID_PIN or FAILURE
+     */
+    public static int kindOf(Status status)
+    {
+        return status.isSuccess() ? SUCCESS
+               : status.isInvalidPIN() ? INVALID_PIN
+               : FAILURE;
+    }
+
+    // Possible values for kind
+
+    /** The transaction succeeded
+     */
+    public static final int SUCCESS = 0;
+
+    /** The transaction failed because the PIN was invalid
+     */
+    public static final int INVALID_PIN = 1;
+
+    /** The transaction failed for some other reason
+     */
+    public static final int FAILURE = 2;
+
+    /** SUCCESS, INVALID_PIN or FAILURE
+     */
+    private int kind;
+
+    /** Description of the failure - null for success
+     */
+    private String message;
+}
@@ -0,0 +1,120 @@
+/*
+ * ATM Example system - file SerialNumbers.java
+ *
+ */
+
+package banking;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/** Source of transaction serial numbers that are unique across a fleet of
+ *  ATMs.  A serial number is 64 bits: the id of the ATM in the top
+ *  ATM_ID_BITS (leaving the sign bit clear), and below it a sequence number
+ *  unique among the serial numbers this process gives out.  So the ATM a
+ *  serial number belongs to can be read back from it, and no two ATMs can
+ *  be given the same one.
+ *
+ *  Sequence numbers are given to each thread in ranges of RANGE_SIZE; a
+ *  thread takes numbers from its own range with no synchronization at all,
+ *  and only goes to the counter shared by every thread - a single atomic
+ *  add, never a lock - when its range runs out.  So the many ATMs a fleet
+ *  runs in one process do not contend for serial numbers.  Numbers left in
+ *  the range of a thread that ends are never used, and the numbers a thread
+ *  gives out increase, but not those of different threads taken together.
+ *
+ *  Sequence numbers start again when the process does; the bank
+ *  tells a serial number used again from the first use by the contents of
+ *  its message.
+ */
+public class SerialNumbers
+{
+    /** Give out a new serial number
+     *
+     *  @param atmID id of the ATM the serial number is for - from 0 to
+     *         MAXIMUM_ATM_ID
+     *  @return the serial number
+     *  @exception IllegalArgumentException if the ATM id cannot be held
+     *  @exception IllegalStateException if every sequence number has been
+     *             given out
+     */
+    public static long next(int atmID)
+    {
+        if (atmID < 0 || atmID > MAXIMUM_ATM_ID)
+            throw new IllegalArgumentException("ATM id " + atmID + " out of range");
+
+        Range range = RANGES.get();
+        if (range.next == range.end)
+        {
+            long start = nextRange.getAndAdd(RANGE_SIZE);
+            if (start > SEQUENCE_MASK - RANGE_SIZE + 1)
+                throw new IllegalStateException("Serial numbers used up");
+            range.next = start;
+            range.end = start + RANGE_SIZE;
+        }
+        return (long) atmID << SEQUENCE_BITS | range.next ++;
+    }
+
+    /** Read the ATM id back from a serial number
+     *
+     *  @param serialNumber the serial number
+     *  @return id of the ATM it was given out for
+     */
+    public static int atmIDOf(long serialNumber)
+    {
+        return (int) (serialNumber >>> SEQUENCE_BITS);
+    }
+
+    /** Read the sequence number from a serial number
+     *
+     *  @param serialNumber the serial number
+     *  @return the sequence number
+     */
+    public static long sequenceOf(long serialNumber)
+    {
+        return serialNumber & SEQUENCE_MASK;
+    }
+
+    /** The sequence numbers a thread has left to give out
+     */
+    private static class Range
+    {
+        /** Next sequence number to give out
+         */
+        long next;
+
+        /** End of the range, exclusive
+         */
+        long end;
+    }
+
+    /** Bits of a serial number holding the ATM id, and the sequence number
+     */
+    public static final int ATM_ID_BITS = 23;
+    public static final int SEQUENCE_BITS = 40;
+
+    /** Largest ATM id a serial number can hold
+     */
+    public static final int MAXIMUM_ATM_ID = (1 << ATM_ID_BITS) - 1;
+
+    /** Mask for the sequence number in a serial number
+     */
+    private static final long SEQUENCE_MASK = (1L << SEQUENCE_BITS) - 1;
+
+    /** Number of sequence numbers given to a thread at a time
+     */
+    private static final int RANGE_SIZE = 1024;
+
+    /** Start of the next range to give a thread - sequence number 0 is never
+     *  given out, so a serial number is never 0
+     */
+    private static final AtomicLong nextRange = new AtomicLong(RANGE_SIZE);
+
+    /** Each thread's range
+     */
+    private static final ThreadLocal<Range> RANGES = new ThreadLocal<Range>() {
+        protected Range initialValue()
+        {
+            return new Range();
+        }
+    };
+}
@@ -9,6 +9,9 @@ package banking;
 
 /** Abstract base class for representation of various status codes returned
  *  by bank for a transaction.  The bank will create appropriate subclasses.
+ *
+ *  Each status has a code - one of those in BankStatus - so code that acts
+ *  on a status can switch on getCode() rather than compare descriptions.
  */
 public abstract class Status
 {
@@ -18,12 +21,37 @@ public abstract class Status
      */
     public String toString()
     {
-        if (isSuccess())
-            return "SUCCESS";
-        else if (isInvalidPIN())
-            return "PIN ANDA SALAH";
+        return appendTo(ReceivedStatus.kindOf(this), getMessage(), new StringBuilder())
+               .toString();
+    }
+    
+    /** Append the string representation of a status to a StringBuilder,
+     *  given its kind and description rather than the status itself
+     *
+     *  @param kind ReceivedStatus.SUCCESS, INVALID_PIN or FAILURE
+     *  @param message description of the problem - not used for success or
+     *         an invalid PIN
+     *  @param result the StringBuilder to append to
+     *  @return result
+     */
+    public static StringBuilder appendTo(int kind, String message, StringBuilder result)
+    {
+        if (kind == ReceivedStatus.SUCCESS)
+            return result.append("SUCCESS");
+        else if (kind == ReceivedStatus.INVALID_PIN)
+            return result.append("PIN ANDA SALAH");
         else
-            return "GAGAL " + getMessage();
+            return result.append("GAGAL ").append(message);
+    }
+    
+    /** Accessor for the code of this status.  A status that is not one of
+     *  the bank's shared ones (see BankStatus) only tells its kind
+     *
+     *  @return BankStatus.SUCCESS, INVALID_PIN, FAILURE etc.
+     */
+    public int getCode()
+    {
+        return ReceivedStatus.kindOf(this);
     }
     
     /** See if this status represents success
@@ -0,0 +1,87 @@
+/*
+ * ATM Example system - file ATMThreads.java
+ *
+ */
+
+package simulation;
+
+import java.util.concurrent.ThreadFactory;
+
+/** Source of the threads that run simulated ATMs.  Each ATM's run() loop, and
+ *  each session it performs, runs on one thread for as long as the ATM is
+ *  switched on - almost all of it waiting for the customer or the bank.
+ *
+ *  platform - an ordinary thread for each ATM.  Each one reserves a stack and
+ *  an operating system thread, which limits a JVM to some thousands of ATMs.
+ *
+ *  virtual - a virtual thread for each ATM, which costs only the few hundred
+ *  bytes of heap its stack actually uses while it waits, so a JVM can run a
+ *  hundred thousand ATMs or more.  The ATM and its devices wait with locks
+ *  and conditions rather than monitors, so waiting does not pin a carrier
+ *  thread.  Virtual threads need a Java runtime that has them (Java 21 or
+ *  later); the simulation is built for an earlier release, so they are
+ *  looked up by reflection.
+ */
+public class ATMThreads
+{
+    /** Get the factory for an execution mode
+     *
+     *  @param mode "platform" or "virtual"
+     *  @return a factory creating (unstarted) threads of that kind
+     *  @exception IllegalArgumentException if the mode is not known
+     *  @exception UnsupportedOperationException if virtual threads are asked
+     *             for but this Java runtime does not have them
+     */
+    public static ThreadFactory factory(String mode)
+    {
+        if (mode.equals("platform"))
+            return PLATFORM;
+        else if (mode.equals("virtual"))
+        {
+            ThreadFactory factory = virtualThreadFactory();
+            if (factory == null)
+                throw new UnsupportedOperationException(
+                    "Virtual threads need Java 21 or later; this is Java "
+                    + System.getProperty("java.version"));
+            return factory;
+        }
+        else
+            throw new IllegalArgumentException("Unknown thread mode " + mode);
+    }
+
+    /** See whether this Java runtime has virtual threads
+     *
+     *  @return true if factory("virtual") can be used
+     */
+    public static boolean virtualThreadsSupported()
+    {
+        return virtualThreadFactory() != null;
+    }
+
+    /** Look up Thread.ofVirtual().factory()
+     *
+     *  @return the factory, or null if this Java runtime has no virtual threads
+     */
+    private static ThreadFactory virtualThreadFactory()
+    {
+        try
+        {
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            return (ThreadFactory) Class.forName("java.lang.Thread$Builder")
+                                        .getMethod("factory").invoke(builder);
+        }
+        catch(ReflectiveOperationException e)
+        {
+            return null;
+        }
+    }
+
+    /** Factory for ordinary threads
+     */
+    private static final ThreadFactory PLATFORM = new ThreadFactory() {
+        public Thread newThread(Runnable runnable)
+        {
+            return new Thread(runnable);
+        }
+    };
+}
@@ -0,0 +1,96 @@
+/*
+ * ATM Example system - file AccountStore.java
+ *
+ */
+
+package simulation;
+
+import java.nio.LongBuffer;
+
+/** Table of account balances for the simulated bank, indexed by account number.
+ *  The total and available balance of each account are kept as a pair of
+ *  adjacent long values (in cents) in a single primitive array, so looking up
+ *  an account touches one cache line, and millions of accounts cost the garbage
+ *  collector a single object instead of two Money objects apiece.
+ *
+ *  This class does no locking of its own - SimulatedBank holds the lock stripe
+ *  for an account around every call that touches it.
+ */
+class AccountStore
+{
+    /** Constructor.  All accounts start with zero balances.
+     *
+     *  @param numberOfAccounts the number of accounts (numbered 1 .. numberOfAccounts)
+     */
+    AccountStore(int numberOfAccounts)
+    {
+        // Slot 0 is the dummy for nonexistent account 0
+
+        balances = new long[2 * (numberOfAccounts + 1)];
+    }
+
+    /** Accessor for the number of accounts
+     *
+     *  @return the highest valid account number
+     */
+    int size()
+    {
+        return balances.length / 2 - 1;
+    }
+
+    /** See if an account exists
+     *
+     *  @param accountNumber the account number
+     *  @return true if there is an account with this number
+     */
+    boolean exists(int accountNumber)
+    {
+        return accountNumber >= 1 && accountNumber <= size();
+    }
+
+    /** Accessor for total balance
+     *
+     *  @param accountNumber the account
+     *  @return total balance in cents
+     */
+    long getTotal(int accountNumber)
+    {
+        return balances[2 * accountNumber];
+    }
+
+    /** Accessor for available balance
+     *
+     *  @param accountNumber the account
+     *  @return available balance in cents
+     */
+    long getAvailable(int accountNumber)
+    {
+        return balances[2 * accountNumber + 1];
+    }
+
+    /** Mutator.  Set both balances of an account
+     *
+     *  @param accountNumber the account
+     *  @param total the new total balance in cents
+     *  @param available the new available balance in cents
+     */
+    void setBalances(int accountNumber, long total, long available)
+    {
+        balances[2 * accountNumber] = total;
+        balances[2 * accountNumber + 1] = available;
+    }
+
+    /** Fill the table from a buffer laid out the same way - total of account n
+     *  at entry 2n, available at entry 2n + 1 - as in a bank snapshot
+     *
+     *  @param from buffer to read (2 * (size() + 1) entries)
+     */
+    void read(LongBuffer from)
+    {
+        from.get(balances);
+    }
+
+    /** Balances of all accounts: total of account n at [2n], available at [2n + 1]
+     */
+    private final long [] balances;
+}
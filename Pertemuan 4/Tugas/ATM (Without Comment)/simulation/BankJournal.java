@@ -0,0 +1,574 @@
+/*
+ * ATM Example system - file BankJournal.java
+ *
+ */
+
+package simulation;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/** Write-ahead journal for the simulated bank.  Every change the bank makes to
+ *  its tables is appended as a fixed-size binary record to a memory-mapped
+ *  file before the bank reports success.  A record holds the values of the
+ *  changed entries after the change (not the amount of the change), so
+ *  replaying a record that has already been applied does no harm.
+ *
+ *  How long the bank waits for a record to reach the disk depends on the
+ *  durability mode:
+ *
+ *  SYNC_EACH_RECORD - every commit forces the file to disk itself.
+ *  GROUP_COMMIT - one committer at a time forces the file, on behalf of every
+ *      record appended so far; the others wait for it instead of forcing
+ *      again, so one disk flush covers all ATMs that committed meanwhile.
+ *      They wait with a lock and condition rather than a monitor, so the
+ *      threads of ATMs served in this process may be virtual threads without
+ *      pinning their carriers.
+ *  ASYNC - commits return at once; a background thread forces the file every
+ *      ASYNC_INTERVAL milliseconds.
+ *
+ *  After a restart, replay() applies the records from a given position on to a
+ *  bank - normally the position recorded in the bank's latest snapshot, so only
+ *  the tail of the journal written since then has to be read.
+ */
+public class BankJournal
+{
+    /** Constructor.  Opens the journal file, creating it if necessary; new
+     *  records are appended after any records already in it.
+     *
+     *  @param file the journal file
+     *  @param durability one of the durability modes defined below
+     *  @exception IOException if the file cannot be opened or mapped
+     */
+    public BankJournal(File file, int durability) throws IOException
+    {
+        this(file, durability, 0);
+    }
+
+    /** Constructor.  Opens the journal file, creating it if necessary, trusting
+     *  that everything before a given position is already complete records -
+     *  so only the rest of the file has to be scanned for the end of the journal.
+     *
+     *  @param file the journal file
+     *  @param durability one of the durability modes defined below
+     *  @param start a position in the journal (a multiple of the record size)
+     *         known to hold a record or the end of the journal
+     *  @exception IOException if the file cannot be opened or mapped
+     */
+    public BankJournal(File file, int durability, long start) throws IOException
+    {
+        this.durability = durability;
+
+        channel = new RandomAccessFile(file, "rw").getChannel();
+        mapRegion(start - start % REGION_SIZE);
+        position = start;
+
+        // Skip over the records already in the file
+
+        while (isRecord(position))
+        {
+            position += RECORD_SIZE;
+            if (position == regionStart + REGION_SIZE)
+                mapRegion(position);
+        }
+        durablePosition = position;
+        prepareNextRegion();
+
+        if (durability == ASYNC)
+        {
+            Thread flusher = new Thread("Bank journal flusher") {
+                public void run()
+                {
+                    while (! closed && ! isInterrupted())
+                    {
+                        try
+                        {
+                            Thread.sleep(ASYNC_INTERVAL);
+                        }
+                        catch(InterruptedException e)
+                        {
+                            // Flush one last time, then stop
+                            
+                            interrupt();
+                        }
+                        flush();
+                    }
+                }
+            };
+            flusher.setDaemon(true);
+            flusher.start();
+        }
+    }
+
+    /** Convert the name of a durability mode to its value
+     *
+     *  @param name "sync", "group" or "async"
+     *  @return the corresponding durability mode
+     *  @exception IllegalArgumentException if the name is not known
+     */
+    public static int durabilityFromName(String name)
+    {
+        if (name.equals("sync"))
+            return SYNC_EACH_RECORD;
+        else if (name.equals("group"))
+            return GROUP_COMMIT;
+        else if (name.equals("async"))
+            return ASYNC;
+        else
+            throw new IllegalArgumentException("Unknown durability mode " + name);
+    }
+
+    /** Append a record.  The record is not necessarily on disk yet - call
+     *  commit() with the returned position for that.
+     *
+     *  @param type the kind of change - one of the record types defined below
+     *  @param cardNumber the card the change was made with
+     *  @param cardTotalToday the card's withdrawals (or transfers) so far
+     *         today, after the change
+     *  @param account1 the (first) account changed
+     *  @param total1 its total balance after the change, in cents
+     *  @param available1 its available balance after the change, in cents
+     *  @param account2 the second account changed - 0 if none
+     *  @param total2 its total balance after the change, in cents
+     *  @param available2 its available balance after the change, in cents
+     *  @return the position in the journal just after this record
+     *  @exception IOException if the journal could not be extended
+     */
+    long append(int type, int cardNumber, long cardTotalToday,
+                int account1, long total1, long available1,
+                int account2, long total2, long available2)
+        throws IOException
+    {
+        appendLock.lock();
+        try
+        {
+            if (position == regionStart + REGION_SIZE)
+            {
+                // The full region is forced by the next flush, not here, and
+                // the next one has normally been mapped already, so appending
+                // never waits for the disk
+
+                filledRegions.add(region);
+                if (nextRegion != null)
+                {
+                    region = nextRegion;
+                    regionStart = position;
+                    nextRegion = null;
+                }
+                else
+                    mapRegion(position);
+            }
+
+            int offset = (int) (position - regionStart);
+            region.putInt(offset, type);
+            region.putInt(offset + 4, cardNumber);
+            region.putLong(offset + 8, cardTotalToday);
+            region.putInt(offset + 16, account1);
+            region.putInt(offset + 20, account2);
+            region.putLong(offset + 24, total1);
+            region.putLong(offset + 32, available1);
+            region.putLong(offset + 40, total2);
+            region.putLong(offset + 48, available2);
+            region.putLong(offset + 56, checksum(offset));
+
+            position += RECORD_SIZE;
+            return position;
+        }
+        finally
+        {
+            appendLock.unlock();
+        }
+    }
+
+    /** Map the region after the one being appended to, if that has not been
+     *  done yet, so that append() can move on to it without waiting for the
+     *  file to be extended.  Called by the bank after it releases its locks
+     *
+     *  @exception IOException if the region cannot be mapped
+     */
+    void prepareNextRegion() throws IOException
+    {
+        long start;
+        appendLock.lock();
+        try
+        {
+            if (nextRegion != null)
+                return;
+            start = regionStart + REGION_SIZE;
+        }
+        finally
+        {
+            appendLock.unlock();
+        }
+
+        MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_WRITE,
+                                              start, REGION_SIZE);
+
+        // If append() moved on while we were mapping, it mapped the region
+        // itself, and ours is no longer needed
+
+        appendLock.lock();
+        try
+        {
+            if (nextRegion == null && regionStart + REGION_SIZE == start)
+                nextRegion = mapped;
+        }
+        finally
+        {
+            appendLock.unlock();
+        }
+    }
+
+    /** Wait until a record is durable, as far as the durability mode requires
+     *
+     *  @param recordEnd the position returned by append() for the record
+     */
+    void commit(long recordEnd)
+    {
+        switch(durability)
+        {
+            case SYNC_EACH_RECORD:
+
+                flush();
+                break;
+
+            case GROUP_COMMIT:
+
+                flushLock.lock();
+                try
+                {
+                    // If someone else is already forcing the file, wait for
+                    // them - their flush may well cover our record too.  An
+                    // interrupt is kept for the caller to see
+
+                    while (flushing && durablePosition < recordEnd)
+                        flushed.awaitUninterruptibly();
+                    if (durablePosition >= recordEnd)
+                        return;
+                    flushing = true;
+                }
+                finally
+                {
+                    flushLock.unlock();
+                }
+
+                // We lead the next group.  Our flush covers every record
+                // appended up to now, including the records of everyone who
+                // queued up behind us while the previous flush was running
+
+                try
+                {
+                    flush();
+                }
+                finally
+                {
+                    flushLock.lock();
+                    try
+                    {
+                        flushing = false;
+                        flushed.signalAll();
+                    }
+                    finally
+                    {
+                        flushLock.unlock();
+                    }
+                }
+                break;
+
+            case ASYNC:
+
+                break;
+        }
+    }
+
+    /** Force every record appended so far to disk
+     */
+    void flush()
+    {
+        long target;
+        MappedByteBuffer toForce;
+        MappedByteBuffer [] filled;
+        appendLock.lock();
+        try
+        {
+            target = position;
+            toForce = region;
+            filled = filledRegions.toArray(new MappedByteBuffer[filledRegions.size()]);
+        }
+        finally
+        {
+            appendLock.unlock();
+        }
+        flushLock.lock();
+        try
+        {
+            if (target <= durablePosition)
+                return;
+        }
+        finally
+        {
+            flushLock.unlock();
+        }
+
+        // Regions filled since the last flush are forced first, in order.  A
+        // flush running at the same time may force them again, which costs
+        // little, since it finds nothing left to write
+
+        for (int i = 0; i < filled.length; i ++)
+            filled[i].force();
+        toForce.force();
+
+        appendLock.lock();
+        try
+        {
+            for (int i = 0; i < filled.length; i ++)
+                if (! filledRegions.isEmpty() && filledRegions.get(0) == filled[i])
+                    filledRegions.remove(0);
+        }
+        finally
+        {
+            appendLock.unlock();
+        }
+
+        flushLock.lock();
+        try
+        {
+            flushCount ++;
+            if (target > durablePosition)
+                durablePosition = target;
+        }
+        finally
+        {
+            flushLock.unlock();
+        }
+    }
+
+    /** Apply the records in the journal to a bank, in the order they were
+     *  appended.  Used while restarting, before the bank handles any messages.
+     *
+     *  @param from the position of the first record to apply
+     *  @param bank the bank to apply them to
+     *  @return the number of records applied
+     *  @exception IOException if the journal cannot be read, or does not match
+     *             the bank
+     */
+    int replay(long from, SimulatedBank bank) throws IOException
+    {
+        long end = getPosition();
+        int records = 0;
+
+        while (from < end)
+        {
+            long start = from - from % REGION_SIZE;
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, start,
+                                                  Math.min(REGION_SIZE, end - start));
+            for (; from < end && from < start + REGION_SIZE; from += RECORD_SIZE)
+            {
+                int offset = (int) (from - start);
+                bank.apply(buffer.getInt(offset), buffer.getInt(offset + 4),
+                           buffer.getLong(offset + 8),
+                           buffer.getInt(offset + 16), buffer.getLong(offset + 24),
+                           buffer.getLong(offset + 32),
+                           buffer.getInt(offset + 20), buffer.getLong(offset + 40),
+                           buffer.getLong(offset + 48));
+                records ++;
+            }
+        }
+        return records;
+    }
+
+    /** Accessor for the end of the journal
+     *
+     *  @return the position at which the next record will be appended
+     */
+    long getPosition()
+    {
+        appendLock.lock();
+        try
+        {
+            return position;
+        }
+        finally
+        {
+            appendLock.unlock();
+        }
+    }
+
+    /** Close the journal, forcing everything appended so far to disk
+     *
+     *  @exception IOException if the file cannot be closed
+     */
+    public void close() throws IOException
+    {
+        flush();
+        closed = true;
+        channel.close();
+    }
+
+    /** Accessor for number of times the file has been forced to disk
+     *
+     *  @return number of disk flushes so far
+     */
+    public long getFlushCount()
+    {
+        flushLock.lock();
+        try
+        {
+            return flushCount;
+        }
+        finally
+        {
+            flushLock.unlock();
+        }
+    }
+
+    /** Map the region of the file starting at a given position
+     *
+     *  @param start the position of the start of the region
+     *  @exception IOException if the region cannot be mapped
+     */
+    private void mapRegion(long start) throws IOException
+    {
+        region = channel.map(FileChannel.MapMode.READ_WRITE, start, REGION_SIZE);
+        regionStart = start;
+    }
+
+    /** Check the record at a given position
+     *
+     *  @param at the position of the record, which must be in the current region
+     *  @return true if there is a complete, undamaged record at this position
+     */
+    private boolean isRecord(long at)
+    {
+        int offset = (int) (at - regionStart);
+        return region.getInt(offset) != 0
+            && region.getLong(offset + 56) == checksum(offset);
+    }
+
+    /** Compute the checksum of the record at a given offset in the current region
+     *
+     *  @param offset the offset of the record
+     *  @return checksum of the first 56 bytes of the record
+     */
+    private long checksum(int offset)
+    {
+        long sum = 0x5151L;
+        for (int i = 0; i < 56; i += 8)
+            sum = Long.rotateLeft(sum, 17) ^ region.getLong(offset + i) * 0x9E3779B97F4A7C15L;
+        return sum;
+    }
+
+
+    // Durability modes
+
+
+    /** Force the journal to disk for every record
+     */
+    public static final int SYNC_EACH_RECORD = 1;
+
+    /** Force the journal to disk once for all records committed at the same time
+     */
+    public static final int GROUP_COMMIT = 2;
+
+    /** Force the journal to disk in the background
+     */
+    public static final int ASYNC = 3;
+
+
+    // Record types
+
+
+    /** Record of a withdrawal - cardTotalToday is withdrawals today
+     */
+    static final int WITHDRAWAL_RECORD = 1;
+
+    /** Record of a completed deposit - cardTotalToday is not used
+     */
+    static final int DEPOSIT_RECORD = 2;
+
+    /** Record of a transfer - cardTotalToday is transfers today
+     */
+    static final int TRANSFER_RECORD = 3;
+
+    /** Size of each record, in bytes
+     */
+    private static final int RECORD_SIZE = 64;
+
+    /** Size of each mapped region of the file, in bytes - a multiple of
+     *  RECORD_SIZE
+     */
+    private static final int REGION_SIZE = 16 * 1024 * 1024;
+
+    /** Interval between background flushes in ASYNC mode, in milliseconds
+     */
+    private static final long ASYNC_INTERVAL = 50;
+
+    /** The durability mode
+     */
+    private final int durability;
+
+    /** The journal file
+     */
+    private final FileChannel channel;
+
+    /** The region of the file currently being appended to
+     */
+    private MappedByteBuffer region;
+
+    /** Position in the file of the start of region
+     */
+    private long regionStart;
+
+    /** The region after region, mapped ahead of time - null until
+     *  prepareNextRegion() maps it.  Guarded by appendLock
+     */
+    private MappedByteBuffer nextRegion;
+
+    /** Regions filled, oldest first, that no flush has finished forcing yet -
+     *  guarded by appendLock
+     */
+    private final List<MappedByteBuffer> filledRegions = new ArrayList<MappedByteBuffer>();
+
+    /** Position in the file at which the next record will be appended -
+     *  guarded by appendLock, as are region and regionStart once the journal
+     *  is open
+     */
+    private long position;
+
+    /** Every record before this position is known to be on disk - guarded by
+     *  flushLock
+     */
+    private long durablePosition;
+
+    /** True while a group commit leader is forcing the file - guarded by
+     *  flushLock
+     */
+    private boolean flushing;
+
+    /** Number of times the file has been forced - guarded by flushLock
+     */
+    private long flushCount;
+
+    /** Lock for appending records
+     */
+    private final ReentrantLock appendLock = new ReentrantLock();
+
+    /** Lock for the flush state
+     */
+    private final ReentrantLock flushLock = new ReentrantLock();
+
+    /** Signalled when a group commit leader has finished forcing the file
+     */
+    private final Condition flushed = flushLock.newCondition();
+
+    /** Becomes true when the journal is closed
+     */
+    private volatile boolean closed;
+}
@@ -0,0 +1,491 @@
+/*
+ * ATM Example system - file BankServer.java
+ *
+ */
+
+package simulation;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+import banking.Balances;
+import banking.BankStatus;
+import banking.Message;
+import banking.MessageCodec;
+import banking.Status;
+
+/** Network front end for a simulated bank.  ATMs connect over TCP and send
+ *  requests in the format of MessageCodec; the message in each is handed to
+ *  the bank, and the response sent back on the same connection, with the
+ *  request's tag, in the order the requests arrived.  A client may send many
+ *  requests without waiting for the responses, and one connection may carry
+ *  the requests of many ATMs.
+ *
+ *  One thread serves every connection with a non-blocking selector loop.  It
+ *  decodes the complete messages that have arrived on a connection and hands
+ *  each to a pool of WORKER_THREADS threads to be handled by the bank - which
+ *  may have to wait for its journal to reach the disk - so that waiting never
+ *  holds up the network.  As the responses at the head of a connection's
+ *  queue come back, the server thread writes them.  A connection has at most
+ *  MAXIMUM_IN_FLIGHT messages being handled at once, and if a client does not
+ *  read its responses, the server stops reading that client's messages until
+ *  it does.
+ *
+ *  A message the bank cannot handle - of a type it does not know, e.g. from
+ *  a newer version of the ATM, or for a negative amount - is answered with
+ *  BankStatus.INVALID_MESSAGE without reaching the bank.  If anything else
+ *  goes wrong with a connection, that connection is closed, and the server
+ *  goes on serving the others.
+ */
+public class BankServer implements Runnable
+{
+    /** Constructor - binds the server socket, but does not serve until run()
+     *  or start() is called
+     *
+     *  @param bank the bank to serve
+     *  @param address address to listen on - e.g. the loopback address and
+     *         NetworkToBank.BANK_PORT.  Port 0 chooses any free port
+     *  @exception IOException if the address cannot be bound
+     */
+    public BankServer(SimulatedBank bank, InetSocketAddress address) throws IOException
+    {
+        this.bank = bank;
+        selector = Selector.open();
+        serverChannel = ServerSocketChannel.open();
+        serverChannel.bind(address, BACKLOG);
+        serverChannel.configureBlocking(false);
+        serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+        workers = Executors.newFixedThreadPool(WORKER_THREADS, new ThreadFactory() {
+            public Thread newThread(Runnable runnable)
+            {
+                Thread thread = new Thread(runnable, "Bank server worker");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /** Serve on a new daemon thread
+     */
+    public void start()
+    {
+        Thread thread = new Thread(this, "Bank server");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /** Serve until closed
+     */
+    public void run()
+    {
+        try
+        {
+            while (! closed)
+            {
+                selector.select();
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext())
+                {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    handle(key, false);
+                }
+
+                // Connections with responses ready to write
+
+                SelectionKey key;
+                while ((key = ready.poll()) != null)
+                    handle(key, true);
+            }
+        }
+        catch(IOException e)
+        {
+            System.err.println("Bank server stopped: " + e);
+        }
+        finally
+        {
+            workers.shutdown();
+            for (SelectionKey key : selector.keys())
+            {
+                try
+                {
+                    key.channel().close();
+                }
+                catch(IOException e)
+                { }
+            }
+            try
+            {
+                selector.close();
+            }
+            catch(IOException e)
+            { }
+        }
+    }
+
+    /** Stop serving and close every connection, as soon as the server thread
+     *  notices
+     */
+    public void close()
+    {
+        closed = true;
+        selector.wakeup();
+    }
+
+    /** Accessor for the port the server listens on
+     *
+     *  @return the port number
+     */
+    public int getPort()
+    {
+        return serverChannel.socket().getLocalPort();
+    }
+
+    /** Accessor for number of client connections open
+     *
+     *  @return the number of connections
+     */
+    public int getConnectionsOpen()
+    {
+        return connectionsOpen;
+    }
+
+    /** Accessor for number of messages handled so far
+     *
+     *  @return the number of messages
+     */
+    public long getMessagesHandled()
+    {
+        return messagesHandled;
+    }
+
+    /** Do whatever a key is ready for
+     *
+     *  @param key the key
+     *  @param responsesReady true if the key is a connection with responses
+     *         ready to write, rather than one the selector chose
+     *  @exception IOException if the server cannot go on
+     */
+    private void handle(SelectionKey key, boolean responsesReady) throws IOException
+    {
+        try
+        {
+            if (! key.isValid())
+                return;
+            if (responsesReady)
+                serve(key);
+            else if (key.isAcceptable())
+                accept();
+            else if (key.isReadable())
+                read(key);
+            else
+                serve(key);
+        }
+        catch(IOException e)
+        {
+            // The client has gone away (or broken the protocol), so forget it
+
+            drop(key);
+        }
+        catch(RuntimeException e)
+        {
+            System.err.println("Bank server dropped a connection: " + e);
+            drop(key);
+        }
+    }
+
+    /** Accept a new connection
+     */
+    private void accept() throws IOException
+    {
+        SocketChannel channel = serverChannel.accept();
+        if (channel == null)
+            return;
+        channel.configureBlocking(false);
+        channel.setOption(StandardSocketOptions.TCP_NODELAY, Boolean.TRUE);
+        SelectionKey key = channel.register(selector, SelectionKey.OP_READ);
+        key.attach(new Connection(key));
+        connectionsOpen ++;
+    }
+
+    /** Read what has arrived on a connection, then serve it
+     *
+     *  @param key the connection's key
+     */
+    private void read(SelectionKey key) throws IOException
+    {
+        Connection connection = (Connection) key.attachment();
+        if (((SocketChannel) key.channel()).read(connection.in) < 0)
+            throw new IOException("Connection closed by client");
+
+        serve(key);
+    }
+
+    /** Hand every complete request received on a connection to the workers,
+     *  as far as MAXIMUM_IN_FLIGHT allows, and write the responses that have
+     *  come back, in the order the requests arrived.  If the connection will
+     *  not take all of them, wait until it can take more before reading
+     *  anything else from it
+     *
+     *  @param key the connection's key
+     */
+    private void serve(SelectionKey key) throws IOException
+    {
+        Connection connection = (Connection) key.attachment();
+        SocketChannel channel = (SocketChannel) key.channel();
+
+        while (true)
+        {
+            connection.in.flip();
+            while (connection.in.remaining() >= MessageCodec.REQUEST_SIZE
+                   && connection.inFlight.size() < MAXIMUM_IN_FLIGHT)
+            {
+                int tag = connection.in.getInt();
+                int atmID = connection.in.getInt();
+                Request request = new Request(connection, tag, atmID,
+                                              MessageCodec.decode(connection.in));
+                connection.inFlight.add(request);
+                if (isValid(request.message))
+                    workers.execute(request);
+                else
+                    request.answer(BankStatus.of(BankStatus.INVALID_MESSAGE));
+            }
+            connection.in.compact();
+
+            Request head;
+            while ((head = connection.inFlight.peek()) != null && head.done
+                   && connection.out.remaining() >= MAXIMUM_RESPONSE_SIZE)
+            {
+                connection.inFlight.remove();
+                if (head.failure != null)
+                    throw head.failure;
+                MessageCodec.encodeResponse(head.tag, head.status, head.balances,
+                                            connection.out);
+                messagesHandled ++;
+            }
+
+            connection.out.flip();
+            channel.write(connection.out);
+            boolean drained = ! connection.out.hasRemaining();
+            connection.out.compact();
+
+            if (! drained)
+            {
+                key.interestOps(SelectionKey.OP_WRITE);
+                return;
+            }
+            boolean moreResponses = (head = connection.inFlight.peek()) != null && head.done;
+            boolean moreRequests = connection.in.position() >= MessageCodec.REQUEST_SIZE
+                                   && connection.inFlight.size() < MAXIMUM_IN_FLIGHT;
+            if (! moreResponses && ! moreRequests)
+            {
+                key.interestOps(connection.inFlight.size() < MAXIMUM_IN_FLIGHT
+                                ? SelectionKey.OP_READ : 0);
+                return;
+            }
+        }
+    }
+
+    /** See whether a message received is one the bank can handle
+     *
+     *  @param message the message
+     *  @return true if it is of a type the bank knows - the codes run from
+     *          Message.WITHDRAWAL to Message.VERIFY_PIN - and its amount is
+     *          not negative
+     */
+    private static boolean isValid(Message message)
+    {
+        return message.getMessageCode() >= Message.WITHDRAWAL
+               && message.getMessageCode() <= Message.VERIFY_PIN
+               && message.getAmount().getCents() >= 0;
+    }
+
+    /** Close a connection and forget it
+     *
+     *  @param key the connection's key
+     */
+    private void drop(SelectionKey key) throws IOException
+    {
+        key.cancel();
+        key.channel().close();
+        if (key.attachment() instanceof Connection)
+            connectionsOpen --;
+    }
+
+    /** State of one client connection
+     */
+    private static class Connection
+    {
+        /** Constructor
+         *
+         *  @param key the connection's key
+         */
+        Connection(SelectionKey key)
+        {
+            this.key = key;
+        }
+
+        /** The connection's key
+         */
+        final SelectionKey key;
+
+        /** Bytes received and not yet handed to the workers
+         */
+        final ByteBuffer in = ByteBuffer.allocateDirect(BUFFER_SIZE);
+
+        /** Responses not yet written
+         */
+        final ByteBuffer out = ByteBuffer.allocateDirect(BUFFER_SIZE);
+
+        /** Requests whose responses have not been written, in the order they
+         *  arrived.  Only the server thread uses it
+         */
+        final Queue<Request> inFlight = new ArrayDeque<Request>();
+    }
+
+    /** One request received, handled by a worker
+     */
+    private class Request implements Runnable
+    {
+        /** Constructor
+         *
+         *  @param connection the connection the request came on
+         *  @param tag the request's tag, to send back with the response
+         *  @param atmID id of the ATM that sent the message
+         *  @param message the message
+         */
+        Request(Connection connection, int tag, int atmID, Message message)
+        {
+            this.connection = connection;
+            this.tag = tag;
+            this.atmID = atmID;
+            this.message = message;
+        }
+
+        /** Have the bank handle the message, then tell the server thread
+         */
+        public void run()
+        {
+            try
+            {
+                answer(bank.handleMessage(atmID, message, balances));
+            }
+            catch(RuntimeException e)
+            {
+                failure = e;
+                answer(null);
+            }
+        }
+
+        /** Record the response, and have the server thread write it
+         *
+         *  @param status status code returned by the bank
+         */
+        void answer(Status status)
+        {
+            this.status = status;
+            done = true;
+            ready.add(connection.key);
+            selector.wakeup();
+        }
+
+        /** The connection the request came on
+         */
+        final Connection connection;
+
+        /** The request's tag
+         */
+        final int tag;
+
+        /** Id of the ATM that sent the message, and the message
+         */
+        final int atmID;
+        final Message message;
+
+        /** Balances reported by the bank
+         */
+        final Balances balances = new Balances();
+
+        /** Status returned by the bank
+         */
+        Status status;
+
+        /** What the bank threw instead of returning a status - null if it
+         *  did not
+         */
+        RuntimeException failure;
+
+        /** Becomes true when status (or failure) and balances are set
+         */
+        volatile boolean done;
+    }
+
+    /** The bank served
+     */
+    private final SimulatedBank bank;
+
+    /** Selector for the server socket and all connections
+     */
+    private final Selector selector;
+
+    /** The server socket
+     */
+    private final ServerSocketChannel serverChannel;
+
+    /** Threads handing messages to the bank
+     */
+    private final ExecutorService workers;
+
+    /** Keys of connections with responses ready to write, added to by the
+     *  workers
+     */
+    private final Queue<SelectionKey> ready = new ConcurrentLinkedQueue<SelectionKey>();
+
+    /** Becomes true when the server is to stop
+     */
+    private volatile boolean closed;
+
+    /** Client connections open.  Only the server thread changes it
+     */
+    private volatile int connectionsOpen;
+
+    /** Messages handled so far.  Only the server thread changes it
+     */
+    private volatile long messagesHandled;
+
+    /** Size of each connection's input and output buffers
+     */
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /** Largest response - the longest failure description the bank gives is
+     *  well under 200 bytes, and a response holds the balances of at most
+     *  every account type
+     */
+    private static final int MAXIMUM_RESPONSE_SIZE = MessageCodec.RESPONSE_HEADER_SIZE + 512
+        + Balances.MAXIMUM_ACCOUNT_TYPES * MessageCodec.ACCOUNT_BALANCES_SIZE;
+
+    /** Number of threads handing messages to the bank
+     */
+    private static final int WORKER_THREADS = 16;
+
+    /** Most messages of one connection being handled at once
+     */
+    private static final int MAXIMUM_IN_FLIGHT = 256;
+
+    /** Connections waiting to be accepted
+     */
+    private static final int BACKLOG = 4096;
+}
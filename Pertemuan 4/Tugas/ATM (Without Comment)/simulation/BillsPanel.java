@@ -1 +1 @@
-/* * ATM Example system - file BillsPanel.java     * * copyright (c) 2001 - Russell C. Bjork * */ package simulation;import banking.Money;import java.awt.*;import java.awt.event.*;/** The GUI panel that allows the operator to enter the number of bills in the *  ATM at startup */class BillsPanel extends Panel{    /** Constructor     */    BillsPanel()    {        setLayout(new GridLayout(0, 1, 0, 0));        setFont(new Font("Monospaced", Font.PLAIN, 14));                add(new Label("ATM yang sebenarnya memiliki mesin untuk memeriksa",                      Label.CENTER));        add(new Label("atau mengijinkan operator memasukan jumlah lembar",                      Label.CENTER));        add(new Label("uang Rp.50.000 yang di dalam cash dispenser.",                      Label.CENTER));        add(new Label("Untuk tujuan simulasi,",                      Label.CENTER));        add(new Label("silahkan masukan jumlah lembar uang Rp.50.000 secara manual.",                      Label.CENTER));        add(new Label("Lalu tekan Enter",                      Label.CENTER));                billsNumberField = new TextField(30);        billsNumberField.addActionListener(new ActionListener() {            public void actionPerformed(ActionEvent e)            {                synchronized(BillsPanel.this)                {                    BillsPanel.this.notify();                }            }        });        Panel billsNumberPanel = new Panel();        billsNumberPanel.add(billsNumberField);        add(billsNumberPanel);      }    /** Ask the operator to enter the number of bills in the cash dispenser     *     *  @return the number entered     */    synchronized int readBills()    {        boolean validNumberRead = false;        int billsNumber = 0;                billsNumberField.setText("");                while(! validNumberRead)        {            billsNumberField.requestFocus();            try            {                wait();            }            catch(InterruptedException e)            { }                                try            {                billsNumber = Integer.parseInt(billsNumberField.getText());                if (billsNumber >= 0)                    validNumberRead = true;                else                    getToolkit().beep();            }            catch(NumberFormatException e)            {                getToolkit().beep();            }            if (! validNumberRead)            {                billsNumberField.setText("Harus integer yang valid >= 0");                billsNumberField.selectAll();            }        }        return billsNumber;    }        /** The field into which the number of bills is to be entered     */    private TextField billsNumberField;}
\ No newline at end of file
+/* * ATM Example system - file BillsPanel.java     * * copyright (c) 2001 - Russell C. Bjork * */ package simulation;import banking.Money;import java.awt.*;import java.awt.event.*;import java.util.concurrent.locks.Condition;import java.util.concurrent.locks.ReentrantLock;/** The GUI panel that allows the operator to enter the number of bills in the *  ATM at startup */class BillsPanel extends Panel{    /** Constructor     */    BillsPanel()    {        setLayout(new GridLayout(0, 1, 0, 0));        setFont(new Font("Monospaced", Font.PLAIN, 14));                add(new Label("ATM yang sebenarnya memiliki mesin untuk memeriksa",                      Label.CENTER));        add(new Label("atau mengijinkan operator memasukan jumlah lembar",                      Label.CENTER));        add(new Label("uang Rp.50.000 yang di dalam cash dispenser.",                      Label.CENTER));        add(new Label("Untuk tujuan simulasi,",                      Label.CENTER));        add(new Label("silahkan masukan jumlah lembar uang Rp.50.000 secara manual.",                      Label.CENTER));        add(new Label("Lalu tekan Enter",                      Label.CENTER));                billsNumberField = new TextField(30);        billsNumberField.addActionListener(new ActionListener() {            public void actionPerformed(ActionEvent e)            {                lock.lock();                try                {                    entered = true;                    enteredChanged.signal();                }                finally                {                    lock.unlock();                }            }        });        Panel billsNumberPanel = new Panel();        billsNumberPanel.add(billsNumberField);        add(billsNumberPanel);      }    /** Ask the operator to enter the number of bills in the cash dispenser.     *  Waits with a lock and condition rather than the panel's monitor, so     *  the ATM's thread may be a virtual thread without pinning its carrier     *     *  @return the number entered     */    int readBills()    {        boolean validNumberRead = false;        int billsNumber = 0;                billsNumberField.setText("");                while(! validNumberRead)        {            lock.lock();            try            {                entered = false;                billsNumberField.requestFocus();                while (! entered)                    enteredChanged.awaitUninterruptibly();            }            finally            {                lock.unlock();            }                                try            {                billsNumber = Integer.parseInt(billsNumberField.getText());                if (billsNumber >= 0)                    validNumberRead = true;                else                    getToolkit().beep();            }            catch(NumberFormatException e)            {                getToolkit().beep();            }            if (! validNumberRead)            {                billsNumberField.setText("Harus integer yang valid >= 0");                billsNumberField.selectAll();            }        }        return billsNumber;    }        /** The field into which the number of bills is to be entered     */    private TextField billsNumberField;        /** Becomes true when the operator presses Enter in the field     */    private boolean entered;        /** Guards entered     */    private final ReentrantLock lock = new ReentrantLock();        /** Signalled when entered becomes true     */    private final Condition enteredChanged = lock.newCondition();}
\ No newline at end of file
@@ -0,0 +1,312 @@
+/*
+ * ATM Example system - file HeadlessDevices.java
+ *
+ */
+
+package simulation;
+
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.StringTokenizer;
+
+import atm.physical.LogEvent;
+import banking.Card;
+import banking.Money;
+
+/** Headless replacement for the GUI devices of one simulated ATM.  Instead of
+ *  waiting for a person to click and type, it takes the customer's actions from
+ *  a script prepared in advance; instead of animating the display, cash
+ *  dispenser and receipt printer, it records what they were asked to show in
+ *  memory.  No AWT classes are used and nothing ever sleeps, so sessions run at
+ *  CPU speed on a machine with no display.
+ *
+ *  The script is consumed in order: each card read takes the next card number,
+ *  each keyboard read the next line of input, and each envelope wait the next
+ *  envelope.  If the script runs out, the card cannot be read, input is
+ *  cancelled and no envelope arrives, so a session never blocks.
+ */
+public class HeadlessDevices
+{
+    /** Constructor
+     *
+     *  @param initialCash the amount of cash the operator reports is in the
+     *         cash dispenser at startup
+     */
+    public HeadlessDevices(Money initialCash)
+    {
+        this.initialCash = initialCash;
+    }
+
+    /** Add the insertion of a card to the script
+     *
+     *  @param cardNumber the number on the card
+     */
+    public synchronized void addCard(int cardNumber)
+    {
+        cards.add(new Card(cardNumber));
+    }
+
+    /** Add a line of keyboard input to the script
+     *
+     *  @param input the keys pressed before ENTER - for a menu, the number of
+     *         the option as displayed (1 .. # of options) - or null for CANCEL
+     */
+    public synchronized void addInput(String input)
+    {
+        inputs.add(input);
+    }
+
+    /** Add the insertion of a deposit envelope to the script
+     *
+     *  @param inserted true if the customer inserts the envelope, false if the
+     *         customer lets the ATM time out
+     */
+    public synchronized void addEnvelope(boolean inserted)
+    {
+        envelopes.add(Boolean.valueOf(inserted));
+    }
+
+    /** Add a whole customer session to the script, written as one line of
+     *  text: the card number, then each line of keyboard input in turn,
+     *  separated by spaces, with "-" for CANCEL.  For example, "1 422442 3 1 2"
+     *  inserts card 1, enters its PIN, chooses a balance inquiry on the first
+     *  account, and declines another transaction.
+     *
+     *  @param session the session
+     */
+    public synchronized void addSession(String session)
+    {
+        StringTokenizer tokens = new StringTokenizer(session);
+        if (! tokens.hasMoreTokens())
+            return;
+
+        addCard(Integer.parseInt(tokens.nextToken()));
+        while (tokens.hasMoreTokens())
+        {
+            String input = tokens.nextToken();
+            addInput(input.equals("-") ? null : input);
+        }
+    }
+
+    /** Accessor for the lines shown on the display since output was last cleared
+     *
+     *  @return copy of the lines, oldest first
+     */
+    public synchronized List<String> getDisplayLines()
+    {
+        return new ArrayList<String>(displayLines);
+    }
+
+    /** Accessor for the receipt lines printed since output was last cleared
+     *
+     *  @return copy of the lines, oldest first
+     */
+    public synchronized List<String> getReceiptLines()
+    {
+        return new ArrayList<String>(receiptLines);
+    }
+
+    /** Accessor for the log lines written since output was last cleared
+     *
+     *  @return copy of the lines, oldest first
+     */
+    public synchronized List<String> getLogLines()
+    {
+        List<String> lines = new ArrayList<String>(logEvents.size());
+        for (int i = 0; i < logEvents.size(); i ++)
+            lines.add(logEvents.get(i).toString());
+        return lines;
+    }
+
+    /** Accessor for the log entries written since output was last cleared,
+     *  as recorded - without building their text
+     *
+     *  @return copy of the list of entries, oldest first
+     */
+    public synchronized List<LogEvent> getLogEvents()
+    {
+        return new ArrayList<LogEvent>(logEvents);
+    }
+
+    /** Accessor for cash dispensed since output was last cleared
+     *
+     *  @return total amount dispensed
+     */
+    public synchronized Money getCashDispensed()
+    {
+        return cashDispensed;
+    }
+
+    /** Accessor for number of cards ejected since output was last cleared
+     *
+     *  @return number of cards given back to customers
+     */
+    public synchronized int getCardsEjected()
+    {
+        return cardsEjected;
+    }
+
+    /** Accessor for number of cards retained since output was last cleared
+     *
+     *  @return number of cards kept because of repeated invalid PINs
+     */
+    public synchronized int getCardsRetained()
+    {
+        return cardsRetained;
+    }
+
+    /** Forget all output recorded so far
+     */
+    public synchronized void clearOutput()
+    {
+        displayLines.clear();
+        receiptLines.clear();
+        logEvents.clear();
+        cashDispensed = Money.ZERO;
+        cardsEjected = 0;
+        cardsRetained = 0;
+    }
+
+    // The remaining methods simulate the devices, and are called by Simulation
+
+    /** Simulate getting initial amount of cash from operator
+     *
+     *  @return value of initial cash given to the constructor
+     */
+    Money getInitialCash()
+    {
+        return initialCash;
+    }
+
+    /** Simulate reading of a card
+     *
+     *  @return the next card in the script - null if there is none
+     */
+    synchronized Card readCard()
+    {
+        return cards.isEmpty() ? null : cards.removeFirst();
+    }
+
+    /** Simulate ejecting a card
+     */
+    synchronized void ejectCard()
+    {
+        cardsEjected ++;
+    }
+
+    /** Simulate retaining a card
+     */
+    synchronized void retainCard()
+    {
+        cardsRetained ++;
+    }
+
+    /** Write one or more lines to the display
+     *
+     *  @param text the text to display
+     */
+    synchronized void display(String text)
+    {
+        displayLines.add(text);
+    }
+
+    /** Simulate reading input from the keyboard.  As with the real keyboard,
+     *  a menu choice that is not one of the options is ignored.
+     *
+     *  @param mode the input mode to use - one of the constants in Simulation
+     *  @param maxValue the maximum acceptable value (used in MENU_MODE only)
+     *  @return the next line of input in the script - null for CANCEL, or if
+     *          there is none
+     */
+    synchronized String readInput(int mode, int maxValue)
+    {
+        while (! inputs.isEmpty())
+        {
+            String input = inputs.removeFirst();
+            if (input == null || mode != Simulation.MENU_MODE)
+                return input;
+
+            int choice = Integer.parseInt(input);
+            if (choice >= 1 && choice <= maxValue)
+                return input;
+        }
+        return null;
+    }
+
+    /** Simulate dispensing cash to a customer
+     *
+     *  @param amount the amount of cash to dispense
+     */
+    synchronized void dispenseCash(Money amount)
+    {
+        cashDispensed = cashDispensed.plus(amount);
+    }
+
+    /** Simulate accepting an envelope from customer
+     *
+     *  @return the next envelope in the script - false if there is none
+     */
+    synchronized boolean acceptEnvelope()
+    {
+        return ! envelopes.isEmpty() && envelopes.removeFirst().booleanValue();
+    }
+
+    /** Simulate printing one line of a receipt
+     *
+     *  @param text the line to print
+     */
+    synchronized void printReceiptLine(String text)
+    {
+        receiptLines.add(text);
+    }
+
+    /** Simulate writing an entry to the log
+     *
+     *  @param event the entry
+     */
+    synchronized void log(LogEvent event)
+    {
+        logEvents.add(event);
+    }
+
+    /** Cash the operator reports at startup
+     */
+    private Money initialCash;
+
+    /** Cards still to be inserted
+     */
+    private LinkedList<Card> cards = new LinkedList<Card>();
+
+    /** Lines of input still to be typed - null for CANCEL
+     */
+    private LinkedList<String> inputs = new LinkedList<String>();
+
+    /** Envelopes still to be inserted - false for a timeout
+     */
+    private LinkedList<Boolean> envelopes = new LinkedList<Boolean>();
+
+    /** Lines shown on the display
+     */
+    private List<String> displayLines = new ArrayList<String>();
+
+    /** Lines printed on receipts
+     */
+    private List<String> receiptLines = new ArrayList<String>();
+
+    /** Entries written to the log
+     */
+    private List<LogEvent> logEvents = new ArrayList<LogEvent>();
+
+    /** Total cash dispensed
+     */
+    private Money cashDispensed = Money.ZERO;
+
+    /** Number of cards ejected
+     */
+    private int cardsEjected;
+
+    /** Number of cards retained
+     */
+    private int cardsRetained;
+}
@@ -0,0 +1,262 @@
+/*
+ * ATM Example system - file Journal.java
+ *
+ */
+
+package simulation;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import atm.physical.LogEvent;
+
+/** Read access to an ATM journal written by a JournalLogSink - possibly
+ *  while it is being written.  Entries can be found by transaction (ATM and
+ *  serial number), by card and by time without reading the whole journal:
+ *  a search goes through the Bloom filters and times of the blocks of
+ *  records in each segment's index, and reads only the records of blocks
+ *  that may hold what it wants.
+ *
+ *  The segments are opened, and memory mapped, when the journal is opened or
+ *  refreshed.  Entries committed later to the segment being written are
+ *  seen straight away; segments started, merged or deleted later only after
+ *  refresh().
+ *
+ *  A Journal is meant to be used by one thread at a time.
+ */
+public class Journal
+{
+    /** Constructor
+     *
+     *  @param directory directory of the journal
+     *  @exception IOException if the journal cannot be read
+     */
+    public Journal(File directory) throws IOException
+    {
+        this.directory = directory;
+        if (! directory.isDirectory())
+            throw new IOException("No journal in " + directory);
+        refresh();
+    }
+
+    /** Open the segments of the journal as they are now.  The writer may
+     *  merge or delete segments while they are being opened; if one has
+     *  gone, start again
+     *
+     *  @exception IOException if a segment cannot be read
+     */
+    public void refresh() throws IOException
+    {
+        close();
+        for (int attempt = 1; ; attempt ++)
+        {
+            long [] numbers = JournalSegment.list(directory, false);
+            try
+            {
+                for (int i = 0; i < numbers.length; i ++)
+                    segments.add(JournalSegment.open(directory, numbers[i], false));
+                return;
+            }
+            catch(IOException e)
+            {
+                close();
+                if (attempt == OPEN_ATTEMPTS)
+                    throw e;
+            }
+        }
+    }
+
+    /** Find the entries of a transaction - the message sent, and the
+     *  response to it
+     *
+     *  @param atmID id of the ATM that sent the message
+     *  @param serialNumber serial number of the transaction
+     *  @return the entries, oldest first
+     */
+    public List<LogEvent> findTransaction(int atmID, long serialNumber)
+    {
+        return search(BY_TRANSACTION, JournalSegment.transactionKey(atmID, serialNumber),
+                      atmID, serialNumber, Long.MIN_VALUE, Long.MAX_VALUE, Integer.MAX_VALUE);
+    }
+
+    /** Find the entries of messages about a card, and responses to them,
+     *  in a period
+     *
+     *  @param cardNumber number of the card
+     *  @param from start of the period, as System.currentTimeMillis() gives it
+     *  @param to end of the period, inclusive
+     *  @return the entries, oldest first
+     */
+    public List<LogEvent> findCard(int cardNumber, long from, long to)
+    {
+        return search(BY_CARD, JournalSegment.cardKey(cardNumber), 0, cardNumber,
+                      from, to, Integer.MAX_VALUE);
+    }
+
+    /** Find the entries of a period
+     *
+     *  @param from start of the period, as System.currentTimeMillis() gives it
+     *  @param to end of the period, inclusive
+     *  @param limit most entries to find
+     *  @return the first entries of the period, oldest first
+     */
+    public List<LogEvent> findTime(long from, long to, int limit)
+    {
+        return search(BY_TIME, 0, 0, 0, from, to, limit);
+    }
+
+    /** Accessor for the number of segments open
+     *
+     *  @return the number of segments
+     */
+    public int getSegments()
+    {
+        return segments.size();
+    }
+
+    /** Accessor for the number of entries in the journal
+     *
+     *  @return the number of entries committed
+     */
+    public long getRecords()
+    {
+        long records = 0;
+        for (int i = 0; i < segments.size(); i ++)
+            records += segments.get(i).getRecords();
+        return records;
+    }
+
+    /** Accessor for the size of the journal's files
+     *
+     *  @return the size in bytes
+     *  @exception IOException if the size cannot be found
+     */
+    public long getSize() throws IOException
+    {
+        long size = 0;
+        for (int i = 0; i < segments.size(); i ++)
+            size += segments.get(i).getFileSize();
+        return size;
+    }
+
+    /** Accessor for the number of blocks whose records the last search read
+     *
+     *  @return the number of blocks
+     */
+    public int getBlocksRead()
+    {
+        return blocksRead;
+    }
+
+    /** Close the segments
+     */
+    public void close()
+    {
+        for (int i = 0; i < segments.size(); i ++)
+        {
+            try
+            {
+                segments.get(i).close();
+            }
+            catch(IOException e)
+            { }
+        }
+        segments.clear();
+    }
+
+    /** Search the journal
+     *
+     *  @param by what to search by - BY_TRANSACTION etc.
+     *  @param key key of the transaction or card in the Bloom filters
+     *  @param atmID id of the ATM of the transaction
+     *  @param value serial number of the transaction, or number of the card
+     *  @param from start of the period searched
+     *  @param to end of the period searched, inclusive
+     *  @param limit most entries to find
+     *  @return the entries found, oldest first
+     */
+    private List<LogEvent> search(int by, long key, int atmID, long value,
+                                  long from, long to, int limit)
+    {
+        List<LogEvent> found = new ArrayList<LogEvent>();
+        blocksRead = 0;
+        for (int i = 0; i < segments.size(); i ++)
+        {
+            JournalSegment segment = segments.get(i);
+            long dataLength = segment.getDataLength();
+            if (dataLength == 0 || segment.getMinTime() > to || segment.getMaxTime() < from)
+                continue;
+
+            int blocks = segment.getBlocks();
+            for (int group = 0; group * 64 < blocks; group ++)
+            {
+                long candidates = by == BY_TIME ? -1L : segment.blocksMayHold(group, key);
+                for (; candidates != 0; candidates &= candidates - 1)
+                {
+                    int block = group * 64 + Long.numberOfTrailingZeros(candidates);
+                    if (block >= blocks)
+                        break;
+                    if (! segment.blockOverlaps(block, from, to))
+                        continue;
+                    blocksRead ++;
+
+                    int offset = block * JournalSegment.BLOCK_SIZE;
+                    for (int length = segment.recordLength(block, offset, dataLength);
+                         length != 0;
+                         offset += length, length = segment.recordLength(block, offset, dataLength))
+                    {
+                        long time = segment.readTime(offset);
+                        boolean matches;
+                        switch(by)
+                        {
+                            case BY_TRANSACTION:
+                                matches = segment.readSerialNumber(offset) == value
+                                          && segment.readATMID(offset) == atmID;
+                                break;
+                            case BY_CARD:
+                                matches = segment.readCardNumber(offset) == value
+                                          && time >= from && time <= to;
+                                break;
+                            default:
+                                matches = time >= from && time <= to;
+                                break;
+                        }
+                        if (matches)
+                        {
+                            LogEvent event = new LogEvent();
+                            segment.read(offset, event);
+                            found.add(event);
+                            if (found.size() == limit)
+                                return found;
+                        }
+                    }
+                }
+            }
+        }
+        return found;
+    }
+
+    /** Directory of the journal
+     */
+    private final File directory;
+
+    /** The segments, in order
+     */
+    private final List<JournalSegment> segments = new ArrayList<JournalSegment>();
+
+    /** Blocks whose records the last search read
+     */
+    private int blocksRead;
+
+    /** What a search is by
+     */
+    private static final int BY_TRANSACTION = 0;
+    private static final int BY_CARD = 1;
+    private static final int BY_TIME = 2;
+
+    /** Times to try opening the segments before giving up
+     */
+    private static final int OPEN_ATTEMPTS = 3;
+}
@@ -0,0 +1,338 @@
+/*
+ * ATM Example system - file JournalLogSink.java
+ *
+ */
+
+package simulation;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import atm.physical.LogEvent;
+
+/** Sink that keeps the log as a journal that can be searched by transaction,
+ *  card and time (see Journal) - a directory of segments, each a memory
+ *  mapped data file of binary records and an index file with a summary of
+ *  every block of records (see JournalSegment).
+ *
+ *  Entries are appended to the active segment; each flush of the pipeline
+ *  commits them, making them visible to readers.  Committed entries are in
+ *  the operating system's hands, so they survive the program stopping, but
+ *  are only forced to disk when their segment is sealed.
+ *
+ *  When the active segment is full, the next is started straight away, and
+ *  the full one is sealed in the background by a maintenance thread: forced
+ *  to disk and cut down to the blocks it uses.  The maintenance thread then
+ *  compacts the journal - merges runs of partly filled segments, such as
+ *  each run of the program leaves, into full ones - and deletes the oldest
+ *  segments while the journal is larger than it is allowed to be.  The same
+ *  is done when the sink is opened, which also seals any segment left
+ *  unsealed by a program that stopped without closing its journal.
+ *
+ *  Only one sink at a time may write to a journal; a lock file in the
+ *  directory makes sure of that.
+ */
+public class JournalLogSink implements LogSink
+{
+    /** Constructor - opens the journal in a directory, creating it if need
+     *  be, and starts a new segment
+     *
+     *  @param directory the directory
+     *  @param segmentSize size in bytes of each segment's data file - rounded
+     *         up to a whole number of blocks
+     *  @param retainedSize size in bytes the journal is cut down to by
+     *         deleting its oldest segments - 0 to keep everything
+     *  @exception IOException if the journal cannot be opened, or another
+     *             sink is writing to it
+     */
+    public JournalLogSink(File directory, int segmentSize, long retainedSize) throws IOException
+    {
+        this.directory = directory;
+        this.segmentSize = Math.max(1, (segmentSize + JournalSegment.BLOCK_SIZE - 1)
+                                       / JournalSegment.BLOCK_SIZE) * JournalSegment.BLOCK_SIZE;
+        this.retainedSize = retainedSize;
+
+        if (! directory.isDirectory() && ! directory.mkdirs())
+            throw new IOException("Journal directory " + directory + " cannot be created");
+        lockChannel = FileChannel.open(new File(directory, LOCK_FILE).toPath(),
+                                       StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        FileLock held = null;
+        try
+        {
+            held = lockChannel.tryLock();
+        }
+        catch(OverlappingFileLockException e)
+        { }
+        lock = held;
+        if (lock == null)
+        {
+            lockChannel.close();
+            throw new IOException("Journal " + directory + " is in use");
+        }
+
+        long [] numbers = JournalSegment.list(directory, true);
+        nextNumber = numbers.length == 0
+                     ? 0 : JournalSegment.lastNumber(directory, numbers[numbers.length - 1]) + 1;
+        active = JournalSegment.create(directory, nextNumber ++, this.segmentSize);
+        activeNumber = active.getNumber();
+        activeSize = active.getFileSize();
+
+        maintenance = Executors.newSingleThreadExecutor(new ThreadFactory() {
+            public Thread newThread(Runnable runnable)
+            {
+                Thread thread = new Thread(runnable, "Journal maintenance");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        maintenance.execute(new Runnable() {
+            public void run()
+            {
+                maintain();
+            }
+        });
+    }
+
+    public void write(LogEvent event)
+    {
+        if (active == null)
+            return;
+        if (! active.append(event))
+        {
+            roll();
+            if (active != null)
+                active.append(event);
+        }
+    }
+
+    public void flush()
+    {
+        if (active != null)
+            active.commit();
+    }
+
+    /** Seal the active segment, and wait for the maintenance thread to
+     *  finish what it is doing
+     */
+    public void close()
+    {
+        if (active != null)
+        {
+            try
+            {
+                active.seal();
+                active.close();
+            }
+            catch(IOException e)
+            {
+                System.err.println("Journal segment cannot be sealed: " + e);
+            }
+            active = null;
+        }
+        maintenance.shutdown();
+        try
+        {
+            maintenance.awaitTermination(1, TimeUnit.MINUTES);
+            lock.release();
+            lockChannel.close();
+        }
+        catch(InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+        catch(IOException e)
+        { }
+    }
+
+    /** Accessors for the work done since the sink was opened
+     *
+     *  @return the number of segments filled and rolled over, merged into
+     *          others, or deleted
+     */
+    public long getSegmentsRolled()
+    {
+        return segmentsRolled;
+    }
+
+    public long getSegmentsMerged()
+    {
+        return segmentsMerged;
+    }
+
+    public long getSegmentsDeleted()
+    {
+        return segmentsDeleted;
+    }
+
+    /** Start a new segment, and have the full one sealed in the background
+     */
+    private void roll()
+    {
+        final JournalSegment full = active;
+        full.commit();
+        try
+        {
+            active = JournalSegment.create(directory, nextNumber ++, segmentSize);
+            activeNumber = active.getNumber();
+            segmentsRolled ++;
+        }
+        catch(IOException e)
+        {
+            System.err.println("Journal segment cannot be created - journal stopped: " + e);
+            active = null;
+            activeNumber = Long.MAX_VALUE;
+        }
+
+        maintenance.execute(new Runnable() {
+            public void run()
+            {
+                try
+                {
+                    full.seal();
+                    full.close();
+                }
+                catch(IOException e)
+                {
+                    System.err.println("Journal segment cannot be sealed: " + e);
+                }
+                maintain();
+            }
+        });
+    }
+
+    /** Seal segments left unsealed, merge runs of partly filled segments,
+     *  and delete the oldest segments while the journal is too large.  Only
+     *  segments before the active one are touched.  Run by the maintenance
+     *  thread
+     */
+    private void maintain()
+    {
+        try
+        {
+            long [] numbers = JournalSegment.list(directory, true);
+            long before = activeNumber;
+            List<JournalSegment> segments = new ArrayList<JournalSegment>();
+            for (int i = 0; i < numbers.length && numbers[i] < before; i ++)
+            {
+                JournalSegment segment = JournalSegment.open(directory, numbers[i], true);
+                if (! segment.isSealed())
+                    segment.seal();
+                segments.add(segment);
+            }
+
+            // Merge each run of segments that together fit in one
+
+            List<JournalSegment> compacted = new ArrayList<JournalSegment>();
+            int runStart = 0;
+            long runSize = 0;
+            for (int i = 0; i <= segments.size(); i ++)
+            {
+                long size = i < segments.size()
+                            ? (long) segments.get(i).getBlocks() * JournalSegment.BLOCK_SIZE : 0;
+                if (i < segments.size() && runSize + size <= segmentSize)
+                {
+                    runSize += size;
+                    continue;
+                }
+                if (i - runStart > 1)
+                {
+                    JournalSegment.merge(directory, segments.subList(runStart, i)
+                                                    .toArray(new JournalSegment[0]));
+                    compacted.add(JournalSegment.open(directory,
+                                                      segments.get(runStart).getNumber(), false));
+                    segmentsMerged += i - runStart - 1;
+                }
+                else if (i - runStart == 1)
+                    compacted.add(segments.get(runStart));
+                runStart = i;
+                runSize = size;
+            }
+
+            // Delete the oldest segments while the journal is too large
+
+            long total = activeSize;
+            for (int i = 0; i < compacted.size(); i ++)
+                total += compacted.get(i).getFileSize();
+            for (int i = 0; i < compacted.size(); i ++)
+            {
+                JournalSegment segment = compacted.get(i);
+                if (retainedSize > 0 && total > retainedSize)
+                {
+                    total -= segment.getFileSize();
+                    segment.delete();
+                    segmentsDeleted ++;
+                }
+                else
+                    segment.close();
+            }
+        }
+        catch(IOException e)
+        {
+            System.err.println("Journal maintenance failed: " + e);
+        }
+    }
+
+    /** Directory of the journal
+     */
+    private final File directory;
+
+    /** Size of each segment's data file
+     */
+    private final int segmentSize;
+
+    /** Size the journal is cut down to - 0 for no limit
+     */
+    private final long retainedSize;
+
+    /** The lock file, and the lock on it
+     */
+    private final FileChannel lockChannel;
+    private final FileLock lock;
+
+    /** The segment being written - null if the journal has stopped
+     */
+    private JournalSegment active;
+
+    /** Number of the segment being written.  Read by the maintenance thread
+     */
+    private volatile long activeNumber;
+
+    /** Size of the files of a segment being written - as large as they get
+     */
+    private final long activeSize;
+
+    /** Number for the next segment
+     */
+    private long nextNumber;
+
+    /** Segments filled and rolled over by the writer
+     */
+    private volatile long segmentsRolled;
+
+    /** Segments merged into others, and deleted, by the maintenance thread
+     */
+    private volatile long segmentsMerged;
+    private volatile long segmentsDeleted;
+
+    /** Thread that seals, compacts and deletes segments
+     */
+    private final ExecutorService maintenance;
+
+    /** Default size of each segment's data file
+     */
+    public static final int SEGMENT_SIZE = 64 * 1024 * 1024;
+
+    /** Name of the lock file
+     */
+    private static final String LOCK_FILE = "journal.lock";
+}
@@ -0,0 +1,884 @@
+/*
+ * ATM Example system - file JournalSegment.java
+ *
+ */
+
+package simulation;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+import atm.physical.LogEvent;
+import banking.BankStatus;
+
+/** One segment of an ATM journal (see JournalLogSink): a data file holding
+ *  log entries as binary records, and an index file summarising them.  Both
+ *  are memory mapped, for writing by the journal's writer or reading by a
+ *  Journal.
+ *
+ *  The data file is divided into blocks of BLOCK_SIZE bytes.  A record never
+ *  crosses from one block into the next; when the next record will not fit,
+ *  the rest of the block is left as zeros.  Each record is
+ *
+ *  offset  0  short length of the record in bytes (0 - no more in this block)
+ *  offset  2  byte  kind of entry - LogEvent.SEND etc.
+ *  offset  3  byte  code of status - BankStatus.SUCCESS etc.
+ *  offset  4  long  time, as System.currentTimeMillis() gave it
+ *  offset 12  int   ATM id
+ *  offset 16  int   message code
+ *  offset 20  int   card number
+ *  offset 24  long  serial number
+ *  offset 32  int   "from" account
+ *  offset 36  int   "to" account
+ *  offset 40  long  amount, in cents
+ *  offset 48        description of a failure, in UTF-8, to the end - only
+ *                   for a code with no shared BankStatus, whose description
+ *                   the code tells
+ *
+ *  Segments written before serial numbers were 64 bits - version 1 - hold
+ *  an int serial number at offset 24, and everything after it 4 bytes
+ *  earlier.  They can still be read, and are written in the current form
+ *  when merged.
+ *
+ *  The index file - the sparse index - starts with a header of HEADER_SIZE
+ *  bytes
+ *
+ *  offset  0  int   MAGIC
+ *  offset  4  int   VERSION
+ *  offset  8  long  number of the segment
+ *  offset 16  long  data length - bytes of the data file up to the end of the
+ *                   last record committed.  Written last, so a reader that
+ *                   sees a length sees everything before it
+ *  offset 24  long  number of the last segment merged into this one (its own
+ *                   number if none were)
+ *  offset 32  long  earliest time of any record
+ *  offset 40  long  latest time of any record
+ *  offset 48  int   number of records
+ *  offset 52  int   1 if the segment is sealed - will not be written again
+ *  offset 56  int   width of the Bloom filter rows, in longs
+ *  offset 60  int   number of blocks whose keys are in the Bloom filter rows
+ *
+ *  followed by a summary of SUMMARY_SIZE bytes for each block there is room
+ *  for - 64 times the width
+ *
+ *  offset  0  long  earliest time of any record in the block
+ *  offset  8  long  latest time of any record in the block
+ *  offset 16  int   number of records in the block
+ *
+ *  and then a Bloom filter of BLOOM_BITS bits for each block, holding the
+ *  transaction key (ATM id and serial number) and card key of each record in
+ *  the block.  The filters are stored bit-sliced: row i holds bit i of the
+ *  filter of every block, one bit a block, so the filters of 64 blocks are
+ *  checked for a key by ANDing one long from each of BLOOM_HASHES rows.  A
+ *  search looks at a few longs for each 64 blocks, and at the summaries,
+ *  and reads the records of just the blocks that may hold what it wants.
+ *
+ *  The writer adds the keys of 64 blocks to the rows when the last of them
+ *  is full, so a reader looks through the records of blocks after those
+ *  itself.  When the segment is sealed, the keys of any blocks left are
+ *  added, and the index is cut down to the rows' width the blocks used need.
+ *
+ *  All numbers are in the order of a ByteBuffer - big endian.
+ */
+class JournalSegment
+{
+    /** Constructor
+     *
+     *  @param number number of the segment
+     *  @param dataFile the data file
+     *  @param indexFile the index file
+     *  @param dataChannel the open data file
+     *  @param indexChannel the open index file
+     *  @param data the data file, mapped
+     *  @param index the index file, mapped
+     */
+    private JournalSegment(long number, File dataFile, File indexFile, FileChannel dataChannel,
+                           FileChannel indexChannel, MappedByteBuffer data, MappedByteBuffer index)
+    {
+        this.number = number;
+        this.dataFile = dataFile;
+        this.indexFile = indexFile;
+        this.dataChannel = dataChannel;
+        this.indexChannel = indexChannel;
+        this.data = data;
+        this.index = index;
+        width = index.getInt(56);
+        rows = HEADER_SIZE + width * 64 * SUMMARY_SIZE;
+        narrow = index.getInt(4) == OLDEST_VERSION ? 4 : 0;
+    }
+
+    /** Create a new, empty segment for writing
+     *
+     *  @param directory directory of the journal
+     *  @param number number of the segment
+     *  @param capacity size in bytes of the data file - a multiple of
+     *         BLOCK_SIZE
+     *  @return the segment
+     *  @exception IOException if the files cannot be created
+     */
+    static JournalSegment create(File directory, long number, int capacity) throws IOException
+    {
+        return create(dataFile(directory, number), indexFile(directory, number), number, capacity);
+    }
+
+    /** Open an existing segment for reading, or for sealing
+     *
+     *  @param directory directory of the journal
+     *  @param number number of the segment
+     *  @param writable true to open for sealing
+     *  @return the segment
+     *  @exception IOException if the files cannot be read, or are not a
+     *             segment
+     */
+    static JournalSegment open(File directory, long number, boolean writable) throws IOException
+    {
+        StandardOpenOption [] options = writable
+            ? new StandardOpenOption[] { StandardOpenOption.READ, StandardOpenOption.WRITE }
+            : new StandardOpenOption[] { StandardOpenOption.READ };
+        FileChannel.MapMode mode = writable ? FileChannel.MapMode.READ_WRITE
+                                            : FileChannel.MapMode.READ_ONLY;
+        File dataFile = dataFile(directory, number);
+        File indexFile = indexFile(directory, number);
+        FileChannel dataChannel = FileChannel.open(dataFile.toPath(), options);
+        FileChannel indexChannel = null;
+        try
+        {
+            indexChannel = FileChannel.open(indexFile.toPath(), options);
+            MappedByteBuffer data = dataChannel.map(mode, 0, dataChannel.size());
+            MappedByteBuffer index = indexChannel.map(mode, 0, indexChannel.size());
+            if (index.capacity() < HEADER_SIZE || index.getInt(0) != MAGIC
+                || index.getInt(4) < OLDEST_VERSION || index.getInt(4) > VERSION
+                || index.getLong(8) != number
+                || index.capacity() < indexSize(index.getInt(56)))
+                throw new IOException("Not a journal segment: " + indexFile);
+            return new JournalSegment(number, dataFile, indexFile, dataChannel, indexChannel,
+                                      data, index);
+        }
+        catch(IOException e)
+        {
+            dataChannel.close();
+            if (indexChannel != null)
+                indexChannel.close();
+            throw e;
+        }
+    }
+
+    /** Merge consecutive sealed segments into one, with the number of the
+     *  first, and delete the rest.  The records are copied into a new
+     *  segment, which replaces the first.  The merged segment records the
+     *  number of the last segment merged, so if the program stops before the
+     *  others have been deleted, list() leaves them out
+     *
+     *  @param directory directory of the journal
+     *  @param segments the segments, in order - closed by this method
+     *  @exception IOException if the merged segment cannot be written
+     */
+    static void merge(File directory, JournalSegment [] segments) throws IOException
+    {
+        long number = segments[0].number;
+        File dataFile = dataFile(directory, number);
+        File indexFile = indexFile(directory, number);
+        File mergedData = new File(directory, dataFile.getName() + TEMPORARY_SUFFIX);
+        File mergedIndex = new File(directory, indexFile.getName() + TEMPORARY_SUFFIX);
+        mergedData.delete();
+        mergedIndex.delete();
+
+        // Records are packed into blocks in order, as many as fit, so the
+        // records of the segments fit in as many blocks as they have - and,
+        // for a version 1 segment, whose records each grow by 4 bytes of
+        // at least 44, a quarter as many again
+
+        int blocks = 0;
+        for (int i = 0; i < segments.length; i ++)
+        {
+            blocks += segments[i].getBlocks();
+            if (segments[i].narrow != 0)
+                blocks += segments[i].getBlocks() / 4 + 1;
+        }
+        JournalSegment merged = create(mergedData, mergedIndex, number,
+                                       Math.max(1, blocks) * BLOCK_SIZE);
+        LogEvent event = new LogEvent();
+        for (int i = 0; i < segments.length; i ++)
+        {
+            JournalSegment segment = segments[i];
+            long dataLength = segment.getDataLength();
+            for (int block = 0; block < segment.getBlocks(); block ++)
+            {
+                int offset = block * BLOCK_SIZE;
+                for (int length = segment.recordLength(block, offset, dataLength); length != 0;
+                     offset += length, length = segment.recordLength(block, offset, dataLength))
+                {
+                    segment.read(offset, event);
+                    merged.append(event);
+                }
+            }
+        }
+        merged.index.putLong(24, segments[segments.length - 1].getLastNumber());
+        merged.seal();
+        merged.close();
+
+        for (int i = 0; i < segments.length; i ++)
+            segments[i].close();
+        Files.move(mergedData.toPath(), dataFile.toPath(),
+                   StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        Files.move(mergedIndex.toPath(), indexFile.toPath(),
+                   StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        for (int i = 1; i < segments.length; i ++)
+            segments[i].delete();
+    }
+
+    /** Find the segments of a journal.  A segment merged into another whose
+     *  files were not deleted is left out - and deleted, if deleteMerged
+     *
+     *  @param directory directory of the journal
+     *  @param deleteMerged true to delete segments merged into others
+     *  @return the numbers of the segments, in order
+     */
+    static long [] list(File directory, boolean deleteMerged)
+    {
+        String [] names = directory.list();
+        if (names == null)
+            return new long[0];
+
+        long [] numbers = new long[names.length];
+        int count = 0;
+        for (int i = 0; i < names.length; i ++)
+            if (names[i].startsWith(PREFIX) && names[i].endsWith(INDEX_SUFFIX)
+                && names[i].length() == PREFIX.length() + 20 + INDEX_SUFFIX.length())
+            {
+                try
+                {
+                    numbers[count] = Long.parseLong(names[i].substring(PREFIX.length(),
+                                                                       PREFIX.length() + 20));
+                    count ++;
+                }
+                catch(NumberFormatException e)
+                { }
+            }
+        numbers = Arrays.copyOf(numbers, count);
+        Arrays.sort(numbers);
+
+        // Leave out any segment covered by the one before it
+
+        int kept = 0;
+        long covered = -1;
+        for (int i = 0; i < numbers.length; i ++)
+        {
+            if (numbers[i] <= covered)
+            {
+                if (deleteMerged)
+                {
+                    dataFile(directory, numbers[i]).delete();
+                    indexFile(directory, numbers[i]).delete();
+                }
+                continue;
+            }
+            numbers[kept ++] = numbers[i];
+            covered = Math.max(covered, lastNumber(directory, numbers[i]));
+        }
+        return Arrays.copyOf(numbers, kept);
+    }
+
+    /** Find the number of the last segment merged into a segment, from its
+     *  index file
+     *
+     *  @param directory directory of the journal
+     *  @param number number of the segment
+     *  @return the number, or the segment's own if it cannot be read
+     */
+    static long lastNumber(File directory, long number)
+    {
+        try (FileChannel channel = FileChannel.open(indexFile(directory, number).toPath(),
+                                                    StandardOpenOption.READ))
+        {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            if (channel.read(header, 0) == HEADER_SIZE && header.getInt(0) == MAGIC)
+                return Math.max(number, header.getLong(24));
+        }
+        catch(IOException e)
+        { }
+        return number;
+    }
+
+    // Writing
+
+    /** Append an entry, if there is room for it in this segment
+     *
+     *  @param event the entry
+     *  @return false if the segment is full - nothing was written
+     */
+    boolean append(LogEvent event)
+    {
+        String description = BankStatus.isShared(event.getStatusCode())
+                             ? null : event.getStatusMessage();
+        byte [] descriptionBytes = description == null ? NO_DESCRIPTION
+                                   : description.getBytes(StandardCharsets.UTF_8);
+        int descriptionLength = Math.min(descriptionBytes.length, MAXIMUM_DESCRIPTION);
+        int length = RECORD_HEADER_SIZE + descriptionLength;
+
+        if (position + length > blockEnd)
+        {
+            if (blockEnd == data.capacity())
+                return false;
+            commitBlock();
+            if (blockEnd / BLOCK_SIZE % 64 == 0)
+                addKeys(blockEnd / BLOCK_SIZE - 64, blockEnd / BLOCK_SIZE, position);
+            startBlock(blockEnd);
+        }
+
+        long time = event.getTime();
+        data.putShort(position, (short) length)
+            .put(position + 2, (byte) event.getKind())
+            .put(position + 3, (byte) event.getStatusCode())
+            .putLong(position + 4, time)
+            .putInt(position + 12, event.getATMID())
+            .putInt(position + 16, event.getMessageCode())
+            .putInt(position + 20, event.getCardNumber())
+            .putLong(position + 24, event.getSerialNumber())
+            .putInt(position + 32, event.getFromAccount())
+            .putInt(position + 36, event.getToAccount())
+            .putLong(position + 40, event.getAmountCents());
+        if (descriptionLength > 0)
+            data.put(position + RECORD_HEADER_SIZE, descriptionBytes, 0, descriptionLength);
+        position += length;
+
+        blockMinTime = Math.min(blockMinTime, time);
+        blockMaxTime = Math.max(blockMaxTime, time);
+        blockRecords ++;
+        return true;
+    }
+
+    /** Make everything appended so far visible to readers - write the
+     *  current block's summary and the header
+     */
+    void commit()
+    {
+        commitBlock();
+    }
+
+    /** Commit, add the keys of the blocks not yet in the Bloom filter rows,
+     *  mark the segment as sealed, write everything to disk and cut the files
+     *  down to what is used.  Also used for a segment left unsealed when the
+     *  program stopped.  The index is cut down by writing a new one in its
+     *  place, so the segment must be opened again to see it
+     *
+     *  @exception IOException if the files cannot be written
+     */
+    void seal() throws IOException
+    {
+        if (blockEnd > 0)
+            commit();
+        long dataLength = getDataLength();
+        int blocks = getBlocks();
+        int indexed = (int) INDEXED_BLOCKS.getAcquire(index, 60);
+        if (indexed < blocks)
+            addKeys(indexed, blocks, dataLength);
+        index.putInt(52, 1);
+        data.force();
+        index.force();
+        dataChannel.truncate((long) blocks * BLOCK_SIZE);
+        dataChannel.force(true);
+
+        int sealedWidth = (blocks + 63) / 64;
+        if (sealedWidth < width)
+        {
+            File sealedIndex = new File(indexFile.getPath() + TEMPORARY_SUFFIX);
+            try (FileChannel out = FileChannel.open(sealedIndex.toPath(),
+                    StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                    StandardOpenOption.WRITE))
+            {
+                ByteBuffer header = index.duplicate().position(0)
+                                         .limit(HEADER_SIZE + blocks * SUMMARY_SIZE);
+                out.write(header);
+                out.write(ByteBuffer.allocate(4).putInt(0, sealedWidth), 56);
+                ByteBuffer row = index.duplicate();
+                for (int i = 0; i < BLOOM_BITS; i ++)
+                {
+                    int start = rows + i * width * 8;
+                    row.limit(start + sealedWidth * 8).position(start);
+                    out.write(row, indexSize(sealedWidth) - (long) (BLOOM_BITS - i) * sealedWidth * 8);
+                }
+                out.force(true);
+            }
+            Files.move(sealedIndex.toPath(), indexFile.toPath(),
+                       StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+    }
+
+    /** Close the files
+     */
+    void close() throws IOException
+    {
+        dataChannel.close();
+        indexChannel.close();
+    }
+
+    /** Close and delete the files
+     */
+    void delete() throws IOException
+    {
+        close();
+        Files.deleteIfExists(indexFile.toPath());
+        Files.deleteIfExists(dataFile.toPath());
+    }
+
+    // Reading
+
+    /** Accessor for the segment's number
+     *
+     *  @return the number
+     */
+    long getNumber()
+    {
+        return number;
+    }
+
+    /** Accessor for the number of the last segment merged into this one
+     *
+     *  @return the number - this segment's own if none were merged into it
+     */
+    long getLastNumber()
+    {
+        return index.getLong(24);
+    }
+
+    /** Accessor for the length of the data committed
+     *
+     *  @return the number of bytes up to the end of the last record committed
+     */
+    long getDataLength()
+    {
+        return (long) DATA_LENGTH.getAcquire(index, 16);
+    }
+
+    /** Accessor for the number of blocks holding committed records
+     *
+     *  @return the number of blocks
+     */
+    int getBlocks()
+    {
+        return (int) ((getDataLength() + BLOCK_SIZE - 1) / BLOCK_SIZE);
+    }
+
+    /** Accessor for whether the segment is sealed
+     *
+     *  @return true if it is
+     */
+    boolean isSealed()
+    {
+        return index.getInt(52) != 0;
+    }
+
+    /** Accessors for the earliest and latest times of any record
+     *
+     *  @return the time
+     */
+    long getMinTime()
+    {
+        return index.getLong(32);
+    }
+
+    long getMaxTime()
+    {
+        return index.getLong(40);
+    }
+
+    /** Accessor for the number of records committed
+     *
+     *  @return the number of records
+     */
+    int getRecords()
+    {
+        return index.getInt(48);
+    }
+
+    /** Accessor for the size of the segment's files, as they are now
+     *
+     *  @return the size in bytes
+     */
+    long getFileSize()
+    {
+        return dataFile.length() + indexFile.length();
+    }
+
+    /** See which of 64 blocks may hold records with a key, according to
+     *  their Bloom filters.  Blocks whose keys are not in the filters yet may
+     *  hold anything
+     *
+     *  @param group the blocks - 64 * group to 64 * group + 63
+     *  @param key the key - from transactionKey() or cardKey()
+     *  @return a bit for each block, 1 unless the block certainly does not
+     *          hold the key
+     */
+    long blocksMayHold(int group, long key)
+    {
+        int indexed = (int) INDEXED_BLOCKS.getAcquire(index, 60) - 64 * group;
+        if (indexed <= 0)
+            return -1L;
+
+        long blocks = -1L;
+        int row = rows + group * 8;
+        int first = (int) key;
+        int step = (int) (key >>> 32) | 1;
+        for (int i = 0; i < BLOOM_HASHES; i ++)
+            blocks &= index.getLong(row + ((first + i * step) & (BLOOM_BITS - 1)) * width * 8);
+        return indexed >= 64 ? blocks : blocks | (-1L << indexed);
+    }
+
+    /** See whether a block holds records from a period, according to its
+     *  summary
+     *
+     *  @param block the block
+     *  @param from start of the period
+     *  @param to end of the period
+     *  @return false if it certainly does not
+     */
+    boolean blockOverlaps(int block, long from, long to)
+    {
+        int summary = HEADER_SIZE + block * SUMMARY_SIZE;
+        return index.getLong(summary) <= to && index.getLong(summary + 8) >= from;
+    }
+
+    /** Find the length of the record at an offset, so as to step to the next
+     *  record in the block
+     *
+     *  @param block the block being read
+     *  @param offset offset in the data file
+     *  @param dataLength the data length, as getDataLength() gave it
+     *  @return the length of the record, or 0 if there is no record there -
+     *          the end of the block or of the data has been reached.  The end
+     *          of a block its records fill exactly is the start of the next,
+     *          so the block is needed to tell them apart
+     */
+    int recordLength(int block, int offset, long dataLength)
+    {
+        int headerSize = RECORD_HEADER_SIZE - narrow;
+        int blockEnd = (block + 1) * BLOCK_SIZE;
+        if (offset >= dataLength || offset > blockEnd - headerSize)
+            return 0;
+        int length = data.getShort(offset);
+        if (length < headerSize || offset + length > blockEnd)
+            return 0;
+        return length;
+    }
+
+    /** Read a record
+     *
+     *  @param offset offset of the record in the data file
+     *  @param event (out) the entry the record holds
+     */
+    void read(int offset, LogEvent event)
+    {
+        int length = data.getShort(offset);
+        int rest = offset - narrow;
+        String description = null;
+        if (length > RECORD_HEADER_SIZE - narrow)
+        {
+            byte [] bytes = new byte[length - RECORD_HEADER_SIZE + narrow];
+            data.get(rest + RECORD_HEADER_SIZE, bytes);
+            description = new String(bytes, StandardCharsets.UTF_8);
+        }
+        event.set(data.get(offset + 2), data.getLong(offset + 4), data.getInt(offset + 12),
+                  data.getInt(offset + 16), data.getInt(offset + 20), readSerialNumber(offset),
+                  data.getInt(rest + 32), data.getInt(rest + 36), data.getLong(rest + 40),
+                  data.get(offset + 3), description);
+    }
+
+    /** Read one field of a record, without reading the rest
+     *
+     *  @param offset offset of the record in the data file
+     *  @return the field
+     */
+    int readATMID(int offset)
+    {
+        return data.getInt(offset + 12);
+    }
+
+    int readCardNumber(int offset)
+    {
+        return data.getInt(offset + 20);
+    }
+
+    long readSerialNumber(int offset)
+    {
+        return narrow == 0 ? data.getLong(offset + 24) : data.getInt(offset + 24);
+    }
+
+    long readTime(int offset)
+    {
+        return data.getLong(offset + 4);
+    }
+
+    /** Key for a transaction in the Bloom filters
+     *
+     *  @param atmID id of the ATM
+     *  @param serialNumber serial number of the transaction
+     *  @return the key
+     */
+    static long transactionKey(int atmID, long serialNumber)
+    {
+        return mix(((long) atmID << 32) ^ serialNumber);
+    }
+
+    /** Key for a card in the Bloom filters
+     *
+     *  @param cardNumber number of the card
+     *  @return the key
+     */
+    static long cardKey(int cardNumber)
+    {
+        return mix(CARD_KEY ^ cardNumber);
+    }
+
+    /** Names of a segment's files
+     *
+     *  @param directory directory of the journal
+     *  @param number number of the segment
+     *  @return the file
+     */
+    static File dataFile(File directory, long number)
+    {
+        return new File(directory, String.format("%s%020d%s", PREFIX, number, DATA_SUFFIX));
+    }
+
+    static File indexFile(File directory, long number)
+    {
+        return new File(directory, String.format("%s%020d%s", PREFIX, number, INDEX_SUFFIX));
+    }
+
+    // Private methods
+
+    /** Create a new, empty segment for writing, with files of any name
+     *
+     *  @param dataFile the data file
+     *  @param indexFile the index file
+     *  @param number number of the segment
+     *  @param capacity size in bytes of the data file - a multiple of
+     *         BLOCK_SIZE
+     *  @return the segment
+     *  @exception IOException if the files cannot be created
+     */
+    private static JournalSegment create(File dataFile, File indexFile, long number,
+                                         int capacity) throws IOException
+    {
+        FileChannel dataChannel = FileChannel.open(dataFile.toPath(),
+            StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        FileChannel indexChannel = FileChannel.open(indexFile.toPath(),
+            StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        int width = (capacity / BLOCK_SIZE + 63) / 64;
+        MappedByteBuffer data = dataChannel.map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+        MappedByteBuffer index = indexChannel.map(FileChannel.MapMode.READ_WRITE, 0,
+                                                  indexSize(width));
+
+        index.putInt(0, MAGIC).putInt(4, VERSION).putLong(8, number).putLong(24, number)
+             .putLong(32, Long.MAX_VALUE).putLong(40, Long.MIN_VALUE).putInt(56, width);
+        JournalSegment segment = new JournalSegment(number, dataFile, indexFile, dataChannel,
+                                                    indexChannel, data, index);
+        segment.startBlock(0);
+        return segment;
+    }
+
+    /** Size of an index file
+     *
+     *  @param width width of the Bloom filter rows, in longs
+     *  @return the size in bytes
+     */
+    private static long indexSize(int width)
+    {
+        return HEADER_SIZE + (long) width * 64 * SUMMARY_SIZE + (long) BLOOM_BITS * width * 8;
+    }
+
+    /** Start a new block at an offset
+     *
+     *  @param offset offset of the block in the data file
+     */
+    private void startBlock(int offset)
+    {
+        position = offset;
+        blockEnd = offset + BLOCK_SIZE;
+        blockMinTime = Long.MAX_VALUE;
+        blockMaxTime = Long.MIN_VALUE;
+        blockRecords = 0;
+        committedRecords = 0;
+    }
+
+    /** Write the summary of the current block and the header, and publish
+     *  the data length
+     */
+    private void commitBlock()
+    {
+        if (blockRecords == committedRecords)
+            return;
+
+        int summary = HEADER_SIZE + (blockEnd / BLOCK_SIZE - 1) * SUMMARY_SIZE;
+        index.putLong(summary, blockMinTime).putLong(summary + 8, blockMaxTime)
+             .putInt(summary + 16, blockRecords);
+        index.putLong(32, Math.min(getMinTime(), blockMinTime))
+             .putLong(40, Math.max(getMaxTime(), blockMaxTime))
+             .putInt(48, getRecords() + blockRecords - committedRecords);
+        committedRecords = blockRecords;
+        DATA_LENGTH.setRelease(index, 16, (long) position);
+    }
+
+    /** Add the keys of the records of some blocks to the Bloom filter rows,
+     *  and publish the number of blocks whose keys are in them.  The keys
+     *  of up to 64 blocks are gathered a row at a time, and each row's long
+     *  written once
+     *
+     *  @param from the first block - a multiple of 64
+     *  @param to the block after the last
+     *  @param dataLength end of the records
+     */
+    private void addKeys(int from, int to, long dataLength)
+    {
+        long [] bits = new long[BLOOM_BITS];
+        for (int group = from / 64; group * 64 < to; group ++)
+        {
+            Arrays.fill(bits, 0);
+            for (int block = group * 64; block < Math.min(to, group * 64 + 64); block ++)
+            {
+                long bit = 1L << (block & 63);
+                int offset = block * BLOCK_SIZE;
+                for (int length = recordLength(block, offset, dataLength); length != 0;
+                     offset += length, length = recordLength(block, offset, dataLength))
+                {
+                    if (readSerialNumber(offset) != 0)
+                        addKey(bits, transactionKey(readATMID(offset), readSerialNumber(offset)),
+                               bit);
+                    if (readCardNumber(offset) != 0)
+                        addKey(bits, cardKey(readCardNumber(offset)), bit);
+                }
+            }
+            for (int i = 0; i < BLOOM_BITS; i ++)
+                index.putLong(rows + (i * width + group) * 8, bits[i]);
+        }
+        INDEXED_BLOCKS.setRelease(index, 60, to);
+    }
+
+    /** Set the bits of a key in the Bloom filter rows of some blocks
+     *
+     *  @param bits (in/out) the rows, one long each
+     *  @param key the key
+     *  @param bit the block's bit in each long
+     */
+    private static void addKey(long [] bits, long key, long bit)
+    {
+        int first = (int) key;
+        int step = (int) (key >>> 32) | 1;
+        for (int i = 0; i < BLOOM_HASHES; i ++)
+            bits[(first + i * step) & (BLOOM_BITS - 1)] |= bit;
+    }
+
+    /** Mix the bits of a number thoroughly - the finaliser of MurmurHash3
+     *
+     *  @param x the number
+     *  @return the mixed bits
+     */
+    private static long mix(long x)
+    {
+        x = (x ^ (x >>> 33)) * 0xff51afd7ed558ccdL;
+        x = (x ^ (x >>> 33)) * 0xc4ceb9fe1a85ec53L;
+        return x ^ (x >>> 33);
+    }
+
+    /** Number of the segment
+     */
+    private final long number;
+
+    /** The files, open and mapped
+     */
+    private final File dataFile;
+    private final File indexFile;
+    private final FileChannel dataChannel;
+    private final FileChannel indexChannel;
+    private final MappedByteBuffer data;
+    private final MappedByteBuffer index;
+
+    /** Width of the Bloom filter rows in longs, and offset of the first row
+     */
+    private final int width;
+    private final int rows;
+
+    /** How much shorter than now the records of the segment are - 4 for a
+     *  version 1 segment, with int serial numbers, else 0
+     */
+    private final int narrow;
+
+    // State of the block being written - only used by the writer
+
+    /** Offset at which the next record goes, and end of the current block -
+     *  0 if the segment is not being written
+     */
+    private int position;
+    private int blockEnd;
+
+    /** Summary of the current block so far
+     */
+    private long blockMinTime;
+    private long blockMaxTime;
+    private int blockRecords;
+
+    /** Records of the current block already counted in the header
+     */
+    private int committedRecords;
+
+    /** Access to the data length and number of blocks in the Bloom filter
+     *  rows in the header with memory ordering, so a reader in another thread
+     *  that sees a value also sees what was written before it
+     */
+    private static final VarHandle DATA_LENGTH =
+        MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.BIG_ENDIAN);
+    private static final VarHandle INDEXED_BLOCKS =
+        MethodHandles.byteBufferViewVarHandle(int[].class, ByteOrder.BIG_ENDIAN);
+
+    /** Sizes of the parts of the files
+     */
+    static final int BLOCK_SIZE = 16 * 1024;
+    static final int HEADER_SIZE = 64;
+    static final int SUMMARY_SIZE = 24;
+    static final int BLOOM_BITS = 8192;
+    static final int RECORD_HEADER_SIZE = 48;
+
+    /** Longest description of a failure kept, in bytes
+     */
+    private static final int MAXIMUM_DESCRIPTION = 1024;
+
+    /** Bits set in a Bloom filter for each key - a block holds a few hundred
+     *  keys, so this gives about one block in ten thousand that holds
+     *  something other than what is looked for
+     */
+    private static final int BLOOM_HASHES = 7;
+
+    /** Mixed into card keys, so they differ from transaction keys
+     */
+    private static final long CARD_KEY = 0x43415244L << 32;
+
+    /** Identification of an index file
+     */
+    private static final int MAGIC = 0x41544d4a;    // "ATMJ"
+    private static final int VERSION = 2;
+    private static final int OLDEST_VERSION = 1;
+
+    /** Names of the files - PREFIX, the number in 20 digits, then a suffix.
+     *  Files being written in place of others have TEMPORARY_SUFFIX added
+     */
+    private static final String PREFIX = "segment-";
+    private static final String DATA_SUFFIX = ".journal";
+    private static final String INDEX_SUFFIX = ".index";
+    private static final String TEMPORARY_SUFFIX = ".tmp";
+
+    /** Description written for a success
+     */
+    private static final byte [] NO_DESCRIPTION = new byte[0];
+}
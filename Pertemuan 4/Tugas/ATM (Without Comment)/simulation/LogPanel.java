@@ -1 +1 @@
-/* * ATM Example system - file LogPanel.java   * * copyright (c) 2001 - Russell C. Bjork * */ package simulation;import java.awt.*;import java.awt.event.*;/** The GUI panel that displays the ATM's internal log */class LogPanel extends Panel{    /** Constructor     *     *  @param gui the the overall GUI     */         LogPanel(final GUI gui)    {        GridBagLayout logLayout = new GridBagLayout();        setLayout(logLayout);        setFont(new Font("Monospaced", Font.PLAIN, 14));                Label logPanelLabel = new Label("Log", Label.CENTER);        add(logPanelLabel);        GridBagConstraints constraints =             GUI.makeConstraints(0, 0, 1, 1, GridBagConstraints.NONE);        constraints.weighty = 0;        logLayout.setConstraints(logPanelLabel, constraints);                     logPrintArea = new TextArea();        logPrintArea.setBackground(Color.white);        logPrintArea.setForeground(Color.black);        logPrintArea.setFont(new Font("Monospaced", Font.PLAIN, 12));        logPrintArea.setEditable(false);                add(logPrintArea);        constraints = GUI.makeConstraints(1, 0, 1, 1, GridBagConstraints.BOTH);        constraints.weighty = 1;        logLayout.setConstraints(logPrintArea, constraints);                Panel logButtonPanel = new Panel();        logButtonPanel.setLayout(new FlowLayout());                Button clearLogButton = new Button("Clear Log");        clearLogButton.addActionListener(new ActionListener() {            public void actionPerformed(ActionEvent e)            {                logPrintArea.setText("");            }        });        logButtonPanel.add(clearLogButton);                Button dismissLogButton = new Button(" Hide Log ");        dismissLogButton.addActionListener(new ActionListener() {            public void actionPerformed(ActionEvent e)            {                gui.showCard("ATM");            }        });                logButtonPanel.add(dismissLogButton);        add(logButtonPanel);        constraints = GUI.makeConstraints(2, 0, 1, 1, GridBagConstraints.NONE);        constraints.weighty = 0;        logLayout.setConstraints(logButtonPanel, constraints);    }        /** Add text to the log     *     *  @param text the text to be printed     */    void println(String text)    {        logPrintArea.append(text + "\n");    }        /** Area into which the log is to be printed     */    private TextArea logPrintArea;}                    
\ No newline at end of file
+/* * ATM Example system - file LogPanel.java   * * copyright (c) 2001 - Russell C. Bjork * */ package simulation;import java.awt.*;import java.awt.event.*;import atm.physical.LogEvent;/** The GUI panel that displays the ATM's internal log.  It is a sink of the *  ATM's log pipeline, so entries are added by the pipeline's writer thread, *  a batch at a time, and the ATM never waits for the text area */class LogPanel extends Panel implements LogSink{    /** Constructor     *     *  @param gui the the overall GUI     */         LogPanel(final GUI gui)    {        GridBagLayout logLayout = new GridBagLayout();        setLayout(logLayout);        setFont(new Font("Monospaced", Font.PLAIN, 14));                Label logPanelLabel = new Label("Log", Label.CENTER);        add(logPanelLabel);        GridBagConstraints constraints =             GUI.makeConstraints(0, 0, 1, 1, GridBagConstraints.NONE);        constraints.weighty = 0;        logLayout.setConstraints(logPanelLabel, constraints);                     logPrintArea = new TextArea();        logPrintArea.setBackground(Color.white);        logPrintArea.setForeground(Color.black);        logPrintArea.setFont(new Font("Monospaced", Font.PLAIN, 12));        logPrintArea.setEditable(false);                add(logPrintArea);        constraints = GUI.makeConstraints(1, 0, 1, 1, GridBagConstraints.BOTH);        constraints.weighty = 1;        logLayout.setConstraints(logPrintArea, constraints);                Panel logButtonPanel = new Panel();        logButtonPanel.setLayout(new FlowLayout());                Button clearLogButton = new Button("Clear Log");        clearLogButton.addActionListener(new ActionListener() {            public void actionPerformed(ActionEvent e)            {                logPrintArea.setText("");            }        });        logButtonPanel.add(clearLogButton);                Button dismissLogButton = new Button(" Hide Log ");        dismissLogButton.addActionListener(new ActionListener() {            public void actionPerformed(ActionEvent e)            {                gui.showCard("ATM");            }        });                logButtonPanel.add(dismissLogButton);        add(logButtonPanel);        constraints = GUI.makeConstraints(2, 0, 1, 1, GridBagConstraints.NONE);        constraints.weighty = 0;        logLayout.setConstraints(logButtonPanel, constraints);    }        /** Add the text of an entry to the batch being gathered     *     *  @param event the entry     */    public void write(LogEvent event)    {        event.appendTo(batch).append('\n');    }        /** Add the text of the batch to the log     */    public void flush()    {        if (batch.length() > 0)        {            logPrintArea.append(batch.toString());            batch.setLength(0);        }    }        public void close()    {        flush();    }        /** Area into which the log is to be printed     */    private TextArea logPrintArea;        /** Text of the entries written since the last flush     */    private final StringBuilder batch = new StringBuilder();}                    
\ No newline at end of file
@@ -0,0 +1,524 @@
+/*
+ * ATM Example system - file LogPipeline.java
+ *
+ */
+
+package simulation;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.StringTokenizer;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+import atm.physical.LogEvent;
+
+/** Carries the entries of ATMs' logs from the ATMs to the sinks that output
+ *  them, so an ATM never waits for a text area or a file.  Logging an entry
+ *  only copies it into a slot of a bounded ring buffer; one writer thread
+ *  takes the entries out in batches, in the order they were logged, and
+ *  writes each batch to every sink.
+ *
+ *  The ring buffer takes entries from any number of threads without locking.
+ *  A thread logging an entry claims the next slot by advancing a counter with
+ *  compare and set, fills the slot in, and then publishes it by recording the
+ *  slot's sequence number, which is what the writer waits for.  The slots'
+ *  events are created once, with the buffer, and reused.
+ *
+ *  So that the ATMs need not wake it for every entry, the writer sleeps for
+ *  up to WRITER_PARK_NANOS when it finds nothing to write, and is only woken
+ *  sooner once the buffer is half full.  It then writes everything that has
+ *  arrived, and flushes the sinks when it runs out of entries or has written
+ *  FLUSH_SIZE since the last flush - so a file gets one write for many
+ *  entries, and an entry waits about a millisecond at most.
+ *
+ *  When the buffer is full, what happens to an entry depends on the overflow
+ *  policy the pipeline was created with:
+ *
+ *  BLOCK - the ATM waits until the writer has made room, so nothing is lost
+ *  DROP - the entry is thrown away and counted
+ *  SAMPLE - as DROP, but once the buffer is more than SAMPLE_THRESHOLD full
+ *  only one entry in sampleRate, chosen at random, is taken, so some entries
+ *  from every ATM get through while the writer catches up
+ *
+ *  A pipeline can be set up from system properties:
+ *
+ *  -Datm.log=stdout,file:atm.log,journal:atm-journal - the sinks, as well as
+ *  any the caller gives.  journal: names the directory of a journal that can
+ *  be searched (see JournalLogSink)
+ *  -Datm.logOverflow=block|drop|sample - the overflow policy (default block)
+ *  -Datm.logBuffer=8192 - slots in the ring buffer, rounded up to a power of 2
+ *  -Datm.logSample=10 - sampleRate for SAMPLE
+ *  -Datm.logFileSize=10485760 - bytes in a log file before it is rolled over
+ *  -Datm.logSegmentSize=67108864 - bytes in each segment of a journal
+ *  -Datm.logRetain=0 - bytes a journal is cut down to, 0 for no limit
+ */
+public class LogPipeline
+{
+    /** Constructor - creates the ring buffer, but does not write anything
+     *  until start() is called
+     *
+     *  @param capacity slots in the ring buffer - rounded up to a power of 2
+     *  @param overflowPolicy BLOCK, DROP or SAMPLE
+     *  @param sampleRate for SAMPLE, one entry in this many is taken once the
+     *         buffer is filling up
+     *  @param sinks the sinks to write to
+     */
+    public LogPipeline(int capacity, int overflowPolicy, int sampleRate, LogSink [] sinks)
+    {
+        int size = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+        slots = new LogEvent[size];
+        for (int i = 0; i < size; i ++)
+            slots[i] = new LogEvent();
+        sequences = new AtomicLongArray(size);
+        for (int i = 0; i < size; i ++)
+            sequences.set(i, -1);
+        mask = size - 1;
+        sampleThreshold = (long) (size * SAMPLE_THRESHOLD);
+        wakeThreshold = size / 2;
+        this.overflowPolicy = overflowPolicy;
+        this.sampleRate = Math.max(1, sampleRate);
+        this.sinks = sinks.clone();
+        writer = new Thread(new Runnable() {
+            public void run()
+            {
+                writeEntries();
+            }
+        }, "Log writer");
+        writer.setDaemon(true);
+    }
+
+    /** Create a pipeline as the system properties described above say, and
+     *  start it.  It is closed, writing out whatever is left in it, when the
+     *  program exits.  A sink that cannot be opened is reported and left out
+     *
+     *  @param sinks sinks to write to as well as those named by atm.log
+     *  @return the pipeline, or null if there are no sinks at all
+     *  @exception IllegalArgumentException if atm.logOverflow or atm.log names
+     *             something unknown
+     */
+    public static LogPipeline fromProperties(LogSink [] sinks)
+    {
+        List<LogSink> all = new ArrayList<LogSink>();
+        for (int i = 0; i < sinks.length; i ++)
+            all.add(sinks[i]);
+
+        StringTokenizer names = new StringTokenizer(System.getProperty("atm.log", ""), ",");
+        while (names.hasMoreTokens())
+        {
+            String name = names.nextToken().trim();
+            if (name.equals("stdout"))
+                all.add(new StreamLogSink(System.out));
+            else if (name.startsWith("file:"))
+            {
+                try
+                {
+                    all.add(new RollingFileLogSink(new File(name.substring(5)),
+                        Long.getLong("atm.logFileSize", FILE_SIZE).longValue(), FILES_KEPT));
+                }
+                catch(IOException e)
+                {
+                    System.err.println("Log file " + name.substring(5) + " cannot be opened: " + e);
+                }
+            }
+            else if (name.startsWith("journal:"))
+            {
+                try
+                {
+                    all.add(new JournalLogSink(new File(name.substring(8)),
+                        Integer.getInteger("atm.logSegmentSize",
+                                           JournalLogSink.SEGMENT_SIZE).intValue(),
+                        Long.getLong("atm.logRetain", 0).longValue()));
+                }
+                catch(IOException e)
+                {
+                    System.err.println("Journal " + name.substring(8) + " cannot be opened: " + e);
+                }
+            }
+            else if (name.length() > 0)
+                throw new IllegalArgumentException("Unknown log sink " + name);
+        }
+        if (all.isEmpty())
+            return null;
+
+        String policy = System.getProperty("atm.logOverflow", "block");
+        int overflowPolicy;
+        if (policy.equals("block"))
+            overflowPolicy = BLOCK;
+        else if (policy.equals("drop"))
+            overflowPolicy = DROP;
+        else if (policy.equals("sample"))
+            overflowPolicy = SAMPLE;
+        else
+            throw new IllegalArgumentException("Unknown log overflow policy " + policy);
+
+        final LogPipeline pipeline = new LogPipeline(
+            Integer.getInteger("atm.logBuffer", CAPACITY).intValue(), overflowPolicy,
+            Integer.getInteger("atm.logSample", SAMPLE_RATE).intValue(),
+            all.toArray(new LogSink[all.size()]));
+        pipeline.start();
+        Runtime.getRuntime().addShutdownHook(new Thread() {
+            public void run()
+            {
+                pipeline.close();
+            }
+        });
+        return pipeline;
+    }
+
+    /** The pipeline shared by every ATM run without a display, set up from
+     *  the system properties the first time it is asked for
+     *
+     *  @return the pipeline, or null if atm.log names no sinks
+     */
+    public static synchronized LogPipeline getShared()
+    {
+        if (! sharedCreated)
+        {
+            shared = fromProperties(new LogSink[0]);
+            sharedCreated = true;
+        }
+        return shared;
+    }
+
+    /** Start the writer thread
+     */
+    public void start()
+    {
+        writer.start();
+    }
+
+    /** Log an entry - copy it into the next free slot.  If there is none, or
+     *  the pipeline has been closed, what happens depends on the overflow
+     *  policy
+     *
+     *  @param event the entry - not kept, so the caller may reuse it
+     *  @return true if the entry will be written, false if it was dropped
+     */
+    public boolean publish(LogEvent event)
+    {
+        long sequence;
+        while (true)
+        {
+            if (closed)
+            {
+                dropped.increment();
+                return false;
+            }
+
+            sequence = claimed.get();
+            long used = sequence - consumed;
+            if (used >= slots.length)
+            {
+                if (overflowPolicy == BLOCK)
+                {
+                    waitForRoom();
+                    continue;
+                }
+                dropped.increment();
+                return false;
+            }
+            if (overflowPolicy == SAMPLE && used >= sampleThreshold
+                && ThreadLocalRandom.current().nextInt(sampleRate) != 0)
+            {
+                sampledOut.increment();
+                return false;
+            }
+            if (claimed.compareAndSet(sequence, sequence + 1))
+                break;
+        }
+
+        int index = (int) sequence & mask;
+        slots[index].copyFrom(event);
+        sequences.set(index, sequence);
+        if (writerWaiting && sequence - consumed >= wakeThreshold)
+            LockSupport.unpark(writer);
+        return true;
+    }
+
+    /** Wait until every entry logged before this was called has been
+     *  taken by the writer, or the writer has stopped.  The writer flushes
+     *  the sinks as soon as it has nothing more to write
+     */
+    public void flush()
+    {
+        long target = claimed.get();
+        while (consumed < target && writer.isAlive())
+        {
+            LockSupport.unpark(writer);
+            LockSupport.parkNanos(WAIT_NANOS);
+        }
+    }
+
+    /** Stop taking entries, write out those already taken, and close the
+     *  sinks
+     */
+    public void close()
+    {
+        closed = true;
+        LockSupport.unpark(writer);
+        try
+        {
+            writer.join();
+        }
+        catch(InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /** Accessor for number of slots in the ring buffer
+     *
+     *  @return the number of slots
+     */
+    public int getCapacity()
+    {
+        return slots.length;
+    }
+
+    /** Accessor for number of entries written to the sinks so far
+     *
+     *  @return the number of entries
+     */
+    public long getWritten()
+    {
+        return consumed;
+    }
+
+    /** Accessor for number of entries dropped because the buffer was full
+     *  or the pipeline closed
+     *
+     *  @return the number of entries
+     */
+    public long getDropped()
+    {
+        return dropped.sum();
+    }
+
+    /** Accessor for number of entries left out by sampling
+     *
+     *  @return the number of entries
+     */
+    public long getSampledOut()
+    {
+        return sampledOut.sum();
+    }
+
+    /** Wait a little for the writer to make room, making sure it is awake
+     */
+    private void waitForRoom()
+    {
+        if (writerWaiting)
+            LockSupport.unpark(writer);
+        LockSupport.parkNanos(ROOM_WAIT_NANOS);
+    }
+
+    /** Body of the writer thread - write out batches of entries as they are
+     *  published, until closed and everything claimed has been written
+     */
+    private void writeEntries()
+    {
+        long next = 0;
+        int unflushed = 0;
+        while (true)
+        {
+            int count = 0;
+            while (count < BATCH_SIZE && sequences.get((int) (next + count) & mask) == next + count)
+                count ++;
+
+            if (count == 0)
+            {
+                if (unflushed > 0)
+                {
+                    flushSinks();
+                    unflushed = 0;
+                    continue;
+                }
+                if (closed && claimed.get() == next)
+                    break;
+
+                writerWaiting = true;
+                if (sequences.get((int) next & mask) != next && ! closed)
+                    LockSupport.parkNanos(WRITER_PARK_NANOS);
+                writerWaiting = false;
+                continue;
+            }
+
+            for (int i = 0; i < count; i ++)
+            {
+                LogEvent event = slots[(int) (next + i) & mask];
+                for (int j = 0; j < sinks.length; j ++)
+                {
+                    try
+                    {
+                        sinks[j].write(event);
+                    }
+                    catch(RuntimeException e)
+                    {
+                        System.err.println("Log sink failed: " + e);
+                    }
+                }
+            }
+            next += count;
+            consumed = next;
+
+            unflushed += count;
+            if (unflushed >= FLUSH_SIZE)
+            {
+                flushSinks();
+                unflushed = 0;
+            }
+        }
+
+        for (int j = 0; j < sinks.length; j ++)
+        {
+            try
+            {
+                sinks[j].close();
+            }
+            catch(RuntimeException e)
+            {
+                System.err.println("Log sink failed: " + e);
+            }
+        }
+    }
+
+    /** Flush every sink
+     */
+    private void flushSinks()
+    {
+        for (int j = 0; j < sinks.length; j ++)
+        {
+            try
+            {
+                sinks[j].flush();
+            }
+            catch(RuntimeException e)
+            {
+                System.err.println("Log sink failed: " + e);
+            }
+        }
+    }
+
+    // Possible values for overflowPolicy
+
+    /** When the buffer is full, wait for room
+     */
+    public static final int BLOCK = 0;
+
+    /** When the buffer is full, drop the entry
+     */
+    public static final int DROP = 1;
+
+    /** When the buffer is filling up, take a sample of the entries
+     */
+    public static final int SAMPLE = 2;
+
+    /** The slots of the ring buffer - entry n goes in slot n & mask
+     */
+    private final LogEvent [] slots;
+
+    /** Sequence number of the entry each slot holds, once it is published -
+     *  -1 until the first is
+     */
+    private final AtomicLongArray sequences;
+
+    /** slots.length - 1
+     */
+    private final int mask;
+
+    /** Sequence number of the next entry to be claimed
+     */
+    private final AtomicLong claimed = new AtomicLong();
+
+    /** Number of entries written - every slot of an entry before this one is
+     *  free again.  Only the writer changes it
+     */
+    private volatile long consumed;
+
+    /** BLOCK, DROP or SAMPLE
+     */
+    private final int overflowPolicy;
+
+    /** For SAMPLE, one entry in this many is taken once the buffer holds
+     *  sampleThreshold entries
+     */
+    private final int sampleRate;
+    private final long sampleThreshold;
+
+    /** Entries in the buffer at which a sleeping writer is woken
+     */
+    private final long wakeThreshold;
+
+    /** The sinks
+     */
+    private final LogSink [] sinks;
+
+    /** The writer thread
+     */
+    private final Thread writer;
+
+    /** True while the writer is, or is about to be, asleep
+     */
+    private volatile boolean writerWaiting;
+
+    /** Becomes true when the pipeline is closed
+     */
+    private volatile boolean closed;
+
+    /** Entries dropped and sampled out
+     */
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder sampledOut = new LongAdder();
+
+    /** The pipeline shared by ATMs run without a display, and whether
+     *  getShared() has set it up yet
+     */
+    private static LogPipeline shared;
+    private static boolean sharedCreated;
+
+    /** Default number of slots in the ring buffer
+     */
+    public static final int CAPACITY = 8192;
+
+    /** Default sample rate
+     */
+    public static final int SAMPLE_RATE = 10;
+
+    /** Fraction of the buffer that must be full before SAMPLE starts sampling
+     */
+    private static final double SAMPLE_THRESHOLD = 0.75;
+
+    /** Most entries taken from the buffer at once
+     */
+    private static final int BATCH_SIZE = 256;
+
+    /** Entries written before the sinks are flushed even if more are waiting
+     */
+    private static final int FLUSH_SIZE = 1024;
+
+    /** Longest the writer sleeps when there is nothing to write
+     */
+    private static final long WRITER_PARK_NANOS = 1000 * 1000;
+
+    /** How long a thread waiting for a flush waits between checks
+     */
+    private static final long WAIT_NANOS = 50 * 1000;
+
+    /** How long a thread waiting for room in the buffer waits between
+     *  checks.  Long enough that the writer, which the waiting threads leave
+     *  the processor to, can empty a good part of the buffer each time
+     */
+    private static final long ROOM_WAIT_NANOS = 1000 * 1000;
+
+    /** Default size a log file may reach before it is rolled over, and number
+     *  of old files kept
+     */
+    private static final long FILE_SIZE = 10 * 1024 * 1024;
+    private static final int FILES_KEPT = 5;
+}
@@ -0,0 +1,37 @@
+/*
+ * ATM Example system - file LogSink.java
+ *
+ */
+
+package simulation;
+
+import atm.physical.LogEvent;
+
+/** Somewhere a LogPipeline writes the entries of ATMs' logs - the GUI's log
+ *  panel, the standard output, a file.  All the methods are called by the
+ *  pipeline's one writer thread, never by the ATMs, so a sink need not be
+ *  thread safe and may take its time.
+ *
+ *  Entries are written in batches: write() is called for each entry in the
+ *  batch, then flush() once, so a sink can gather the text of a whole batch
+ *  and output it in one go.
+ */
+public interface LogSink
+{
+    /** Write an entry.  The event belongs to the pipeline and will be reused
+     *  for another entry as soon as this returns, so anything the sink keeps
+     *  must be copied out of it
+     *
+     *  @param event the entry
+     */
+    void write(LogEvent event);
+
+    /** Output anything gathered from the entries written since the last flush
+     */
+    void flush();
+
+    /** Flush, and release whatever the sink holds - called once, when the
+     *  pipeline is closed
+     */
+    void close();
+}
@@ -0,0 +1,225 @@
+/*
+ * ATM Example system - file NetworkLatency.java
+ *
+ */
+
+package simulation;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/** Model of the time taken to send a message over the network to the bank.
+ *  Each call to nextDelay() gives the delay for one message.  A model may be
+ *  shared by any number of simulated ATMs, so all models are thread-safe.
+ *
+ *  A model can be described by a short specification, as accepted by
+ *  fromSpecification():
+ *
+ *  zero - no delay
+ *  fixed:MS (or just MS) - always MS milliseconds
+ *  uniform:MIN,MAX - uniformly distributed between MIN and MAX milliseconds
+ *  lognormal:MEDIAN,SIGMA - log-normally distributed with the given median (in
+ *      milliseconds) and standard deviation of the underlying normal - a long
+ *      right tail, like real network round trips
+ *  trace:FILE - the delays in FILE (milliseconds, one per line), replayed in
+ *      order and then over again
+ */
+public abstract class NetworkLatency
+{
+    /** Delay for the next message
+     *
+     *  @return the delay, in nanoseconds
+     */
+    public abstract long nextDelay();
+
+    /** Create a model from its specification
+     *
+     *  @param specification the specification, as described above
+     *  @return the model
+     *  @exception IOException if a trace file cannot be read
+     *  @exception IllegalArgumentException if the specification is not valid
+     */
+    public static NetworkLatency fromSpecification(String specification) throws IOException
+    {
+        int colon = specification.indexOf(':');
+        String kind = colon < 0 ? specification : specification.substring(0, colon);
+        String [] values = colon < 0 ? new String[0]
+                                     : specification.substring(colon + 1).split(",");
+
+        if (kind.equals("zero"))
+            return ZERO;
+        else if (kind.equals("fixed") && values.length == 1)
+            return new Fixed(Double.parseDouble(values[0]));
+        else if (kind.equals("uniform") && values.length == 2)
+            return new Uniform(Double.parseDouble(values[0]), Double.parseDouble(values[1]));
+        else if (kind.equals("lognormal") && values.length == 2)
+            return new LogNormal(Double.parseDouble(values[0]), Double.parseDouble(values[1]));
+        else if (kind.equals("trace") && values.length == 1)
+            return new Trace(specification.substring(colon + 1));
+        else if (colon < 0 && kind.length() > 0 && Character.isDigit(kind.charAt(0)))
+            return new Fixed(Double.parseDouble(kind));
+        else
+            throw new IllegalArgumentException("Unknown network latency " + specification);
+    }
+
+    /** Convert milliseconds to nanoseconds
+     *
+     *  @param milliseconds a time in milliseconds
+     *  @return the same time in nanoseconds
+     */
+    private static long nanos(double milliseconds)
+    {
+        return Math.round(milliseconds * 1e6);
+    }
+
+    /** Check that a time given for a model is not negative - a negative
+     *  delay would move a virtual clock backwards
+     *
+     *  @param milliseconds the time, in milliseconds
+     *  @param model the specification of the model, for the error message
+     *  @return the time
+     *  @exception IllegalArgumentException if the time is negative
+     */
+    private static double notNegative(double milliseconds, String model)
+    {
+        if (milliseconds < 0)
+            throw new IllegalArgumentException("Network latency " + model
+                                               + " has a negative delay");
+        return milliseconds;
+    }
+
+    /** No delay at all
+     */
+    public static final NetworkLatency ZERO = new Fixed(0);
+
+    /** The same delay for every message
+     */
+    public static class Fixed extends NetworkLatency
+    {
+        /** Constructor
+         *
+         *  @param milliseconds the delay
+         *  @exception IllegalArgumentException if the delay is negative
+         */
+        public Fixed(double milliseconds)
+        {
+            delay = nanos(notNegative(milliseconds, "fixed:" + milliseconds));
+        }
+
+        public long nextDelay()
+        {
+            return delay;
+        }
+
+        private final long delay;
+    }
+
+    /** Delays spread evenly over a range
+     */
+    public static class Uniform extends NetworkLatency
+    {
+        /** Constructor
+         *
+         *  @param minimum the shortest delay, in milliseconds
+         *  @param maximum the longest delay, in milliseconds
+         *  @exception IllegalArgumentException if minimum is negative, or maximum
+         *             is less than minimum
+         */
+        public Uniform(double minimum, double maximum)
+        {
+            notNegative(minimum, "uniform:" + minimum + "," + maximum);
+            if (maximum < minimum)
+                throw new IllegalArgumentException("Network latency uniform:" + minimum + ","
+                                                   + maximum + " has its maximum below its minimum");
+            this.minimum = nanos(minimum);
+            this.range = nanos(maximum) - this.minimum + 1;
+        }
+
+        public long nextDelay()
+        {
+            return minimum + ThreadLocalRandom.current().nextLong(range);
+        }
+
+        private final long minimum;
+        private final long range;
+    }
+
+    /** Log-normally distributed delays
+     */
+    public static class LogNormal extends NetworkLatency
+    {
+        /** Constructor
+         *
+         *  @param median the median delay, in milliseconds
+         *  @param sigma standard deviation of the logarithm of the delay
+         *  @exception IllegalArgumentException if the median or sigma is
+         *             negative
+         */
+        public LogNormal(double median, double sigma)
+        {
+            notNegative(median, "lognormal:" + median + "," + sigma);
+            if (sigma < 0)
+                throw new IllegalArgumentException("Network latency lognormal:" + median + ","
+                                                   + sigma + " has a negative sigma");
+            this.median = nanos(median);
+            this.sigma = sigma;
+        }
+
+        public long nextDelay()
+        {
+            return Math.round(median * Math.exp(sigma * ThreadLocalRandom.current().nextGaussian()));
+        }
+
+        private final double median;
+        private final double sigma;
+    }
+
+    /** Delays replayed from a recorded trace
+     */
+    public static class Trace extends NetworkLatency
+    {
+        /** Constructor
+         *
+         *  @param fileName file holding the delays, in milliseconds, one per line
+         *  @exception IOException if the file cannot be read
+         *  @exception IllegalArgumentException if the file holds no delays, or a
+         *             negative one
+         */
+        public Trace(String fileName) throws IOException
+        {
+            List<Long> read = new ArrayList<Long>();
+            BufferedReader reader = new BufferedReader(new FileReader(fileName));
+            try
+            {
+                String line;
+                while ((line = reader.readLine()) != null)
+                    if (line.trim().length() > 0)
+                        read.add(Long.valueOf(nanos(notNegative(Double.parseDouble(line.trim()),
+                                                                "trace:" + fileName))));
+            }
+            finally
+            {
+                reader.close();
+            }
+            if (read.isEmpty())
+                throw new IllegalArgumentException("No delays in trace " + fileName);
+
+            delays = new long[read.size()];
+            for (int i = 0; i < delays.length; i ++)
+                delays[i] = read.get(i).longValue();
+        }
+
+        public long nextDelay()
+        {
+            return delays[(int) (next.getAndIncrement() % delays.length)];
+        }
+
+        private final long [] delays;
+        private final AtomicLong next = new AtomicLong();
+    }
+}
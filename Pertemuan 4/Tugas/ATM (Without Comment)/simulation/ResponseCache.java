@@ -0,0 +1,313 @@
+/*
+ * ATM Example system - file ResponseCache.java
+ *
+ */
+
+package simulation;
+
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import banking.Balances;
+import banking.BankStatus;
+import banking.Message;
+import banking.Status;
+
+/** The bank's record of the responses it has given recently to messages that
+ *  change balances, so that a message an ATM sends again - e.g. because its
+ *  response was lost, or came too late - is answered with the status and
+ *  balances it was answered with the first time, rather than being applied
+ *  twice.
+ *
+ *  A message is known by its serial number, and must also have come from
+ *  the same ATM with the same contents - code, card, PIN, accounts and
+ *  amount - as the one first answered; a message with the same serial
+ *  number but different contents, such as one sent again with another PIN
+ *  after the bank said the PIN was invalid, or one from a fleet that has
+ *  started numbering its messages again, is a new message.  While the first copy of
+ *  a message is being handled, another copy waits for its response.
+ *
+ *  The cache holds at most a fixed number of responses, each for at most a
+ *  fixed time.  It is set associative: each message can be kept in only one
+ *  of the buckets, of WAYS entries, and when its bucket is full the oldest
+ *  entry there is thrown away.  The entries of a bucket are kept together in
+ *  one primitive array - a few cache lines, read in one go - and the cache
+ *  makes no objects.  Each bucket is guarded by one of a fixed set of lock
+ *  stripes - locks with conditions rather than monitors, so a copy that
+ *  waits does not pin the carrier of a virtual thread.
+ *
+ *  A response saying the bank could not record the change is not kept, so
+ *  the message can be sent again and succeed.
+ */
+class ResponseCache
+{
+    /** Constructor
+     *
+     *  @param entries most responses to keep - rounded up to a power of two,
+     *         at least WAYS
+     *  @param maximumAge longest time to keep a response, in milliseconds
+     */
+    ResponseCache(int entries, long maximumAge)
+    {
+        int size = WAYS;
+        while (size < entries)
+            size *= 2;
+        buckets = size / WAYS;
+        this.maximumAge = maximumAge * 1000000L;
+
+        table = new long[size * ENTRY_SIZE];
+        statuses = new Status[size];
+        for (int i = 0; i < LOCK_STRIPES; i ++)
+        {
+            locks[i] = new ReentrantLock();
+            answered[i] = locks[i].newCondition();
+        }
+    }
+
+    /** Handle a message from an ATM, unless it has been handled already
+     *
+     *  @param atmID id of the ATM that sent the message
+     *  @param message the message
+     *  @param reported (out) balances in customer's account as reported by
+     *         the bank
+     *  @param bank the bank that handles the message if it is new - the
+     *         message's card and PIN have been checked
+     *  @return status code returned by the bank
+     */
+    Status handle(int atmID, Message message, Balances reported, SimulatedBank bank)
+    {
+        long key = message.getSerialNumber();
+        long fingerprint = fingerprint(atmID, message);
+        int bucket = (int) (mix(key) >>> 32 & (buckets - 1));
+        int first = bucket * WAYS * ENTRY_SIZE;
+        ReentrantLock lock = locks[bucket & (LOCK_STRIPES - 1)];
+        Condition stripeAnswered = answered[bucket & (LOCK_STRIPES - 1)];
+        long now = System.nanoTime();
+
+        int slot;
+        lock.lock();
+        try
+        {
+            while (true)
+            {
+                slot = find(first, key, now);
+                if (slot < 0)
+                    break;
+                if ((table[slot + FLAGS] & PENDING) != 0)
+                {
+                    // An interrupt is kept for the caller to see
+                    
+                    stripeAnswered.awaitUninterruptibly();
+                    now = System.nanoTime();
+                    continue;
+                }
+                if (table[slot + FINGERPRINT] != fingerprint)
+                    break;
+
+                replayed ++;
+                if ((table[slot + FLAGS] & REPORTED) != 0)
+                    reported.setBalances(table[slot + TOTAL], table[slot + AVAILABLE]);
+                else
+                    reported.setBalances(null, null);
+                return statuses[way(slot)];
+            }
+
+            if (slot < 0)
+                slot = victim(first, now);
+            if (slot >= 0)
+            {
+                table[slot + KEY] = key;
+                table[slot + FINGERPRINT] = fingerprint;
+                table[slot + TIME] = now;
+                table[slot + FLAGS] = PENDING;
+            }
+        }
+        finally
+        {
+            lock.unlock();
+        }
+
+        Status status = null;
+        try
+        {
+            status = bank.handleAuthorized(message, reported);
+            return status;
+        }
+        finally
+        {
+            if (slot >= 0)
+            {
+                lock.lock();
+                try
+                {
+                    if (status == null || status.getCode() == BankStatus.BANK_UNAVAILABLE)
+                        table[slot + FLAGS] = 0;
+                    else
+                    {
+                        statuses[way(slot)] = status;
+                        table[slot + TOTAL] = reported.getTotalCents();
+                        table[slot + AVAILABLE] = reported.getAvailableCents();
+                        table[slot + FLAGS] = reported.isReported() ? USED | REPORTED : USED;
+                    }
+                    stripeAnswered.signalAll();
+                }
+                finally
+                {
+                    lock.unlock();
+                }
+            }
+        }
+    }
+
+    /** Accessor for the number of messages answered from the cache
+     *
+     *  @return the number of messages
+     */
+    long getReplayed()
+    {
+        return replayed;
+    }
+
+    /** Find the entry for a message in its bucket.  Called with the bucket's
+     *  lock held
+     *
+     *  @param first index in the table of the first entry of the bucket
+     *  @param key the message's serial number
+     *  @param now the time now, as System.nanoTime() gives it
+     *  @return index of the entry - being handled, or not too old - or -1 if
+     *          there is none
+     */
+    private int find(int first, long key, long now)
+    {
+        for (int slot = first; slot < first + WAYS * ENTRY_SIZE; slot += ENTRY_SIZE)
+        {
+            long flags = table[slot + FLAGS];
+            if (table[slot + KEY] == key
+                && ((flags & PENDING) != 0
+                    || (flags & USED) != 0 && now - table[slot + TIME] <= maximumAge))
+                return slot;
+        }
+        return -1;
+    }
+
+    /** Choose the entry of a bucket to hold a new response - one not in use
+     *  or too old, if there is one, else the oldest.  Called with the
+     *  bucket's lock held
+     *
+     *  @param first index in the table of the first entry of the bucket
+     *  @param now the time now, as System.nanoTime() gives it
+     *  @return index of the entry, or -1 if every entry is being handled
+     */
+    private int victim(int first, long now)
+    {
+        int oldest = -1;
+        for (int slot = first; slot < first + WAYS * ENTRY_SIZE; slot += ENTRY_SIZE)
+        {
+            long flags = table[slot + FLAGS];
+            if ((flags & PENDING) != 0)
+                continue;
+            if ((flags & USED) == 0 || now - table[slot + TIME] > maximumAge)
+                return slot;
+            if (oldest < 0 || table[slot + TIME] - table[oldest + TIME] < 0)
+                oldest = slot;
+        }
+        return oldest;
+    }
+
+    /** Work out which entry of the table an index is for
+     *
+     *  @param slot index in the table of the entry
+     *  @return number of the entry
+     */
+    private static int way(int slot)
+    {
+        return slot / ENTRY_SIZE;
+    }
+
+    /** Work out a value that tells apart messages with different contents,
+     *  or from different ATMs
+     *
+     *  @param atmID id of the ATM that sent the message
+     *  @param message the message
+     *  @return the value
+     */
+    private static long fingerprint(int atmID, Message message)
+    {
+        long hash = mix((long) atmID << 32 ^ message.getMessageCode());
+        hash = mix(hash ^ message.getCard().getNumber());
+        hash = mix(hash ^ message.getPIN());
+        hash = mix(hash ^ ((long) message.getFromAccount() << 32 ^ message.getToAccount()));
+        return mix(hash ^ (message.getAmount() == null ? 0 : message.getAmount().getCents()));
+    }
+
+    /** Scramble the bits of a value
+     *
+     *  @param value the value
+     *  @return the scrambled value
+     */
+    private static long mix(long value)
+    {
+        value = (value ^ (value >>> 33)) * 0xff51afd7ed558ccdL;
+        value = (value ^ (value >>> 33)) * 0xc4ceb9fe1a85ec53L;
+        return value ^ (value >>> 33);
+    }
+
+    /** Number of buckets
+     */
+    private final int buckets;
+
+    /** Longest time to keep a response, in nanoseconds
+     */
+    private final long maximumAge;
+
+    /** The entries, ENTRY_SIZE longs each, the WAYS entries of each bucket
+     *  one after another
+     */
+    private final long [] table;
+
+    /** For each entry, the status returned - the one thing not kept in the
+     *  table
+     */
+    private final Status [] statuses;
+
+    /** Messages answered from the cache.  Changed only while a bucket's lock
+     *  is held, under different locks, so only approximate
+     */
+    private long replayed;
+
+    /** Lock stripes guarding the buckets
+     */
+    private final ReentrantLock [] locks = new ReentrantLock[LOCK_STRIPES];
+
+    /** For each lock stripe, signalled when a message being handled in one of
+     *  its buckets has been answered
+     */
+    private final Condition [] answered = new Condition[LOCK_STRIPES];
+
+    /** Entries in each bucket
+     */
+    static final int WAYS = 4;
+
+    /** What each entry of the table holds, at these offsets: the serial
+     *  number of its message, the fingerprint of the message, when
+     *  the message arrived, the balances reported, and flags
+     */
+    private static final int KEY = 0;
+    private static final int FINGERPRINT = 1;
+    private static final int TIME = 2;
+    private static final int TOTAL = 3;
+    private static final int AVAILABLE = 4;
+    private static final int FLAGS = 5;
+    private static final int ENTRY_SIZE = 6;
+
+    /** Flags of an entry - its message is being handled, it holds a
+     *  response, the response reported balances
+     */
+    private static final long PENDING = 1;
+    private static final long USED = 2;
+    private static final long REPORTED = 4;
+
+    /** Number of lock stripes
+     */
+    private static final int LOCK_STRIPES = 64;
+}
@@ -0,0 +1,172 @@
+/*
+ * ATM Example system - file RollingFileLogSink.java
+ *
+ */
+
+package simulation;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/** Sink that writes the log to a file, rolling it over when it grows too
+ *  large.  When the file reaches its size limit it is renamed with ".1" on
+ *  the end, any earlier ".1" becomes ".2", and so on up to the number of old
+ *  files to keep, and a new file is started.
+ *
+ *  Each batch is encoded into a buffer reused for every batch and written
+ *  to the file with one write, or a few if the batch is very large.  A failure to write is reported once, and the
+ *  log carries on without the file.
+ */
+public class RollingFileLogSink extends TextLogSink
+{
+    /** Constructor - opens the file, adding to it if it exists
+     *
+     *  @param file the file
+     *  @param maximumSize size in bytes the file may reach before it is
+     *         rolled over
+     *  @param filesKept number of old files to keep
+     *  @exception IOException if the file cannot be opened
+     */
+    public RollingFileLogSink(File file, long maximumSize, int filesKept) throws IOException
+    {
+        this.file = file;
+        this.maximumSize = maximumSize;
+        this.filesKept = filesKept;
+        open();
+    }
+
+    protected void output(StringBuilder batch)
+    {
+        if (channel == null)
+            return;
+        try
+        {
+            // The encoder is much faster from and to arrays than from a
+            // StringBuilder, so the text is copied into one first
+
+            if (characters.capacity() < batch.length())
+                characters = CharBuffer.allocate(Math.max(batch.length(),
+                                                          2 * characters.capacity()));
+            characters.clear();
+            batch.getChars(0, batch.length(), characters.array(), 0);
+            characters.limit(batch.length());
+            encoder.reset();
+            while (true)
+            {
+                CoderResult result = encoder.encode(characters, bytes, true);
+                if (! result.isOverflow())
+                    encoder.flush(bytes);
+                write();
+                if (! result.isOverflow())
+                    break;
+            }
+            if (size >= maximumSize)
+                roll();
+        }
+        catch(IOException e)
+        {
+            System.err.println("Log file " + file + " cannot be written: " + e);
+            closeChannel();
+        }
+    }
+
+    public void close()
+    {
+        super.close();
+        closeChannel();
+    }
+
+    /** Write the bytes encoded so far to the file
+     */
+    private void write() throws IOException
+    {
+        bytes.flip();
+        while (bytes.hasRemaining())
+            size += channel.write(bytes);
+        bytes.clear();
+    }
+
+    /** Open the file, adding to what it holds
+     */
+    private void open() throws IOException
+    {
+        channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+                                   StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        size = channel.size();
+    }
+
+    /** Close the file, rename it and the old files, and start a new one
+     */
+    private void roll() throws IOException
+    {
+        channel.close();
+        channel = null;
+        for (int i = filesKept - 1; i >= 1; i --)
+        {
+            File older = new File(file.getPath() + "." + i);
+            if (older.exists())
+                Files.move(older.toPath(), new File(file.getPath() + "." + (i + 1)).toPath(),
+                           StandardCopyOption.REPLACE_EXISTING);
+        }
+        if (filesKept > 0)
+            Files.move(file.toPath(), new File(file.getPath() + ".1").toPath(),
+                       StandardCopyOption.REPLACE_EXISTING);
+        else
+            Files.delete(file.toPath());
+        open();
+    }
+
+    /** Close the file, if it is open
+     */
+    private void closeChannel()
+    {
+        if (channel == null)
+            return;
+        try
+        {
+            channel.close();
+        }
+        catch(IOException e)
+        { }
+        channel = null;
+    }
+
+    /** The file written
+     */
+    private final File file;
+
+    /** Size in bytes the file may reach before it is rolled over
+     */
+    private final long maximumSize;
+
+    /** Number of old files kept
+     */
+    private final int filesKept;
+
+    /** The open file - null if it could not be written
+     */
+    private FileChannel channel;
+
+    /** Bytes in the file so far
+     */
+    private long size;
+
+    /** Encoder for the text, and buffers for the text and the bytes, reused
+     *  for every batch
+     */
+    private final CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder()
+        .onMalformedInput(CodingErrorAction.REPLACE)
+        .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    private CharBuffer characters = CharBuffer.allocate(64 * 1024);
+    private final ByteBuffer bytes = ByteBuffer.allocate(64 * 1024);
+}
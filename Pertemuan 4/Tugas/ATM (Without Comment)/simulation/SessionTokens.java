@@ -0,0 +1,232 @@
+/*
+ * ATM Example system - file SessionTokens.java
+ *
+ */
+
+package simulation;
+
+import java.security.SecureRandom;
+import java.util.concurrent.locks.ReentrantLock;
+
+import banking.Message;
+
+/** The session tokens the bank has issued, so that the messages of a session
+ *  after the first can be authorized by a lookup here instead of by checking
+ *  the PIN.
+ *
+ *  A token is issued for one card at one ATM, and is good for a fixed time
+ *  from when it was issued; issuing another token for the same card and ATM
+ *  replaces it.  Tokens are random, and never NO_SESSION_TOKEN or
+ *  NEW_SESSION_TOKEN (see Message).
+ *
+ *  The table holds at most a fixed number of tokens.  It is set associative,
+ *  like ResponseCache: each card and ATM can be kept in only one of the
+ *  buckets, of WAYS entries, and when its bucket is full the token that runs
+ *  out first is thrown away - its session then authorizes its messages with
+ *  the PIN again.  The entries are kept in one primitive array, and each
+ *  bucket is guarded by one of a fixed set of lock stripes - ReentrantLocks
+ *  rather than monitors, so the bank's threads may be virtual threads without
+ *  pinning their carriers.
+ */
+class SessionTokens
+{
+    /** Constructor
+     *
+     *  @param entries most tokens to keep - rounded up to a power of two, at
+     *         least WAYS
+     *  @param lifetime time a token is good for, in milliseconds
+     */
+    SessionTokens(int entries, long lifetime)
+    {
+        int size = WAYS;
+        while (size < entries)
+            size *= 2;
+        buckets = size / WAYS;
+        this.lifetime = lifetime * 1000000L;
+
+        table = new long[size * ENTRY_SIZE];
+        for (int i = 0; i < LOCK_STRIPES; i ++)
+            locks[i] = new ReentrantLock();
+    }
+
+    /** Issue a new token for a card at an ATM
+     *
+     *  @param atmID id of the ATM
+     *  @param cardNumber number of the card
+     *  @return the token
+     */
+    long issue(int atmID, int cardNumber)
+    {
+        long token;
+        do
+            token = RANDOM.nextLong();
+        while (token == Message.NO_SESSION_TOKEN || token == Message.NEW_SESSION_TOKEN);
+
+        long key = key(atmID, cardNumber);
+        int bucket = bucket(key);
+        int first = bucket * WAYS * ENTRY_SIZE;
+        long now = System.nanoTime();
+        ReentrantLock lock = locks[bucket & (LOCK_STRIPES - 1)];
+        lock.lock();
+        try
+        {
+            int slot = victim(first, key, now);
+            table[slot + KEY] = key;
+            table[slot + TOKEN] = token;
+            table[slot + EXPIRES] = now + lifetime;
+        }
+        finally
+        {
+            lock.unlock();
+        }
+        return token;
+    }
+
+    /** See whether a token is good for a card at an ATM
+     *
+     *  @param atmID id of the ATM
+     *  @param cardNumber number of the card
+     *  @param token the token presented
+     *  @return true if the token was issued for that card at that ATM and has
+     *          not run out
+     */
+    boolean isValid(int atmID, int cardNumber, long token)
+    {
+        long key = key(atmID, cardNumber);
+        int bucket = bucket(key);
+        int first = bucket * WAYS * ENTRY_SIZE;
+        long now = System.nanoTime();
+        ReentrantLock lock = locks[bucket & (LOCK_STRIPES - 1)];
+        lock.lock();
+        try
+        {
+            for (int slot = first; slot < first + WAYS * ENTRY_SIZE; slot += ENTRY_SIZE)
+                if (table[slot + KEY] == key && table[slot + TOKEN] == token
+                    && table[slot + EXPIRES] - now > 0)
+                {
+                    accepted ++;
+                    return true;
+                }
+        }
+        finally
+        {
+            lock.unlock();
+        }
+        return false;
+    }
+
+    /** Accessor for the number of tokens found good
+     *
+     *  @return the number of tokens
+     */
+    long getAccepted()
+    {
+        return accepted;
+    }
+
+    /** Choose the entry of a bucket to hold a new token - the one holding
+     *  the card and ATM's last token, if there is one, else one not in use or
+     *  run out, else the one whose token runs out first.  Called with the
+     *  bucket's lock held
+     *
+     *  @param first index in the table of the first entry of the bucket
+     *  @param key the card and ATM, as key() gives them
+     *  @param now the time now, as System.nanoTime() gives it
+     *  @return index of the entry
+     */
+    private int victim(int first, long key, long now)
+    {
+        int free = -1;
+        int soonest = -1;
+        for (int slot = first; slot < first + WAYS * ENTRY_SIZE; slot += ENTRY_SIZE)
+        {
+            if (table[slot + KEY] == key)
+                return slot;
+            if (table[slot + KEY] == 0 || table[slot + EXPIRES] - now <= 0)
+            {
+                if (free < 0)
+                    free = slot;
+            }
+            else if (soonest < 0 || table[slot + EXPIRES] - table[soonest + EXPIRES] < 0)
+                soonest = slot;
+        }
+        return free >= 0 ? free : soonest;
+    }
+
+    /** Work out the key of a card at an ATM - never 0, which marks an entry
+     *  never used, since card numbers start at 1
+     *
+     *  @param atmID id of the ATM
+     *  @param cardNumber number of the card
+     *  @return the key
+     */
+    private static long key(int atmID, int cardNumber)
+    {
+        return (long) atmID << 32 | cardNumber & 0xffffffffL;
+    }
+
+    /** Work out which bucket a key belongs in
+     *
+     *  @param key the key
+     *  @return number of the bucket
+     */
+    private int bucket(long key)
+    {
+        return (int) (mix(key) >>> 32 & (buckets - 1));
+    }
+
+    /** Scramble the bits of a value
+     *
+     *  @param value the value
+     *  @return the scrambled value
+     */
+    private static long mix(long value)
+    {
+        value = (value ^ (value >>> 33)) * 0xff51afd7ed558ccdL;
+        value = (value ^ (value >>> 33)) * 0xc4ceb9fe1a85ec53L;
+        return value ^ (value >>> 33);
+    }
+
+    /** Number of buckets
+     */
+    private final int buckets;
+
+    /** Time a token is good for, in nanoseconds
+     */
+    private final long lifetime;
+
+    /** The entries, ENTRY_SIZE longs each, the WAYS entries of each bucket
+     *  one after another
+     */
+    private final long [] table;
+
+    /** Tokens found good.  Changed only while a bucket's lock is held, under
+     *  different locks, so only approximate
+     */
+    private long accepted;
+
+    /** Lock stripes guarding the buckets
+     */
+    private final ReentrantLock [] locks = new ReentrantLock[LOCK_STRIPES];
+
+    /** Entries in each bucket
+     */
+    static final int WAYS = 4;
+
+    /** What each entry of the table holds, at these offsets: the card and
+     *  ATM, the token, and when the token runs out, as System.nanoTime()
+     *  gives it
+     */
+    private static final int KEY = 0;
+    private static final int TOKEN = 1;
+    private static final int EXPIRES = 2;
+    private static final int ENTRY_SIZE = 3;
+
+    /** Number of lock stripes
+     */
+    private static final int LOCK_STRIPES = 64;
+
+    /** Source of tokens - hard to guess, since a token stands in for the PIN
+     */
+    private static final SecureRandom RANDOM = new SecureRandom();
+}
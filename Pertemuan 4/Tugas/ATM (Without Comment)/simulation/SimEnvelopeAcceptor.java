@@ -1 +1 @@
-/* * ATM Example system - file SimEnvelopeAcceptor.java * * copyright (c) 2001 - Russell C. Bjork * */ package simulation;import java.awt.*;import java.awt.event.*;/** Simulate the envelope acceptor */class SimEnvelopeAcceptor extends Button{    /** Constructor     */    SimEnvelopeAcceptor()    {        super("Klik untuk memasukan uang");        addActionListener(new ActionListener() {            public void actionPerformed(ActionEvent e)            {                synchronized(SimEnvelopeAcceptor.this)                {                    inserted = true;                    SimEnvelopeAcceptor.this.notify();                }            }        });    }        /** Simulate accepting an envelope from customer.     *     *  return true if an envelope was received within the prescribed time,     *         else false     */    public synchronized boolean acceptEnvelope()    {        inserted = false;        setVisible(true);                    // Wait for user to simulate inserting envelope by clicking button.        // If we wait 20 seconds and no envelope is entered, we time out        try        {             wait(MAXIMUM_WAIT_TIME);        }        catch(InterruptedException e)        { }                if (inserted)        {            // Animate envelope going into the machine                        Rectangle originalBounds = getBounds();                        Rectangle currentBounds =               new Rectangle(originalBounds.x, originalBounds.y,                             originalBounds.width, originalBounds.height);                                         while (currentBounds.width > 0 && currentBounds.height > 0)            {                 setBounds(currentBounds.x, currentBounds.y,                        currentBounds.width, currentBounds.height);                repaint();                try                 {                     Thread.sleep(100);                }                 catch (InterruptedException e)                 { }                currentBounds.height -= 1;                currentBounds.width =                   (originalBounds.width * currentBounds.height) / originalBounds.height;                currentBounds.x =                  originalBounds.x + (originalBounds.width - currentBounds.width) / 2;                currentBounds.y =                  originalBounds.y + (originalBounds.height - currentBounds.height) / 2;            }                        setVisible(false);            setBounds(originalBounds);        }        else        {            setVisible(false);        }        return inserted;    }    /** Inform the envelope acceptor that the customer has pressed the CANCEL     *  key.  Ignored if not waiting for an envelope     */    public synchronized void cancelRequested()    {        notify();       // End the wait for the envelope - inserted will still                        // be false so acceptEnvelope() will return false    }        /** Becomes true when an envelope has been inserted     */    private boolean inserted;        /** Maximum time to wait for an envelope before timing out - in milliseconds     */    private static long MAXIMUM_WAIT_TIME = 20 * 1000;}                                       
\ No newline at end of file
+/* * ATM Example system - file SimEnvelopeAcceptor.java * * copyright (c) 2001 - Russell C. Bjork * */ package simulation;import java.awt.*;import java.awt.event.*;import java.util.concurrent.locks.Condition;import java.util.concurrent.locks.ReentrantLock;/** Simulate the envelope acceptor.  The ATM's thread waits for the envelope *  with a lock and condition rather than the acceptor's monitor, so it may be *  a virtual thread without pinning its carrier */class SimEnvelopeAcceptor extends Button{    /** Constructor     */    SimEnvelopeAcceptor()    {        super("Klik untuk memasukan uang");        addActionListener(new ActionListener() {            public void actionPerformed(ActionEvent e)            {                lock.lock();                try                {                    inserted = true;                    changed.signal();                }                finally                {                    lock.unlock();                }            }        });    }        /** Simulate accepting an envelope from customer.     *     *  return true if an envelope was received within the prescribed time,     *         else false     */    public boolean acceptEnvelope()    {        boolean received;        lock.lock();        try        {            inserted = false;            cancelled = false;            setVisible(true);                        // Wait for user to simulate inserting envelope by clicking button.            // If we wait 20 seconds and no envelope is entered, we time out            long remaining = MAXIMUM_WAIT_TIME * 1000000L;            try            {                 while (! inserted && ! cancelled && remaining > 0)                    remaining = changed.awaitNanos(remaining);            }            catch(InterruptedException e)            {                Thread.currentThread().interrupt();            }            received = inserted;        }        finally        {            lock.unlock();        }                if (received)        {            // Animate envelope going into the machine                        Rectangle originalBounds = getBounds();                        Rectangle currentBounds =               new Rectangle(originalBounds.x, originalBounds.y,                             originalBounds.width, originalBounds.height);                                         while (currentBounds.width > 0 && currentBounds.height > 0)            {                 setBounds(currentBounds.x, currentBounds.y,                        currentBounds.width, currentBounds.height);                repaint();                try                 {                     Thread.sleep(100);                }                 catch (InterruptedException e)                 { }                currentBounds.height -= 1;                currentBounds.width =                   (originalBounds.width * currentBounds.height) / originalBounds.height;                currentBounds.x =                  originalBounds.x + (originalBounds.width - currentBounds.width) / 2;                currentBounds.y =                  originalBounds.y + (originalBounds.height - currentBounds.height) / 2;            }                        setVisible(false);            setBounds(originalBounds);        }        else        {            setVisible(false);        }        return received;    }    /** Inform the envelope acceptor that the customer has pressed the CANCEL     *  key.  Ignored if not waiting for an envelope     */    public void cancelRequested()    {        lock.lock();        try        {            cancelled = true;   // End the wait for the envelope - inserted will            changed.signal();   // still be false so acceptEnvelope() will                                // return false        }        finally        {            lock.unlock();        }    }        /** Becomes true when an envelope has been inserted     */    private boolean inserted;        /** Becomes true when the customer presses CANCEL     */    private boolean cancelled;        /** Guards inserted and cancelled     */    private final ReentrantLock lock = new ReentrantLock();        /** Signalled when inserted or cancelled becomes true     */    private final Condition changed = lock.newCondition();        /** Maximum time to wait for an envelope before timing out - in milliseconds     */    private static long MAXIMUM_WAIT_TIME = 20 * 1000;}                                       
\ No newline at end of file
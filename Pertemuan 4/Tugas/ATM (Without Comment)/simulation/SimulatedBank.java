@@ -8,15 +8,160 @@
 package simulation;
 import banking.AccountInformation;
 import banking.Balances;
+import banking.BankStatus;
 import banking.Card;
 import banking.Message;
 import banking.Money;
 import banking.Status;
 
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.locks.ReentrantLock;
+
 /** Simulation of the bank.  A set of simulated accounts is initalized at startup.
+ *
+ *  One bank may be shared by many ATMs, so handleMessage() can be called from
+ *  several threads at once.  Each card and each account is guarded by one of a
+ *  fixed set of lock stripes; a request holds only the stripes for the card and
+ *  accounts it touches, so requests on unrelated accounts run in parallel.
+ *  To avoid deadlock, a card stripe is always taken before any account stripe,
+ *  and account stripes are taken in increasing stripe order.  The stripes are
+ *  ReentrantLocks rather than monitors, so the threads handling messages may
+ *  be virtual threads without pinning their carriers.
+ *
+ *  All tables are primitive arrays (amounts in cents), and the balances live in
+ *  an AccountStore, so the bank can hold millions of accounts without
+ *  allocating an object per account.
+ *
+ *  A message that changes balances, handled for a known ATM, is handled only
+ *  once: if the ATM sends it again, e.g. because the response was lost, the
+ *  bank answers with the status and balances it gave the first time (see
+ *  ResponseCache).
+ *
+ *  A message handled for a known ATM may also present a session token in
+ *  place of its PIN.  Once the PIN of a message asking for a token has been
+ *  checked, the bank issues one for the card at that ATM, good for a short
+ *  time (see SessionTokens); a later message presenting it is authorized by
+ *  a lookup of the token, and its PIN is not checked.  A message presenting
+ *  a token that is not good - e.g. one that has run out - is authorized by its
+ *  PIN, and given a new token.
+ *
+ *  If a journal has been set, every change is recorded in it before success is
+ *  reported.  The record is appended while the locks are held, so the journal
+ *  lists the changes to any one account in the order they were made; that
+ *  only copies it into the journal's mapped file.  Everything that waits for
+ *  the file - mapping its next region, and forcing it to disk - happens after
+ *  the locks are released.
+ *
+ *  The tables can be saved to a snapshot file while the bank keeps handling
+ *  messages.  The snapshot is fuzzy - each lock stripe is copied in turn, so
+ *  changes made during the copy may or may not be in it - but it records the
+ *  end of the journal as it was when the copy began.  Every change not fully
+ *  in the snapshot was journalled after that point, and journal records hold
+ *  values after the change, so replaying the journal from there on top of the
+ *  snapshot gives exactly the tables as they were at the end of the journal.
  */
 public class SimulatedBank
 {
+    /** Constructor - create the bank with its demonstration cards and accounts
+     */
+    public SimulatedBank()
+    {
+        PIN = INITIAL_PIN;
+        ACCOUNT_NUMBER = INITIAL_ACCOUNT_NUMBER;
+        WITHDRAWALS_TODAY = new long[PIN.length];
+        TRANSFER_TODAY = new long[PIN.length];
+        
+        accounts = new AccountStore(INITIAL_BALANCE.length - 1);
+        for (int i = 1; i < INITIAL_BALANCE.length; i ++)
+            accounts.setBalances(i, INITIAL_BALANCE[i].getCents(),
+                                 INITIAL_AVAILABLE_BALANCE[i].getCents());
+    }
+    
+    /** Constructor - create a bank with many identical cards, for load testing.
+     *  Card c (1 .. numberOfCards) owns two accounts, numbered 2c - 1 (first
+     *  account type) and 2c (second account type).
+     *
+     *  @param numberOfCards the number of cards to issue
+     *  @param pin the PIN of every card
+     *  @param initialBalance the starting balance of every account, all of it
+     *         available
+     */
+    public SimulatedBank(int numberOfCards, int pin, Money initialBalance)
+    {
+        PIN = new int[numberOfCards + 1];
+        ACCOUNT_NUMBER = new int[(numberOfCards + 1) * ACCOUNT_TYPES];
+        WITHDRAWALS_TODAY = new long[numberOfCards + 1];
+        TRANSFER_TODAY = new long[numberOfCards + 1];
+        accounts = new AccountStore(2 * numberOfCards);
+        
+        long cents = initialBalance.getCents();
+        for (int card = 1; card <= numberOfCards; card ++)
+        {
+            PIN[card] = pin;
+            ACCOUNT_NUMBER[card * ACCOUNT_TYPES] = 2 * card - 1;
+            ACCOUNT_NUMBER[card * ACCOUNT_TYPES + 1] = 2 * card;
+            accounts.setBalances(2 * card - 1, cents, cents);
+            accounts.setBalances(2 * card, cents, cents);
+        }
+    }
+    
+    /** Constructor - restore a bank from a snapshot written by writeSnapshot().
+     *  Changes journalled after the snapshot was taken are not yet applied -
+     *  call recover() for that.
+     *
+     *  @param snapshotFile the snapshot
+     *  @exception IOException if the snapshot cannot be read or is damaged
+     */
+    public SimulatedBank(File snapshotFile) throws IOException
+    {
+        RandomAccessFile file = new RandomAccessFile(snapshotFile, "r");
+        try
+        {
+            FileChannel channel = file.getChannel();
+            long size = channel.size();
+            if (size < SNAPSHOT_HEADER_SIZE)
+                throw new IOException("Not a bank snapshot: " + snapshotFile);
+            
+            MappedByteBuffer snapshot = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            int cards = snapshot.getInt(4);
+            int numberOfAccounts = snapshot.getInt(8);
+            if (snapshot.getInt(0) != SNAPSHOT_MAGIC 
+                || size != snapshotSize(cards, numberOfAccounts))
+                throw new IOException("Not a bank snapshot: " + snapshotFile);
+            
+            snapshotPosition = snapshot.getLong(16);
+            
+            PIN = new int[cards];
+            ACCOUNT_NUMBER = new int[cards * ACCOUNT_TYPES];
+            WITHDRAWALS_TODAY = new long[cards];
+            TRANSFER_TODAY = new long[cards];
+            accounts = new AccountStore(numberOfAccounts);
+            
+            // The sections are read in the order writeSnapshot() writes them
+            
+            snapshot.position(SNAPSHOT_HEADER_SIZE);
+            snapshot.asLongBuffer().get(WITHDRAWALS_TODAY);
+            snapshot.position(snapshot.position() + 8 * cards);
+            snapshot.asLongBuffer().get(TRANSFER_TODAY);
+            snapshot.position(snapshot.position() + 8 * cards);
+            accounts.read(snapshot.asLongBuffer());
+            snapshot.position(snapshot.position() + 16 * (numberOfAccounts + 1));
+            snapshot.asIntBuffer().get(PIN);
+            snapshot.position(snapshot.position() + 4 * cards);
+            snapshot.asIntBuffer().get(ACCOUNT_NUMBER);
+        }
+        finally
+        {
+            file.close();
+        }
+    }
+    
     /** Simulate the handling of a message
      *
      *  @param message the message to send
@@ -27,12 +172,25 @@ public class SimulatedBank
     public Status handleMessage(Message message, Balances balances)
     {       
         int cardNumber = message.getCard().getNumber(); 
-        if (cardNumber < 1 || cardNumber > PIN.length)
-            return new Failure("Kartu tidak valid");
+        if (cardNumber < 1 || cardNumber >= PIN.length)
+            return BankStatus.of(BankStatus.INVALID_CARD);
     
         if (message.getPIN() != PIN [ cardNumber ] )
-            return new InvalidPIN();
+            return BankStatus.of(BankStatus.INVALID_PIN);
     
+        return handleAuthorized(message, balances);
+    }
+    
+    /** Simulate the handling of a message whose card and PIN (or session
+     *  token) have been checked
+     *
+     *  @param message the message to send
+     *  @param balances (out) balances in customer's account as reported
+     *         by bank
+     *  @return status code returned by bank
+     */
+    Status handleAuthorized(Message message, Balances balances)
+    {
         switch(message.getMessageCode())
         {
             case Message.WITHDRAWAL:
@@ -54,11 +212,75 @@ public class SimulatedBank
             case Message.INQUIRY:
             
                 return inquiry(message, balances);
+            
+            case Message.INQUIRY_ALL:
+            
+                return inquiryAll(message, balances);
+            
+            case Message.VERIFY_PIN:
+            
+                // The card and PIN have been checked above, and that is all
+                
+                return BankStatus.of(BankStatus.SUCCESS);
         }
         
-        // Need to keep compiler happy
+        // A type of message the bank does not know
         
-        return null;
+        return BankStatus.of(BankStatus.INVALID_MESSAGE);
+    }
+
+    /** Simulate the handling of a message from an ATM.  A message presenting
+     *  a session token the bank issued for the card at that ATM is authorized
+     *  without checking the PIN.  A withdrawal, the completion of a deposit or
+     *  a transfer that the same ATM has sent with the same serial number and
+     *  contents not long ago gets the response it got then, and changes
+     *  nothing
+     *
+     *  @param atmID id of the ATM that sent the message
+     *  @param message the message to send
+     *  @param balances (out) balances in customer's account as reported
+     *         by bank
+     *  @return status code returned by bank
+     */
+    public Status handleMessage(int atmID, Message message, Balances balances)
+    {
+        int cardNumber = message.getCard().getNumber(); 
+        if (cardNumber < 1 || cardNumber >= PIN.length)
+            return BankStatus.of(BankStatus.INVALID_CARD);
+        
+        SessionTokens tokens = sessionTokens;
+        long token = message.getSessionToken();
+        if (token == Message.NO_SESSION_TOKEN || tokens == null)
+        {
+            if (message.getPIN() != PIN [ cardNumber ] )
+                return BankStatus.of(BankStatus.INVALID_PIN);
+            token = Message.NO_SESSION_TOKEN;
+        }
+        else if (! tokens.isValid(atmID, cardNumber, token))
+        {
+            if (message.getPIN() != PIN [ cardNumber ] )
+                return BankStatus.of(BankStatus.INVALID_PIN);
+            token = tokens.issue(atmID, cardNumber);
+        }
+        
+        Status status;
+        ResponseCache cache = responses;
+        switch(message.getMessageCode())
+        {
+            case Message.WITHDRAWAL:
+            case Message.COMPLETE_DEPOSIT:
+            case Message.TRANSFER:
+            
+                status = cache != null ? cache.handle(atmID, message, balances, this)
+                                       : handleAuthorized(message, balances);
+                break;
+                
+            default:
+                
+                status = handleAuthorized(message, balances);
+        }
+        balances.setSessionToken(token);
+        return status;
     }
 
     /** Simulate processing of a withdrawal
@@ -71,33 +293,53 @@ public class SimulatedBank
     {
         int cardNumber = message.getCard().getNumber();
         
-        int accountNumber = ACCOUNT_NUMBER [ cardNumber ] [ message.getFromAccount() ];
+        int accountNumber = accountNumber(cardNumber, message.getFromAccount());
         if (accountNumber == 0)
-            return new Failure("Rekening Yang ada Masukkan Salah");
+            return BankStatus.of(BankStatus.INVALID_ACCOUNT);
     
-        Money amount = message.getAmount();
+        long amount = message.getAmount().getCents();
+        long journalPosition;
         
-        Money limitRemaining = new Money(DAILY_WITHDRAWAL_LIMIT);
-        limitRemaining.subtract(WITHDRAWALS_TODAY[ cardNumber ]);
-        if (! amount.lessEqual(limitRemaining))
-            return new Failure("Batas penarikan tunai harian anda telah terlewati");
+        ReentrantLock cardLock = cardLock(cardNumber);
+        ReentrantLock accountLock = accountLock(accountNumber);
+        cardLock.lock();
+        accountLock.lock();
+        try
+        {
+            if (amount > Money.remaining(DAILY_WITHDRAWAL_LIMIT, WITHDRAWALS_TODAY [ cardNumber ]))
+                return BankStatus.of(BankStatus.WITHDRAWAL_LIMIT_EXCEEDED);
 
-        if (! amount.lessEqual(AVAILABLE_BALANCE [ accountNumber ]))
-             return new Failure("Maaf, saldo Anda tidak mencukupi");
+            if (amount > accounts.getAvailable(accountNumber))
+                 return BankStatus.of(BankStatus.INSUFFICIENT_FUNDS);
 
-        // Update withdrawals today and account balances once we know everything is
-        // OK
-            
-        WITHDRAWALS_TODAY [ cardNumber ].add(amount);
-        BALANCE [ accountNumber ].subtract(amount);
-        AVAILABLE_BALANCE [ accountNumber ].subtract(amount);
-        
-        // Return updated balances
+            // Update withdrawals today and account balances once we know
+            // everything is OK - and the change has been journalled
         
-        balances.setBalances(BALANCE [ accountNumber ], 
-                             AVAILABLE_BALANCE [ accountNumber ]);
+            long withdrawalsToday = WITHDRAWALS_TODAY [ cardNumber ] + amount;
+            long total = accounts.getTotal(accountNumber) - amount;
+            long available = accounts.getAvailable(accountNumber) - amount;
+            
+            journalPosition = journal(BankJournal.WITHDRAWAL_RECORD, cardNumber,
+                                      withdrawalsToday,
+                                      accountNumber, total, available, 0, 0, 0);
+            if (journalPosition < 0)
+                return BankStatus.of(BankStatus.BANK_UNAVAILABLE);
+            
+            WITHDRAWALS_TODAY [ cardNumber ] = withdrawalsToday;
+            accounts.setBalances(accountNumber, total, available);
+    
+            // Return updated balances
+    
+            setBalances(balances, accountNumber);
+        }
+        finally
+        {
+            accountLock.unlock();
+            cardLock.unlock();
+        }
         
-        return new Success();
+        commit(journalPosition);
+        return BankStatus.of(BankStatus.SUCCESS);
     } 
     
     /** Simulate initiation of a deposit. At this point, the bank only approves
@@ -111,13 +353,13 @@ public class SimulatedBank
     {
         int cardNumber = message.getCard().getNumber(); 
     
-        int accountNumber = ACCOUNT_NUMBER [ cardNumber ] [ message.getToAccount() ];
+        int accountNumber = accountNumber(cardNumber, message.getToAccount());
         if (accountNumber == 0)
-            return new Failure("Rekening Yang ada Masukkan Salah");
+            return BankStatus.of(BankStatus.INVALID_ACCOUNT);
             
         // Don't update anything yet
             
-        return new Success();
+        return BankStatus.of(BankStatus.SUCCESS);
     }    
     
     /** Simulate completion of a deposit
@@ -130,21 +372,40 @@ public class SimulatedBank
     {
         int cardNumber = message.getCard().getNumber(); 
         
-        int accountNumber = ACCOUNT_NUMBER [ cardNumber ] [ message.getToAccount() ];
+        int accountNumber = accountNumber(cardNumber, message.getToAccount());
         if (accountNumber == 0)
-            return new Failure("Rekening Yang ada Masukkan Salah");
+            return BankStatus.of(BankStatus.INVALID_ACCOUNT);
             
         // Now we can update the balance
         
-        Money amount = message.getAmount();
-        BALANCE [ accountNumber ].add(amount);
+        long amount = message.getAmount().getCents();
+        long journalPosition;
+        
+        ReentrantLock accountLock = accountLock(accountNumber);
+        accountLock.lock();
+        try
+        {
+            long total = accounts.getTotal(accountNumber) + amount;
+            long available = accounts.getAvailable(accountNumber);
+            
+            journalPosition = journal(BankJournal.DEPOSIT_RECORD, cardNumber, 0,
+                                      accountNumber, total, available, 0, 0, 0);
+            if (journalPosition < 0)
+                return BankStatus.of(BankStatus.BANK_UNAVAILABLE);
+            
+            accounts.setBalances(accountNumber, total, available);
         
-        // Return updated balances
+            // Return updated balances
         
-        balances.setBalances(BALANCE [ accountNumber ], 
-                             AVAILABLE_BALANCE [ accountNumber ]);
+            setBalances(balances, accountNumber);
+        }
+        finally
+        {
+            accountLock.unlock();
+        }
         
-        return new Success();
+        commit(journalPosition);
+        return BankStatus.of(BankStatus.SUCCESS);
     }    
     
     /** Simulate processing of a transfer
@@ -157,39 +418,72 @@ public class SimulatedBank
     {
         int cardNumber = message.getCard().getNumber(); 
     
-        int fromAccountNumber = ACCOUNT_NUMBER [ cardNumber ] [ message.getFromAccount() ];
+        int fromAccountNumber = accountNumber(cardNumber, message.getFromAccount());
         if (fromAccountNumber == 0)
-            return new Failure("Rekening Yang ada Masukkan Salah");
+            return BankStatus.of(BankStatus.INVALID_ACCOUNT);
     
-        int toAccountNumber = ACCOUNT_NUMBER [ cardNumber ] [ message.getToAccount() ];
+        int toAccountNumber = accountNumber(cardNumber, message.getToAccount());
         if (toAccountNumber == 0)
-            return new Failure("Rekening Yang ada Masukkan Salah");
+            return BankStatus.of(BankStatus.INVALID_ACCOUNT);
         if (fromAccountNumber == toAccountNumber)
-            return new Failure("Tidak dapat melakukan transfer\n"+
-                                "ke rekening yang sama");
+            return BankStatus.of(BankStatus.SAME_ACCOUNT);
     
-        Money amount = message.getAmount();
-        Money limitRemaining = new Money(DAILY_TRANSFER_LIMIT);
-        limitRemaining.subtract(TRANSFER_TODAY[ cardNumber ]);
-        if (! amount.lessEqual(limitRemaining))
-            return new Failure("Batas transfer harian anda telah terlewati");
+        long amount = message.getAmount().getCents();
+        long journalPosition;
+        
+        // Both account stripes are taken lowest first.  If the two accounts
+        // share a stripe, the second lock() simply re-enters it
         
-        if (! amount.lessEqual(AVAILABLE_BALANCE [ fromAccountNumber ]))
-             return new Failure("Maaf, saldo Anda tidak mencukupi");
+        int fromStripe = fromAccountNumber & (LOCK_STRIPES - 1);
+        int toStripe = toAccountNumber & (LOCK_STRIPES - 1);
+        
+        ReentrantLock cardLock = cardLock(cardNumber);
+        ReentrantLock lowerLock = ACCOUNT_LOCKS [ Math.min(fromStripe, toStripe) ];
+        ReentrantLock higherLock = ACCOUNT_LOCKS [ Math.max(fromStripe, toStripe) ];
+        cardLock.lock();
+        lowerLock.lock();
+        higherLock.lock();
+        try
+        {
+            if (amount > Money.remaining(DAILY_TRANSFER_LIMIT, TRANSFER_TODAY [ cardNumber ]))
+                return BankStatus.of(BankStatus.TRANSFER_LIMIT_EXCEEDED);
+        
+            if (amount > accounts.getAvailable(fromAccountNumber))
+                 return BankStatus.of(BankStatus.INSUFFICIENT_FUNDS);
 
-        // Update account balances once we know everything is OK
-        TRANSFER_TODAY [ cardNumber ].add(amount);
-        BALANCE [ fromAccountNumber ].subtract(amount);
-        AVAILABLE_BALANCE [ fromAccountNumber ].subtract(amount);
-        BALANCE [ toAccountNumber ].add(amount);
-        AVAILABLE_BALANCE [ toAccountNumber ].add(amount);
+            // Update account balances once we know everything is OK -
+            // and the change has been journalled
+                    
+            long transfersToday = TRANSFER_TODAY [ cardNumber ] + amount;
+            long fromTotal = accounts.getTotal(fromAccountNumber) - amount;
+            long fromAvailable = accounts.getAvailable(fromAccountNumber) - amount;
+            long toTotal = accounts.getTotal(toAccountNumber) + amount;
+            long toAvailable = accounts.getAvailable(toAccountNumber) + amount;
+                    
+            journalPosition = journal(BankJournal.TRANSFER_RECORD, cardNumber,
+                                      transfersToday,
+                                      fromAccountNumber, fromTotal, fromAvailable,
+                                      toAccountNumber, toTotal, toAvailable);
+            if (journalPosition < 0)
+                return BankStatus.of(BankStatus.BANK_UNAVAILABLE);
+                    
+            TRANSFER_TODAY [ cardNumber ] = transfersToday;
+            accounts.setBalances(fromAccountNumber, fromTotal, fromAvailable);
+            accounts.setBalances(toAccountNumber, toTotal, toAvailable);
         
-        // Return updated balances
+            // Return updated balances
         
-        balances.setBalances(BALANCE [ toAccountNumber ], 
-                             AVAILABLE_BALANCE [ toAccountNumber ]);
+            setBalances(balances, toAccountNumber);
+        }
+        finally
+        {
+            higherLock.unlock();
+            lowerLock.unlock();
+            cardLock.unlock();
+        }
         
-        return new Success();
+        commit(journalPosition);
+        return BankStatus.of(BankStatus.SUCCESS);
     } 
     
     /** Simulate processing of an inquiry
@@ -202,134 +496,477 @@ public class SimulatedBank
     {
         int cardNumber = message.getCard().getNumber(); 
 
-        int accountNumber = ACCOUNT_NUMBER [ cardNumber ] [ message.getFromAccount() ];
+        int accountNumber = accountNumber(cardNumber, message.getFromAccount());
         if (accountNumber == 0)
-            return new Failure("Rekening Yang ada Masukkan Salah");
+            return BankStatus.of(BankStatus.INVALID_ACCOUNT);
         
         // Return requested balances
         
-        balances.setBalances(BALANCE [ accountNumber ], 
-                             AVAILABLE_BALANCE [ accountNumber ]);
+        ReentrantLock accountLock = accountLock(accountNumber);
+        accountLock.lock();
+        try
+        {
+            setBalances(balances, accountNumber);
+        }
+        finally
+        {
+            accountLock.unlock();
+        }
         
-        return new Success();
+        return BankStatus.of(BankStatus.SUCCESS);
     }
-     
-    /** Representation for status of a transaction that succeeded
+    
+    /** Simulate processing of an inquiry about all of a card's accounts
+     *
+     *  @param message the message describing the inquiry requested
+     *  @param balances (out) balances in each account, and in all of them
+     *         together
+     *  @return status code derived from current values
      */
-    private static class Success extends Status
+    private Status inquiryAll(Message message, Balances balances)
     {
-        public boolean isSuccess()
+        int cardNumber = message.getCard().getNumber(); 
+
+        long total = 0;
+        long available = 0;
+        boolean found = false;
+        for (int accountType = 0; accountType < ACCOUNT_TYPES; accountType ++)
         {
-            return true;
+            int accountNumber = accountNumber(cardNumber, accountType);
+            if (accountNumber == 0)
+                continue;
+            
+            ReentrantLock accountLock = accountLock(accountNumber);
+            accountLock.lock();
+            try
+            {
+                long accountTotal = accounts.getTotal(accountNumber);
+                long accountAvailable = accounts.getAvailable(accountNumber);
+                balances.setAccountBalances(accountType, accountTotal, accountAvailable);
+                total += accountTotal;
+                available += accountAvailable;
+            }
+            finally
+            {
+                accountLock.unlock();
+            }
+            found = true;
         }
+        if (! found)
+            return BankStatus.of(BankStatus.INVALID_ACCOUNT);
         
-        public boolean isInvalidPIN()
+        balances.setBalances(total, available);
+        return BankStatus.of(BankStatus.SUCCESS);
+    }
+    
+    /** Set the journal in which changes are to be recorded.  Must be called
+     *  before the bank starts handling messages.
+     *
+     *  @param journal the journal - null to stop journalling
+     */
+    public void setJournal(BankJournal journal)
+    {
+        this.journal = journal;
+    }
+    
+    /** Set how many responses to messages that change balances are kept, and
+     *  for how long, to answer messages sent again.  Must be called before
+     *  the bank starts handling messages.
+     *
+     *  @param entries most responses to keep - 0 to keep none, so every
+     *         message is handled as new
+     *  @param maximumAge longest time to keep a response, in milliseconds
+     */
+    public void setResponseCache(int entries, long maximumAge)
+    {
+        responses = entries > 0 ? new ResponseCache(entries, maximumAge) : null;
+    }
+    
+    /** Set how many session tokens are kept, and for how long each is good.
+     *  Must be called before the bank starts handling messages.
+     *
+     *  @param entries most tokens to keep - 0 to issue none, so every message
+     *         is authorized by its PIN
+     *  @param lifetime time a token is good for, in milliseconds
+     */
+    public void setSessionTokens(int entries, long lifetime)
+    {
+        sessionTokens = entries > 0 ? new SessionTokens(entries, lifetime) : null;
+    }
+    
+    /** Accessor for the number of messages authorized by a session token
+     *  rather than by checking the PIN
+     *
+     *  @return the number of messages
+     */
+    public long getSessionTokensAccepted()
+    {
+        SessionTokens tokens = sessionTokens;
+        return tokens == null ? 0 : tokens.getAccepted();
+    }
+    
+    /** Accessor for the number of messages answered with the response given
+     *  to the same message before
+     *
+     *  @return the number of messages
+     */
+    public long getResponsesReplayed()
+    {
+        ResponseCache cache = responses;
+        return cache == null ? 0 : cache.getReplayed();
+    }
+    
+    /** Bring the bank up to date after a restart by applying the changes in
+     *  the journal made since the bank's snapshot was taken (or all of them,
+     *  for a bank that was not restored from a snapshot), then record new
+     *  changes in the same journal.  Must be called before the bank starts
+     *  handling messages.
+     *
+     *  @param journal the journal - opened at getSnapshotPosition() or earlier
+     *  @return the number of journal records applied
+     *  @exception IOException if the journal cannot be read, or does not match
+     *             this bank
+     */
+    public int recover(BankJournal journal) throws IOException
+    {
+        int records = journal.replay(snapshotPosition, this);
+        setJournal(journal);
+        return records;
+    }
+    
+    /** Accessor for the position in the journal the bank's snapshot was taken at
+     *
+     *  @return journal position recorded in the snapshot the bank was restored
+     *          from - 0 if it was not restored from a snapshot
+     */
+    public long getSnapshotPosition()
+    {
+        return snapshotPosition;
+    }
+    
+    /** Save the tables to a snapshot file, without stopping the handling of
+     *  messages.  The snapshot is written to a temporary file which then
+     *  replaces the old one, so a crash part way through leaves the previous
+     *  snapshot intact.
+     *
+     *  @param snapshotFile the file to write
+     *  @exception IOException if the snapshot cannot be written
+     */
+    public void writeSnapshot(File snapshotFile) throws IOException
+    {
+        snapshotLock.lock();
+        try
         {
-            return false;
+            writeSnapshotLocked(snapshotFile);
         }
-        
-        public String getMessage()
+        finally
         {
-            return null;
+            snapshotLock.unlock();
         }
     }
     
-    /** Representation for status of a transaction that failed (for reason other than
-     *  invalid PIN)
+    /** Save the tables to a snapshot file.  Called with snapshotLock held, so
+     *  only one snapshot is written at a time
+     *
+     *  @param snapshotFile the file to write
+     *  @exception IOException if the snapshot cannot be written
      */
-    private static class Failure extends Status
+    private void writeSnapshotLocked(File snapshotFile) throws IOException
     {
-        /** Constructor
-         *
-         *  @param message description of the failure
-         */
-        public Failure(String message)
+        // Note where the journal ends before copying anything - replay must
+        // start from here
+        
+        long journalPosition = journal == null ? 0 : journal.getPosition();
+        
+        int cards = PIN.length;
+        int numberOfAccounts = accounts.size();
+        File temporary = new File(snapshotFile.getPath() + ".tmp");
+        RandomAccessFile file = new RandomAccessFile(temporary, "rw");
+        try
         {
-            this.message = message;
+            long size = snapshotSize(cards, numberOfAccounts);
+            file.setLength(size);
+            MappedByteBuffer snapshot = file.getChannel().map(FileChannel.MapMode.READ_WRITE,
+                                                              0, size);
+            snapshot.putInt(0, SNAPSHOT_MAGIC);
+            snapshot.putInt(4, cards);
+            snapshot.putInt(8, numberOfAccounts);
+            snapshot.putLong(16, journalPosition);
+            
+            // Copy the tables that change one lock stripe at a time, so
+            // requests only ever wait for a copy of 1 / LOCK_STRIPES of a
+            // table, then write each copy out in one go
+            
+            long [] balances = new long[2 * (numberOfAccounts + 1)];
+            for (int s = 0; s < LOCK_STRIPES; s ++)
+            {
+                ACCOUNT_LOCKS [ s ].lock();
+                try
+                {
+                    for (int account = s; account <= numberOfAccounts; account += LOCK_STRIPES)
+                    {
+                        balances[2 * account] = accounts.getTotal(account);
+                        balances[2 * account + 1] = accounts.getAvailable(account);
+                    }
+                }
+                finally
+                {
+                    ACCOUNT_LOCKS [ s ].unlock();
+                }
+            }
+            
+            snapshot.position(SNAPSHOT_HEADER_SIZE);
+            snapshot.asLongBuffer().put(copyStripes(WITHDRAWALS_TODAY, CARD_LOCKS));
+            snapshot.position(snapshot.position() + 8 * cards);
+            snapshot.asLongBuffer().put(copyStripes(TRANSFER_TODAY, CARD_LOCKS));
+            snapshot.position(snapshot.position() + 8 * cards);
+            snapshot.asLongBuffer().put(balances);
+            snapshot.position(snapshot.position() + 16 * (numberOfAccounts + 1));
+            
+            // PINs and account numbers never change
+            
+            snapshot.asIntBuffer().put(PIN);
+            snapshot.position(snapshot.position() + 4 * cards);
+            snapshot.asIntBuffer().put(ACCOUNT_NUMBER);
+            
+            snapshot.force();
         }
-        
-        public boolean isSuccess()
+        finally
         {
-            return false;
+            file.close();
         }
         
-        public boolean isInvalidPIN()
+        // The snapshot may include changes journalled after journalPosition,
+        // so those records must be on disk before the snapshot replaces the
+        // old one
+        
+        if (journal != null)
+            journal.flush();
+        
+        Files.move(temporary.toPath(), snapshotFile.toPath(),
+                   StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+    
+    /** Write snapshots periodically, on a background thread
+     *
+     *  @param snapshotFile the file to write
+     *  @param interval time between snapshots, in milliseconds
+     */
+    public void startSnapshots(final File snapshotFile, final long interval)
+    {
+        Thread writer = new Thread("Bank snapshot writer") {
+            public void run()
+            {
+                while (true)
+                {
+                    try
+                    {
+                        Thread.sleep(interval);
+                    }
+                    catch(InterruptedException e)
+                    { 
+                        return;
+                    }
+                    
+                    try
+                    {
+                        writeSnapshot(snapshotFile);
+                    }
+                    catch(IOException e)
+                    {
+                        System.err.println("Snapshot " + snapshotFile + " gagal: " + e);
+                    }
+                }
+            }
+        };
+        writer.setDaemon(true);
+        writer.start();
+    }
+    
+    /** Apply one journal record to the tables.  Used by BankJournal.replay(),
+     *  before the bank handles any messages, so no locks are taken.  The
+     *  parameters are as for BankJournal.append()
+     *
+     *  @exception IOException if the record refers to a card or account this
+     *             bank does not have
+     */
+    void apply(int type, int cardNumber, long cardTotalToday,
+               int account1, long total1, long available1,
+               int account2, long total2, long available2) throws IOException
+    {
+        if (cardNumber < 1 || cardNumber >= PIN.length || ! accounts.exists(account1)
+            || (account2 != 0 && ! accounts.exists(account2)))
+            throw new IOException("Journal record does not match bank");
+        
+        if (type == BankJournal.WITHDRAWAL_RECORD)
+            WITHDRAWALS_TODAY [ cardNumber ] = cardTotalToday;
+        else if (type == BankJournal.TRANSFER_RECORD)
+            TRANSFER_TODAY [ cardNumber ] = cardTotalToday;
+        
+        accounts.setBalances(account1, total1, available1);
+        if (account2 != 0)
+            accounts.setBalances(account2, total2, available2);
+    }
+    
+    /** Copy one of the per-card tables, one lock stripe at a time
+     *
+     *  @param table the table
+     *  @param locks the lock stripes guarding it
+     *  @return the copy
+     */
+    private static long [] copyStripes(long [] table, ReentrantLock [] locks)
+    {
+        long [] copy = new long[table.length];
+        for (int s = 0; s < LOCK_STRIPES; s ++)
         {
-            return false;
+            locks [ s ].lock();
+            try
+            {
+                for (int i = s; i < table.length; i += LOCK_STRIPES)
+                    copy[i] = table[i];
+            }
+            finally
+            {
+                locks [ s ].unlock();
+            }
         }
+        return copy;
+    }
+    
+    /** Size of a snapshot file
+     *
+     *  @param cards length of the per-card tables (highest card number + 1)
+     *  @param numberOfAccounts highest account number
+     *  @return size in bytes
+     */
+    private static long snapshotSize(int cards, int numberOfAccounts)
+    {
+        return SNAPSHOT_HEADER_SIZE + 16L * cards + 16L * (numberOfAccounts + 1)
+            + 4L * cards + 4L * cards * ACCOUNT_TYPES;
+    }
+    
+    /** Record a change in the journal, if there is one.  Called with the locks
+     *  for the card and accounts concerned held.  The parameters are as for
+     *  BankJournal.append()
+     *
+     *  @return position to pass to commit() - 0 if there is no journal, -1 if
+     *          the change could not be journalled and must not be made
+     */
+    private long journal(int type, int cardNumber, long cardTotalToday,
+                         int account1, long total1, long available1,
+                         int account2, long total2, long available2)
+    {
+        if (journal == null)
+            return 0;
         
-        public String getMessage()
+        try
         {
-            return message;
+            return journal.append(type, cardNumber, cardTotalToday,
+                                  account1, total1, available1,
+                                  account2, total2, available2);
+        }
+        catch(IOException e)
+        {
+            return -1;
         }
-        
-        private String message;
     }
-
-    /** Representation for status of a transaction that failed due to an invalid PIN
+    
+    /** Wait until a journalled change is durable.  Called after the locks have
+     *  been released.
+     *
+     *  @param journalPosition the value returned by journal()
      */
-    private static class InvalidPIN extends Failure
+    private void commit(long journalPosition)
     {
-        /** Constructor
-         *
-         *  @param message description of the failure
-         */
-        public InvalidPIN()
+        if (journalPosition > 0)
         {
-            super("PIN ANDA SALAH");
+            // Map the journal's next region now, while no locks are held, so
+            // that no request has to wait for that while holding its stripes
+            
+            try
+            {
+                journal.prepareNextRegion();
+            }
+            catch(IOException e)
+            {
+                // append() maps the region itself, and reports the failure
+            }
+            journal.commit(journalPosition);
         }
+    }
+    
+    /** Look up the account number of one of a card's accounts
+     *
+     *  @param cardNumber the card (already known to be valid)
+     *  @param accountType the type of account, as chosen by the customer
+     *  @return the account number - 0 if the card has no such account
+     */
+    private int accountNumber(int cardNumber, int accountType)
+    {
+        if (accountType < 0 || accountType >= ACCOUNT_TYPES)
+            return 0;
         
-        public boolean isInvalidPIN()
-        {
-            return true;
-        }
+        int accountNumber = ACCOUNT_NUMBER [ cardNumber * ACCOUNT_TYPES + accountType ];
+        return accounts.exists(accountNumber) ? accountNumber : 0;
     }
     
-    /** PIN for each card.  (Valid card numbers start with 1)
+    /** Report the balances of an account back to the ATM.  The caller must hold
+     *  the account's lock stripe.
+     *
+     *  @param balances (out) balances to fill in
+     *  @param accountNumber the account whose balances are reported
      */
-    private static final int PIN [] =
+    private void setBalances(Balances balances, int accountNumber)
+    {
+        balances.setBalances(accounts.getTotal(accountNumber), 
+                             accounts.getAvailable(accountNumber));
+    }
+    
+    /** Lock stripe guarding the daily totals of a card
+     *
+     *  @param cardNumber the card
+     *  @return the lock
+     */
+    private ReentrantLock cardLock(int cardNumber)
+    {
+        return CARD_LOCKS [ cardNumber & (LOCK_STRIPES - 1) ];
+    }
+    
+    /** Lock stripe guarding the balances of an account
+     *
+     *  @param accountNumber the account
+     *  @return the lock
+     */
+    private ReentrantLock accountLock(int accountNumber)
+    {
+        return ACCOUNT_LOCKS [ accountNumber & (LOCK_STRIPES - 1) ];
+    }
+     
+    /** PIN for each card in the demonstration bank.  (Valid card numbers start
+     *  with 1)
+     */
+    private static final int INITIAL_PIN [] =
     { 
         0,  // dummy for nonexistent card 0
         422442, 
         123456 
     };
 
-    /** Array of account numbers associated with each card.  For each card,
-     *  there can be three different types of account, which correspond to
-     *  the names in class AccountInformation.  0 means no account of this
-     *  type.   (Valid card numbers start with 1)
+    /** Account numbers associated with each card in the demonstration bank.
+     *  For each card, there can be three different types of account, which
+     *  correspond to the names in class AccountInformation.  0 means no account
+     *  of this type.   (Valid card numbers start with 1)
      */
-    private static final int ACCOUNT_NUMBER [] [] =
+    private static final int INITIAL_ACCOUNT_NUMBER [] =
     { 
-        { 0, 0, 0 },    // dummies for nonexistent card 0
-        { 1, 2, 0 },
-        { 1, 0, 3 }
-    };
-
-    /** Withdrawals so far today on each card.   (Valid card numbers start with 1)
-     */ 
-    private static Money WITHDRAWALS_TODAY [] =
-    {
-        new Money(0),   // dummy for nonexistent card 0
-        new Money(0),
-        new Money(0)
-    };
-    private static Money TRANSFER_TODAY [] =
-    {
-        new Money(0),   // dummy for nonexistent card 0
-        new Money(0),
-        new Money(0)
+        0, 0, 0,    // dummies for nonexistent card 0
+        1, 2, 0,
+        1, 0, 3
     };
     
-    /** Maximum daily withdrawal limit for any one card.  
+    /** Starting balance for each account in the demonstration bank
      */
-    private static final Money DAILY_WITHDRAWAL_LIMIT = new Money(5000000);
-    private static final Money DAILY_TRANSFER_LIMIT = new Money(10000000);
-    
-    /** Balance for each account (will change as program runs, hence not a
-     *  static final.
-     */
-    private Money BALANCE [] =
+    private static final Money INITIAL_BALANCE [] =
     {
         new Money(0) // dummy for nonexistent account 0
             , new Money(100000000)
@@ -337,14 +974,113 @@ public class SimulatedBank
 //            , new Money(5000) 
     }; 
     
-    /** Available alance for each account (will change as program runs, hence
-     *  not a static final.
+    /** Starting available balance for each account in the demonstration bank
      */
-    private Money AVAILABLE_BALANCE [] =
+    private static final Money INITIAL_AVAILABLE_BALANCE [] =
     { 
         new Money(0) // dummy for nonexistent account 0
             , new Money(5000000)
             , new Money(10000000)
 //            , new Money(5000) 
     };
+    
+    /** Number of account types each card can have
+     */
+    private static final int ACCOUNT_TYPES = 3;
+    
+    /** Maximum daily withdrawal limit for any one card, in cents
+     */
+    private static final long DAILY_WITHDRAWAL_LIMIT = new Money(5000000).getCents();
+    
+    /** Maximum daily transfer limit for any one card, in cents
+     */
+    private static final long DAILY_TRANSFER_LIMIT = new Money(10000000).getCents();
+    
+    /** PIN for each card.  (Valid card numbers start with 1)
+     */
+    private final int PIN [];
+    
+    /** Account numbers associated with each card - ACCOUNT_TYPES consecutive
+     *  entries per card, starting at cardNumber * ACCOUNT_TYPES
+     */
+    private final int ACCOUNT_NUMBER [];
+
+    /** Withdrawals so far today on each card, in cents
+     */ 
+    private final long WITHDRAWALS_TODAY [];
+    
+    /** Transfers so far today on each card, in cents
+     */ 
+    private final long TRANSFER_TODAY [];
+    
+    /** Balance and available balance for each account
+     */
+    private final AccountStore accounts;
+    
+    /** Journal in which changes are recorded - null if none
+     */
+    private BankJournal journal;
+    
+    /** Responses kept to answer messages sent again - null if none are kept
+     */
+    private volatile ResponseCache responses =
+        new ResponseCache(RESPONSE_CACHE_ENTRIES, RESPONSE_CACHE_AGE);
+    
+    /** Responses kept, and for how long in milliseconds, unless told otherwise
+     */
+    private static final int RESPONSE_CACHE_ENTRIES = 64 * 1024;
+    private static final long RESPONSE_CACHE_AGE = 60 * 1000;
+    
+    /** Session tokens issued - null if none are issued
+     */
+    private volatile SessionTokens sessionTokens =
+        new SessionTokens(SESSION_TOKEN_ENTRIES, SESSION_TOKEN_LIFETIME);
+    
+    /** Session tokens kept, and how long each is good for in milliseconds,
+     *  unless told otherwise
+     */
+    private static final int SESSION_TOKEN_ENTRIES = 64 * 1024;
+    private static final long SESSION_TOKEN_LIFETIME = 2 * 60 * 1000;
+    
+    /** Position in the journal at which the snapshot this bank was restored
+     *  from was taken - 0 if it was not restored from a snapshot
+     */
+    private long snapshotPosition;
+    
+    /** Identifies a snapshot file ("BANK" in ASCII)
+     */
+    private static final int SNAPSHOT_MAGIC = 0x42414E4B;
+    
+    /** Size of the snapshot header: magic, number of cards, number of accounts,
+     *  (unused), journal position
+     */
+    private static final int SNAPSHOT_HEADER_SIZE = 24;
+    
+    /** Number of lock stripes - must be a power of two
+     */
+    private static final int LOCK_STRIPES = 64;
+    
+    /** Lock stripes for the per-card daily totals
+     */
+    private final ReentrantLock CARD_LOCKS [] = newLocks();
+    
+    /** Lock stripes for the account balances
+     */
+    private final ReentrantLock ACCOUNT_LOCKS [] = newLocks();
+    
+    /** Lock held while a snapshot is written, so only one is written at a time
+     */
+    private final ReentrantLock snapshotLock = new ReentrantLock();
+    
+    /** Create one set of lock stripes
+     *
+     *  @return LOCK_STRIPES distinct locks
+     */
+    private static ReentrantLock [] newLocks()
+    {
+        ReentrantLock [] locks = new ReentrantLock[LOCK_STRIPES];
+        for (int i = 0; i < LOCK_STRIPES; i ++)
+            locks[i] = new ReentrantLock();
+        return locks;
+    }
 }    
@@ -1 +1 @@
-/* * ATM Example system - file Simulation.java * * copyright (c) 2001 - Russell C. Bjork * */ package simulation;import atm.ATM;import banking.Balances;import banking.Card;import banking.Message;import banking.Money;import banking.Status;/** Simulation of the physical components of the ATM, including its network  *  connection to the bank.  An instance is created at startup by either the *  application's main() program or the applet's init() method. * *  The individual components are displayed in a panel belonging to class GUI. *  The bank is simulated by an object belonging to class SimulatedBank.  The *  constructor for this class creates one instance of each. * *  The static method getInstance() allows components of the ATM to access the one *  and only instance of this class in order to simulate various operations.  The *  remaining methods simulate specific operations of the ATM, and are forwarded *  to either the GUI panel or the simulated bank to actually carry them out. */public class Simulation{    public Simulation(ATM atm)    {        this.atm = atm;                // Create the simulated individual components of the ATM's GUI                operatorPanel = new SimOperatorPanel(this);        cardReader = new SimCardReader(this);        display = new SimDisplay();        cashDispenser = new SimCashDispenser();        envelopeAcceptor = new SimEnvelopeAcceptor();        receiptPrinter = new SimReceiptPrinter();        keyboard = new SimKeyboard(display, envelopeAcceptor);                // Create the GUI containing the above                gui = new GUI(operatorPanel, cardReader, display, keyboard,                      cashDispenser, envelopeAcceptor, receiptPrinter);                // Create the simulation of the bank                simulatedBank = new SimulatedBank();                theInstance = this;    }        /** Accessor for the one and only instance of this class     *     *  @return the instance of this class     */    public static Simulation getInstance()    {        return theInstance;    }        /** Simulated getting initial amount of cash from operator     *     *  @return value of initial cash entered     */    public Money getInitialCash()    {        return gui.getInitialCash();    }        /** Simulate reading of a card     *     *     *  @return Card object representing information on the card if read     *          successfully, null if not read successfully     */    public Card readCard()    {        // Machine can't be turned off while there is a card in it        operatorPanel.setEnabled(false);        cardReader.animateInsertion();                // Since we don't have a magnetic stripe reader, we'll simulate by        // having customer type the card number in                return gui.readCard();    }        /** Simulate ejecting a card      */    public void ejectCard()    {        cardReader.animateEjection();        // Re-enable on-off switch        operatorPanel.setEnabled(true);    }        /** Simulate retaining a card     */    public void retainCard()    {        cardReader.animateRetention();        // Re-enable on-off switch        operatorPanel.setEnabled(true);    }        /** Clear the simulated display     */    public void clearDisplay()    {        display.clearDisplay();    }        /** Write one or more lines to the display - beginning just after the     *  last line written     *     *  @param text the text to display     */    public void display(String text)    {        display.display(text);    }         /** Simulate reading input from the keyboard     *     *  @param mode the input mode to use - one of the constants defined below.     *  @param maxValue the maximum acceptable value (used in MENU_MODE only)     *  @return the line that was entered - null if user pressed CANCEL.     */    public String readInput(int mode, int maxValue)    {        return keyboard.readInput(mode, maxValue);    }        /** Simulate dispensing cash to a customer     *     *  @param amount the amount of cash to dispense     *     *  Precondition: amount is <= cash on hand     */    public void dispenseCash(Money amount)    {        cashDispenser.animateDispensingCash(amount);    }    /** Simulate accepting an envelope from customer.     *     *  return true if an envelope was received within the prescribed time,     *         else false     */    public boolean acceptEnvelope()    {        return envelopeAcceptor.acceptEnvelope();    }    /** Simulate printing one line of a receipt     *     *  @param text the line to print     */    public void printReceiptLine(String text)    {        receiptPrinter.println(text);    }        /** Simulate printing a line to the log     *     *  @param text the line to print     */    public void printLogLine(String text)    {        gui.printLogLine(text);    }        /** Simulate sending a message to bank     *     *  @param message the message to send     *  @param balances (out) balances in customer's account as reported     *         by bank     *  @return status code returned by bank     */    public Status sendMessage(Message message, Balances balances)    {        // Simulate time taken to send message over network                try        {            Thread.sleep(2 * 1000);        }        catch(InterruptedException e)        { }                return simulatedBank.handleMessage(message, balances);    }    /** Notify the ATM that the state of the on-off switch has been changed     *     *  @param on true if state is now "on", false if it is "off"     */    void switchChanged(boolean on)    {        // The card reader is only enabled when the switch is on                cardReader.setVisible(on);                if (on)            atm.switchOn();        else            atm.switchOff();    }        /** Notify ATM that a card has been inserted     */    void cardInserted()    {        atm.cardInserted();    }        /** Accessor for GUI Panel that simulates the ATM     *     *  @return the GUI Panel     */    public GUI getGUI()    {        return gui;    }        /** Accessor for simulated bank     *     *  @return simulated bank     */    public SimulatedBank getSimulatedBank()    {        return simulatedBank;    }    /* Possible values for mode parameter to readInput() */        /** Read input in PIN mode - allow user to enter several characters,     *  and to clear the line if the user wishes; echo as asterisks     */    public static final int PIN_MODE = 1;        /** Read input in amount mode - allow user to enter several characters,     *  and to clear the line if the user wishes; echo what use types     */    public static final int AMOUNT_MODE = 2;        /** Read input in menu choice mode - wait for one digit key to be pressed,     *  and return value immediately.     */    public static final int MENU_MODE = 3;        /** The ATM object for the ATM being simulated     */    private ATM atm;        /** The simulated operator panel     */    private SimOperatorPanel operatorPanel;        /** The simulated card reader     */    private SimCardReader cardReader;        /** The simulated display     */    private SimDisplay display;        /** The simulated keyboard     */    private SimKeyboard keyboard;        /** The simulated cash dispenser     */    private SimCashDispenser cashDispenser;        /** The simulated envelope acceptor     */    private SimEnvelopeAcceptor envelopeAcceptor;        /** The simulated receipt printer     */    private SimReceiptPrinter receiptPrinter;        /** Panel containing the GUI that simulates the ATM     */    private GUI gui;        /** Simulated bank     */    private SimulatedBank simulatedBank;        /** The one and only instance of this class     */    private static Simulation theInstance;}    
\ No newline at end of file
+/* * ATM Example system - file Simulation.java * * copyright (c) 2001 - Russell C. Bjork * */ package simulation;import java.util.Map;import java.util.concurrent.ConcurrentHashMap;import java.util.concurrent.ScheduledThreadPoolExecutor;import java.util.concurrent.ThreadFactory;import java.util.concurrent.TimeUnit;import atm.ATM;import atm.physical.LogEvent;import banking.Balances;import banking.Card;import banking.Message;import banking.Money;import banking.Status;/** Simulation of the physical components of the ATM, including its network  *  connection to the bank.  An instance is created at startup by either the *  application's main() program or the applet's init() method. * *  The individual components are displayed in a panel belonging to class GUI - *  or, for an ATM run without a display, simulated by a HeadlessDevices object *  that follows a script.  The bank is simulated by an object belonging to *  class SimulatedBank.  The constructor for this class creates one instance *  of each, unless it is given ones that have already been set up. * *  There is one instance of this class for each ATM being simulated, and many *  ATMs may share one simulated bank.  The static method getInstance() allows *  components of an ATM to access the instance for their ATM in order to *  simulate various operations, until release() is called for an ATM that is *  done with.  The remaining methods simulate specific operations of the ATM, *  and are forwarded to the GUI panel, the headless devices or the simulated *  bank to actually carry them out. */public class Simulation{    public Simulation(ATM atm)    {        this(atm, new SimulatedBank());    }        /** Constructor for a simulation that uses a bank created elsewhere - e.g.     *  one restored from a snapshot     *     *  @param atm the ATM being simulated     *  @param simulatedBank the bank the ATM talks to     */    public Simulation(ATM atm, SimulatedBank simulatedBank)    {        this.atm = atm;                // Create the simulated individual components of the ATM's GUI                operatorPanel = new SimOperatorPanel(this);        cardReader = new SimCardReader(this);        display = new SimDisplay();        cashDispenser = new SimCashDispenser();        envelopeAcceptor = new SimEnvelopeAcceptor();        receiptPrinter = new SimReceiptPrinter();        keyboard = new SimKeyboard(display, envelopeAcceptor);                // Create the GUI containing the above                gui = new GUI(operatorPanel, cardReader, display, keyboard,                      cashDispenser, envelopeAcceptor, receiptPrinter);                this.simulatedBank = simulatedBank;        logPipeline = LogPipeline.fromProperties(new LogSink[] { gui.getLogSink() });                instances.put(atm, this);    }        /** Constructor for an ATM run without a display.  No AWT components are     *  created; the devices are simulated by the headless devices instead.     *  The ATM runs on a virtual clock, so messages still take the usual time     *  to reach the bank as far as the ATM can tell, but nothing waits for it.     *     *  @param atm the ATM being simulated     *  @param simulatedBank the bank the ATM talks to     *  @param headless the devices, with the script the customers will follow     */    public Simulation(ATM atm, SimulatedBank simulatedBank, HeadlessDevices headless)    {        this.atm = atm;        this.headless = headless;        this.simulatedBank = simulatedBank;        clock = new SimulationClock(true);        logPipeline = LogPipeline.getShared();                instances.put(atm, this);    }        /** Accessor for the instance of this class simulating a given ATM     *     *  @param atm the ATM     *  @return the instance simulating it     */    public static Simulation getInstance(ATM atm)    {        return instances.get(atm);    }        /** Forget this instance, once its ATM will not be used again - e.g. when     *  a fleet of ATMs has stopped.  Until then getInstance() keeps the ATM,     *  its devices and this instance reachable     */    public void release()    {        instances.remove(atm, this);    }        /** Simulated getting initial amount of cash from operator     *     *  @return value of initial cash entered     */    public Money getInitialCash()    {        if (headless != null)            return headless.getInitialCash();                return gui.getInitialCash();    }        /** Simulate reading of a card     *     *     *  @return Card object representing information on the card if read     *          successfully, null if not read successfully     */    public Card readCard()    {        if (headless != null)            return headless.readCard();                // Machine can't be turned off while there is a card in it        operatorPanel.setEnabled(false);        cardReader.animateInsertion();                // Since we don't have a magnetic stripe reader, we'll simulate by        // having customer type the card number in                return gui.readCard();    }        /** Simulate ejecting a card      */    public void ejectCard()    {        if (headless != null)        {            headless.ejectCard();            return;        }                cardReader.animateEjection();        // Re-enable on-off switch        operatorPanel.setEnabled(true);    }        /** Simulate retaining a card     */    public void retainCard()    {        if (headless != null)        {            headless.retainCard();            return;        }                cardReader.animateRetention();        // Re-enable on-off switch        operatorPanel.setEnabled(true);    }        /** Clear the simulated display     */    public void clearDisplay()    {        if (headless == null)            display.clearDisplay();    }        /** Write one or more lines to the display - beginning just after the     *  last line written     *     *  @param text the text to display     */    public void display(String text)    {        if (headless != null)            headless.display(text);        else            display.display(text);    }         /** Simulate reading input from the keyboard     *     *  @param mode the input mode to use - one of the constants defined below.     *  @param maxValue the maximum acceptable value (used in MENU_MODE only)     *  @return the line that was entered - null if user pressed CANCEL.     */    public String readInput(int mode, int maxValue)    {        if (headless != null)            return headless.readInput(mode, maxValue);                return keyboard.readInput(mode, maxValue);    }        /** Simulate dispensing cash to a customer     *     *  @param amount the amount of cash to dispense     *     *  Precondition: amount is <= cash on hand     */    public void dispenseCash(Money amount)    {        if (headless != null)            headless.dispenseCash(amount);        else            cashDispenser.animateDispensingCash(amount);    }    /** Simulate accepting an envelope from customer.     *     *  return true if an envelope was received within the prescribed time,     *         else false     */    public boolean acceptEnvelope()    {        if (headless != null)            return headless.acceptEnvelope();                return envelopeAcceptor.acceptEnvelope();    }    /** Simulate printing one line of a receipt     *     *  @param text the line to print     */    public void printReceiptLine(String text)    {        if (headless != null)            headless.printReceiptLine(text);        else            receiptPrinter.println(text);    }        /** Simulate writing an entry to the log.  Headless devices keep the     *  entry, and only build its text if asked for it.  The entry is also     *  handed to the log pipeline, if there is one, whose writer thread     *  shows it in the GUI and outputs it to any other sinks     *     *  @param event the entry to write - not to be changed afterwards     */    public void log(LogEvent event)    {        if (headless != null)            headless.log(event);        if (logPipeline != null)            logPipeline.publish(event);    }        /** Accessor for the log pipeline this ATM's log entries go through     *     *  @return the pipeline - null if the ATM is run without a display and     *          no log sinks are configured     */    public LogPipeline getLogPipeline()    {        return logPipeline;    }        /** Simulate sending a message to bank     *     *  @param message the message to send     *  @param balances (out) balances in customer's account as reported     *         by bank     *  @return status code returned by bank     */    public Status sendMessage(Message message, Balances balances)    {        // Simulate time taken to send message over network                clock.sleep(networkLatency.nextDelay());                return simulatedBank.handleMessage(atm.getID(), message, balances);    }    /** Simulate sending a message to bank without waiting for the response.     *  The message reaches the bank after the network delay; the bank's     *  response is then handed to the receiver, tagged with the message's     *  serial number, on one of the threads simulating the network.  Any     *  number of messages may be on their way at once, and their responses     *  may come back in any order.  The message must not be changed until its     *  response has been received.     *     *  On a virtual clock, time only passes when the ATM's own thread waits,     *  so messages cannot overlap in time: the clock is moved on by the     *  network delay and the response is handed to the receiver at once, on     *  the calling thread.     *     *  @param message the message to send     *  @param receiver the receiver for the response     */    public void sendMessageAsync(final Message message, final Receiver receiver)    {        long delay = networkLatency.nextDelay();        Runnable delivery = new Runnable() {            public void run()            {                Balances balances = new Balances();                Status status = simulatedBank.handleMessage(atm.getID(), message, balances);                receiver.receive(message.getSerialNumber(), status, balances);            }        };                if (clock.isVirtual())        {            clock.sleep(delay);            delivery.run();        }        else            NETWORK.schedule(delivery, delay, TimeUnit.NANOSECONDS);    }        /** Receiver for the responses to messages sent by sendMessageAsync()     */    public interface Receiver    {        /** Receive the bank's response to a message         *         *  @param serialNumber serial number of the message responded to         *  @param status status code returned by bank         *  @param balances balances in customer's account as reported by bank         */        void receive(long serialNumber, Status status, Balances balances);    }    /** Set the model of the time taken to send a message over the network     *     *  @param networkLatency the model to use for each message from now on     */    public void setNetworkLatency(NetworkLatency networkLatency)    {        this.networkLatency = networkLatency;    }        /** Set the clock the simulated ATM waits and is timed by.  Should be set     *  before the ATM starts serving customers     *     *  @param clock the clock to use     */    public void setClock(SimulationClock clock)    {        this.clock = clock;    }        /** Accessor for the clock the simulated ATM waits and is timed by     *     *  @return the clock - the system clock unless a virtual clock has been     *          set, or the ATM is headless     */    public SimulationClock getClock()    {        return clock;    }        /** Notify the ATM that the state of the on-off switch has been changed     *     *  @param on true if state is now "on", false if it is "off"     */    void switchChanged(boolean on)    {        // The card reader is only enabled when the switch is on                cardReader.setVisible(on);                if (on)            atm.switchOn();        else            atm.switchOff();    }        /** Notify ATM that a card has been inserted     */    void cardInserted()    {        atm.cardInserted();    }        /** Accessor for GUI Panel that simulates the ATM     *     *  @return the GUI Panel - null if the ATM is run without a display     */    public GUI getGUI()    {        return gui;    }        /** Accessor for simulated bank     *     *  @return simulated bank     */    public SimulatedBank getSimulatedBank()    {        return simulatedBank;    }    /* Possible values for mode parameter to readInput() */        /** Read input in PIN mode - allow user to enter several characters,     *  and to clear the line if the user wishes; echo as asterisks     */    public static final int PIN_MODE = 1;        /** Read input in amount mode - allow user to enter several characters,     *  and to clear the line if the user wishes; echo what use types     */    public static final int AMOUNT_MODE = 2;        /** Read input in menu choice mode - wait for one digit key to be pressed,     *  and return value immediately.     */    public static final int MENU_MODE = 3;        /** The ATM object for the ATM being simulated     */    private ATM atm;        /** The simulated operator panel     */    private SimOperatorPanel operatorPanel;        /** The simulated card reader     */    private SimCardReader cardReader;        /** The simulated display     */    private SimDisplay display;        /** The simulated keyboard     */    private SimKeyboard keyboard;        /** The simulated cash dispenser     */    private SimCashDispenser cashDispenser;        /** The simulated envelope acceptor     */    private SimEnvelopeAcceptor envelopeAcceptor;        /** The simulated receipt printer     */    private SimReceiptPrinter receiptPrinter;        /** Panel containing the GUI that simulates the ATM     */    private GUI gui;        /** Devices simulated without a display - null if the GUI is used     */    private HeadlessDevices headless;        /** Pipeline the log entries go through to the GUI and other sinks - null     *  if there are no sinks     */    private LogPipeline logPipeline;        /** Simulated bank     */    private SimulatedBank simulatedBank;        /** Model of the time taken to send a message over the network     */    private NetworkLatency networkLatency = new NetworkLatency.Fixed(2 * 1000);        /** Clock the simulated ATM waits and is timed by     */    private SimulationClock clock = new SimulationClock(false);        /** The instance of this class for each ATM.  Looked up on every device     *  operation by every ATM, so reads must not lock     */    private static final Map<ATM, Simulation> instances =         new ConcurrentHashMap<ATM, Simulation>();        /** Number of threads delivering messages sent by sendMessageAsync()     */    private static final int NETWORK_THREADS = 16;        /** The simulated network, shared by all ATMs.  Holds each message sent by     *  sendMessageAsync() for its network delay, then delivers it to the bank     *  and the response back to the ATM.  With a journal that is forced to     *  disk, handling a message waits for the disk, so messages are delivered     *  by a pool of NETWORK_THREADS threads - enough for group commit to     *  gather the changes of many ATMs into one flush     */    private static final ScheduledThreadPoolExecutor NETWORK =        new ScheduledThreadPoolExecutor(NETWORK_THREADS, new ThreadFactory() {            public Thread newThread(Runnable runnable)            {                Thread thread = new Thread(runnable, "Simulated network");                thread.setDaemon(true);                return thread;            }        });}    
\ No newline at end of file
@@ -0,0 +1,78 @@
+/*
+ * ATM Example system - file SimulationClock.java
+ *
+ */
+
+package simulation;
+
+/** Clock for one simulated ATM.  The simulation waits for things (such as a
+ *  message crossing the network) by calling sleep(), and times them with
+ *  nanoTime().
+ *
+ *  A real clock is the system clock, and sleep() really sleeps.  A virtual
+ *  clock only moves when sleep() is called, and then moves at once - so an
+ *  ATM with a virtual clock runs as fast as the CPU allows, while the times
+ *  it reports are the ones the customers would have seen.  Each ATM's
+ *  customers are served one after another, so each ATM can have a virtual
+ *  clock of its own; only the thread running the ATM may call sleep().
+ */
+public class SimulationClock
+{
+    /** Constructor
+     *
+     *  @param virtual true for a virtual clock, starting at 0; false for the
+     *         system clock
+     */
+    public SimulationClock(boolean virtual)
+    {
+        this.virtual = virtual;
+    }
+
+    /** Accessor for the current time
+     *
+     *  @return the time, in nanoseconds from an arbitrary origin
+     */
+    public long nanoTime()
+    {
+        return virtual ? virtualTime : System.nanoTime();
+    }
+
+    /** Wait for a given time to pass
+     *
+     *  @param nanos the time to wait, in nanoseconds
+     */
+    public void sleep(long nanos)
+    {
+        if (virtual)
+            virtualTime += nanos;
+        else if (nanos > 0)
+        {
+            try
+            {
+                Thread.sleep(nanos / 1000000, (int) (nanos % 1000000));
+            }
+            catch(InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /** See whether this is a virtual clock
+     *
+     *  @return true if time only passes when sleep() is called
+     */
+    public boolean isVirtual()
+    {
+        return virtual;
+    }
+
+    /** True for a virtual clock
+     */
+    private final boolean virtual;
+
+    /** Current time of a virtual clock, in nanoseconds.  Only the ATM's own
+     *  thread changes it, but others may read it
+     */
+    private volatile long virtualTime;
+}
@@ -0,0 +1,33 @@
+/*
+ * ATM Example system - file StreamLogSink.java
+ *
+ */
+
+package simulation;
+
+import java.io.PrintStream;
+
+/** Sink that prints the log to a stream - e.g. the standard output - a batch
+ *  at a time
+ */
+public class StreamLogSink extends TextLogSink
+{
+    /** Constructor
+     *
+     *  @param out the stream to print to
+     */
+    public StreamLogSink(PrintStream out)
+    {
+        this.out = out;
+    }
+
+    protected void output(StringBuilder batch)
+    {
+        out.append(batch);
+        out.flush();
+    }
+
+    /** The stream printed to
+     */
+    private final PrintStream out;
+}
@@ -0,0 +1,104 @@
+/*
+ * ATM Example system - file TextLogSink.java
+ *
+ */
+
+package simulation;
+
+import java.time.LocalDate;
+import java.util.TimeZone;
+
+import atm.physical.LogEvent;
+
+/** Base class for sinks that output the log as lines of text shared by many
+ *  ATMs - the time and ATM come first, then the entry as the ATM's own log
+ *  shows it:
+ *
+ *  2001-06-15 14:02:07.315 ATM 3 Message:   CEK SALDO KARTU# 1 ...
+ *
+ *  The lines of a batch are gathered in one StringBuilder, reused for every
+ *  batch, and handed to output() when the batch is flushed.
+ */
+public abstract class TextLogSink implements LogSink
+{
+    public void write(LogEvent event)
+    {
+        appendTime(event.getTime());
+        text.append(" ATM ").append(event.getATMID()).append(' ');
+        event.appendTo(text).append('\n');
+    }
+
+    public void flush()
+    {
+        if (text.length() > 0)
+        {
+            output(text);
+            text.setLength(0);
+        }
+    }
+
+    public void close()
+    {
+        flush();
+    }
+
+    /** Output the text of a batch of entries
+     *
+     *  @param batch the lines, each ending with a newline - to be copied, as
+     *         it will be reused
+     */
+    protected abstract void output(StringBuilder batch);
+
+    /** Append a time as local date and time of day, to the millisecond.  The
+     *  date only changes once a day, so it is kept as a string
+     *
+     *  @param time the time, as System.currentTimeMillis() gives it
+     */
+    private void appendTime(long time)
+    {
+        long local = time + zone.getOffset(time);
+        long day = Math.floorDiv(local, MILLIS_PER_DAY);
+        if (day != currentDay)
+        {
+            currentDay = day;
+            currentDate = LocalDate.ofEpochDay(day).toString();
+        }
+        int millis = (int) Math.floorMod(local, MILLIS_PER_DAY);
+        text.append(currentDate).append(' ');
+        appendDigits(millis / 3600000, 2);
+        text.append(':');
+        appendDigits(millis / 60000 % 60, 2);
+        text.append(':');
+        appendDigits(millis / 1000 % 60, 2);
+        text.append('.');
+        appendDigits(millis % 1000, 3);
+    }
+
+    /** Append a number with leading zeros
+     *
+     *  @param value the number - not negative
+     *  @param digits number of digits to append
+     */
+    private void appendDigits(int value, int digits)
+    {
+        for (int divisor = digits == 3 ? 100 : 10; divisor > 0; divisor /= 10)
+            text.append((char) ('0' + value / divisor % 10));
+    }
+
+    /** Text of the batch being gathered
+     */
+    private final StringBuilder text = new StringBuilder(16 * 1024);
+
+    /** Time zone times are shown in
+     */
+    private final TimeZone zone = TimeZone.getDefault();
+
+    /** Day, counted from 1970-01-01, of the last time appended, and its date
+     */
+    private long currentDay = Long.MIN_VALUE;
+    private String currentDate;
+
+    /** Milliseconds in a day
+     */
+    private static final long MILLIS_PER_DAY = 24 * 60 * 60 * 1000;
+}